@@ -24,7 +24,8 @@ import java.lang.annotation.Target;
 
 /**
  * Annotates a method whose return value is an object whose total memory footprint is to be
- * measured.
+ * measured. To measure only what one object graph adds to another, return an {@link
+ * IncrementalFootprint}.
  */
 @Retention(RUNTIME)
 @Target(METHOD)
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.api;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Return this from a {@link Footprint} method to measure only the memory that one object graph
+ * adds on top of another: the objects reachable from the full graph that aren't reachable from the
+ * baseline. For example, to measure what an index adds to a cache whose entries it shares:
+ *
+ * <pre>{@code
+ * @Footprint
+ * public IncrementalFootprint index() {
+ *   Cache cache = newCache();
+ *   return IncrementalFootprint.of(cache, new IndexedCache(cache));
+ * }
+ * }</pre>
+ */
+public final class IncrementalFootprint {
+  private final Object baseline;
+  private final Object full;
+
+  private IncrementalFootprint(Object baseline, Object full) {
+    this.baseline = checkNotNull(baseline);
+    this.full = checkNotNull(full);
+  }
+
+  /**
+   * Returns an incremental footprint of the objects reachable from {@code full} but not from
+   * {@code baseline}.
+   */
+  public static IncrementalFootprint of(Object baseline, Object full) {
+    return new IncrementalFootprint(baseline, full);
+  }
+
+  /** Returns the root of the object graph whose objects aren't measured. */
+  public Object baseline() {
+    return baseline;
+  }
+
+  /** Returns the root of the object graph whose objects are measured, unless in the baseline. */
+  public Object full() {
+    return full;
+  }
+}
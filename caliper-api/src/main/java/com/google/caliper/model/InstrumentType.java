@@ -30,4 +30,6 @@ public enum InstrumentType {
   ALLOCATION_MACRO,
   /** Arbitrary measurement instrument. */
   ARBITRARY_MEASUREMENT,
+  /** Footprint instrument. */
+  FOOTPRINT,
 }
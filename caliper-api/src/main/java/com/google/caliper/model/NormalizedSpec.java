@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.model;
+
+/**
+ * The kinds of spec that the {@linkplain NormalizedTrialWriter normalized format} writes once and
+ * references by persistent hash.
+ */
+enum NormalizedSpec {
+  HOST("host", Host.class) {
+    @Override
+    Object get(Trial trial) {
+      return trial.scenario().host();
+    }
+  },
+  VM_SPEC("vmSpec", VmSpec.class) {
+    @Override
+    Object get(Trial trial) {
+      return trial.scenario().vmSpec();
+    }
+  },
+  BENCHMARK_SPEC("benchmarkSpec", BenchmarkSpec.class) {
+    @Override
+    Object get(Trial trial) {
+      return trial.scenario().benchmarkSpec();
+    }
+  },
+  INSTRUMENT_SPEC("instrumentSpec", InstrumentSpec.class) {
+    @Override
+    Object get(Trial trial) {
+      return trial.instrumentSpec();
+    }
+  };
+
+  private final String key;
+  private final Class<?> type;
+
+  NormalizedSpec(String key, Class<?> type) {
+    this.key = key;
+    this.type = type;
+  }
+
+  /** Returns the name of this kind's definition records and of the fields that reference them. */
+  String key() {
+    return key;
+  }
+
+  /** Returns the model class of this kind of spec. */
+  Class<?> type() {
+    return type;
+  }
+
+  /** Returns the trial's spec of this kind. */
+  abstract Object get(Trial trial);
+
+  /** Returns the kind whose records have the given name, or {@code null} if there is none. */
+  static NormalizedSpec forKey(String key) {
+    for (NormalizedSpec spec : values()) {
+      if (spec.key.equals(key)) {
+        return spec;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Reads trials written by {@link NormalizedTrialWriter}, one at a time. Only the records needed to
+ * produce the next trial are read, and each spec definition is kept as parsed JSON until a trial
+ * first references it; every trial referencing a spec then shares the same instance.
+ *
+ * <pre>{@code
+ * try (NormalizedTrialReader reader = new NormalizedTrialReader(in, gson)) {
+ *   while (reader.hasNext()) {
+ *     Trial trial = reader.next();
+ *     ...
+ *   }
+ * }
+ * }</pre>
+ */
+public final class NormalizedTrialReader implements Closeable {
+  private static final Type VM_ARGUMENTS_TYPE = new TypeToken<Map<String, String>>() {}.getType();
+  private static final Type MEASUREMENTS_TYPE = new TypeToken<List<Measurement>>() {}.getType();
+
+  private final JsonReader reader;
+  private final Gson gson;
+  private final EnumMap<NormalizedSpec, Map<Integer, JsonElement>> definitions =
+      new EnumMap<>(NormalizedSpec.class);
+  private final EnumMap<NormalizedSpec, Map<Integer, Object>> specs =
+      new EnumMap<>(NormalizedSpec.class);
+
+  private Trial next;
+
+  /**
+   * Creates a reader that reads from {@code in}, using a {@link Gson} configured for Caliper's
+   * model objects to read each spec and trial.
+   *
+   * @throws JsonParseException if {@code in} doesn't start a normalized results file of a version
+   *     this reader supports
+   */
+  public NormalizedTrialReader(Reader in, Gson gson) throws IOException {
+    this(new JsonReader(in), gson);
+  }
+
+  /** Creates a reader that reads from a {@link JsonReader} at the start of a normalized file. */
+  NormalizedTrialReader(JsonReader reader, Gson gson) throws IOException {
+    this.reader = reader;
+    this.gson = checkNotNull(gson);
+    for (NormalizedSpec spec : NormalizedSpec.values()) {
+      definitions.put(spec, Maps.<Integer, JsonElement>newHashMap());
+      specs.put(spec, Maps.<Integer, Object>newHashMap());
+    }
+    reader.beginObject();
+    expectName("version");
+    int version = reader.nextInt();
+    if (version != NormalizedTrialWriter.VERSION) {
+      throw new JsonParseException("Unsupported normalized results version: " + version);
+    }
+    expectName("records");
+    reader.beginArray();
+  }
+
+  /** Returns whether there's another trial to read. */
+  public boolean hasNext() throws IOException {
+    while (next == null && reader.hasNext()) {
+      readRecord();
+    }
+    return next != null;
+  }
+
+  /**
+   * Returns the next trial.
+   *
+   * @throws NoSuchElementException if there are no more trials
+   */
+  public Trial next() throws IOException {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Trial trial = next;
+    next = null;
+    return trial;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private void expectName(String expected) throws IOException {
+    String name = reader.nextName();
+    if (!name.equals(expected)) {
+      throw new JsonParseException(
+          String.format("Expected %s but was %s at %s", expected, name, reader.getPath()));
+    }
+  }
+
+  private void readRecord() throws IOException {
+    reader.beginObject();
+    String name = reader.nextName();
+    NormalizedSpec kind = NormalizedSpec.forKey(name);
+    if (name.equals("trial")) {
+      next = readTrial();
+    } else if (kind != null) {
+      readDefinition(kind);
+    } else {
+      reader.skipValue(); // a kind of record added by a later writer
+    }
+    reader.endObject();
+  }
+
+  private void readDefinition(NormalizedSpec kind) throws IOException {
+    Integer hash = null;
+    JsonElement value = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("hash")) {
+        hash = reader.nextInt();
+      } else if (name.equals("value")) {
+        value = gson.fromJson(reader, JsonElement.class);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (hash == null || value == null) {
+      throw new JsonParseException("Incomplete " + kind.key() + " at " + reader.getPath());
+    }
+    definitions.get(kind).put(hash, value);
+  }
+
+  private Trial readTrial() throws IOException {
+    UUID id = null;
+    Run run = null;
+    InstrumentSpec instrumentSpec = null;
+    Scenario scenario = null;
+    List<Measurement> measurements = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("id")) {
+        id = gson.fromJson(reader, UUID.class);
+      } else if (name.equals("run")) {
+        run = gson.fromJson(reader, Run.class);
+      } else if (name.equals(NormalizedSpec.INSTRUMENT_SPEC.key())) {
+        instrumentSpec = (InstrumentSpec) readSpec(NormalizedSpec.INSTRUMENT_SPEC);
+      } else if (name.equals("scenario")) {
+        scenario = readScenario();
+      } else if (name.equals("measurements")) {
+        measurements = gson.fromJson(reader, MEASUREMENTS_TYPE);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (id == null || run == null || instrumentSpec == null || scenario == null) {
+      throw new JsonParseException("Incomplete trial at " + reader.getPath());
+    }
+    Trial.Builder trial =
+        new Trial.Builder(id).run(run).instrumentSpec(instrumentSpec).scenario(scenario);
+    if (measurements != null) {
+      trial.addAllMeasurements(measurements);
+    }
+    return trial.build();
+  }
+
+  private Scenario readScenario() throws IOException {
+    Scenario.Builder scenario = new Scenario.Builder();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals(NormalizedSpec.HOST.key())) {
+        scenario.host((Host) readSpec(NormalizedSpec.HOST));
+      } else if (name.equals(NormalizedSpec.VM_SPEC.key())) {
+        scenario.vmSpec((VmSpec) readSpec(NormalizedSpec.VM_SPEC));
+      } else if (name.equals(NormalizedSpec.BENCHMARK_SPEC.key())) {
+        scenario.benchmarkSpec((BenchmarkSpec) readSpec(NormalizedSpec.BENCHMARK_SPEC));
+      } else if (name.equals("vmArguments")) {
+        Map<String, String> vmArguments = gson.fromJson(reader, VM_ARGUMENTS_TYPE);
+        scenario.addAllVmArguments(vmArguments);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return scenario.build();
+  }
+
+  /** Reads either the hash of a spec defined earlier or, after a hash collision, a whole spec. */
+  private Object readSpec(NormalizedSpec kind) throws IOException {
+    if (reader.peek() != JsonToken.NUMBER) {
+      return gson.fromJson(reader, kind.type());
+    }
+    int hash = reader.nextInt();
+    Map<Integer, Object> parsed = specs.get(kind);
+    Object spec = parsed.get(hash);
+    if (spec == null) {
+      JsonElement definition = definitions.get(kind).remove(hash);
+      if (definition == null) {
+        throw new JsonParseException(
+            String.format("Undefined %s %d at %s", kind.key(), hash, reader.getPath()));
+      }
+      spec = gson.fromJson(definition, kind.type());
+      parsed.put(hash, spec);
+    }
+    return spec;
+  }
+}
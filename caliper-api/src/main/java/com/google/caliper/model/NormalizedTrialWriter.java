@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes trials in Caliper's normalized JSON format, in which each distinct {@link Host}, {@link
+ * VmSpec}, {@link BenchmarkSpec} and {@link InstrumentSpec} is written once and trials reference it
+ * by its persistent hash. Since most trials of a run share their host and VM, this makes results
+ * much smaller than a JSON array of {@link Trial}s. Use {@link NormalizedTrialReader} to read them.
+ *
+ * <p>The output is a JSON object of the form:
+ *
+ * <pre>{@code
+ * {"version": 1, "records": [
+ *   {"host": {"hash": -1218957616, "value": {"properties": {...}}}},
+ *   {"vmSpec": {"hash": 1032951613, "value": {...}}},
+ *   ...
+ *   {"trial": {"id": "...", "run": {...}, "instrumentSpec": 531906573,
+ *       "scenario": {"host": -1218957616, "vmSpec": 1032951613, "benchmarkSpec": 90210,
+ *           "vmArguments": {...}},
+ *       "measurements": [...]}}
+ * ]}
+ * }</pre>
+ *
+ * <p>Trials are written as they're passed to {@link #write}, so a spec's definition record comes
+ * just before the first trial that uses it rather than in a table at the start. If two different
+ * specs of a kind have the same hash, the later one is written in full in each trial instead.
+ */
+public final class NormalizedTrialWriter implements Closeable {
+  static final int VERSION = 1;
+
+  private static final Type VM_ARGUMENTS_TYPE = new TypeToken<Map<String, String>>() {}.getType();
+  private static final Type MEASUREMENTS_TYPE = new TypeToken<List<Measurement>>() {}.getType();
+
+  private final JsonWriter writer;
+  private final Gson gson;
+  private final EnumMap<NormalizedSpec, Map<Integer, Object>> writtenSpecs =
+      new EnumMap<>(NormalizedSpec.class);
+
+  /**
+   * Creates a writer that writes to {@code out}, using a {@link Gson} configured for Caliper's
+   * model objects to write each spec and trial.
+   */
+  public NormalizedTrialWriter(Writer out, Gson gson) throws IOException {
+    this.writer = new JsonWriter(out);
+    this.gson = checkNotNull(gson);
+    for (NormalizedSpec spec : NormalizedSpec.values()) {
+      writtenSpecs.put(spec, Maps.<Integer, Object>newHashMap());
+    }
+    writer.beginObject().name("version").value(VERSION).name("records").beginArray();
+  }
+
+  /** Writes the trial, preceded by the definitions of any of its specs not yet written. */
+  public void write(Trial trial) throws IOException {
+    Set<NormalizedSpec> referenced = EnumSet.noneOf(NormalizedSpec.class);
+    for (NormalizedSpec kind : NormalizedSpec.values()) {
+      if (define(kind, kind.get(trial))) {
+        referenced.add(kind);
+      }
+    }
+
+    Scenario scenario = trial.scenario();
+    writer.beginObject().name("trial").beginObject();
+    writer.name("id");
+    gson.toJson(trial.id(), UUID.class, writer);
+    writer.name("run");
+    gson.toJson(trial.run(), Run.class, writer);
+    writeSpec(NormalizedSpec.INSTRUMENT_SPEC, trial, referenced);
+    writer.name("scenario").beginObject();
+    writeSpec(NormalizedSpec.HOST, trial, referenced);
+    writeSpec(NormalizedSpec.VM_SPEC, trial, referenced);
+    writeSpec(NormalizedSpec.BENCHMARK_SPEC, trial, referenced);
+    writer.name("vmArguments");
+    gson.toJson(scenario.vmArguments(), VM_ARGUMENTS_TYPE, writer);
+    writer.endObject();
+    writer.name("measurements");
+    gson.toJson(trial.measurements(), MEASUREMENTS_TYPE, writer);
+    writer.endObject().endObject();
+  }
+
+  /**
+   * Writes the definition of the spec if no spec with its hash has been written yet.
+   *
+   * @return whether the spec can be referenced by its hash
+   */
+  private boolean define(NormalizedSpec kind, Object spec) throws IOException {
+    Map<Integer, Object> written = writtenSpecs.get(kind);
+    int hash = spec.hashCode();
+    Object existing = written.get(hash);
+    if (existing == null) {
+      written.put(hash, spec);
+      writer.beginObject().name(kind.key()).beginObject();
+      writer.name("hash").value(hash);
+      writer.name("value");
+      gson.toJson(spec, kind.type(), writer);
+      writer.endObject().endObject();
+      return true;
+    }
+    return existing.equals(spec);
+  }
+
+  private void writeSpec(NormalizedSpec kind, Trial trial, Set<NormalizedSpec> referenced)
+      throws IOException {
+    Object spec = kind.get(trial);
+    writer.name(kind.key());
+    if (referenced.contains(kind)) {
+      writer.value(spec.hashCode());
+    } else {
+      gson.toJson(spec, kind.type(), writer);
+    }
+  }
+
+  /** Finishes the output and closes the underlying writer. */
+  @Override
+  public void close() throws IOException {
+    writer.endArray().endObject().close();
+  }
+}
@@ -24,6 +24,11 @@ import com.google.caliper.model.BenchmarkSpec.BenchmarkSpecFunnel;
 import com.google.caliper.model.Host.HostFunnel;
 import com.google.caliper.model.VmSpec.VmSpecFunnel;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import java.util.Map;
+import java.util.SortedMap;
 
 /**
  * The combination of properties whose combination, when measured with a particular instrument,
@@ -37,6 +42,8 @@ public final class Scenario {
   private Host host;
   private VmSpec vmSpec;
   private BenchmarkSpec benchmarkSpec;
+  // named VM argument choices (e.g. gc=G1, heap=1g) the scenario was run with
+  private SortedMap<String, String> vmArguments;
   // TODO(gak): include data about caliper itself and the code being benchmarked
   @ExcludeFromJson
   private int hash;
@@ -45,12 +52,14 @@ public final class Scenario {
     this.host = Host.DEFAULT;
     this.vmSpec = VmSpec.DEFAULT;
     this.benchmarkSpec = BenchmarkSpec.DEFAULT;
+    this.vmArguments = Maps.newTreeMap();
   }
 
   private Scenario(Builder builder) {
     this.host = builder.host;
     this.vmSpec = builder.vmSpec;
     this.benchmarkSpec = builder.benchmarkSpec;
+    this.vmArguments = Maps.newTreeMap(builder.vmArguments);
   }
 
   public Host host() {
@@ -65,6 +74,14 @@ public final class Scenario {
     return benchmarkSpec;
   }
 
+  /**
+   * Returns the choices for named VM argument dimensions (e.g. {@code gc=G1} or {@code heap=1g})
+   * that this scenario was run with.
+   */
+  public ImmutableSortedMap<String, String> vmArguments() {
+    return ImmutableSortedMap.copyOf(vmArguments);
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (obj == this) {
@@ -73,7 +90,8 @@ public final class Scenario {
       Scenario that = (Scenario) obj;
       return this.host.equals(that.host)
           && this.vmSpec.equals(that.vmSpec)
-          && this.benchmarkSpec.equals(that.benchmarkSpec);
+          && this.benchmarkSpec.equals(that.benchmarkSpec)
+          && this.vmArguments.equals(that.vmArguments);
     } else {
       return false;
     }
@@ -81,14 +99,17 @@ public final class Scenario {
 
   private void initHash() {
     if (hash == 0) {
-      this.hash =
+      Hasher hasher =
           getPersistentHashFunction()
               .newHasher()
               .putObject(host, HostFunnel.INSTANCE)
               .putObject(vmSpec, VmSpecFunnel.INSTANCE)
-              .putObject(benchmarkSpec, BenchmarkSpecFunnel.INSTANCE)
-              .hash()
-              .asInt();
+              .putObject(benchmarkSpec, BenchmarkSpecFunnel.INSTANCE);
+      // only included when present so that hashes of existing scenarios are unchanged
+      if (!vmArguments.isEmpty()) {
+        StringMapFunnel.INSTANCE.funnel(vmArguments, hasher);
+      }
+      this.hash = hasher.hash().asInt();
     }
   }
 
@@ -104,6 +125,7 @@ public final class Scenario {
         .add("environment", host)
         .add("vmSpec", vmSpec)
         .add("benchmarkSpec", benchmarkSpec)
+        .add("vmArguments", vmArguments)
         .toString();
   }
 
@@ -111,6 +133,7 @@ public final class Scenario {
     private Host host;
     private VmSpec vmSpec;
     private BenchmarkSpec benchmarkSpec;
+    private final SortedMap<String, String> vmArguments = Maps.newTreeMap();
 
     public Builder host(Host.Builder hostBuilder) {
       return host(hostBuilder.build());
@@ -139,6 +162,16 @@ public final class Scenario {
       return this;
     }
 
+    public Builder addVmArgument(String name, String value) {
+      this.vmArguments.put(checkNotNull(name), checkNotNull(value));
+      return this;
+    }
+
+    public Builder addAllVmArguments(Map<String, String> vmArguments) {
+      this.vmArguments.putAll(vmArguments);
+      return this;
+    }
+
     public Scenario build() {
       checkState(host != null);
       checkState(vmSpec != null);
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the trials of a Caliper result file one at a time, so that files of any size can be read
+ * without holding all of their trials in memory. Both JSON arrays of trials and {@linkplain
+ * NormalizedTrialReader normalized} results can be read.
+ *
+ * <pre>{@code
+ * try (TrialReader reader = TrialReader.open(file, gson)) {
+ *   while (reader.hasNext()) {
+ *     Trial trial = reader.next();
+ *     ...
+ *   }
+ * }
+ * }</pre>
+ */
+public final class TrialReader implements Closeable {
+  private final JsonReader reader;
+  private final Gson gson;
+  private final NormalizedTrialReader normalizedReader;
+
+  /**
+   * Creates a reader that reads from {@code in}, using a {@link Gson} configured for Caliper's
+   * model objects to read each trial.
+   */
+  public TrialReader(Reader in, Gson gson) throws IOException {
+    this.reader = new JsonReader(in);
+    this.gson = checkNotNull(gson);
+    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+      this.normalizedReader = new NormalizedTrialReader(reader, gson);
+    } else {
+      this.normalizedReader = null;
+      reader.beginArray();
+    }
+  }
+
+  /** Opens a reader for the result file, which may be gzip-compressed. */
+  public static TrialReader open(File file, Gson gson) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      in.mark(2);
+      boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+      in.reset();
+      if (gzip) {
+        in = new GZIPInputStream(in);
+      }
+      return new TrialReader(new InputStreamReader(in, UTF_8), gson);
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /** Returns whether there's another trial to read. */
+  public boolean hasNext() throws IOException {
+    return normalizedReader != null ? normalizedReader.hasNext() : reader.hasNext();
+  }
+
+  /**
+   * Returns the next trial.
+   *
+   * @throws NoSuchElementException if there are no more trials
+   */
+  public Trial next() throws IOException {
+    if (normalizedReader != null) {
+      return normalizedReader.next();
+    }
+    if (!reader.hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return gson.fromJson(reader, Trial.class);
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
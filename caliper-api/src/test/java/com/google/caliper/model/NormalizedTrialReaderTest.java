@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.caliper.model.testing.TrialFixtures;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link NormalizedTrialWriter} and {@link NormalizedTrialReader}. */
+@RunWith(JUnit4.class)
+public class NormalizedTrialReaderTest {
+  private static final Gson GSON = TrialFixtures.gson();
+
+  private static final InstrumentSpec INSTRUMENT_SPEC =
+      new InstrumentSpec.Builder().className("Runtime").addOption("gcStats", "true").build();
+
+  private static Trial trial(int id, String method) {
+    return TrialFixtures.trial(new UUID(1, id))
+        .instrumentSpec(INSTRUMENT_SPEC)
+        .scenario(
+            TrialFixtures.scenario(TrialFixtures.benchmarkSpec(method))
+                .addVmArgument("-Xmx", "1g"))
+        .addMeasurement(TrialFixtures.measurement("runtime", id, "ns", 1))
+        .build();
+  }
+
+  @Test
+  public void roundTrip() throws IOException {
+    List<Trial> trials = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      trials.add(trial(i, i % 2 == 0 ? "even" : "odd"));
+    }
+    StringWriter out = new StringWriter();
+    try (NormalizedTrialWriter writer = new NormalizedTrialWriter(out, GSON)) {
+      for (Trial trial : trials) {
+        writer.write(trial);
+      }
+    }
+    String json = out.toString();
+    assertEquals(1, count(json, "\"os.name\""));
+    assertEquals(1, count(json, "\"gcStats\""));
+    assertEquals(2, count(json, "\"FooBenchmark\""));
+
+    List<Trial> read = readAll(json);
+    assertEquals(trials, read);
+    assertSame(read.get(0).scenario().host(), read.get(3).scenario().host());
+    assertSame(read.get(0).instrumentSpec(), read.get(3).instrumentSpec());
+  }
+
+  @Test
+  public void inlineSpecAndUnknownRecords() throws IOException {
+    String json =
+        "{\"version\":1,\"records\":["
+            + "{\"note\":{\"text\":\"ignored\"}},"
+            + "{\"trial\":{\"id\":\"00000000-0000-0001-0000-000000000007\","
+            + "\"run\":{\"id\":\"00000000-0000-0000-0000-000000000001\",\"label\":\"\","
+            + "\"startTime\":\"1970-01-01T00:00:00.000Z\"},"
+            + "\"instrumentSpec\":{\"className\":\"Runtime\",\"options\":{\"gcStats\":\"true\"}},"
+            + "\"scenario\":{\"host\":{\"properties\":{\"os.name\":\"Linux\"}},"
+            + "\"vmSpec\":{\"options\":{},\"properties\":{\"java.version\":\"17\"}},"
+            + "\"benchmarkSpec\":{\"className\":\"FooBenchmark\",\"methodName\":\"odd\","
+            + "\"parameters\":{}},\"vmArguments\":{\"-Xmx\":\"1g\"}},"
+            + "\"measurements\":[{\"value\":{\"magnitude\":7.0,\"unit\":\"ns\"},\"weight\":1.0,"
+            + "\"description\":\"runtime\"}]}}]}";
+    List<Trial> read = readAll(json);
+    assertEquals(1, read.size());
+    assertEquals(trial(7, "odd"), read.get(0));
+  }
+
+  @Test
+  public void undefinedSpec() throws IOException {
+    String json =
+        "{\"version\":1,\"records\":[{\"trial\":{\"id\":\"00000000-0000-0001-0000-000000000007\","
+            + "\"instrumentSpec\":42}}]}";
+    try (NormalizedTrialReader reader = new NormalizedTrialReader(new StringReader(json), GSON)) {
+      reader.hasNext();
+      fail();
+    } catch (JsonParseException expected) {
+      assertTrue(
+          expected.getMessage(), expected.getMessage().startsWith("Undefined instrumentSpec"));
+    }
+  }
+
+  @Test
+  public void unsupportedVersion() throws IOException {
+    try {
+      new NormalizedTrialReader(new StringReader("{\"version\":2,\"records\":[]}"), GSON);
+      fail();
+    } catch (JsonParseException expected) {
+      assertFalse(expected.getMessage().isEmpty());
+    }
+  }
+
+  private static List<Trial> readAll(String json) throws IOException {
+    List<Trial> trials = new ArrayList<>();
+    try (NormalizedTrialReader reader = new NormalizedTrialReader(new StringReader(json), GSON)) {
+      while (reader.hasNext()) {
+        trials.add(reader.next());
+      }
+    }
+    return trials;
+  }
+
+  private static int count(String text, String substring) {
+    int count = 0;
+    for (int i = text.indexOf(substring); i >= 0; i = text.indexOf(substring, i + 1)) {
+      count++;
+    }
+    return count;
+  }
+}
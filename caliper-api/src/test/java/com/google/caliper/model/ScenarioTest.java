@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.caliper.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import com.google.caliper.json.GsonModule;
+import com.google.caliper.model.BenchmarkSpec.BenchmarkSpecFunnel;
+import com.google.caliper.model.Host.HostFunnel;
+import com.google.caliper.model.VmSpec.VmSpecFunnel;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import dagger.Component;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link Scenario} */
+@RunWith(JUnit4.class)
+public class ScenarioTest {
+  private static final Host HOST = new Host.Builder().addProperty("os.name", "Linux").build();
+  private static final VmSpec VM_SPEC =
+      new VmSpec.Builder().addProperty("java.version", "17").build();
+  private static final BenchmarkSpec BENCHMARK_SPEC =
+      new BenchmarkSpec.Builder().className("FooBenchmark").methodName("foo").build();
+
+  private static Scenario.Builder scenario() {
+    return new Scenario.Builder().host(HOST).vmSpec(VM_SPEC).benchmarkSpec(BENCHMARK_SPEC);
+  }
+
+  @Test
+  public void hash_withoutVmArgumentsIsUnchanged() {
+    int expected =
+        PersistentHashing.getPersistentHashFunction()
+            .newHasher()
+            .putObject(HOST, HostFunnel.INSTANCE)
+            .putObject(VM_SPEC, VmSpecFunnel.INSTANCE)
+            .putObject(BENCHMARK_SPEC, BenchmarkSpecFunnel.INSTANCE)
+            .hash()
+            .asInt();
+    assertEquals(expected, scenario().build().hashCode());
+
+    // results written before scenarios had VM arguments have no such field
+    Gson gson = DaggerScenarioTest_GsonComponent.create().gson();
+    String json = gson.toJson(scenario().build());
+    assertFalse(json.contains("\"vmArguments\":{\""));
+    String oldJson = json.replaceAll(",?\"vmArguments\":\\{\\}", "");
+    assertEquals(expected, gson.fromJson(oldJson, Scenario.class).hashCode());
+  }
+
+  @Test
+  public void hash_withVmArguments() {
+    int expected =
+        PersistentHashing.getPersistentHashFunction()
+            .newHasher()
+            .putObject(HOST, HostFunnel.INSTANCE)
+            .putObject(VM_SPEC, VmSpecFunnel.INSTANCE)
+            .putObject(BENCHMARK_SPEC, BenchmarkSpecFunnel.INSTANCE)
+            .putObject(ImmutableMap.of("gc", "G1", "heap", "1g"), StringMapFunnel.INSTANCE)
+            .hash()
+            .asInt();
+    Scenario scenario = scenario().addVmArgument("heap", "1g").addVmArgument("gc", "G1").build();
+    assertEquals(expected, scenario.hashCode());
+
+    Scenario otherHeap =
+        scenario().addVmArgument("heap", "2g").addVmArgument("gc", "G1").build();
+    assertNotEquals(scenario, otherHeap);
+    assertNotEquals(scenario.hashCode(), otherHeap.hashCode());
+    assertNotEquals(scenario, scenario().build());
+
+    Gson gson = DaggerScenarioTest_GsonComponent.create().gson();
+    Scenario deserialized = gson.fromJson(gson.toJson(scenario), Scenario.class);
+    assertEquals(scenario, deserialized);
+    assertEquals(expected, deserialized.hashCode());
+  }
+
+  @Component(modules = GsonModule.class)
+  interface GsonComponent {
+    Gson gson();
+  }
+}
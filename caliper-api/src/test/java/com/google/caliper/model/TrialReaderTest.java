@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.caliper.model.testing.TrialFixtures;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link TrialReader}. */
+@RunWith(JUnit4.class)
+public class TrialReaderTest {
+  private static final Gson GSON = TrialFixtures.gson();
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static Trial trial(int id) {
+    return TrialFixtures.trial(new UUID(1, id))
+        .addMeasurement(TrialFixtures.measurement("runtime", id, "ns", 1))
+        .build();
+  }
+
+  private static List<Trial> readAll(TrialReader reader) throws IOException {
+    List<Trial> trials = new ArrayList<>();
+    while (reader.hasNext()) {
+      trials.add(reader.next());
+    }
+    try {
+      reader.next();
+      fail();
+    } catch (NoSuchElementException expected) {
+    }
+    reader.close();
+    return trials;
+  }
+
+  @Test
+  public void jsonArrayAndNormalized() throws IOException {
+    List<Trial> trials = Arrays.asList(trial(1), trial(2), trial(3));
+    String array = GSON.toJson(trials);
+    assertEquals(trials, readAll(new TrialReader(new StringReader(array), GSON)));
+
+    StringWriter normalized = new StringWriter();
+    try (NormalizedTrialWriter writer = new NormalizedTrialWriter(normalized, GSON)) {
+      for (Trial trial : trials) {
+        writer.write(trial);
+      }
+    }
+    assertEquals(
+        trials, readAll(new TrialReader(new StringReader(normalized.toString()), GSON)));
+  }
+
+  @Test
+  public void openGzipFile() throws IOException {
+    List<Trial> trials = Arrays.asList(trial(1), trial(2));
+    File file = folder.newFile("results.json.gz");
+    try (Writer out =
+        new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), UTF_8)) {
+      GSON.toJson(trials, out);
+    }
+    assertEquals(trials, readAll(TrialReader.open(file, GSON)));
+
+    File empty = folder.newFile("empty.json");
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(empty), UTF_8)) {
+      out.write("[]");
+    }
+    assertEquals(new ArrayList<Trial>(), readAll(TrialReader.open(empty, GSON)));
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.model.testing;
+
+import com.google.caliper.json.GsonModule;
+import com.google.caliper.model.BenchmarkSpec;
+import com.google.caliper.model.Host;
+import com.google.caliper.model.InstrumentSpec;
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Run;
+import com.google.caliper.model.Scenario;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.Value;
+import com.google.caliper.model.VmSpec;
+import com.google.gson.Gson;
+import dagger.Component;
+import java.util.UUID;
+import org.joda.time.Instant;
+
+/**
+ * Trials for the tests of the classes that store, read and write results, and the {@link Gson}
+ * those classes are given. Each trial is of {@code FooBenchmark.foo} with the runtime instrument,
+ * in {@link #RUN}, on {@link #HOST} and {@link #VM_SPEC}; tests override whichever parts they
+ * care about on the returned builders.
+ */
+public final class TrialFixtures {
+  public static final Run RUN = run(new UUID(0, 1), 0);
+  public static final InstrumentSpec INSTRUMENT_SPEC =
+      new InstrumentSpec.Builder().className("RuntimeInstrument").build();
+  public static final Host HOST = new Host.Builder().addProperty("os.name", "Linux").build();
+  public static final VmSpec VM_SPEC =
+      new VmSpec.Builder().addProperty("java.version", "17").build();
+
+  private static final Gson GSON = DaggerTrialFixtures_GsonComponent.create().gson();
+
+  private TrialFixtures() {}
+
+  /** Returns the {@link Gson} that Caliper reads and writes trials with. */
+  public static Gson gson() {
+    return GSON;
+  }
+
+  /** Returns a run with the given ID, started at the given time. */
+  public static Run run(UUID id, long startMillis) {
+    return new Run.Builder(id).startTime(new Instant(startMillis)).build();
+  }
+
+  /** Returns a builder for the spec of the given method of {@code FooBenchmark}. */
+  public static BenchmarkSpec.Builder benchmarkSpec(String methodName) {
+    return new BenchmarkSpec.Builder().className("FooBenchmark").methodName(methodName);
+  }
+
+  /** Returns a builder for a scenario of the given benchmark on the fixed host and VM. */
+  public static Scenario.Builder scenario(BenchmarkSpec.Builder benchmarkSpec) {
+    return new Scenario.Builder().host(HOST).vmSpec(VM_SPEC).benchmarkSpec(benchmarkSpec);
+  }
+
+  /** Returns a builder for a trial of {@code FooBenchmark.foo} with no measurements. */
+  public static Trial.Builder trial(UUID id) {
+    return new Trial.Builder(id)
+        .run(RUN)
+        .instrumentSpec(INSTRUMENT_SPEC)
+        .scenario(scenario(benchmarkSpec("foo")));
+  }
+
+  /** Returns a measurement of the given value. */
+  public static Measurement measurement(
+      String description, double magnitude, String unit, double weight) {
+    return new Measurement.Builder()
+        .description(description)
+        .value(Value.create(magnitude, unit))
+        .weight(weight)
+        .build();
+  }
+
+  @Component(modules = GsonModule.class)
+  interface GsonComponent {
+    Gson gson();
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.bridge;
+
+import com.google.auto.value.AutoValue;
+import java.io.Serializable;
+
+/**
+ * Characteristics of a clock, such as {@link System#nanoTime()}, as measured on the device that a
+ * worker runs on.
+ */
+@AutoValue
+public abstract class ClockCharacteristics implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /** Creates a new instance with the given characteristics. */
+  public static ClockCharacteristics create(
+      double granularityNanos, double latencyNanos, boolean monotonic) {
+    return new AutoValue_ClockCharacteristics(granularityNanos, latencyNanos, monotonic);
+  }
+
+  /** Returns the typical amount by which the clock advances when its value changes. */
+  public abstract double granularityNanos();
+
+  /** Returns the average time it takes to read the clock. */
+  public abstract double latencyNanos();
+
+  /** Returns whether the clock was never observed to go backwards. */
+  public abstract boolean monotonic();
+
+  /**
+   * Returns the smallest difference between two readings of the clock that can be trusted, which
+   * is the larger of its granularity and its latency.
+   */
+  public final double resolutionNanos() {
+    return Math.max(granularityNanos(), latencyNanos());
+  }
+}
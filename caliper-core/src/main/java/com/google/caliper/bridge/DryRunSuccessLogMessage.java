@@ -17,22 +17,64 @@
 package com.google.caliper.bridge;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.io.Serializable;
+import java.util.Map;
 
-/** A log message listing the IDs of successful dry-run experiments. */
+/**
+ * A log message listing the IDs of successful dry-run experiments, along with what the worker
+ * measured about their dry-runs.
+ */
 @AutoValue
 public abstract class DryRunSuccessLogMessage extends LogMessage implements Serializable {
   private static final long serialVersionUID = 1L;
 
   /** Creates a new dry-run success log message for the given experiment IDs. */
   public static DryRunSuccessLogMessage create(Iterable<Integer> ids) {
-    return new AutoValue_DryRunSuccessLogMessage(ImmutableSet.copyOf(ids));
+    return create(ids, 0, ImmutableMap.<Integer, Long>of(), ImmutableMap.<Integer, Long>of());
+  }
+
+  /**
+   * Creates a new dry-run success log message for the given experiment IDs, with the feature
+   * version of the worker's Java runtime and the time taken and the bytes allocated by the dry-run
+   * of each.
+   */
+  public static DryRunSuccessLogMessage create(
+      Iterable<Integer> ids,
+      int javaFeatureVersion,
+      Map<Integer, Long> nanos,
+      Map<Integer, Long> allocatedBytes) {
+    return new AutoValue_DryRunSuccessLogMessage(
+        ImmutableSet.copyOf(ids),
+        javaFeatureVersion,
+        ImmutableMap.copyOf(nanos),
+        ImmutableMap.copyOf(allocatedBytes));
   }
 
   /** Returns the IDs of the experiments that were successfully dry-run and not skipped. */
   public abstract ImmutableSet<Integer> ids();
 
+  /**
+   * Returns the feature version of the worker's Java runtime, such as 8 or 17, or 0 if it isn't
+   * known.
+   */
+  public abstract int javaFeatureVersion();
+
+  /**
+   * Returns the wall time taken by the dry-run of each successful experiment, by ID. This is the
+   * time of its single rep, or of a batch of warmed-up reps if its instrument asked for the
+   * benchmark's steady state to be measured.
+   */
+  public abstract ImmutableMap<Integer, Long> nanos();
+
+  /**
+   * Returns the number of bytes allocated by the dry-run of each successful experiment, by ID,
+   * during the same reps as its {@linkplain #nanos() time}. Empty if the worker's VM can't count
+   * allocations.
+   */
+  public abstract ImmutableMap<Integer, Long> allocatedBytes();
+
   @Override
   public void accept(LogMessageVisitor visitor) {
     visitor.visit(this);
@@ -34,8 +34,10 @@ final class LogMessageParser implements Parser<LogMessage> {
       Pattern.compile(".*\\[(?:(Full) )?GC.*(\\d+\\.\\d+) secs\\]");
   private static final Pattern JIT_PATTERN =
       Pattern.compile(".*::.*( \\(((\\d+ bytes)|(static))\\))?");
+  // JDK 9+ appends a second braced group with the origin of the value (e.g. "{ergonomic}")
   private static final Pattern VM_OPTION_PATTERN =
-      Pattern.compile("\\s*(\\w+)\\s+(\\w+)\\s+:?=\\s+([^\\s]*)\\s+\\{([^}]*)\\}\\s*");
+      Pattern.compile(
+          "\\s*(\\w+)\\s+(\\w+)\\s+:?=\\s+([^\\s]*)\\s+\\{([^}]*)\\}(?:\\s+\\{([^}]*)\\})?\\s*");
 
   @Override
   public LogMessage parse(CharSequence text) {
@@ -18,6 +18,7 @@ package com.google.caliper.bridge;
 
 import com.google.auto.value.AutoValue;
 import com.google.caliper.core.BenchmarkClassModel;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import java.io.Serializable;
 import java.util.Map;
@@ -27,10 +28,17 @@ import java.util.Map;
 public abstract class TargetInfoLogMessage extends LogMessage implements Serializable {
   private static final long serialVersionUID = 1L;
 
-  /** Creates a new log message containing the given benchmark model and device properties. */
+  /**
+   * Creates a new log message containing the given benchmark model, device properties and clock
+   * characteristics.
+   */
   public static TargetInfoLogMessage create(
-      BenchmarkClassModel model, Map<String, String> deviceProperties) {
-    return new AutoValue_TargetInfoLogMessage(model, ImmutableMap.copyOf(deviceProperties));
+      BenchmarkClassModel model,
+      Map<String, String> deviceProperties,
+      ClockCharacteristics nanoTime,
+      Optional<ClockCharacteristics> threadCpuTime) {
+    return new AutoValue_TargetInfoLogMessage(
+        model, ImmutableMap.copyOf(deviceProperties), nanoTime, threadCpuTime);
   }
 
   /** Returns the benchmark class model. */
@@ -44,6 +52,15 @@ public abstract class TargetInfoLogMessage extends LogMessage implements Seriali
    */
   public abstract ImmutableMap<String, String> deviceProperties();
 
+  /** Returns the characteristics of {@link System#nanoTime()} on the target. */
+  public abstract ClockCharacteristics nanoTime();
+
+  /**
+   * Returns the characteristics of the current thread's CPU time clock on the target, or absent if
+   * the target can't measure it.
+   */
+  public abstract Optional<ClockCharacteristics> threadCpuTime();
+
   @Override
   public void accept(LogMessageVisitor visitor) {
     visitor.visit(this);
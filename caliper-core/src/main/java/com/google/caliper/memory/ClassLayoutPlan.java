@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+
+/**
+ * How {@link ObjectExplorer} reads the instances of a class, computed once per class: the instance
+ * fields to explore, split into references and primitives, and how to read each of them. For array
+ * classes, only the component type is recorded.
+ *
+ * <p>Fields are read with {@code sun.misc.Unsafe} at precomputed offsets because, unlike
+ * reflective access, it can cross module boundaries. Where Unsafe is unavailable, or on JDK 23 and
+ * later where its memory access methods are deprecated for removal, fields are read with method
+ * handles from {@code MethodHandles.privateLookupIn} instead, falling back to Unsafe only for
+ * fields in modules that aren't open to us.
+ */
+final class ClassLayoutPlan {
+  // the kinds of value a field can hold, so that reading one doesn't compare types
+  private static final byte REFERENCE = 0;
+  private static final byte BOOLEAN = 1;
+  private static final byte BYTE = 2;
+  private static final byte CHAR = 3;
+  private static final byte SHORT = 4;
+  private static final byte INT = 5;
+  private static final byte FLOAT = 6;
+  private static final byte LONG = 7;
+  private static final byte DOUBLE = 8;
+
+  /** A cache of plans per class of interest. */
+  private static final ConcurrentHashMap<Class<?>, ClassLayoutPlan> plans =
+      new ConcurrentHashMap<Class<?>, ClassLayoutPlan>();
+
+  private final Class<?> componentType;
+
+  // all fields to explore, in the order they're pushed to the stack
+  private final Field[] fields;
+  private final byte[] kinds;
+  private final long[] offsets;
+  @CheckForNull private final MethodHandle[] getters;
+
+  // the reference fields only
+  private final Class<?>[] referenceTypes;
+  private final String[] referenceNames;
+  private final long[] referenceOffsets;
+  @CheckForNull private final MethodHandle[] referenceGetters;
+
+  // the number of primitive fields of each type
+  private final Class<?>[] primitiveTypes;
+  private final int[] primitiveCounts;
+
+  /** Returns the plan for the given class. */
+  static ClassLayoutPlan of(Class<?> clazz) {
+    ClassLayoutPlan plan = plans.get(clazz);
+    if (plan == null) {
+      plan = new ClassLayoutPlan(clazz);
+      ClassLayoutPlan existing = plans.putIfAbsent(clazz, plan);
+      return existing == null ? plan : existing;
+    }
+    return plan;
+  }
+
+  private ClassLayoutPlan(Class<?> clazz) {
+    this.componentType = clazz.getComponentType();
+    this.fields = componentType == null ? computeAllFields(clazz) : new Field[0];
+    int count = fields.length;
+    this.kinds = new byte[count];
+    this.offsets = new long[count];
+    MethodHandle[] getters = new MethodHandle[count];
+    boolean anyGetters = false;
+    Map<Class<?>, Integer> primitives = Maps.newLinkedHashMap();
+    int referenceCount = 0;
+    for (int i = 0; i < count; i++) {
+      Field field = fields[i];
+      Class<?> type = field.getType();
+      kinds[i] = kindOf(type);
+      if (kinds[i] == REFERENCE) {
+        referenceCount++;
+      } else {
+        Integer typeCount = primitives.get(type);
+        primitives.put(type, typeCount == null ? 1 : typeCount + 1);
+      }
+      getters[i] = preferMethodHandles ? getter(field) : null;
+      if (getters[i] != null) {
+        anyGetters = true;
+      } else if (UNSAFE != null) {
+        offsets[i] = UNSAFE.objectFieldOffset(field);
+      } else {
+        throw new IllegalStateException("Can't read " + field);
+      }
+    }
+    this.getters = anyGetters ? getters : null;
+
+    this.referenceTypes = new Class<?>[referenceCount];
+    this.referenceNames = new String[referenceCount];
+    this.referenceOffsets = new long[referenceCount];
+    MethodHandle[] referenceGetters = new MethodHandle[referenceCount];
+    for (int i = 0, j = 0; i < count; i++) {
+      if (kinds[i] == REFERENCE) {
+        referenceTypes[j] = fields[i].getType();
+        referenceNames[j] = fields[i].getName();
+        referenceOffsets[j] = offsets[i];
+        referenceGetters[j] = getters[i];
+        j++;
+      }
+    }
+    this.referenceGetters = anyGetters ? referenceGetters : null;
+
+    this.primitiveTypes = primitives.keySet().toArray(new Class<?>[0]);
+    this.primitiveCounts = new int[primitiveTypes.length];
+    for (int i = 0; i < primitiveTypes.length; i++) {
+      primitiveCounts[i] = primitives.get(primitiveTypes[i]);
+    }
+  }
+
+  /** Returns whether this is the plan of an array class. */
+  boolean isArray() {
+    return componentType != null;
+  }
+
+  /** Returns the component type of an array class. */
+  Class<?> componentType() {
+    return componentType;
+  }
+
+  /** Returns the fields to explore, in the order they should be pushed to the stack. */
+  Field[] fields() {
+    return fields;
+  }
+
+  /** Returns the value of the given field of an object, with primitive values boxed. */
+  Object get(Object object, int fieldIndex) {
+    if (getters != null && getters[fieldIndex] != null) {
+      return invoke(getters[fieldIndex], object);
+    }
+    long offset = offsets[fieldIndex];
+    switch (kinds[fieldIndex]) {
+      case REFERENCE:
+        return UNSAFE.getObject(object, offset);
+      case BOOLEAN:
+        return UNSAFE.getBoolean(object, offset);
+      case BYTE:
+        return UNSAFE.getByte(object, offset);
+      case CHAR:
+        return UNSAFE.getChar(object, offset);
+      case SHORT:
+        return UNSAFE.getShort(object, offset);
+      case INT:
+        return UNSAFE.getInt(object, offset);
+      case FLOAT:
+        return UNSAFE.getFloat(object, offset);
+      case LONG:
+        return UNSAFE.getLong(object, offset);
+      case DOUBLE:
+        return UNSAFE.getDouble(object, offset);
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  /** Returns whether the given field is read with a method handle rather than with Unsafe. */
+  @VisibleForTesting
+  boolean readsWithMethodHandle(int fieldIndex) {
+    return getters != null && getters[fieldIndex] != null;
+  }
+
+  /** Returns the number of reference fields. */
+  int referenceCount() {
+    return referenceTypes.length;
+  }
+
+  /** Returns the declared type of the given reference field. */
+  Class<?> referenceType(int referenceIndex) {
+    return referenceTypes[referenceIndex];
+  }
+
+  /** Returns the name of the given reference field. */
+  String referenceName(int referenceIndex) {
+    return referenceNames[referenceIndex];
+  }
+
+  /** Returns the value of the given reference field of an object. */
+  Object getReference(Object object, int referenceIndex) {
+    if (referenceGetters != null && referenceGetters[referenceIndex] != null) {
+      return invoke(referenceGetters[referenceIndex], object);
+    }
+    return UNSAFE.getObject(object, referenceOffsets[referenceIndex]);
+  }
+
+  /** Returns the number of distinct types of primitive field. */
+  int primitiveTypeCount() {
+    return primitiveTypes.length;
+  }
+
+  /** Returns one of the types of primitive field. */
+  Class<?> primitiveType(int typeIndex) {
+    return primitiveTypes[typeIndex];
+  }
+
+  /** Returns the number of primitive fields of one of the types. */
+  int primitiveCount(int typeIndex) {
+    return primitiveCounts[typeIndex];
+  }
+
+  private static Object invoke(MethodHandle getter, Object object) {
+    // the getters are adapted to (Object)Object up front, so invokeExact skips the adaptation that
+    // invoke does on each call; examples.FieldReadBenchmark compares the two with Unsafe
+    try {
+      return (Object) getter.invokeExact(object);
+    } catch (Throwable t) {
+      throw new AssertionError(t);
+    }
+  }
+
+  private static byte kindOf(Class<?> type) {
+    if (!type.isPrimitive()) {
+      return REFERENCE;
+    } else if (type == boolean.class) {
+      return BOOLEAN;
+    } else if (type == byte.class) {
+      return BYTE;
+    } else if (type == char.class) {
+      return CHAR;
+    } else if (type == short.class) {
+      return SHORT;
+    } else if (type == int.class) {
+      return INT;
+    } else if (type == float.class) {
+      return FLOAT;
+    } else if (type == long.class) {
+      return LONG;
+    } else if (type == double.class) {
+      return DOUBLE;
+    } else {
+      throw new IllegalStateException("Unknown class " + type);
+    }
+  }
+
+  private static Field[] computeAllFields(Class<?> clazz) {
+    List<Field> fields = Lists.newArrayListWithCapacity(8);
+    while (clazz != null) {
+      // the fields of hidden classes and records can't be read with Unsafe
+      if (!isHiddenOrRecord(clazz)) {
+        for (Field field : clazz.getDeclaredFields()) {
+          // add only non-static fields, and of a Reference only the referent
+          if (!Modifier.isStatic(field.getModifiers())
+              && !(clazz.equals(Reference.class) && !field.getName().equals("referent"))) {
+            fields.add(field);
+          }
+        }
+      }
+      clazz = clazz.getSuperclass();
+    }
+    return fields.toArray(new Field[0]);
+  }
+
+  private static boolean isHiddenOrRecord(Class<?> clazz) {
+    try {
+      return (IS_HIDDEN != null && (boolean) IS_HIDDEN.invoke(clazz))
+          || (IS_RECORD != null && (boolean) IS_RECORD.invoke(clazz));
+    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final Method IS_HIDDEN = maybeGetMethod(Class.class, "isHidden");
+
+  private static final Method IS_RECORD = maybeGetMethod(Class.class, "isRecord");
+
+  // MethodHandles.privateLookupIn was added in Java 9
+  private static final Method PRIVATE_LOOKUP_IN =
+      maybeGetMethod(
+          MethodHandles.class, "privateLookupIn", Class.class, MethodHandles.Lookup.class);
+
+  @CheckForNull
+  private static Method maybeGetMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+    try {
+      return clazz.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a handle that reads the given field of an object as an {@code Object}, or {@code null}
+   * if the field's module isn't open to us.
+   */
+  @CheckForNull
+  private static MethodHandle getter(Field field) {
+    MethodHandle getter = null;
+    try {
+      if (PRIVATE_LOOKUP_IN != null) {
+        MethodHandles.Lookup lookup =
+            (MethodHandles.Lookup)
+                PRIVATE_LOOKUP_IN.invoke(null, field.getDeclaringClass(), MethodHandles.lookup());
+        getter = lookup.unreflectGetter(field);
+      } else {
+        field.setAccessible(true);
+        getter = MethodHandles.lookup().unreflectGetter(field);
+      }
+    } catch (InvocationTargetException | IllegalAccessException | RuntimeException e) {
+      // the class's module isn't open to us
+      return null;
+    }
+    return getter.asType(MethodType.methodType(Object.class, Object.class));
+  }
+
+  /**
+   * Whether fields should be read with method handles rather than Unsafe. Unsafe's memory access
+   * methods are deprecated for removal as of JDK 23 (JEP 471).
+   */
+  private static volatile boolean preferMethodHandles;
+
+  @CheckForNull private static final sun.misc.Unsafe UNSAFE;
+
+  static {
+    sun.misc.Unsafe unsafe = null;
+    try {
+      unsafe = sun.misc.Unsafe.getUnsafe();
+    } catch (SecurityException tryReflectionInstead) {
+      try {
+        unsafe =
+            AccessController.doPrivileged(
+                new PrivilegedExceptionAction<sun.misc.Unsafe>() {
+                  @Override
+                  public sun.misc.Unsafe run() throws Exception {
+                    Class<sun.misc.Unsafe> k = sun.misc.Unsafe.class;
+                    for (java.lang.reflect.Field f : k.getDeclaredFields()) {
+                      f.setAccessible(true);
+                      Object x = f.get(null);
+                      if (k.isInstance(x)) {
+                        return k.cast(x);
+                      }
+                    }
+                    throw new NoSuchFieldError("the Unsafe");
+                  }
+                });
+      } catch (PrivilegedActionException | RuntimeException e) {
+        // fields will be read with method handles
+        unsafe = null;
+      }
+    }
+    UNSAFE = unsafe;
+    preferMethodHandles = unsafe == null || javaFeatureVersion() >= 23;
+  }
+
+  /**
+   * Sets whether plans read fields with method handles, as on JDK 23 and later, or with Unsafe,
+   * discarding the plans computed so far. Returns the previous setting.
+   *
+   * @throws IllegalStateException if Unsafe is requested but unavailable
+   */
+  @VisibleForTesting
+  static synchronized boolean setPreferMethodHandles(boolean prefer) {
+    checkState(prefer || UNSAFE != null, "Unsafe isn't available");
+    boolean previous = preferMethodHandles;
+    preferMethodHandles = prefer;
+    plans.clear();
+    return previous;
+  }
+
+  private static int javaFeatureVersion() {
+    String version = System.getProperty("java.specification.version", "");
+    if (version.startsWith("1.")) {
+      version = version.substring(2);
+    }
+    int dot = version.indexOf('.');
+    try {
+      return Integer.parseInt(dot < 0 ? version : version.substring(0, dot));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+/**
+ * A thread-safe set of objects compared by identity, for tracking which objects of an object graph
+ * have been seen by a parallel traversal. The set is split into stripes by identity hash code, each
+ * an {@link IdentityHashSet} with its own lock, so threads adding different objects rarely contend.
+ * Objects can't be removed.
+ */
+public final class ConcurrentIdentityHashSet {
+  private static final int STRIPES = 64;
+
+  private final IdentityHashSet[] stripes = new IdentityHashSet[STRIPES];
+
+  /** Creates an empty set. */
+  public ConcurrentIdentityHashSet() {
+    this(0);
+  }
+
+  /** Creates an empty set that can hold about the given number of objects without resizing. */
+  public ConcurrentIdentityHashSet(int expectedSize) {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new IdentityHashSet(expectedSize / STRIPES);
+    }
+  }
+
+  /**
+   * Adds the given object to this set.
+   *
+   * @return {@code true} if the object wasn't already in the set
+   */
+  public boolean add(Object object) {
+    IdentityHashSet stripe = stripeFor(object);
+    synchronized (stripe) {
+      return stripe.add(object);
+    }
+  }
+
+  /** Returns whether the given object is in this set. */
+  public boolean contains(Object object) {
+    IdentityHashSet stripe = stripeFor(object);
+    synchronized (stripe) {
+      return stripe.contains(object);
+    }
+  }
+
+  /** Returns the number of objects in this set. */
+  public int size() {
+    int size = 0;
+    for (IdentityHashSet stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  private IdentityHashSet stripeFor(Object object) {
+    // each stripe hashes with the high bits of the mixed hash code, so pick it with the low bits
+    return stripes[(System.identityHashCode(object) * 0x9E3779B9) & (STRIPES - 1)];
+  }
+}
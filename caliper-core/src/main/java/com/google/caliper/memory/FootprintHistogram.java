@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A histogram of the shallow bytes of the objects in an object graph, by class and by the path
+ * through which each object was first reached from the root. Where {@link ObjectGraphMeasurer}
+ * tells how big a graph is, this tells which classes and which fields are responsible.
+ *
+ * <p>Paths are truncated to a maximum depth, so that, for example, every node of a linked list is
+ * attributed to the field holding the list rather than to a path of its own. Array elements are
+ * written {@code []} regardless of index.
+ */
+public final class FootprintHistogram {
+  /** The bytes and number of objects attributed to one class or path. */
+  public static final class Entry {
+    private final String key;
+    private long objects;
+    private long bytes;
+
+    Entry(String key) {
+      this.key = key;
+    }
+
+    /** Attributes an object of the given size to this entry. */
+    void add(long size) {
+      objects++;
+      bytes += size;
+    }
+
+    /** Returns the class name or path that this entry is for. */
+    public String getKey() {
+      return key;
+    }
+
+    /** Returns the number of objects attributed to this entry. */
+    public long getObjects() {
+      return objects;
+    }
+
+    /** Returns the shallow bytes of the objects attributed to this entry. */
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + bytes + "B/" + objects;
+    }
+  }
+
+  private static final Ordering<Entry> BY_BYTES_DESCENDING =
+      new Ordering<Entry>() {
+        @Override
+        public int compare(Entry left, Entry right) {
+          int result = Long.compare(right.bytes, left.bytes);
+          return result != 0 ? result : left.key.compareTo(right.key);
+        }
+      };
+
+  private final ImmutableList<Entry> byClass;
+  private final ImmutableList<Entry> byPath;
+  private final long objects;
+  private final long bytes;
+
+  FootprintHistogram(Iterable<Entry> byClass, Iterable<Entry> byPath) {
+    this.byClass = BY_BYTES_DESCENDING.immutableSortedCopy(byClass);
+    this.byPath = BY_BYTES_DESCENDING.immutableSortedCopy(byPath);
+    long objects = 0;
+    long bytes = 0;
+    for (Entry entry : byClass) {
+      objects += entry.objects;
+      bytes += entry.bytes;
+    }
+    this.objects = objects;
+    this.bytes = bytes;
+  }
+
+  /**
+   * Measures the histogram of the specified object graph, using the object layout of this VM. The
+   * graph is defined as for {@link ObjectGraphMeasurer#measure(Object, Predicate)}.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a predicate that returns {@code true} for objects to be explored (and
+   *     treated as part of the footprint), or {@code false} to forbid the traversal to traverse the
+   *     given object
+   * @param maxPathDepth the number of fields and array indexes after which paths are truncated
+   * @return the histogram of the object graph
+   */
+  public static FootprintHistogram measure(
+      Object rootObject, Predicate<Object> objectAcceptor, int maxPathDepth) {
+    return measure(rootObject, objectAcceptor, ObjectLayout.detect(), maxPathDepth);
+  }
+
+  /**
+   * Measures the histogram of the specified object graph with the given object layout, as for
+   * {@link #measure(Object, Predicate, int)}.
+   */
+  public static FootprintHistogram measure(
+      Object rootObject, Predicate<Object> objectAcceptor, ObjectLayout layout, int maxPathDepth) {
+    return new Explorer(layout, objectAcceptor, maxPathDepth).explore(rootObject);
+  }
+
+  /**
+   * Returns a predicate that accepts any object that isn't an instance of one of the given types,
+   * like {@link com.google.caliper.api.Footprint#exclude()}.
+   */
+  public static Predicate<Object> excluding(Iterable<? extends Class<?>> types) {
+    ImmutableList.Builder<Predicate<Object>> excluded = ImmutableList.builder();
+    for (Class<?> type : ImmutableSet.copyOf(types)) {
+      excluded.add(Predicates.instanceOf(type));
+    }
+    return Predicates.not(Predicates.or(excluded.build()));
+  }
+
+  /** Returns the entries for each class, with the most bytes first. */
+  public ImmutableList<Entry> byClass() {
+    return byClass;
+  }
+
+  /** Returns the entries for each path, with the most bytes first. */
+  public ImmutableList<Entry> byPath() {
+    return byPath;
+  }
+
+  /** Returns the total number of objects in the graph. */
+  public long getObjects() {
+    return objects;
+  }
+
+  /** Returns the total shallow bytes of the objects in the graph. */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns tables of the classes and, if there are any, of the paths with the most bytes.
+   *
+   * @param maxRows the maximum number of rows in each table
+   */
+  public String format(int maxRows) {
+    StringBuilder builder = new StringBuilder();
+    formatTable(builder, "class", byClass, maxRows);
+    if (!byPath.isEmpty()) {
+      builder.append('\n');
+      formatTable(builder, "path", byPath, maxRows);
+    }
+    return builder.toString();
+  }
+
+  private void formatTable(
+      StringBuilder builder, String keyHeader, List<Entry> entries, int maxRows) {
+    builder.append(String.format("%12s %6s %10s  %s%n", "bytes", "%", "objects", keyHeader));
+    for (Entry entry : entries.subList(0, Math.min(maxRows, entries.size()))) {
+      builder.append(
+          String.format(
+              "%12d %6.2f %10d  %s%n",
+              entry.bytes,
+              bytes == 0 ? 0.0 : 100.0 * entry.bytes / bytes,
+              entry.objects,
+              entry.key));
+    }
+    if (entries.size() > maxRows) {
+      builder.append(
+          String.format("%12s %6s %10s  (%d more)%n", "", "", "", entries.size() - maxRows));
+    }
+    builder.append(String.format("%12d %6.2f %10d  total%n", bytes, 100.0, objects));
+  }
+
+  @Override
+  public String toString() {
+    return format(20);
+  }
+
+  /**
+   * Explores a graph depth-first like {@link ObjectExplorer#exploreValues}, reading fields with a
+   * {@link ClassLayoutPlan} rather than building a {@link Chain} per reference. Like {@link
+   * ObjectGraphMeasurer}, it skips {@linkplain ObjectGraphMeasurer#isSharedValue shared values} and
+   * objects rejected by the predicate, and explores each object once.
+   *
+   * <p>The path of each object waiting to be explored is kept as an index into the distinct
+   * (truncated) paths, on an int stack parallel to the stack of objects, so nothing is kept per
+   * object but its entry in the set of those seen.
+   */
+  private static final class Explorer {
+    private static final String ROOT = "<root>";
+    private static final String ARRAY_ELEMENT = "[]";
+
+    private final ObjectLayout layout;
+    private final Predicate<Object> objectAcceptor;
+    private final int maxPathDepth;
+    private final IdentityHashSet seen = new IdentityHashSet();
+    private final Map<Class<?>, Entry> byClass = new HashMap<Class<?>, Entry>();
+
+    // the distinct paths, and for each the depth and the paths one field or element longer
+    private final List<Entry> paths = new ArrayList<Entry>();
+    private final List<Integer> pathDepths = new ArrayList<Integer>();
+    private final List<Map<String, Integer>> childPaths = new ArrayList<Map<String, Integer>>();
+
+    private final Deque<Object> stack = new ArrayDeque<Object>(32);
+    // the index of the path of each object on the stack, with the top at pathStackSize - 1
+    private int[] pathStack = new int[32];
+    private int pathStackSize;
+
+    Explorer(ObjectLayout layout, Predicate<Object> objectAcceptor, int maxPathDepth) {
+      Preconditions.checkArgument(maxPathDepth >= 0, "Negative maximum path depth");
+      this.layout = Preconditions.checkNotNull(layout);
+      this.objectAcceptor = Preconditions.checkNotNull(objectAcceptor);
+      this.maxPathDepth = maxPathDepth;
+    }
+
+    FootprintHistogram explore(Object rootObject) {
+      if (rootObject != null) {
+        addPath(ROOT, 0);
+        visit(rootObject, rootObject.getClass(), 0);
+      }
+      while (!stack.isEmpty()) {
+        Object value = stack.pop();
+        int path = pathStack[--pathStackSize];
+        ClassLayoutPlan plan = ClassLayoutPlan.of(value.getClass());
+        if (plan.isArray()) {
+          Class<?> componentType = plan.componentType();
+          if (!componentType.isPrimitive()) {
+            int childPath = childPath(path, ARRAY_ELEMENT);
+            for (Object element : (Object[]) value) {
+              if (element != null) {
+                visit(element, componentType, childPath);
+              }
+            }
+          }
+        } else {
+          // in declaration order, so that the first field holding an object owns it
+          for (int j = 0; j < plan.referenceCount(); j++) {
+            Object child = plan.getReference(value, j);
+            if (child != null) {
+              visit(child, plan.referenceType(j), childPath(path, plan.referenceName(j)));
+            }
+          }
+        }
+      }
+      List<Entry> nonEmptyPaths = new ArrayList<Entry>();
+      for (Entry path : paths) {
+        // a path is added when its parent is explored, even if nothing is accepted through it
+        if (path.objects > 0) {
+          nonEmptyPaths.add(path);
+        }
+      }
+      return new FootprintHistogram(
+          Collections.unmodifiableCollection(byClass.values()), nonEmptyPaths);
+    }
+
+    private void visit(Object value, Class<?> referenceType, int path) {
+      if (ObjectGraphMeasurer.isSharedValue(value, referenceType)
+          || !objectAcceptor.apply(value)
+          || !seen.add(value)) {
+        return;
+      }
+      long size = layout.sizeOf(value);
+      Entry classEntry = byClass.get(value.getClass());
+      if (classEntry == null) {
+        classEntry = new Entry(value.getClass().getName());
+        byClass.put(value.getClass(), classEntry);
+      }
+      classEntry.add(size);
+      paths.get(path).add(size);
+
+      stack.push(value);
+      if (pathStackSize == pathStack.length) {
+        pathStack = Arrays.copyOf(pathStack, 2 * pathStackSize);
+      }
+      pathStack[pathStackSize++] = path;
+    }
+
+    /**
+     * Returns the index of the path of a child reached from the given path through the given
+     * field, or {@code []} for array elements; that's the parent's path once it's at the maximum
+     * depth.
+     */
+    private int childPath(int parent, String step) {
+      int depth = pathDepths.get(parent);
+      if (depth >= maxPathDepth) {
+        return parent;
+      }
+      Map<String, Integer> children = childPaths.get(parent);
+      Integer child = children.get(step);
+      if (child == null) {
+        String parentKey = paths.get(parent).getKey();
+        child =
+            addPath(
+                step.equals(ARRAY_ELEMENT) ? parentKey + step : parentKey + "." + step, depth + 1);
+        children.put(step, child);
+      }
+      return child;
+    }
+
+    private int addPath(String path, int depth) {
+      paths.add(new Entry(path));
+      pathDepths.add(depth);
+      childPaths.add(new HashMap<String, Integer>());
+      return paths.size() - 1;
+    }
+  }
+}
@@ -0,0 +1,844 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A heap dump in the HPROF format, as written by {@code HotSpotDiagnosticMXBean.dumpHeap}, from
+ * which the retained size of an object can be computed after the VM that held it is gone. Unlike
+ * exploring a live object graph, this doesn't perturb the heap being measured.
+ *
+ * <p>The file is memory-mapped and scanned once when it's opened. Only the position of each object
+ * in the file is kept, indexed by object ID in a primitive hash map, so a dump can be analyzed with
+ * a small fraction of the memory of the heap it describes; everything else is read from the
+ * mapping when needed.
+ *
+ * <p>Sizes are computed from the types of each object's fields with an {@link ObjectLayout}, since
+ * HPROF doesn't record headers or padding.
+ *
+ * <p>The mapping is released when the dump is {@linkplain #close() closed}; until then, the file
+ * can't be deleted on some platforms.
+ */
+public final class HeapDump implements Closeable {
+  private static final Logger logger = Logger.getLogger(HeapDump.class.getName());
+
+  // record tags
+  private static final int UTF8 = 0x01;
+  private static final int LOAD_CLASS = 0x02;
+  private static final int HEAP_DUMP = 0x0C;
+  private static final int HEAP_DUMP_SEGMENT = 0x1C;
+
+  // heap dump sub-record tags
+  private static final int ROOT_UNKNOWN = 0xFF;
+  private static final int ROOT_JNI_GLOBAL = 0x01;
+  private static final int ROOT_JNI_LOCAL = 0x02;
+  private static final int ROOT_JAVA_FRAME = 0x03;
+  private static final int ROOT_NATIVE_STACK = 0x04;
+  private static final int ROOT_STICKY_CLASS = 0x05;
+  private static final int ROOT_THREAD_BLOCK = 0x06;
+  private static final int ROOT_MONITOR_USED = 0x07;
+  private static final int ROOT_THREAD_OBJECT = 0x08;
+  private static final int CLASS_DUMP = 0x20;
+  private static final int INSTANCE_DUMP = 0x21;
+  private static final int OBJECT_ARRAY_DUMP = 0x22;
+  private static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+
+  // basic types
+  private static final int OBJECT = 2;
+
+  private static final ImmutableMap<Integer, String> PRIMITIVE_ARRAY_CLASS_NAMES =
+      ImmutableMap.<Integer, String>builder()
+          .put(4, "[Z")
+          .put(5, "[C")
+          .put(6, "[F")
+          .put(7, "[D")
+          .put(8, "[B")
+          .put(9, "[S")
+          .put(10, "[I")
+          .put(11, "[J")
+          .build();
+
+  private static final int SEGMENT_BITS = 30;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+  // segments overlap by the size of the largest value, so that any value is within one segment
+  private static final int SEGMENT_OVERLAP = 8;
+
+  private static final String REFERENCE_CLASS_NAME = "java.lang.ref.Reference";
+
+  /** A class, as described by its class dump record. */
+  private static final class ClassInfo {
+    final long superId;
+    final long[] staticNameIds;
+    final int[] staticTypes;
+    final long[] staticValues;
+    final long[] fieldNameIds;
+    final int[] fieldTypes;
+    String name;
+
+    // computed once every class has been read, since they depend on the superclasses
+    int[] referenceOffsets;
+    String[] referenceNames;
+    // the sizes of the primitive fields and the number of references of the class and each of its
+    // superclasses, starting with the class itself
+    List<int[]> primitiveSizes;
+    int[] referenceCounts;
+
+    // the size of an instance in the layout it was last computed for
+    ObjectLayout sizeLayout;
+    long instanceSize;
+
+    ClassInfo(
+        long superId,
+        long[] staticNameIds,
+        int[] staticTypes,
+        long[] staticValues,
+        long[] fieldNameIds,
+        int[] fieldTypes) {
+      this.superId = superId;
+      this.staticNameIds = staticNameIds;
+      this.staticTypes = staticTypes;
+      this.staticValues = staticValues;
+      this.fieldNameIds = fieldNameIds;
+      this.fieldTypes = fieldTypes;
+    }
+  }
+
+  /** Receives the references held by an object. */
+  private interface ReferenceVisitor {
+    /**
+     * Visits a non-null reference.
+     *
+     * @param index the index of the referenced object
+     * @param name the name of the field holding the reference, or {@code null} for array elements
+     */
+    void visit(int index, String name);
+  }
+
+  // replaced by an empty array once closed, so that using a closed dump fails instead of reading
+  // unmapped memory
+  private ByteBuffer[] segments;
+  private final int idSize;
+
+  private final LongIntHashMap stringIndexes = new LongIntHashMap();
+  private long[] stringPositions = new long[1024];
+  private int[] stringLengths = new int[1024];
+  private int stringCount;
+
+  private final Map<Long, Long> classNameIds = new HashMap<Long, Long>();
+  private final Map<Long, ClassInfo> classes = new HashMap<Long, ClassInfo>();
+  private final Map<String, Long> classIdsByName = new HashMap<String, Long>();
+
+  private final LongIntHashMap objectIndexes = new LongIntHashMap();
+  private long[] objectPositions = new long[1024];
+  private int objectCount;
+
+  private long[] rootIds = new long[1024];
+  private int rootCount;
+
+  private HeapDump(ByteBuffer[] segments, long size) throws IOException {
+    this.segments = segments;
+    long position = 0;
+    while (u1(position) != 0) {
+      position++;
+      if (position >= size) {
+        throw new IOException("Not an HPROF file");
+      }
+    }
+    String format = new String(bytes(0, (int) position), UTF_8);
+    if (!format.startsWith("JAVA PROFILE ")) {
+      throw new IOException("Not an HPROF file: " + format);
+    }
+    this.idSize = u4(position + 1);
+    if (idSize != 4 && idSize != 8) {
+      throw new IOException("Unsupported identifier size: " + idSize);
+    }
+    // skip the terminator, identifier size and timestamp
+    readRecords(position + 13, size);
+    for (Map.Entry<Long, ClassInfo> entry : classes.entrySet()) {
+      Long nameId = classNameIds.get(entry.getKey());
+      String name = nameId == null ? "<unknown>" : string(nameId).replace('/', '.');
+      entry.getValue().name = name;
+      if (!classIdsByName.containsKey(name)) {
+        classIdsByName.put(name, entry.getKey());
+      }
+    }
+    for (ClassInfo info : classes.values()) {
+      computeLayout(info);
+    }
+  }
+
+  /** Maps and indexes the given HPROF file. */
+  public static HeapDump open(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = channel.size();
+      ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = i * SEGMENT_SIZE;
+        // the mappings stay valid once the channel is closed
+        segments[i] =
+            channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                start,
+                Math.min(size - start, SEGMENT_SIZE + SEGMENT_OVERLAP));
+      }
+      return new HeapDump(segments, size);
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("Truncated HPROF file: " + file, e);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Unmaps the file, so that it can be deleted without waiting for the garbage collector to release
+   * the mapping. The dump can't be used once it's closed.
+   */
+  @Override
+  public void close() {
+    ByteBuffer[] mapped = segments;
+    segments = new ByteBuffer[0];
+    for (ByteBuffer segment : mapped) {
+      unmap(segment);
+    }
+  }
+
+  /**
+   * Releases a mapping now rather than when it's garbage collected, with {@code
+   * Unsafe.invokeCleaner} on JDK 9 and later or the buffer's cleaner on JDK 8. If neither is
+   * accessible, the mapping is left to the garbage collector.
+   */
+  private static void unmap(ByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException e) {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.log(Level.FINE, "Unable to unmap a heap dump; it will be unmapped when collected", e);
+    }
+  }
+
+  /** Returns the number of objects (instances and arrays) in this dump. */
+  public int objectCount() {
+    return objectCount;
+  }
+
+  /**
+   * Returns the ID of the class with the given name, as returned by {@link Class#getName()}, or 0
+   * if no such class was loaded. If several class loaders loaded classes of that name, one of them
+   * is returned.
+   */
+  public long findClass(String name) {
+    Long id = classIdsByName.get(name);
+    return id == null ? 0 : id;
+  }
+
+  /**
+   * Returns the value of a static field: the ID of the referenced object (0 for {@code null}) for
+   * a reference, or the value or its raw bits for a primitive.
+   *
+   * @throws IllegalArgumentException if there's no such class or field
+   */
+  public long getStaticField(long classId, String fieldName) {
+    ClassInfo info = classes.get(classId);
+    Preconditions.checkArgument(info != null, "No class with ID %s", classId);
+    for (int i = 0; i < info.staticNameIds.length; i++) {
+      if (string(info.staticNameIds[i]).equals(fieldName)) {
+        return info.staticValues[i];
+      }
+    }
+    throw new IllegalArgumentException("No static field " + fieldName + " in " + info.name);
+  }
+
+  /**
+   * Returns the IDs of the elements of an object array (0 for {@code null}).
+   *
+   * @throws IllegalArgumentException if there's no object array with the given ID
+   */
+  public long[] getArrayElements(long arrayId) {
+    int index = objectIndexes.get(arrayId, -1);
+    Preconditions.checkArgument(
+        index >= 0 && u1(objectPositions[index]) == OBJECT_ARRAY_DUMP,
+        "No object array with ID %s",
+        arrayId);
+    long position = objectPositions[index] + 1 + idSize + 4;
+    long[] elements = new long[u4(position)];
+    position += 4 + idSize;
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = id(position + (long) i * idSize);
+    }
+    return elements;
+  }
+
+  /**
+   * Returns a histogram of the objects retained by the given object: the object itself and those
+   * that it alone keeps alive, i.e. those that would become unreachable from the GC roots if it
+   * did. Objects of the excluded classes and their subclasses aren't counted or explored, as for
+   * {@link FootprintHistogram#excluding}; interfaces can't be excluded, since HPROF doesn't record
+   * them. The references held by {@link java.lang.ref.Reference}s to their referents are ignored.
+   *
+   * @param objectId the ID of the object whose retained objects to measure
+   * @param excludedClassIds the IDs of the classes whose instances not to measure
+   * @param layout the layout to compute the size of each object with
+   * @param maxPathDepth the number of fields and array indexes after which paths are truncated
+   * @throws IllegalArgumentException if there's no object with the given ID
+   */
+  public FootprintHistogram retained(
+      long objectId, Set<Long> excludedClassIds, final ObjectLayout layout, int maxPathDepth) {
+    final int rootIndex = objectIndexes.get(objectId, -1);
+    Preconditions.checkArgument(rootIndex >= 0, "No object with ID %s", objectId);
+    Preconditions.checkArgument(maxPathDepth >= 0, "Negative maximum path depth");
+    final ImmutableSet<Long> excluded = ImmutableSet.copyOf(excludedClassIds);
+
+    // mark everything reachable without going through the root; the rest of what the root reaches
+    // is what it retains
+    final long[] marked = new long[(objectCount + 63) >>> 6];
+    final IntStack stack = new IntStack();
+    ReferenceVisitor marker =
+        new ReferenceVisitor() {
+          @Override
+          public void visit(int index, String name) {
+            if (index != rootIndex && !isSet(marked, index)) {
+              set(marked, index);
+              stack.push(index);
+            }
+          }
+        };
+    for (int i = 0; i < rootCount; i++) {
+      visitId(rootIds[i], null, marker);
+    }
+    for (Map.Entry<Long, ClassInfo> entry : classes.entrySet()) {
+      ClassInfo info = entry.getValue();
+      for (int i = 0; i < info.staticTypes.length; i++) {
+        if (info.staticTypes[i] == OBJECT) {
+          visitId(info.staticValues[i], null, marker);
+        }
+      }
+    }
+    while (!stack.isEmpty()) {
+      visitReferences(stack.pop(), marker);
+    }
+
+    final Map<String, FootprintHistogram.Entry> byClass =
+        new HashMap<String, FootprintHistogram.Entry>();
+    final Map<String, FootprintHistogram.Entry> byPath =
+        new HashMap<String, FootprintHistogram.Entry>();
+    if (isExcluded(rootIndex, excluded)) {
+      return new FootprintHistogram(byClass.values(), byPath.values());
+    }
+    // the path through which each retained object was first reached, as an index into paths
+    final LongIntHashMap pathIndexes = new LongIntHashMap();
+    final List<String> paths = new ArrayList<String>();
+    final List<Integer> pathDepths = new ArrayList<Integer>();
+    final Map<String, Integer> pathsByName = new HashMap<String, Integer>();
+    paths.add("<root>");
+    pathDepths.add(0);
+    pathsByName.put("<root>", 0);
+    set(marked, rootIndex);
+    pathIndexes.put(rootIndex + 1, 0);
+    count(rootIndex, "<root>", layout, byClass, byPath);
+    stack.push(rootIndex);
+    while (!stack.isEmpty()) {
+      int index = stack.pop();
+      final int parentPath = pathIndexes.get(index + 1, 0);
+      final boolean truncated = pathDepths.get(parentPath) >= maxPathDepth;
+      visitReferences(
+          index,
+          new ReferenceVisitor() {
+            @Override
+            public void visit(int child, String name) {
+              if (isSet(marked, child)) {
+                return;
+              }
+              set(marked, child);
+              if (isExcluded(child, excluded)) {
+                return;
+              }
+              int path = parentPath;
+              if (!truncated) {
+                String childPath = paths.get(parentPath) + (name == null ? "[]" : "." + name);
+                Integer existing = pathsByName.get(childPath);
+                if (existing == null) {
+                  existing = paths.size();
+                  paths.add(childPath);
+                  pathDepths.add(pathDepths.get(parentPath) + 1);
+                  pathsByName.put(childPath, existing);
+                }
+                path = existing;
+              }
+              pathIndexes.put(child + 1, path);
+              count(child, paths.get(path), layout, byClass, byPath);
+              stack.push(child);
+            }
+          });
+    }
+    return new FootprintHistogram(byClass.values(), byPath.values());
+  }
+
+  private void count(
+      int index,
+      String path,
+      ObjectLayout layout,
+      Map<String, FootprintHistogram.Entry> byClass,
+      Map<String, FootprintHistogram.Entry> byPath) {
+    long position = objectPositions[index];
+    String className;
+    long size;
+    switch (u1(position)) {
+      case INSTANCE_DUMP:
+        ClassInfo info = classOf(position);
+        className = info.name;
+        if (info.sizeLayout != layout) {
+          info.instanceSize = layout.instanceSize(info.primitiveSizes, info.referenceCounts);
+          info.sizeLayout = layout;
+        }
+        size = info.instanceSize;
+        break;
+      case OBJECT_ARRAY_DUMP:
+        ClassInfo arrayInfo = classes.get(id(position + 1 + idSize + 8));
+        className = arrayInfo == null ? "[Ljava.lang.Object;" : arrayInfo.name;
+        size = layout.arraySize(layout.referenceSize(), u4(position + 1 + idSize + 4));
+        break;
+      default:
+        int type = u1(position + 1 + idSize + 8);
+        className = PRIMITIVE_ARRAY_CLASS_NAMES.get(type);
+        size = layout.arraySize(valueSize(type), u4(position + 1 + idSize + 4));
+        break;
+    }
+    entry(byClass, className).add(size);
+    entry(byPath, path).add(size);
+  }
+
+  private static FootprintHistogram.Entry entry(
+      Map<String, FootprintHistogram.Entry> entries, String key) {
+    FootprintHistogram.Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new FootprintHistogram.Entry(key);
+      entries.put(key, entry);
+    }
+    return entry;
+  }
+
+  private boolean isExcluded(int index, Set<Long> excludedClassIds) {
+    if (excludedClassIds.isEmpty()) {
+      return false;
+    }
+    long position = objectPositions[index];
+    long classId;
+    switch (u1(position)) {
+      case INSTANCE_DUMP:
+        classId = id(position + 1 + idSize + 4);
+        break;
+      case OBJECT_ARRAY_DUMP:
+        classId = id(position + 1 + idSize + 8);
+        break;
+      default:
+        classId = findClass(PRIMITIVE_ARRAY_CLASS_NAMES.get(u1(position + 1 + idSize + 8)));
+        break;
+    }
+    for (long id = classId; id != 0; ) {
+      if (excludedClassIds.contains(id)) {
+        return true;
+      }
+      ClassInfo info = classes.get(id);
+      id = info == null ? 0 : info.superId;
+    }
+    return false;
+  }
+
+  /** Visits the references held by the object with the given index. */
+  private void visitReferences(int index, ReferenceVisitor visitor) {
+    long position = objectPositions[index];
+    switch (u1(position)) {
+      case INSTANCE_DUMP:
+        ClassInfo info = classOf(position);
+        long values = position + 1 + idSize + 4 + idSize + 4;
+        for (int i = 0; i < info.referenceOffsets.length; i++) {
+          visitId(id(values + info.referenceOffsets[i]), info.referenceNames[i], visitor);
+        }
+        break;
+      case OBJECT_ARRAY_DUMP:
+        int length = u4(position + 1 + idSize + 4);
+        long elements = position + 1 + idSize + 8 + idSize;
+        for (int i = 0; i < length; i++) {
+          visitId(id(elements + (long) i * idSize), null, visitor);
+        }
+        break;
+      default:
+        // primitive arrays hold no references
+    }
+  }
+
+  private void visitId(long id, String name, ReferenceVisitor visitor) {
+    if (id != 0) {
+      // IDs of classes and of objects the dump left out aren't indexed
+      int index = objectIndexes.get(id, -1);
+      if (index >= 0) {
+        visitor.visit(index, name);
+      }
+    }
+  }
+
+  private ClassInfo classOf(long instancePosition) {
+    long classId = id(instancePosition + 1 + idSize + 4);
+    ClassInfo info = classes.get(classId);
+    if (info == null) {
+      throw new IllegalStateException("No class dump for class " + classId);
+    }
+    return info;
+  }
+
+  private void readRecords(long position, long size) throws IOException {
+    while (position < size) {
+      int tag = u1(position);
+      long length = u4(position + 5) & 0xFFFFFFFFL;
+      long body = position + 9;
+      long end = body + length;
+      if (end > size) {
+        throw new IOException("Truncated HPROF record at " + position);
+      }
+      switch (tag) {
+        case UTF8:
+          addString(id(body), body + idSize, (int) (length - idSize));
+          break;
+        case LOAD_CLASS:
+          classNameIds.put(id(body + 4), id(body + 4 + idSize + 4));
+          break;
+        case HEAP_DUMP:
+        case HEAP_DUMP_SEGMENT:
+          readHeapDump(body, end);
+          break;
+        default:
+          // stack traces, heap summaries and so on aren't needed
+      }
+      position = end;
+    }
+  }
+
+  private void readHeapDump(long position, long end) throws IOException {
+    while (position < end) {
+      int tag = u1(position);
+      long body = position + 1;
+      switch (tag) {
+        case ROOT_UNKNOWN:
+        case ROOT_STICKY_CLASS:
+        case ROOT_MONITOR_USED:
+          addRoot(id(body));
+          position = body + idSize;
+          break;
+        case ROOT_JNI_GLOBAL:
+          addRoot(id(body));
+          position = body + 2 * idSize;
+          break;
+        case ROOT_NATIVE_STACK:
+        case ROOT_THREAD_BLOCK:
+          addRoot(id(body));
+          position = body + idSize + 4;
+          break;
+        case ROOT_JNI_LOCAL:
+        case ROOT_JAVA_FRAME:
+        case ROOT_THREAD_OBJECT:
+          addRoot(id(body));
+          position = body + idSize + 8;
+          break;
+        case CLASS_DUMP:
+          position = readClass(body);
+          break;
+        case INSTANCE_DUMP:
+          addObject(id(body), position);
+          position =
+              body + 2 * idSize + 8 + (u4(body + 2 * idSize + 4) & 0xFFFFFFFFL);
+          break;
+        case OBJECT_ARRAY_DUMP:
+          addObject(id(body), position);
+          position =
+              body + idSize + 8 + idSize + (u4(body + idSize + 4) & 0xFFFFFFFFL) * idSize;
+          break;
+        case PRIMITIVE_ARRAY_DUMP:
+          addObject(id(body), position);
+          position =
+              body
+                  + idSize
+                  + 9
+                  + (u4(body + idSize + 4) & 0xFFFFFFFFL) * valueSize(u1(body + idSize + 8));
+          break;
+        default:
+          throw new IOException(
+              String.format("Unsupported heap dump sub-record 0x%02X at %d", tag, position));
+      }
+    }
+  }
+
+  /** Reads a class dump sub-record, returning the position after it. */
+  private long readClass(long position) {
+    long classId = id(position);
+    long superId = id(position + idSize + 4);
+    long loaderId = id(position + 2 * idSize + 4);
+    long protectionDomainId = id(position + 4 * idSize + 4);
+    // skip to the end of the fixed-size fields, which end with the instance size
+    position += 7 * idSize + 8;
+    int constantPoolSize = u2(position);
+    position += 2;
+    for (int i = 0; i < constantPoolSize; i++) {
+      position += 3 + valueSize(u1(position + 2));
+    }
+
+    int staticCount = u2(position);
+    position += 2;
+    long[] staticNameIds = new long[staticCount];
+    int[] staticTypes = new int[staticCount];
+    long[] staticValues = new long[staticCount];
+    for (int i = 0; i < staticCount; i++) {
+      staticNameIds[i] = id(position);
+      staticTypes[i] = u1(position + idSize);
+      staticValues[i] = value(position + idSize + 1, staticTypes[i]);
+      position += idSize + 1 + valueSize(staticTypes[i]);
+    }
+
+    int fieldCount = u2(position);
+    position += 2;
+    long[] fieldNameIds = new long[fieldCount];
+    int[] fieldTypes = new int[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      fieldNameIds[i] = id(position);
+      fieldTypes[i] = u1(position + idSize);
+      position += idSize + 1;
+    }
+
+    classes.put(
+        classId,
+        new ClassInfo(
+            superId, staticNameIds, staticTypes, staticValues, fieldNameIds, fieldTypes));
+    // a class keeps its loader and protection domain alive
+    addRoot(loaderId);
+    addRoot(protectionDomainId);
+    return position;
+  }
+
+  /**
+   * Computes where the references of instances of a class are. An instance's field values are
+   * those of its class, followed by those of its superclass and so on.
+   */
+  private void computeLayout(ClassInfo info) {
+    List<Integer> referenceOffsets = new ArrayList<Integer>();
+    List<String> referenceNames = new ArrayList<String>();
+    List<int[]> primitiveSizes = new ArrayList<int[]>();
+    List<Integer> referenceCounts = new ArrayList<Integer>();
+    int offset = 0;
+    for (ClassInfo c = info; c != null; c = classes.get(c.superId)) {
+      boolean isReference = REFERENCE_CLASS_NAME.equals(c.name);
+      List<Integer> sizes = new ArrayList<Integer>();
+      int referenceCount = 0;
+      for (int i = 0; i < c.fieldTypes.length; i++) {
+        String name = string(c.fieldNameIds[i]);
+        if (c.fieldTypes[i] == OBJECT) {
+          referenceCount++;
+          // a Reference doesn't keep its referent alive, though the field still takes up space
+          if (!(isReference && name.equals("referent"))) {
+            referenceOffsets.add(offset);
+            referenceNames.add(name);
+          }
+        } else {
+          sizes.add(valueSize(c.fieldTypes[i]));
+        }
+        offset += valueSize(c.fieldTypes[i]);
+      }
+      primitiveSizes.add(Ints.toArray(sizes));
+      referenceCounts.add(referenceCount);
+      if (c.superId == 0) {
+        break;
+      }
+    }
+    info.referenceOffsets = new int[referenceOffsets.size()];
+    for (int i = 0; i < info.referenceOffsets.length; i++) {
+      info.referenceOffsets[i] = referenceOffsets.get(i);
+    }
+    info.referenceNames = referenceNames.toArray(new String[0]);
+    info.primitiveSizes = primitiveSizes;
+    info.referenceCounts = Ints.toArray(referenceCounts);
+  }
+
+  private void addString(long id, long position, int length) {
+    if (stringCount == stringPositions.length) {
+      stringPositions = Arrays.copyOf(stringPositions, stringCount * 2);
+      stringLengths = Arrays.copyOf(stringLengths, stringCount * 2);
+    }
+    stringPositions[stringCount] = position;
+    stringLengths[stringCount] = length;
+    stringIndexes.put(id, stringCount++);
+  }
+
+  private String string(long id) {
+    int index = stringIndexes.get(id, -1);
+    return index < 0
+        ? "<unknown>"
+        : new String(bytes(stringPositions[index], stringLengths[index]), UTF_8);
+  }
+
+  private void addObject(long id, long position) {
+    if (objectCount == objectPositions.length) {
+      objectPositions = Arrays.copyOf(objectPositions, objectCount * 2);
+    }
+    objectPositions[objectCount] = position;
+    objectIndexes.put(id, objectCount++);
+  }
+
+  private void addRoot(long id) {
+    if (id == 0) {
+      return;
+    }
+    if (rootCount == rootIds.length) {
+      rootIds = Arrays.copyOf(rootIds, rootCount * 2);
+    }
+    rootIds[rootCount++] = id;
+  }
+
+  private int valueSize(int type) {
+    switch (type) {
+      case OBJECT:
+        return idSize;
+      case 4: // boolean
+      case 8: // byte
+        return 1;
+      case 5: // char
+      case 9: // short
+        return 2;
+      case 6: // float
+      case 10: // int
+        return 4;
+      case 7: // double
+      case 11: // long
+        return 8;
+      default:
+        throw new IllegalStateException("Unknown basic type " + type);
+    }
+  }
+
+  private long value(long position, int type) {
+    switch (valueSize(type)) {
+      case 1:
+        return u1(position);
+      case 2:
+        return u2(position);
+      case 4:
+        return type == OBJECT ? id(position) : u4(position);
+      default:
+        return u8(position);
+    }
+  }
+
+  private ByteBuffer segment(long position) {
+    return segments[(int) (position >>> SEGMENT_BITS)];
+  }
+
+  private static int offset(long position) {
+    return (int) (position & (SEGMENT_SIZE - 1));
+  }
+
+  private int u1(long position) {
+    return segment(position).get(offset(position)) & 0xFF;
+  }
+
+  private int u2(long position) {
+    return segment(position).getShort(offset(position)) & 0xFFFF;
+  }
+
+  private int u4(long position) {
+    return segment(position).getInt(offset(position));
+  }
+
+  private long u8(long position) {
+    return segment(position).getLong(offset(position));
+  }
+
+  private long id(long position) {
+    return idSize == 4 ? u4(position) & 0xFFFFFFFFL : u8(position);
+  }
+
+  private byte[] bytes(long position, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) u1(position + i);
+    }
+    return bytes;
+  }
+
+  private static boolean isSet(long[] bits, int index) {
+    return (bits[index >>> 6] & (1L << index)) != 0;
+  }
+
+  private static void set(long[] bits, int index) {
+    bits[index >>> 6] |= 1L << index;
+  }
+
+  /** A growable stack of object indexes. */
+  private static final class IntStack {
+    private int[] elements = new int[256];
+    private int size;
+
+    void push(int element) {
+      if (size == elements.length) {
+        elements = Arrays.copyOf(elements, size * 2);
+      }
+      elements[size++] = element;
+    }
+
+    int pop() {
+      return elements[--size];
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A set of objects compared by identity, for tracking which objects of a (possibly very large)
+ * object graph have been seen. Unlike a set backed by an {@link java.util.IdentityHashMap}, adding
+ * an object doesn't allocate: objects are kept in a single open-addressing table keyed on {@link
+ * System#identityHashCode(Object)}. Objects can't be removed.
+ */
+public final class IdentityHashSet {
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private Object[] table;
+  private int shift;
+  private int size;
+
+  /** Creates an empty set. */
+  public IdentityHashSet() {
+    this(16);
+  }
+
+  /** Creates an empty set that can hold the given number of objects without resizing. */
+  public IdentityHashSet(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "Negative expected size");
+    int capacity = 16;
+    // keep the table at most half full, so that probe sequences stay short
+    while (capacity < MAXIMUM_CAPACITY && capacity / 2 < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  /**
+   * Adds the given object to this set.
+   *
+   * @return {@code true} if the object wasn't already in the set
+   */
+  public boolean add(Object object) {
+    Preconditions.checkNotNull(object);
+    Object[] table = this.table;
+    int mask = table.length - 1;
+    for (int i = indexFor(object); ; i = (i + 1) & mask) {
+      Object entry = table[i];
+      if (entry == null) {
+        table[i] = object;
+        if (++size > table.length / 2) {
+          resize();
+        }
+        return true;
+      } else if (entry == object) {
+        return false;
+      }
+    }
+  }
+
+  /** Returns whether the given object is in this set. */
+  public boolean contains(Object object) {
+    Object[] table = this.table;
+    int mask = table.length - 1;
+    for (int i = indexFor(object); ; i = (i + 1) & mask) {
+      Object entry = table[i];
+      if (entry == null) {
+        return false;
+      } else if (entry == object) {
+        return true;
+      }
+    }
+  }
+
+  /** Returns the number of objects in this set. */
+  public int size() {
+    return size;
+  }
+
+  private int indexFor(Object object) {
+    // Fibonacci hashing spreads identity hash codes that differ only in their high bits
+    return (System.identityHashCode(object) * 0x9E3779B9) >>> shift;
+  }
+
+  private void allocate(int capacity) {
+    table = new Object[capacity];
+    shift = Integer.numberOfLeadingZeros(capacity) + 1;
+  }
+
+  private void resize() {
+    Object[] oldTable = table;
+    if (oldTable.length == MAXIMUM_CAPACITY) {
+      Preconditions.checkState(size < MAXIMUM_CAPACITY, "IdentityHashSet is full");
+      return;
+    }
+    allocate(oldTable.length << 1);
+    int mask = table.length - 1;
+    for (Object object : oldTable) {
+      if (object != null) {
+        int i = indexFor(object);
+        while (table[i] != null) {
+          i = (i + 1) & mask;
+        }
+        table[i] = object;
+      }
+    }
+  }
+}
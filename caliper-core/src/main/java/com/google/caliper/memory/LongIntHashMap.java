@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A map from non-zero {@code long} keys to {@code int} values, kept in two parallel open-addressing
+ * arrays so that a heap dump's millions of object IDs can be indexed without an object per entry.
+ * Entries can't be removed.
+ */
+final class LongIntHashMap {
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private long[] keys;
+  private int[] values;
+  private int shift;
+  private int size;
+
+  LongIntHashMap() {
+    allocate(16);
+  }
+
+  /**
+   * Associates the value with the key.
+   *
+   * @return {@code true} if the key wasn't already in the map
+   */
+  boolean put(long key, int value) {
+    Preconditions.checkArgument(key != 0, "Zero key");
+    long[] keys = this.keys;
+    int mask = keys.length - 1;
+    for (int i = indexFor(key); ; i = (i + 1) & mask) {
+      if (keys[i] == 0) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length / 2) {
+          resize();
+        }
+        return true;
+      } else if (keys[i] == key) {
+        values[i] = value;
+        return false;
+      }
+    }
+  }
+
+  /** Returns the value associated with the key, or {@code defaultValue} if there is none. */
+  int get(long key, int defaultValue) {
+    long[] keys = this.keys;
+    int mask = keys.length - 1;
+    for (int i = indexFor(key); ; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return values[i];
+      } else if (keys[i] == 0) {
+        return defaultValue;
+      }
+    }
+  }
+
+  /** Returns the number of keys in this map. */
+  int size() {
+    return size;
+  }
+
+  private int indexFor(long key) {
+    // object IDs are usually aligned addresses, so mix all of the bits into the top ones
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    shift = 64 - Integer.numberOfTrailingZeros(capacity);
+  }
+
+  private void resize() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    Preconditions.checkState(oldKeys.length < MAXIMUM_CAPACITY, "Map too large");
+    allocate(oldKeys.length * 2);
+    int mask = keys.length - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      long key = oldKeys[j];
+      if (key != 0) {
+        int i = indexFor(key);
+        while (keys[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = oldValues[j];
+      }
+    }
+  }
+}
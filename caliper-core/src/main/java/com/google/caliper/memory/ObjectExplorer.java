@@ -18,25 +18,11 @@ package com.google.caliper.memory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Lists;
-import java.lang.ref.Reference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.security.AccessController;
-import java.security.PrivilegedActionException;
-import java.security.PrivilegedExceptionAction;
 import java.util.ArrayDeque;
-import java.util.Collections;
 import java.util.Deque;
 import java.util.EnumSet;
-import java.util.IdentityHashMap;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
@@ -143,22 +129,11 @@ public final class ObjectExplorer {
          * them to the stack in reverse order, so when we pop them, we get them in the original
          * (declaration) order.
          */
-        final Field[] fields = getAllFields(value);
+        ClassLayoutPlan plan = ClassLayoutPlan.of(valueClass);
+        final Field[] fields = plan.fields();
         for (int j = fields.length - 1; j >= 0; j--) {
           final Field field = fields[j];
-          if (field.getDeclaringClass().equals(Reference.class)
-              && !field.getName().equals("referent")) {
-            continue;
-          }
-          if (isHiddenOrRecord(field.getDeclaringClass())) {
-            continue;
-          }
-          Object childValue = null;
-          try {
-            childValue = fieldGetHelper(value, field);
-          } catch (Exception e) {
-            throw new AssertionError(e);
-          }
+          Object childValue = plan.get(value, j);
           if (childValue == null) { // handling nulls
             if (features.contains(Feature.VISIT_NULL)) {
               visitor.visit(chain.appendField(field, childValue));
@@ -180,32 +155,105 @@ public final class ObjectExplorer {
     return visitor.result();
   }
 
-  private static boolean isHiddenOrRecord(Class<?> clazz) {
-    try {
-      return (IS_HIDDEN != null && (boolean) IS_HIDDEN.invoke(clazz))
-          || (IS_RECORD != null && (boolean) IS_RECORD.invoke(clazz));
-    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-      throw new AssertionError(e);
+  /**
+   * Explores an object graph (defined by a root object and whatever is reachable through it,
+   * following non-static fields) while using a {@link ValueVisitor} to both control the traversal
+   * and return a value. This reaches the same objects as {@link #exploreObject(Object,
+   * ObjectVisitor, EnumSet)}, but without building the path to each of them, so it should be
+   * preferred by visitors that only need the values.
+   *
+   * <p>Each reference is visited when the object holding it is explored, so objects are visited in
+   * a different order than by {@link #exploreObject(Object, ObjectVisitor, EnumSet)}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the ValueVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored reference and decides whether to
+   *     continue exploration of the referenced object, and constructs a return value at the end of
+   *     the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @return whatever value is returned by the visitor at the end of the traversal
+   * @see ValueVisitor
+   */
+  public static <T> T exploreValues(
+      Object rootObject, ValueVisitor<T> visitor, EnumSet<Feature> features) {
+    Deque<Object> stack = new ArrayDeque<Object>(32);
+    if (rootObject != null
+        && visitor.visit(rootObject, rootObject.getClass()) == ObjectVisitor.Traversal.EXPLORE) {
+      stack.push(rootObject);
     }
+    exploreValues(stack, visitor, features, Long.MAX_VALUE);
+    return visitor.result();
   }
 
-  private static final Method IS_HIDDEN = maybeGetMethod(Class.class, "isHidden");
-
-  private static final Method IS_RECORD = maybeGetMethod(Class.class, "isRecord");
+  /**
+   * Explores the objects on the stack, and whatever is reachable from them, until the stack is
+   * empty or the given number of objects have been explored. Each object on the stack must already
+   * have been visited.
+   */
+  static void exploreValues(
+      Deque<Object> stack, ValueVisitor<?> visitor, EnumSet<Feature> features, long maxObjects) {
+    boolean visitNull = features.contains(Feature.VISIT_NULL);
+    boolean visitPrimitives = features.contains(Feature.VISIT_PRIMITIVES);
+    for (long explored = 0; explored < maxObjects && !stack.isEmpty(); explored++) {
+      exploreValue(stack.pop(), stack, visitor, visitNull, visitPrimitives);
+    }
+  }
 
-  @CheckForNull
-  private static Method maybeGetMethod(Class<?> clazz, String name) {
-    try {
-      return clazz.getMethod(name);
-    } catch (NoSuchMethodException e) {
-      return null;
+  /**
+   * Visits the references (and primitives and nulls, if requested) held by a single object,
+   * pushing the referenced objects that should be explored to the stack.
+   */
+  static void exploreValue(
+      Object value,
+      Deque<Object> stack,
+      ValueVisitor<?> visitor,
+      boolean visitNull,
+      boolean visitPrimitives) {
+    ClassLayoutPlan plan = ClassLayoutPlan.of(value.getClass());
+    int nulls = 0;
+    if (plan.isArray()) {
+      Class<?> componentType = plan.componentType();
+      if (componentType.isPrimitive()) {
+        int length = Array.getLength(value);
+        if (visitPrimitives && length > 0) {
+          visitor.visitPrimitives(componentType, length);
+        }
+      } else {
+        Object[] array = (Object[]) value;
+        // pushed in reverse order, so that they're explored in the array's order
+        for (int i = array.length - 1; i >= 0; i--) {
+          Object childValue = array[i];
+          if (childValue == null) {
+            nulls++;
+          } else if (visitor.visit(childValue, componentType) == ObjectVisitor.Traversal.EXPLORE) {
+            stack.push(childValue);
+          }
+        }
+      }
+    } else {
+      if (visitPrimitives) {
+        for (int i = 0; i < plan.primitiveTypeCount(); i++) {
+          visitor.visitPrimitives(plan.primitiveType(i), plan.primitiveCount(i));
+        }
+      }
+      for (int j = plan.referenceCount() - 1; j >= 0; j--) {
+        Object childValue = plan.getReference(value, j);
+        if (childValue == null) {
+          nulls++;
+        } else if (visitor.visit(childValue, plan.referenceType(j))
+            == ObjectVisitor.Traversal.EXPLORE) {
+          stack.push(childValue);
+        }
+      }
+    }
+    if (visitNull && nulls > 0) {
+      visitor.visitNulls(nulls);
     }
   }
 
   /** A stateful predicate that allows exploring an object (the tail of the chain) only once. */
   static class AtMostOncePredicate implements Predicate<Chain> {
-    private final Set<Object> seen =
-        Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    private final IdentityHashSet seen = new IdentityHashSet();
 
     @Override
     public boolean apply(Chain chain) {
@@ -230,45 +278,6 @@ public final class ObjectExplorer {
         }
       };
 
-  /** A cache of {@code Field}s that are accessible for a given {@code Class<?>}. */
-  private static final ConcurrentHashMap<Class<?>, Field[]> clazzFields =
-      new ConcurrentHashMap<Class<?>, Field[]>();
-
-  private static Field[] getAllFields(Object o) {
-    Class<?> clazz = o.getClass();
-    return getAllFields(clazz);
-  }
-
-  /**
-   * Keep a cache of fields per class of interest.
-   *
-   * @param clazz - the {@code Class<?>} to interrogate.
-   * @return An array of fields of the given class.
-   */
-  private static Field[] getAllFields(Class<?> clazz) {
-    Field[] f = clazzFields.get(clazz);
-    if (f == null) {
-      f = computeAllFields(clazz);
-      Field[] u = clazzFields.putIfAbsent(clazz, f);
-      return u == null ? f : u;
-    }
-    return f;
-  }
-
-  private static Field[] computeAllFields(Class<?> clazz) {
-    List<Field> fields = Lists.newArrayListWithCapacity(8);
-    while (clazz != null) {
-      for (Field field : clazz.getDeclaredFields()) {
-        // add only non-static fields
-        if (!Modifier.isStatic(field.getModifiers())) {
-          fields.add(field);
-        }
-      }
-      clazz = clazz.getSuperclass();
-    }
-    return fields.toArray(new Field[0]);
-  }
-
   /**
    * Enumeration of features that may be optionally requested for an object traversal.
    *
@@ -281,73 +290,4 @@ public final class ObjectExplorer {
     /** Primitive values should be visited. */
     VISIT_PRIMITIVES
   }
-
-  private static final sun.misc.Unsafe UNSAFE;
-
-  static {
-    sun.misc.Unsafe unsafe = null;
-    try {
-      unsafe = sun.misc.Unsafe.getUnsafe();
-    } catch (SecurityException tryReflectionInstead) {
-      try {
-        unsafe =
-            AccessController.doPrivileged(
-                new PrivilegedExceptionAction<sun.misc.Unsafe>() {
-                  @Override
-                  public sun.misc.Unsafe run() throws Exception {
-                    Class<sun.misc.Unsafe> k = sun.misc.Unsafe.class;
-                    for (java.lang.reflect.Field f : k.getDeclaredFields()) {
-                      f.setAccessible(true);
-                      Object x = f.get(null);
-                      if (k.isInstance(x)) {
-                        return k.cast(x);
-                      }
-                    }
-                    throw new NoSuchFieldError("the Unsafe");
-                  }
-                });
-      } catch (PrivilegedActionException e) {
-        throw new RuntimeException("Could not initialize Unsafe", e.getCause());
-      }
-    }
-    UNSAFE = unsafe;
-  }
-
-  // We use sun.misc.Unsafe to get the contents of a field because,
-  // unlike reflective access, it can cross module boundaries
-  private static Object fieldGetHelper(Object obj, Field field) {
-    Object fieldBase;
-    long fieldOffset;
-    if ((field.getModifiers() & Modifier.STATIC) == 0) {
-      fieldBase = obj;
-      fieldOffset = UNSAFE.objectFieldOffset(field);
-    } else {
-      fieldBase = UNSAFE.staticFieldBase(field);
-      fieldOffset = UNSAFE.staticFieldOffset(field);
-    }
-    Class<?> type = field.getType();
-    if (!type.isPrimitive()) {
-      return UNSAFE.getObject(fieldBase, fieldOffset);
-    } else {
-      if (type.equals(int.class)) {
-        return UNSAFE.getInt(fieldBase, fieldOffset);
-      } else if (type.equals(float.class)) {
-        return UNSAFE.getFloat(fieldBase, fieldOffset);
-      } else if (type.equals(long.class)) {
-        return UNSAFE.getLong(fieldBase, fieldOffset);
-      } else if (type.equals(byte.class)) {
-        return UNSAFE.getByte(fieldBase, fieldOffset);
-      } else if (type.equals(boolean.class)) {
-        return UNSAFE.getBoolean(fieldBase, fieldOffset);
-      } else if (type.equals(double.class)) {
-        return UNSAFE.getDouble(fieldBase, fieldOffset);
-      } else if (type.equals(short.class)) {
-        return UNSAFE.getShort(fieldBase, fieldOffset);
-      } else if (type.equals(char.class)) {
-        return UNSAFE.getChar(fieldBase, fieldOffset);
-      } else {
-        throw new IllegalStateException("Unknown class " + type);
-      }
-    }
-  }
 }
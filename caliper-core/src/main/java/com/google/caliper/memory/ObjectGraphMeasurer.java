@@ -17,17 +17,24 @@
 package com.google.caliper.memory;
 
 import com.google.caliper.memory.ObjectExplorer.Feature;
+import com.google.caliper.memory.ObjectVisitor.Traversal;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A tool that can qualitatively measure the footprint ({@literal e.g.}, number of objects,
@@ -130,19 +137,41 @@ public final class ObjectGraphMeasurer {
     }
   }
 
+  /**
+   * The number of objects that {@link #measure(Object)} explores on the calling thread before
+   * exploring the rest of the graph in parallel.
+   */
+  public static final int PARALLEL_THRESHOLD = 1000000;
+
+  private static final EnumSet<Feature> FEATURES =
+      EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL);
+
+  /**
+   * Returns whether a value reached through a reference of the given declared type is a shared
+   * value, which should not contribute to the cost of any single object graph: a {@code Class}, or
+   * an enum held by a reference of an enum type. An enum held by a reference of another type, such
+   * as an element of an {@code Object[]}, is measured like any other object.
+   */
+  public static boolean isSharedValue(Object value, Class<?> referenceType) {
+    return value instanceof Class<?> || Enum.class.isAssignableFrom(referenceType);
+  }
+
   /**
    * Measures the footprint of the specified object graph. The object graph is defined by a root
    * object and whatever object can be reached through that, excluding static fields, {@code Class}
    * objects, and fields defined in {@code enum}s (all these are considered shared values, which
    * should not contribute to the cost of any single object graph).
    *
-   * <p>Equivalent to {@code measure(rootObject, Predicates.alwaysTrue())}.
+   * <p>Equivalent to {@code measure(rootObject, Predicates.alwaysTrue())}, except that once more
+   * than {@link #PARALLEL_THRESHOLD} objects have been found, the rest of the graph is explored in
+   * parallel by the {@linkplain ForkJoinPool#commonPool() common pool}.
    *
    * @param rootObject the root object of the object graph
    * @return the footprint of the object graph
    */
   public static Footprint measure(Object rootObject) {
-    return measure(rootObject, Predicates.alwaysTrue());
+    return measure(
+        rootObject, Predicates.alwaysTrue(), PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
   }
 
   /**
@@ -159,54 +188,193 @@ public final class ObjectGraphMeasurer {
    * @return the footprint of the object graph
    */
   public static Footprint measure(Object rootObject, Predicate<Object> objectAcceptor) {
-    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    return measure(rootObject, objectAcceptor, new IdentityHashSet());
+  }
+
+  /**
+   * Measures the footprint of the objects of the specified object graph that the specified
+   * baseline graph doesn't reach, e.g. to measure what an index adds to the cache it indexes.
+   * Both graphs are defined as for {@link #measure(Object, Predicate)}, and references from the
+   * measured objects to baseline objects are counted, but the baseline objects aren't.
+   *
+   * @param baselineObject the root object of the baseline object graph
+   * @param rootObject the root object of the measured object graph
+   * @param objectAcceptor a predicate that returns {@code true} for objects to be explored (and
+   *     treated as part of the footprint), or {@code false} to forbid the traversal to traverse the
+   *     given object
+   * @return the footprint of the objects reachable from the root object but not the baseline
+   */
+  public static Footprint measureIncremental(
+      Object baselineObject, Object rootObject, Predicate<Object> objectAcceptor) {
+    return measure(rootObject, objectAcceptor, reachableObjects(baselineObject, objectAcceptor));
+  }
 
-    Predicate<Chain> completePredicate =
-        Predicates.and(
-            ImmutableList.of(
-                ObjectExplorer.notEnumFieldsOrClasses,
-                new ObjectExplorer.AtMostOncePredicate(),
-                Predicates.compose(objectAcceptor, ObjectExplorer.chainToObject)));
+  /**
+   * Returns the objects of the specified object graph, as defined by {@link #measure(Object,
+   * Predicate)}, for use as the baseline of {@link #measure(Object, Predicate, IdentityHashSet)}.
+   * The set holds just one reference per slot, so it costs much less memory than an {@link
+   * java.util.IdentityHashMap} or the graph itself.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a predicate that returns {@code true} for objects to be explored, or
+   *     {@code false} to forbid the traversal to traverse the given object
+   * @return the objects of the graph
+   */
+  public static IdentityHashSet reachableObjects(
+      Object rootObject, Predicate<Object> objectAcceptor) {
+    IdentityHashSet seen = new IdentityHashSet();
+    measure(rootObject, objectAcceptor, seen);
+    return seen;
+  }
 
-    return ObjectExplorer.exploreObject(
+  /**
+   * Measures the footprint of the objects of the specified object graph that aren't in the
+   * baseline set. Baseline objects are neither counted nor explored, though references to them
+   * are. The measured objects are added to the baseline rather than to a copy of it, so that a huge
+   * baseline doesn't need twice the memory, and so that successive graphs can each be measured
+   * on top of the ones before.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a predicate that returns {@code true} for objects to be explored (and
+   *     treated as part of the footprint), or {@code false} to forbid the traversal to traverse the
+   *     given object
+   * @param baseline the objects not to measure, such as those returned by {@link
+   *     #reachableObjects}; the measured objects are added to it
+   * @return the footprint of the objects of the graph that weren't in the baseline
+   */
+  public static Footprint measure(
+      Object rootObject, Predicate<Object> objectAcceptor, final IdentityHashSet baseline) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(baseline, "baseline");
+    return ObjectExplorer.exploreValues(
         rootObject,
-        new ObjectGraphVisitor(completePredicate),
-        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL));
+        new ObjectGraphVisitor(
+            objectAcceptor,
+            new Predicate<Object>() {
+              @Override
+              public boolean apply(Object object) {
+                return baseline.add(object);
+              }
+            }),
+        FEATURES);
+  }
+
+  /**
+   * Measures the footprint of the specified object graph like {@link #measure(Object, Predicate)},
+   * but explores it with the threads of the given pool. The footprint is the same as if it were
+   * measured on one thread, but the predicate may be called from any of the pool's threads, so it
+   * must be thread-safe.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a thread-safe predicate that returns {@code true} for objects to be
+   *     explored (and treated as part of the footprint), or {@code false} to forbid the traversal
+   *     to traverse the given object
+   * @param pool the pool whose threads should explore the object graph
+   * @return the footprint of the object graph
+   */
+  public static Footprint measureInParallel(
+      Object rootObject, Predicate<Object> objectAcceptor, ForkJoinPool pool) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(pool, "pool");
+    return measure(rootObject, objectAcceptor, 0, pool);
   }
 
-  private static class ObjectGraphVisitor implements ObjectVisitor<Footprint> {
+  /**
+   * Explores up to {@code sequentialObjects} objects on the calling thread, and the rest of the
+   * graph, if any, in parallel.
+   */
+  private static Footprint measure(
+      Object rootObject,
+      Predicate<Object> objectAcceptor,
+      long sequentialObjects,
+      ForkJoinPool pool) {
+    final ConcurrentIdentityHashSet seen = new ConcurrentIdentityHashSet();
+    final Predicate<Object> firstVisit =
+        new Predicate<Object>() {
+          @Override
+          public boolean apply(Object object) {
+            return seen.add(object);
+          }
+        };
+    ObjectGraphVisitor visitor = new ObjectGraphVisitor(objectAcceptor, firstVisit);
+    Deque<Object> stack = new ArrayDeque<Object>();
+    if (rootObject != null
+        && visitor.visit(rootObject, rootObject.getClass()) == Traversal.EXPLORE) {
+      stack.push(rootObject);
+    }
+    ObjectExplorer.exploreValues(stack, visitor, FEATURES, sequentialObjects);
+    if (stack.isEmpty()) {
+      return visitor.result();
+    }
+    List<ObjectGraphVisitor> visitors = Lists.newArrayList(visitor);
+    visitors.addAll(
+        ParallelObjectExplorer.exploreValues(
+            stack,
+            new Supplier<ObjectGraphVisitor>() {
+              @Override
+              public ObjectGraphVisitor get() {
+                return new ObjectGraphVisitor(objectAcceptor, firstVisit);
+              }
+            },
+            FEATURES,
+            pool));
+    return ObjectGraphVisitor.combine(visitors);
+  }
+
+  private static class ObjectGraphVisitor implements ValueVisitor<Footprint> {
     private int objects;
-    // -1 to account for the root, which has no reference leading to it
-    private int nonNullReferences = -1;
+    private int nonNullReferences;
     private int nullReferences = 0;
     private final Multiset<Class<?>> primitives = HashMultiset.create();
-    private final Predicate<Chain> predicate;
+    private final Predicate<Object> objectAcceptor;
+    private final Predicate<Object> firstVisit;
 
-    ObjectGraphVisitor(Predicate<Chain> predicate) {
-      this.predicate = predicate;
+    ObjectGraphVisitor(Predicate<Object> objectAcceptor, Predicate<Object> firstVisit) {
+      this.objectAcceptor = objectAcceptor;
+      this.firstVisit = firstVisit;
     }
 
     @Override
-    public Traversal visit(Chain chain) {
-      if (chain.isPrimitive()) {
-        primitives.add(chain.getValueType());
+    public Traversal visit(Object value, Class<?> referenceType) {
+      nonNullReferences++;
+      // enums and classes are shared values, and each object is only counted once
+      if (isSharedValue(value, referenceType)
+          || !firstVisit.apply(value)
+          || !objectAcceptor.apply(value)) {
         return Traversal.SKIP;
-      } else {
-        if (chain.getValue() == null) {
-          nullReferences++;
-        } else {
-          nonNullReferences++;
-        }
-      }
-      if (predicate.apply(chain) && chain.getValue() != null) {
-        objects++;
-        return Traversal.EXPLORE;
       }
-      return Traversal.SKIP;
+      objects++;
+      return Traversal.EXPLORE;
+    }
+
+    @Override
+    public void visitNulls(int count) {
+      nullReferences += count;
+    }
+
+    @Override
+    public void visitPrimitives(Class<?> type, int count) {
+      primitives.add(type, count);
     }
 
     @Override
     public Footprint result() {
+      return combine(ImmutableList.of(this));
+    }
+
+    /** Returns the footprint of a graph explored by the given visitors. */
+    static Footprint combine(Iterable<ObjectGraphVisitor> visitors) {
+      int objects = 0;
+      // -1 to account for the root, which has no reference leading to it
+      int nonNullReferences = -1;
+      int nullReferences = 0;
+      Multiset<Class<?>> primitives = HashMultiset.create();
+      for (ObjectGraphVisitor visitor : visitors) {
+        objects += visitor.objects;
+        nonNullReferences += visitor.nonNullReferences;
+        nullReferences += visitor.nullReferences;
+        primitives.addAll(visitor.primitives);
+      }
       return new Footprint(
           objects, nonNullReferences, nullReferences, ImmutableMultiset.copyOf(primitives));
     }
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.StandardSystemProperty;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.CheckForNull;
+
+/**
+ * A model of how the VM lays out objects in the heap, used to turn an object graph into an
+ * estimate of the bytes it retains. The model is detected from the running VM: object header size,
+ * whether references are compressed, the object alignment and how fields are packed.
+ *
+ * <p>Fields are laid out as HotSpot does: the primitive fields of each class, largest first, then
+ * its references, each aligned to its own size and placed in the first gap left by the header or
+ * by earlier fields that it fits in. Since JDK 15, a class's fields can fill the gaps left by its
+ * superclasses; before that, each class's fields start after those of its superclass, at a
+ * reference boundary.
+ *
+ * <p>The HotSpot diagnostic bean used for detection is looked up reflectively, since it's missing
+ * on some platforms (such as Android), where the defaults of a 64-bit HotSpot VM are assumed.
+ */
+public final class ObjectLayout {
+  private static final ImmutableMap<Class<?>, Integer> PRIMITIVE_SIZES =
+      ImmutableMap.<Class<?>, Integer>builder()
+          .put(boolean.class, 1)
+          .put(byte.class, 1)
+          .put(char.class, 2)
+          .put(short.class, 2)
+          .put(int.class, 4)
+          .put(float.class, 4)
+          .put(long.class, 8)
+          .put(double.class, 8)
+          .build();
+
+  private final int headerSize;
+  private final int referenceSize;
+  private final int alignment;
+  private final boolean fillsSuperclassGaps;
+  private final int arrayBaseOffset;
+
+  /** A cache of the sizes of instances of each class. */
+  private final ConcurrentHashMap<Class<?>, Long> instanceSizes =
+      new ConcurrentHashMap<Class<?>, Long>();
+
+  /**
+   * Creates a layout in which a class's fields can fill the gaps left by its superclasses, as in
+   * JDK 15 and later.
+   *
+   * @param headerSize the size of an object's header, in bytes
+   * @param referenceSize the size of a reference, in bytes
+   * @param alignment the alignment of objects, in bytes
+   */
+  public ObjectLayout(int headerSize, int referenceSize, int alignment) {
+    this(headerSize, referenceSize, alignment, true);
+  }
+
+  /**
+   * Creates a layout.
+   *
+   * @param headerSize the size of an object's header, in bytes
+   * @param referenceSize the size of a reference, in bytes
+   * @param alignment the alignment of objects, in bytes
+   * @param fillsSuperclassGaps whether a class's fields can fill the gaps left by its superclasses
+   */
+  public ObjectLayout(
+      int headerSize, int referenceSize, int alignment, boolean fillsSuperclassGaps) {
+    this.headerSize = headerSize;
+    this.referenceSize = referenceSize;
+    this.alignment = alignment;
+    this.fillsSuperclassGaps = fillsSuperclassGaps;
+    // the array length follows the header and elements start on a word boundary
+    this.arrayBaseOffset = (int) roundUp(headerSize + 4, referenceSize == 8 ? 8 : 4);
+  }
+
+  /** Returns the layout of the VM this is running in. */
+  public static ObjectLayout detect() {
+    // the field layout of JDK 15 could be turned off until the old one was removed
+    boolean fillsSuperclassGaps = booleanOption("UseNewFieldLayout", javaVersion() >= 15);
+    if ("32".equals(System.getProperty("sun.arch.data.model"))) {
+      return new ObjectLayout(8, 4, 8, fillsSuperclassGaps);
+    }
+    boolean compressedOops = booleanOption("UseCompressedOops", true);
+    boolean compressedClassPointers = booleanOption("UseCompressedClassPointers", compressedOops);
+    int alignment = intOption("ObjectAlignmentInBytes", 8);
+    // a mark word followed by the class pointer
+    return new ObjectLayout(
+        compressedClassPointers ? 12 : 16, compressedOops ? 4 : 8, alignment, fillsSuperclassGaps);
+  }
+
+  /** Returns the number of bytes occupied by the given object, excluding anything it references. */
+  public long sizeOf(Object object) {
+    Class<?> type = object.getClass();
+    if (type.isArray()) {
+      Class<?> componentType = type.getComponentType();
+      int elementSize =
+          componentType.isPrimitive() ? PRIMITIVE_SIZES.get(componentType) : referenceSize;
+      return arraySize(elementSize, Array.getLength(object));
+    }
+    Long size = instanceSizes.get(type);
+    if (size == null) {
+      size = computeInstanceSize(type);
+      instanceSizes.put(type, size);
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of bytes occupied by an instance of a class, from the fields declared by the
+   * class and each of its superclasses, starting with the class itself.
+   *
+   * @param primitiveSizes the sizes of each class's primitive instance fields, in bytes
+   * @param referenceCounts the number of reference instance fields of each class
+   */
+  public long instanceSize(List<int[]> primitiveSizes, int[] referenceCounts) {
+    checkArgument(
+        primitiveSizes.size() == referenceCounts.length,
+        "%s classes with primitive sizes but %s with reference counts",
+        primitiveSizes.size(),
+        referenceCounts.length);
+    // the gaps between the fields laid out so far, as (start, end) pairs
+    List<long[]> gaps = new ArrayList<long[]>();
+    long end = headerSize;
+    for (int i = primitiveSizes.size() - 1; i >= 0; i--) {
+      if (!fillsSuperclassGaps) {
+        gaps.clear();
+        end = roundUp(end, referenceSize);
+      }
+      int[] sizes = primitiveSizes.get(i).clone();
+      Arrays.sort(sizes);
+      for (int j = sizes.length - 1; j >= 0; j--) {
+        end = place(gaps, end, sizes[j]);
+      }
+      for (int j = 0; j < referenceCounts[i]; j++) {
+        end = place(gaps, end, referenceSize);
+      }
+    }
+    return roundUp(end, alignment);
+  }
+
+  /** Returns the number of bytes occupied by an array. */
+  public long arraySize(int elementSize, long length) {
+    return roundUp(arrayBaseOffset + elementSize * length, alignment);
+  }
+
+  /** Returns the size of an object's header, in bytes. */
+  public int headerSize() {
+    return headerSize;
+  }
+
+  /** Returns the size of a reference, in bytes. */
+  public int referenceSize() {
+    return referenceSize;
+  }
+
+  /** Returns the alignment of objects, in bytes. */
+  public int alignment() {
+    return alignment;
+  }
+
+  /** Returns whether a class's fields can fill the gaps left by those of its superclasses. */
+  public boolean fillsSuperclassGaps() {
+    return fillsSuperclassGaps;
+  }
+
+  private long computeInstanceSize(Class<?> type) {
+    List<int[]> primitiveSizes = new ArrayList<int[]>();
+    List<Integer> referenceCounts = new ArrayList<Integer>();
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      List<Integer> sizes = new ArrayList<Integer>();
+      int references = 0;
+      for (Field field : c.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          Class<?> fieldType = field.getType();
+          if (fieldType.isPrimitive()) {
+            sizes.add(PRIMITIVE_SIZES.get(fieldType));
+          } else {
+            references++;
+          }
+        }
+      }
+      primitiveSizes.add(Ints.toArray(sizes));
+      referenceCounts.add(references);
+    }
+    return instanceSize(primitiveSizes, Ints.toArray(referenceCounts));
+  }
+
+  /**
+   * Places a field of the given size in the first gap it fits in, or else at the end of the fields,
+   * aligned to its size. Returns the new end of the fields.
+   */
+  private static long place(List<long[]> gaps, long end, int size) {
+    for (int i = 0; i < gaps.size(); i++) {
+      long[] gap = gaps.get(i);
+      long offset = roundUp(gap[0], size);
+      if (offset + size <= gap[1]) {
+        gaps.remove(i);
+        if (offset + size < gap[1]) {
+          gaps.add(i, new long[] {offset + size, gap[1]});
+        }
+        if (gap[0] < offset) {
+          gaps.add(i, new long[] {gap[0], offset});
+        }
+        return end;
+      }
+    }
+    long offset = roundUp(end, size);
+    if (end < offset) {
+      gaps.add(new long[] {end, offset});
+    }
+    return offset + size;
+  }
+
+  private static long roundUp(long size, int alignment) {
+    return (size + alignment - 1) / alignment * alignment;
+  }
+
+  /** Returns the major version of the running Java platform, such as 8 or 17. */
+  private static int javaVersion() {
+    String version = StandardSystemProperty.JAVA_SPECIFICATION_VERSION.value();
+    if (version == null) {
+      return 8;
+    }
+    if (version.startsWith("1.")) {
+      version = version.substring(2);
+    }
+    Integer major = Ints.tryParse(version);
+    return major == null ? 8 : major;
+  }
+
+  private static boolean booleanOption(String name, boolean defaultValue) {
+    String value = vmOption(name);
+    return value == null ? defaultValue : Boolean.parseBoolean(value);
+  }
+
+  private static int intOption(String name, int defaultValue) {
+    String value = vmOption(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /** Returns the value of a HotSpot VM option, or {@code null} if it can't be found. */
+  @CheckForNull
+  private static String vmOption(String name) {
+    try {
+      Class<?> beanClass = Class.forName("com.sun.management.HotSpotDiagnosticMXBean");
+      Method getPlatformMXBean =
+          Class.forName("java.lang.management.ManagementFactory")
+              .getMethod("getPlatformMXBean", Class.class);
+      Object bean = getPlatformMXBean.invoke(null, beanClass);
+      Object option = beanClass.getMethod("getVMOption", String.class).invoke(bean, name);
+      return (String) option.getClass().getMethod("getValue").invoke(option);
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      // not HotSpot, or the option doesn't exist in this VM
+      return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("headerSize", headerSize)
+        .add("referenceSize", referenceSize)
+        .add("alignment", alignment)
+        .add("fillsSuperclassGaps", fillsSuperclassGaps)
+        .toString();
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import com.google.caliper.memory.ObjectExplorer.Feature;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An object graph explorer that explores with the threads of a {@link ForkJoinPool}, for graphs
+ * too big to explore quickly on one thread. Like {@link ObjectExplorer#exploreValues}, it
+ * notifies {@link ValueVisitor}s of the values it reaches, but each thread has its own visitor.
+ * Any state the visitors share, such as the set of objects already seen (see {@link
+ * ConcurrentIdentityHashSet}), must be thread-safe.
+ *
+ * <p>Each task explores depth-first from its own stack of objects, and hands half of its stack to
+ * a new task whenever other threads are likely to be idle, so idle threads steal work from busy
+ * ones. Which thread visits a given value isn't deterministic, but provided that each object is
+ * explored at most once, the sum of what the visitors see is the same as for a sequential
+ * traversal.
+ */
+public final class ParallelObjectExplorer {
+  /** The size an explorer's stack must reach before it's worth splitting. */
+  private static final int SPLIT_THRESHOLD = 256;
+
+  private ParallelObjectExplorer() {}
+
+  /**
+   * Explores an object graph (defined by a root object and whatever is reachable through it,
+   * following non-static fields) in parallel, notifying a visitor per thread.
+   *
+   * @param rootObject an object to be recursively explored
+   * @param visitors supplies a new visitor for each thread that takes part in the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @param pool the pool whose threads should explore the graph
+   * @return the visitors that took part in the exploration, whose results should be combined
+   */
+  public static <V extends ValueVisitor<?>> ImmutableList<V> exploreValues(
+      Object rootObject, Supplier<V> visitors, EnumSet<Feature> features, ForkJoinPool pool) {
+    Deque<Object> stack = new ArrayDeque<Object>();
+    ExplorationState<V> state = new ExplorationState<V>(visitors, features);
+    if (rootObject != null) {
+      // the root is visited by the calling thread's visitor
+      V visitor = state.visitor();
+      if (visitor.visit(rootObject, rootObject.getClass()) == ObjectVisitor.Traversal.EXPLORE) {
+        stack.push(rootObject);
+      }
+    }
+    pool.invoke(new ExploreTask<V>(state, stack));
+    return ImmutableList.copyOf(state.visitorsByThread.values());
+  }
+
+  /**
+   * Explores the objects on the stack, which must already have been visited, and whatever is
+   * reachable from them, in parallel.
+   *
+   * @return the visitors that took part in the exploration
+   */
+  static <V extends ValueVisitor<?>> ImmutableList<V> exploreValues(
+      Deque<Object> stack, Supplier<V> visitors, EnumSet<Feature> features, ForkJoinPool pool) {
+    ExplorationState<V> state = new ExplorationState<V>(visitors, features);
+    pool.invoke(new ExploreTask<V>(state, stack));
+    return ImmutableList.copyOf(state.visitorsByThread.values());
+  }
+
+  private static final class ExplorationState<V extends ValueVisitor<?>> {
+    final Supplier<V> visitors;
+    final boolean visitNull;
+    final boolean visitPrimitives;
+    final ConcurrentHashMap<Thread, V> visitorsByThread = new ConcurrentHashMap<Thread, V>();
+
+    ExplorationState(Supplier<V> visitors, EnumSet<Feature> features) {
+      this.visitors = visitors;
+      this.visitNull = features.contains(Feature.VISIT_NULL);
+      this.visitPrimitives = features.contains(Feature.VISIT_PRIMITIVES);
+    }
+
+    /** Returns the current thread's visitor. */
+    V visitor() {
+      Thread thread = Thread.currentThread();
+      V visitor = visitorsByThread.get(thread);
+      if (visitor == null) {
+        // only this thread adds its own visitor, so there's no race
+        visitor = visitors.get();
+        visitorsByThread.put(thread, visitor);
+      }
+      return visitor;
+    }
+  }
+
+  private static final class ExploreTask<V extends ValueVisitor<?>> extends RecursiveAction {
+    final ExplorationState<V> state;
+    final Deque<Object> stack;
+
+    ExploreTask(ExplorationState<V> state, Deque<Object> stack) {
+      this.state = state;
+      this.stack = stack;
+    }
+
+    @Override
+    protected void compute() {
+      List<ExploreTask<V>> forked = new ArrayList<ExploreTask<V>>();
+      V visitor = state.visitor();
+      while (!stack.isEmpty()) {
+        if (stack.size() >= SPLIT_THRESHOLD && getSurplusQueuedTaskCount() == 0) {
+          ExploreTask<V> task = new ExploreTask<V>(state, split());
+          task.fork();
+          forked.add(task);
+        }
+        ObjectExplorer.exploreValue(
+            stack.pop(), stack, visitor, state.visitNull, state.visitPrimitives);
+      }
+      for (ExploreTask<V> task : forked) {
+        task.join();
+      }
+    }
+
+    /** Removes half of the stack (from the bottom, where the biggest subgraphs usually are). */
+    private Deque<Object> split() {
+      int size = stack.size() / 2;
+      Deque<Object> split = new ArrayDeque<Object>(size);
+      for (int i = 0; i < size; i++) {
+        split.push(stack.removeLast());
+      }
+      return split;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import com.google.caliper.memory.ObjectVisitor.Traversal;
+
+/**
+ * A visitor that controls an object traversal without needing the path that leads to each value.
+ * Implementations of this interface are passed to {@link ObjectExplorer#exploreValues}, which is
+ * much cheaper than exploring with an {@link ObjectVisitor}: no {@link Chain} is created for each
+ * reference, and primitive values are counted by type rather than read and boxed.
+ *
+ * @param <T> the type of the result that this visitor returns (can be defined as {@code Void} to
+ *     denote no result}.
+ * @see ObjectExplorer
+ */
+public interface ValueVisitor<T> {
+  /**
+   * Visits a non-null reference to an object, and decides whether to continue the exploration of
+   * that object.
+   *
+   * @param value the referenced object
+   * @param referenceType the declared type of the field or array component holding the reference,
+   *     or the class of the value for the root object
+   * @return {@link Traversal#EXPLORE} to denote that the visited object should be further explored,
+   *     or {@link Traversal#SKIP} to avoid exploring it.
+   */
+  Traversal visit(Object value, Class<?> referenceType);
+
+  /**
+   * Visits {@code null} references held by an explored object. Only called if {@link
+   * ObjectExplorer.Feature#VISIT_NULL} was requested.
+   *
+   * @param count the number of {@code null} references
+   */
+  void visitNulls(int count);
+
+  /**
+   * Visits primitive values held by an explored object. Only called if {@link
+   * ObjectExplorer.Feature#VISIT_PRIMITIVES} was requested.
+   *
+   * @param type the primitive type, e.g. {@code int.class}
+   * @param count the number of values of that type
+   */
+  void visitPrimitives(Class<?> type, int count);
+
+  /** Returns an arbitrary value (presumably constructed during the object graph traversal). */
+  T result();
+}
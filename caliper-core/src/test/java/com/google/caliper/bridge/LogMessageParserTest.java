@@ -113,4 +113,25 @@ public class LogMessageParserTest {
       assertTrue(parser.parse(line) instanceof VmOptionLogMessage);
     }
   }
+
+  @Test
+  public void vmOptionPattern_jdk17() throws Exception {
+    List<String> lines =
+        Resources.readLines(
+            Resources.getResource(LogMessageParserTest.class, "jdk17-flags.txt"), UTF_8);
+    for (String line : lines) {
+      assertTrue(parser.parse(line) instanceof VmOptionLogMessage);
+    }
+  }
+
+  @Test
+  public void vmOptionData_jdk17() {
+    VmOptionLogMessage message =
+        (VmOptionLogMessage)
+            parser.parse(
+                "     bool TieredCompilation                        = true"
+                    + "                                   {pd product} {default}");
+    assertEquals("TieredCompilation", message.name());
+    assertEquals("true", message.value());
+  }
 }
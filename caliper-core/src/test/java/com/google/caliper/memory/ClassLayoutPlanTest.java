@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeFalse;
+
+import com.google.caliper.memory.ObjectGraphMeasurer.Footprint;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link ClassLayoutPlan}, reading fields both with Unsafe and with method handles, as on
+ * JDK 23 and later.
+ */
+@RunWith(JUnit4.class)
+public class ClassLayoutPlanTest {
+  enum Color {
+    RED
+  }
+
+  static class Fields {
+    boolean z = true;
+    byte b = 1;
+    char c = 'c';
+    short s = 2;
+    int i = 3;
+    float f = 4.5f;
+    long j = 6;
+    double d = 7.5;
+    Object object = new Object();
+    String string = null;
+  }
+
+  static class MoreFields extends Fields {
+    int[] array = {1, 2};
+  }
+
+  static final class Node {
+    final int id;
+    final long[] data;
+    Node next;
+    Object[] children;
+    Color color = Color.RED;
+
+    Node(int id) {
+      this.id = id;
+      this.data = new long[id % 3];
+    }
+  }
+
+  @CheckForNull private Boolean previousPreferMethodHandles;
+
+  @After
+  public void restorePreferMethodHandles() {
+    if (previousPreferMethodHandles != null) {
+      ClassLayoutPlan.setPreferMethodHandles(previousPreferMethodHandles);
+    }
+  }
+
+  @Test
+  public void methodHandles_readEveryField() throws Exception {
+    preferMethodHandles(true);
+    assertReadsEveryField(true);
+  }
+
+  @Test
+  public void unsafe_readsEveryField() throws Exception {
+    preferMethodHandles(false);
+    assertReadsEveryField(false);
+  }
+
+  @Test
+  public void methodHandles_unopenedJavaBaseClassesFallBackToUnsafe() throws Exception {
+    // before Java 9 every field can be made accessible, so there's nothing to fall back from
+    assumeFalse(System.getProperty("java.specification.version").startsWith("1."));
+    preferMethodHandles(true);
+
+    String string = "footprint";
+    int hash = string.hashCode();
+    ClassLayoutPlan stringPlan = ClassLayoutPlan.of(String.class);
+    int hashIndex = fieldIndex(stringPlan, "hash");
+    assertFalse(stringPlan.readsWithMethodHandle(hashIndex));
+    assertEquals(hash, stringPlan.get(string, hashIndex));
+
+    ArrayList<Object> list = Lists.newArrayList((Object) "a", "b", "c");
+    ClassLayoutPlan listPlan = ClassLayoutPlan.of(ArrayList.class);
+    int sizeIndex = fieldIndex(listPlan, "size");
+    assertFalse(listPlan.readsWithMethodHandle(sizeIndex));
+    assertEquals(3, listPlan.get(list, sizeIndex));
+  }
+
+  @Test
+  public void fixtureGraph_bothPathsMatchReflection() throws Exception {
+    Node root = graph();
+    Footprint expected = measureReflectively(root);
+    preferMethodHandles(true);
+    assertEquals(expected, ObjectGraphMeasurer.measure(root));
+    preferMethodHandles(false);
+    assertEquals(expected, ObjectGraphMeasurer.measure(root));
+  }
+
+  @Test
+  public void jdkGraph_bothPathsAgree() throws Exception {
+    Object root =
+        new Object[] {
+          graph(),
+          Lists.newArrayList("a", "b", "c"),
+          new HashMap<String, Integer>(ImmutableMap.of("one", 1, "two", 2)),
+          new WeakReference<Object>(new Object()),
+          ImmutableList.of(Color.RED)
+        };
+    preferMethodHandles(true);
+    Footprint withMethodHandles = ObjectGraphMeasurer.measure(root);
+    preferMethodHandles(false);
+    assertEquals(withMethodHandles, ObjectGraphMeasurer.measure(root));
+  }
+
+  private void preferMethodHandles(boolean prefer) {
+    boolean previous = ClassLayoutPlan.setPreferMethodHandles(prefer);
+    if (previousPreferMethodHandles == null) {
+      previousPreferMethodHandles = previous;
+    }
+  }
+
+  private static void assertReadsEveryField(boolean withMethodHandles) throws Exception {
+    MoreFields object = new MoreFields();
+    ClassLayoutPlan plan = ClassLayoutPlan.of(MoreFields.class);
+    assertFalse(plan.isArray());
+    Field[] fields = plan.fields();
+    assertEquals(11, fields.length);
+    List<Field> references = new ArrayList<Field>();
+    for (int i = 0; i < fields.length; i++) {
+      assertEquals(withMethodHandles, plan.readsWithMethodHandle(i));
+      assertEquals(fields[i].get(object), plan.get(object, i));
+      if (!fields[i].getType().isPrimitive()) {
+        references.add(fields[i]);
+      }
+    }
+
+    assertEquals(references.size(), plan.referenceCount());
+    for (int i = 0; i < references.size(); i++) {
+      assertEquals(references.get(i).getType(), plan.referenceType(i));
+      assertSame(references.get(i).get(object), plan.getReference(object, i));
+    }
+
+    Multiset<Class<?>> primitives = HashMultiset.create();
+    for (int i = 0; i < plan.primitiveTypeCount(); i++) {
+      primitives.add(plan.primitiveType(i), plan.primitiveCount(i));
+    }
+    assertEquals(
+        ImmutableMultiset.of(
+            boolean.class,
+            byte.class,
+            char.class,
+            short.class,
+            int.class,
+            float.class,
+            long.class,
+            double.class),
+        primitives);
+  }
+
+  private static int fieldIndex(ClassLayoutPlan plan, String name) {
+    Field[] fields = plan.fields();
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i].getName().equals(name)) {
+        return i;
+      }
+    }
+    throw new AssertionError("No field " + name);
+  }
+
+  /**
+   * A graph with shared nodes, cycles, nulls, enums, classes and primitives, and with no objects
+   * of other classes, so that it can be explored with plain reflection.
+   */
+  private static Node graph() {
+    Node[] nodes = new Node[50];
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = new Node(i);
+    }
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i].next = nodes[(i * 7 + 1) % nodes.length];
+      nodes[i].children =
+          new Object[] {nodes[(i * 31) % nodes.length], null, Node.class};
+    }
+    return nodes[0];
+  }
+
+  /**
+   * Measures a graph of the test's own classes with plain reflection, by the same rules as {@link
+   * ObjectGraphMeasurer}.
+   */
+  private static Footprint measureReflectively(Object root) throws IllegalAccessException {
+    Set<Object> seen = Sets.newIdentityHashSet();
+    Multiset<Class<?>> primitives = HashMultiset.create();
+    int objects = 0;
+    int references = 0;
+    int nulls = 0;
+    Deque<Object> values = new ArrayDeque<Object>();
+    Deque<Class<?>> types = new ArrayDeque<Class<?>>();
+    values.push(root);
+    types.push(root.getClass());
+    while (!values.isEmpty()) {
+      Object value = values.pop();
+      Class<?> type = types.pop();
+      references++;
+      if (Enum.class.isAssignableFrom(type) || value instanceof Class<?> || !seen.add(value)) {
+        continue;
+      }
+      objects++;
+      Class<?> valueClass = value.getClass();
+      if (valueClass.isArray()) {
+        Class<?> componentType = valueClass.getComponentType();
+        for (int i = 0; i < Array.getLength(value); i++) {
+          if (componentType.isPrimitive()) {
+            primitives.add(componentType);
+          } else if (Array.get(value, i) == null) {
+            nulls++;
+          } else {
+            values.push(Array.get(value, i));
+            types.push(componentType);
+          }
+        }
+        continue;
+      }
+      for (Class<?> c = valueClass; c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          if (field.getType().isPrimitive()) {
+            primitives.add(field.getType());
+          } else if (field.get(value) == null) {
+            nulls++;
+          } else {
+            values.push(field.get(value));
+            types.push(field.getType());
+          }
+        }
+      }
+    }
+    // the root has no reference leading to it
+    return new Footprint(objects, references - 1, nulls, ImmutableMultiset.copyOf(primitives));
+  }
+}
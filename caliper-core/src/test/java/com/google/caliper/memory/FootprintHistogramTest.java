@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.caliper.memory.FootprintHistogram.Entry;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link FootprintHistogram}. */
+@RunWith(JUnit4.class)
+public class FootprintHistogramTest {
+  // 64-bit without compressed references: objects are 16 bytes, plus 8 per reference
+  private static final ObjectLayout LAYOUT = new ObjectLayout(16, 8, 8);
+
+  static class Node {
+    final Node next;
+
+    Node(Node next) {
+      this.next = next;
+    }
+  }
+
+  static class Holder {
+    final Object[] items = {new Object(), new Object()};
+    final Node head = new Node(new Node(new Node(null)));
+  }
+
+  static class ListHolder {
+    final Node head = new Node(new Node(new Node(new Node(new Node(null)))));
+  }
+
+  static class SharingHolder {
+    final Object first;
+    final Object second;
+
+    SharingHolder(Object shared) {
+      this.first = shared;
+      this.second = shared;
+    }
+  }
+
+  enum Color {
+    RED
+  }
+
+  static class EnumHolder {
+    // a shared value, as declared
+    final Color color = Color.RED;
+    // an ordinary object, as declared
+    final Object[] colors = {Color.RED};
+  }
+
+  @Test
+  public void attributesBytesToClassesAndTruncatedPaths() {
+    FootprintHistogram histogram = measure(new Holder(), Predicates.alwaysTrue(), 1);
+    assertEquals(
+        ImmutableList.of(
+            Node.class.getName() + "=72B/3",
+            Object[].class.getName() + "=40B/1",
+            Holder.class.getName() + "=32B/1",
+            Object.class.getName() + "=32B/2"),
+        toStrings(histogram.byClass()));
+    assertEquals(
+        ImmutableList.of("<root>.head=72B/3", "<root>.items=72B/3", "<root>=32B/1"),
+        toStrings(histogram.byPath()));
+    assertEquals(176, histogram.getBytes());
+    assertEquals(7, histogram.getObjects());
+  }
+
+  @Test
+  public void deeperPaths() {
+    FootprintHistogram histogram = measure(new Holder(), Predicates.alwaysTrue(), 2);
+    assertEquals(
+        ImmutableList.of(
+            "<root>.head.next=48B/2",
+            "<root>.items=40B/1",
+            "<root>=32B/1",
+            "<root>.items[]=32B/2",
+            "<root>.head=24B/1"),
+        toStrings(histogram.byPath()));
+  }
+
+  @Test
+  public void linkedListAttributedToHoldingField() {
+    FootprintHistogram histogram = measure(new ListHolder(), Predicates.alwaysTrue(), 1);
+    assertEquals(
+        ImmutableList.of("<root>.head=120B/5", "<root>=24B/1"), toStrings(histogram.byPath()));
+  }
+
+  @Test
+  public void sharedObjectAttributedToFirstOwner() {
+    FootprintHistogram histogram =
+        measure(new SharingHolder(new Object()), Predicates.alwaysTrue(), 3);
+    assertEquals(
+        ImmutableList.of("<root>=32B/1", "<root>.first=16B/1"), toStrings(histogram.byPath()));
+  }
+
+  @Test
+  public void excludedTypes() {
+    FootprintHistogram histogram =
+        measure(new Holder(), FootprintHistogram.excluding(ImmutableList.of(Node.class)), 1);
+    assertEquals(104, histogram.getBytes());
+    assertEquals(4, histogram.getObjects());
+    assertEquals(
+        ImmutableList.of("<root>.items=72B/3", "<root>=32B/1"), toStrings(histogram.byPath()));
+  }
+
+  @Test
+  public void sharedValuesMatchObjectGraphMeasurer() {
+    EnumHolder holder = new EnumHolder();
+    FootprintHistogram histogram = measure(holder, Predicates.alwaysTrue(), 1);
+    assertEquals(ObjectGraphMeasurer.measure(holder).getObjects(), histogram.getObjects());
+    assertEquals(1, count(histogram.byClass(), Color.class.getName()));
+  }
+
+  @Test
+  public void format() {
+    String table = measure(new Holder(), Predicates.alwaysTrue(), 1).format(2);
+    assertTrue(table, table.contains("  class"));
+    assertTrue(table, table.contains("(2 more)"));
+    assertTrue(table, table.contains("  path"));
+    assertTrue(table, table.contains("(1 more)"));
+  }
+
+  @Test
+  public void formatWithoutPaths() {
+    String table = measure(null, Predicates.alwaysTrue(), 1).format(2);
+    assertTrue(table, table.contains("  class"));
+    assertFalse(table, table.contains("  path"));
+  }
+
+  private static FootprintHistogram measure(
+      Object root, Predicate<Object> objectAcceptor, int maxPathDepth) {
+    return FootprintHistogram.measure(root, objectAcceptor, LAYOUT, maxPathDepth);
+  }
+
+  private static long count(List<Entry> entries, String key) {
+    for (Entry entry : entries) {
+      if (entry.getKey().equals(key)) {
+        return entry.getObjects();
+      }
+    }
+    return 0;
+  }
+
+  private static List<String> toStrings(List<Entry> entries) {
+    List<String> strings = new ArrayList<>();
+    for (Entry entry : entries) {
+      strings.add(entry.toString());
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link HeapDump}, using a dump of the test's own heap. */
+@RunWith(JUnit4.class)
+public class HeapDumpTest {
+  // 64-bit without compressed references: objects are 16 bytes, plus 8 per reference
+  private static final ObjectLayout LAYOUT = new ObjectLayout(16, 8, 8);
+
+  static class Node {
+    final Object value;
+    final Node next;
+
+    Node(Object value, Node next) {
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  /** The objects to find in the dump. */
+  static class Roots {
+    static Object shared;
+    static Node list;
+  }
+
+  private static File file;
+  private static HeapDump dump;
+
+  @BeforeClass
+  public static void dumpHeap() throws Exception {
+    Roots.shared = new Object();
+    // the shared value is kept alive by Roots.shared, so the list doesn't retain it
+    Roots.list = new Node(new Object(), new Node(Roots.shared, new Node(new int[3], null)));
+    file = File.createTempFile("heap", ".hprof");
+    file.delete();
+    ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+        .dumpHeap(file.getPath(), true);
+    dump = HeapDump.open(file);
+  }
+
+  @AfterClass
+  public static void deleteDump() {
+    dump.close();
+    assertTrue(file.delete());
+  }
+
+  @Test
+  public void retained() {
+    long listId = dump.getStaticField(dump.findClass(Roots.class.getName()), "list");
+    FootprintHistogram histogram = dump.retained(listId, ImmutableSet.<Long>of(), LAYOUT, 1);
+    // three nodes of 32 bytes, an object and an int[3] of 24 + 12 bytes rounded up to 40
+    assertEquals(5, histogram.getObjects());
+    assertEquals(3 * 32 + 16 + 40, histogram.getBytes());
+    assertEquals("<root>.next=104B/3", histogram.byPath().get(0).toString());
+    assertEquals(Node.class.getName() + "=96B/3", histogram.byClass().get(0).toString());
+  }
+
+  @Test
+  public void excludedClasses() {
+    long listId = dump.getStaticField(dump.findClass(Roots.class.getName()), "list");
+    FootprintHistogram histogram =
+        dump.retained(listId, ImmutableSet.of(dump.findClass("[I")), LAYOUT, 1);
+    assertEquals(4, histogram.getObjects());
+    assertEquals(3 * 32 + 16, histogram.getBytes());
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link IdentityHashSet}. */
+@RunWith(JUnit4.class)
+public class IdentityHashSetTest {
+  @Test
+  public void comparesByIdentity() {
+    IdentityHashSet set = new IdentityHashSet();
+    String a = new String("a");
+    String equalToA = new String("a");
+    assertTrue(set.add(a));
+    assertFalse(set.add(a));
+    assertFalse(set.contains(equalToA));
+    assertTrue(set.add(equalToA));
+    assertEquals(2, set.size());
+  }
+
+  @Test
+  public void growsPastInitialCapacity() {
+    IdentityHashSet set = new IdentityHashSet();
+    List<Object> objects = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      Object object = new Object();
+      objects.add(object);
+      assertTrue(set.add(object));
+    }
+    assertEquals(10000, set.size());
+    for (Object object : objects) {
+      assertTrue(set.contains(object));
+      assertFalse(set.add(object));
+    }
+    assertFalse(set.contains(new Object()));
+  }
+}
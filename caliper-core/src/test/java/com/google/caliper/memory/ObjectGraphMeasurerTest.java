@@ -17,8 +17,10 @@
 package com.google.caliper.memory;
 
 import com.google.caliper.memory.ObjectGraphMeasurer.Footprint;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMultiset;
 import java.lang.ref.WeakReference;
+import java.util.concurrent.ForkJoinPool;
 import junit.framework.TestCase;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -160,5 +162,68 @@ public class ObjectGraphMeasurerTest extends TestCase {
     assertEquals(new ObjectGraphMeasurer.Footprint(2, 1, 0, NO_PRIMITIVES), footprint);
   }
 
+  static final class Node {
+    final int id;
+    final long[] data;
+    Node next;
+    Object[] children;
+
+    Node(int id) {
+      this.id = id;
+      this.data = new long[id % 3];
+    }
+  }
+
+  /** A graph with shared nodes, cycles, nulls and primitives, big enough to be split up. */
+  private static Node bigGraph() {
+    Node[] nodes = new Node[20000];
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = new Node(i);
+    }
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i].next = nodes[(i * 7 + 1) % nodes.length];
+      nodes[i].children =
+          new Object[] {nodes[(i * 31) % nodes.length], null, DummyEnum.VALUE, Node.class};
+    }
+    return nodes[0];
+  }
+
+  @Test
+  public void testParallel() throws Exception {
+    Node root = bigGraph();
+    Footprint sequential = ObjectGraphMeasurer.measure(root, Predicates.alwaysTrue());
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int i = 0; i < 5; i++) {
+        assertEquals(
+            sequential, ObjectGraphMeasurer.measureInParallel(root, Predicates.alwaysTrue(), pool));
+      }
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(sequential, ObjectGraphMeasurer.measure(root));
+  }
+
+  @Test
+  public void testIncremental() {
+    Object shared = new Object();
+    Object[] baseline = {shared};
+    Object[] full = {shared, new Object()};
+    // the reference to the shared object is counted, but not the object itself
+    assertEquals(
+        new Footprint(2, 2, 0, NO_PRIMITIVES),
+        ObjectGraphMeasurer.measureIncremental(baseline, full, Predicates.alwaysTrue()));
+
+    IdentityHashSet seen = ObjectGraphMeasurer.reachableObjects(baseline, Predicates.alwaysTrue());
+    assertEquals(2, seen.size());
+    assertEquals(
+        new Footprint(2, 2, 0, NO_PRIMITIVES),
+        ObjectGraphMeasurer.measure(full, Predicates.alwaysTrue(), seen));
+    // the measured objects were added to the baseline
+    assertEquals(
+        new Footprint(0, 0, 0, NO_PRIMITIVES),
+        ObjectGraphMeasurer.measure(full, Predicates.alwaysTrue(), seen));
+  }
+
   private static final ImmutableMultiset<Class<?>> NO_PRIMITIVES = ImmutableMultiset.of();
 }
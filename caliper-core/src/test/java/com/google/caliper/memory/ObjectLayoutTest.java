@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ObjectLayout}. */
+@RunWith(JUnit4.class)
+public class ObjectLayoutTest {
+  // 64-bit with compressed references and class pointers, the HotSpot default
+  private static final ObjectLayout COMPRESSED = new ObjectLayout(12, 4, 8);
+  private static final ObjectLayout COMPRESSED_BEFORE_JDK_15 = new ObjectLayout(12, 4, 8, false);
+  private static final ObjectLayout UNCOMPRESSED = new ObjectLayout(16, 8, 8);
+
+  static class A {
+    boolean a;
+  }
+
+  static class B extends A {
+    boolean b;
+  }
+
+  static class C extends B {
+    boolean c;
+  }
+
+  static class Mixed {
+    byte a;
+    Object b;
+    long c;
+    short d;
+    int e;
+  }
+
+  @Test
+  public void instance_noFields() {
+    assertEquals(16, COMPRESSED.sizeOf(new Object()));
+    assertEquals(16, UNCOMPRESSED.sizeOf(new Object()));
+  }
+
+  @Test
+  public void instance_fieldFillsTheHeaderGap() {
+    assertEquals(16, COMPRESSED.sizeOf(Integer.valueOf(1000)));
+    assertEquals(24, UNCOMPRESSED.sizeOf(Integer.valueOf(1000)));
+  }
+
+  @Test
+  public void instance_longIsAligned() {
+    // the long can't start at 12, and nothing else fills the gap before it
+    assertEquals(24, COMPRESSED.sizeOf(Long.valueOf(1000)));
+    assertEquals(24, COMPRESSED_BEFORE_JDK_15.sizeOf(Long.valueOf(1000)));
+  }
+
+  @Test
+  public void instance_fieldsPackedLargestFirst() {
+    // c at 16, e at 12, d at 24, a at 26, b at 28
+    assertEquals(32, COMPRESSED.sizeOf(new Mixed()));
+    // c at 16, e at 24, d at 28, a at 30, b at 32
+    assertEquals(40, UNCOMPRESSED.sizeOf(new Mixed()));
+  }
+
+  @Test
+  public void instance_fieldsFillSuperclassGaps() {
+    // a at 12, b at 13, c at 14
+    assertEquals(16, COMPRESSED.sizeOf(new C()));
+  }
+
+  @Test
+  public void instance_fieldsStartAfterSuperclassFields() {
+    // a at 12, b at 16, c at 20
+    assertEquals(24, COMPRESSED_BEFORE_JDK_15.sizeOf(new C()));
+    assertEquals(16, COMPRESSED_BEFORE_JDK_15.sizeOf(new A()));
+    assertEquals(24, COMPRESSED_BEFORE_JDK_15.sizeOf(new B()));
+    // a at 16, b at 24, c at 32
+    assertEquals(40, new ObjectLayout(16, 8, 8, false).sizeOf(new C()));
+  }
+
+  @Test
+  public void instance_alignment() {
+    ObjectLayout layout = new ObjectLayout(12, 4, 16);
+    assertEquals(16, layout.sizeOf(new Object()));
+    assertEquals(16, layout.sizeOf(Integer.valueOf(1000)));
+    assertEquals(32, layout.sizeOf(Long.valueOf(1000)));
+  }
+
+  @Test
+  public void instanceSize_sameAsSizeOf() {
+    // the fields of C, B, A and Object
+    ImmutableList<int[]> primitiveSizes =
+        ImmutableList.of(new int[] {1}, new int[] {1}, new int[] {1}, new int[0]);
+    int[] referenceCounts = new int[4];
+    assertEquals(16, COMPRESSED.instanceSize(primitiveSizes, referenceCounts));
+    assertEquals(24, COMPRESSED_BEFORE_JDK_15.instanceSize(primitiveSizes, referenceCounts));
+  }
+
+  @Test
+  public void instanceSize_mismatchedClasses() {
+    try {
+      COMPRESSED.instanceSize(ImmutableList.of(new int[] {4}), new int[2]);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void arrays() {
+    // the length follows the header, and the elements start on a word boundary
+    assertEquals(16, COMPRESSED.sizeOf(new byte[0]));
+    assertEquals(24, COMPRESSED.sizeOf(new byte[5]));
+    assertEquals(32, COMPRESSED.sizeOf(new int[3]));
+    assertEquals(24, COMPRESSED.sizeOf(new long[1]));
+    assertEquals(24, COMPRESSED.sizeOf(new Object[2]));
+    assertEquals(24, UNCOMPRESSED.sizeOf(new byte[0]));
+    assertEquals(40, UNCOMPRESSED.sizeOf(new Object[2]));
+  }
+}
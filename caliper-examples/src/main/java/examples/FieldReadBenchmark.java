@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package examples;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Compares ways of reading the reference fields of objects whose class isn't known statically, as
+ * an object graph explorer does: reflection, method handles called with {@code invoke} and with
+ * {@code invokeExact}, and {@code sun.misc.Unsafe}. The handles are kept in an array, so the JIT
+ * can't treat them as constants.
+ */
+public class FieldReadBenchmark {
+  static final class Holder {
+    final Object a;
+    final Object b;
+    final Object c;
+    final Object d;
+
+    Holder(int i) {
+      this.a = i % 2 == 0 ? null : this;
+      this.b = "b";
+      this.c = i % 3 == 0 ? null : "c";
+      this.d = this;
+    }
+  }
+
+  private final Object[] objects = new Object[1000];
+  private Field[] fields;
+  private MethodHandle[] getters;
+  private MethodHandle[] exactGetters;
+  private sun.misc.Unsafe unsafe;
+  private long[] offsets;
+
+  @BeforeExperiment
+  void setUp() throws Exception {
+    for (int i = 0; i < objects.length; i++) {
+      objects[i] = new Holder(i);
+    }
+    fields = Holder.class.getDeclaredFields();
+    getters = new MethodHandle[fields.length];
+    exactGetters = new MethodHandle[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i].setAccessible(true);
+      getters[i] = MethodHandles.lookup().unreflectGetter(fields[i]);
+      exactGetters[i] = getters[i].asType(MethodType.methodType(Object.class, Object.class));
+    }
+    Field theUnsafe = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+    theUnsafe.setAccessible(true);
+    unsafe = (sun.misc.Unsafe) theUnsafe.get(null);
+    offsets = new long[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      offsets[i] = unsafe.objectFieldOffset(fields[i]);
+    }
+  }
+
+  @Benchmark
+  int reflection(int reps) throws Exception {
+    int nonNull = 0;
+    for (int i = 0; i < reps; i++) {
+      for (Object object : objects) {
+        for (Field field : fields) {
+          if (field.get(object) != null) {
+            nonNull++;
+          }
+        }
+      }
+    }
+    return nonNull;
+  }
+
+  @Benchmark
+  int methodHandleInvoke(int reps) throws Throwable {
+    int nonNull = 0;
+    for (int i = 0; i < reps; i++) {
+      for (Object object : objects) {
+        for (MethodHandle getter : getters) {
+          if (getter.invoke(object) != null) {
+            nonNull++;
+          }
+        }
+      }
+    }
+    return nonNull;
+  }
+
+  @Benchmark
+  int methodHandleInvokeExact(int reps) throws Throwable {
+    int nonNull = 0;
+    for (int i = 0; i < reps; i++) {
+      for (Object object : objects) {
+        for (MethodHandle getter : exactGetters) {
+          if ((Object) getter.invokeExact(object) != null) {
+            nonNull++;
+          }
+        }
+      }
+    }
+    return nonNull;
+  }
+
+  @Benchmark
+  int unsafe(int reps) {
+    int nonNull = 0;
+    for (int i = 0; i < reps; i++) {
+      for (Object object : objects) {
+        for (long offset : offsets) {
+          if (unsafe.getObject(object, offset) != null) {
+            nonNull++;
+          }
+        }
+      }
+    }
+    return nonNull;
+  }
+}
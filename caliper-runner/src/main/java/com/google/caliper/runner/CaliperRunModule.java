@@ -19,6 +19,7 @@ package com.google.caliper.runner;
 import com.google.caliper.core.BenchmarkClassModel;
 import com.google.caliper.model.Host;
 import com.google.caliper.runner.experiment.BenchmarkParameters;
+import com.google.caliper.runner.experiment.VmArguments;
 import com.google.caliper.runner.options.CaliperOptions;
 import com.google.caliper.runner.target.Target;
 import com.google.caliper.runner.worker.dryrun.DryRunComponent;
@@ -46,6 +47,12 @@ abstract class CaliperRunModule {
     return benchmarkClass.fillInDefaultParameterValues(options.userParameters());
   }
 
+  @Provides
+  @VmArguments
+  static ImmutableSetMultimap<String, String> provideVmArguments(CaliperOptions options) {
+    return options.vmArguments();
+  }
+
   @Provides
   static BenchmarkClassModel provideBenchmarkClassModel(TargetInfo targetInfo) {
     return targetInfo.benchmarkClassModel();
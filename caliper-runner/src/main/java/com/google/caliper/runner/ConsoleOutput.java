@@ -48,6 +48,14 @@ import java.util.Set;
  * as that is the responsibility of the webapp.
  */
 final class ConsoleOutput implements Closeable {
+  private static final String RUNTIME_DESCRIPTION = "runtime";
+  private static final String CPU_DESCRIPTION = "cpu";
+
+  /**
+   * The wall/CPU time ratio above which the benchmark thread is considered to have been kept off
+   * the CPU (preempted, or waiting) for long enough to distort its results.
+   */
+  private static final double PREEMPTION_WARNING_RATIO = 1.1;
   private final PrintWriter stdout;
 
   private final Set<InstrumentSpec> instrumentSpecs = Sets.newHashSet();
@@ -57,11 +65,17 @@ final class ConsoleOutput implements Closeable {
   private int trialsCompleted = 0;
   private final int numberOfTrials;
   private final Stopwatch stopwatch;
+  private final HeapSweepSummary heapSweepSummary;
 
-  ConsoleOutput(@Stdout PrintWriter stdout, int numberOfTrials, Stopwatch stopwatch) {
+  ConsoleOutput(
+      @Stdout PrintWriter stdout,
+      int numberOfTrials,
+      Stopwatch stopwatch,
+      double heapSweepTolerance) {
     this.stdout = stdout;
     this.numberOfTrials = numberOfTrials;
     this.stopwatch = stopwatch;
+    this.heapSweepSummary = new HeapSweepSummary(heapSweepTolerance);
   }
 
   /** Prints a short message when we observe a trial failure. */
@@ -137,17 +151,48 @@ final class ConsoleOutput implements Closeable {
           quartiles.get(3),
           stats.max());
     }
+    printWallToCpuRatio(result);
 
     instrumentSpecs.add(trial.instrumentSpec());
     Scenario scenario = trial.scenario();
     vmSpecs.add(scenario.vmSpec());
     benchmarkSpecs.add(scenario.benchmarkSpec());
     numMeasurements += trial.measurements().size();
+    heapSweepSummary.addTrial(result);
+  }
+
+  /**
+   * Prints the ratio of the total wall-clock time to the total CPU time of the trial, if both were
+   * measured, even if only CPU time is reported. A ratio well above 1 means the benchmark thread
+   * wasn't running for a good part of the time it was being timed.
+   */
+  private void printWallToCpuRatio(TrialResult result) {
+    double wallNanos = 0;
+    double cpuNanos = 0;
+    for (Measurement measurement : result.getAllMeasurements()) {
+      if (measurement.description().equals(RUNTIME_DESCRIPTION)) {
+        wallNanos += measurement.value().magnitude();
+      } else if (measurement.description().equals(CPU_DESCRIPTION)) {
+        cpuNanos += measurement.value().magnitude();
+      }
+    }
+    if (wallNanos <= 0 || cpuNanos <= 0) {
+      return;
+    }
+    double ratio = wallNanos / cpuNanos;
+    stdout.printf("    wall/cpu: %.2f%n", ratio);
+    if (ratio > PREEMPTION_WARNING_RATIO) {
+      stdout.printf(
+          "    WARNING: The benchmark thread was off the CPU for %.0f%% of the measured time. "
+              + "Results may be distorted by preemption.%n",
+          100 * (1 - 1 / ratio));
+    }
   }
 
   @Override
   public void close() {
     if (trialsCompleted == numberOfTrials) { // if we finished all the trials
+      heapSweepSummary.print(stdout);
       stdout.printf("Collected %d measurements from:%n", numMeasurements);
       stdout.printf("  %d instrument(s)%n", instrumentSpecs.size());
       stdout.printf("  %d virtual machine(s)%n", vmSpecs.size());
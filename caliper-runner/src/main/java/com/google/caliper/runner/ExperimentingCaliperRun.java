@@ -26,16 +26,19 @@ import com.google.caliper.api.SkipThisScenarioException;
 import com.google.caliper.core.BenchmarkClassModel;
 import com.google.caliper.core.InvalidBenchmarkException;
 import com.google.caliper.core.UserCodeException;
-import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Trial;
+import com.google.caliper.runner.config.CaliperConfig;
 import com.google.caliper.runner.experiment.Experiment;
 import com.google.caliper.runner.experiment.ExperimentSelector;
 import com.google.caliper.runner.instrument.Instrument;
 import com.google.caliper.runner.instrument.Instrument.InstrumentedMethod;
 import com.google.caliper.runner.options.CaliperOptions;
+import com.google.caliper.runner.resultprocessor.QueuedResultProcessor;
 import com.google.caliper.runner.target.Target;
 import com.google.caliper.runner.worker.ProxyWorkerException;
 import com.google.caliper.runner.worker.WorkerRunner;
 import com.google.caliper.runner.worker.dryrun.DryRunComponent;
+import com.google.caliper.runner.worker.targetinfo.TargetInfo;
 import com.google.caliper.runner.worker.trial.TrialComponent;
 import com.google.caliper.runner.worker.trial.TrialComponent.TrialRunner;
 import com.google.caliper.runner.worker.trial.TrialExecutor;
@@ -55,6 +58,7 @@ import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 import com.google.common.collect.Queues;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
@@ -67,11 +71,14 @@ import dagger.producers.Producer;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -82,6 +89,10 @@ public final class ExperimentingCaliperRun implements CaliperRun {
 
   private static final Logger logger = Logger.getLogger(ExperimentingCaliperRun.class.getName());
 
+  private static final double DEFAULT_HEAP_SWEEP_TOLERANCE = 0.05;
+
+  private static final int DEFAULT_RESULT_PROCESSOR_QUEUE_SIZE = 64;
+
   private static final AsyncFunction<Throwable, Object> FALLBACK_TO_NULL =
       new AsyncFunction<Throwable, Object>() {
         final ListenableFuture<Object> nullFuture = Futures.immediateFuture(null);
@@ -101,6 +112,14 @@ public final class ExperimentingCaliperRun implements CaliperRun {
   private final ListeningExecutorService trialExecutor;
   private final Provider<DryRunComponent.Builder> dryRunComponentBuilder;
   private final TrialRunner trialRunner;
+  private final Provider<TrialComponent.Builder> trialComponentBuilders;
+  private final CaliperConfig config;
+  // pools for the trials of instruments with their own maxParallelism, created when scheduling
+  private final Map<Instrument, ListeningExecutorService> instrumentTrialExecutors =
+      new LinkedHashMap<>();
+  private final double heapSweepTolerance;
+  private final int resultProcessorQueueSize;
+  private final TargetInfo targetInfo;
 
   @Inject
   @VisibleForTesting
@@ -113,7 +132,9 @@ public final class ExperimentingCaliperRun implements CaliperRun {
       ExperimentSelector selector,
       @TrialExecutor ListeningExecutorService trialExecutor,
       Provider<DryRunComponent.Builder> dryRunComponentBuilder,
-      TrialComponent.Builder trialComponentBuilder) {
+      Provider<TrialComponent.Builder> trialComponentBuilders,
+      CaliperConfig config,
+      TargetInfo targetInfo) {
     this.options = options;
     this.stdout = stdout;
     this.benchmarkClass = benchmarkClass;
@@ -122,7 +143,12 @@ public final class ExperimentingCaliperRun implements CaliperRun {
     this.selector = selector;
     this.trialExecutor = trialExecutor;
     this.dryRunComponentBuilder = dryRunComponentBuilder;
-    this.trialRunner = trialComponentBuilder.trialRunner(trialExecutor);
+    this.trialRunner = trialComponentBuilders.get().trialRunner(trialExecutor);
+    this.trialComponentBuilders = trialComponentBuilders;
+    this.config = config;
+    this.heapSweepTolerance = heapSweepTolerance(config);
+    this.resultProcessorQueueSize = resultProcessorQueueSize(config);
+    this.targetInfo = targetInfo;
   }
 
   @Override
@@ -166,15 +192,20 @@ public final class ExperimentingCaliperRun implements CaliperRun {
     Multimap<InstrumentedMethod, TrialResult> resultsByInstrumentedMethod = HashMultimap.create();
     List<ListenableFuture<TrialResult>> pendingTrials =
         scheduleTrials(experimentsToRun, totalTrials);
-    ConsoleOutput output = new ConsoleOutput(stdout, totalTrials, stopwatch);
+    ConsoleOutput output = new ConsoleOutput(stdout, totalTrials, stopwatch, heapSweepTolerance);
+    ImmutableList<QueuedResultProcessor> queuedResultProcessors = queueResultProcessors();
+    boolean completed = false;
     try {
       // Process results as they complete.
       for (ListenableFuture<TrialResult> trialFuture : inCompletionOrder(pendingTrials)) {
         try {
           TrialResult result = trialFuture.get();
           output.processTrial(result);
-          for (ResultProcessor resultProcessor : resultProcessors) {
-            resultProcessor.processTrial(result.getTrial());
+          // trials that get measurements across trials are processed once they've all completed
+          if (!result.getExperiment().instrumentedMethod().measuresAcrossTrials()) {
+            for (QueuedResultProcessor resultProcessor : queuedResultProcessors) {
+              resultProcessor.processTrial(result.getTrial());
+            }
           }
           resultsByInstrumentedMethod.put(result.getExperiment().instrumentedMethod(), result);
         } catch (ExecutionException e) {
@@ -189,41 +220,114 @@ public final class ExperimentingCaliperRun implements CaliperRun {
           throw new RuntimeException(e);
         }
       }
-      // Allow our instruments to do validation across all trials for a given benchmark
+      // Allow our instruments to do validation across all trials for a given benchmark, separately
+      // for each target since the targets' timers may differ
+      boolean multipleTargets = targetInfo.hosts().size() > 1;
       for (Map.Entry<InstrumentedMethod, Collection<TrialResult>> entry :
           resultsByInstrumentedMethod.asMap().entrySet()) {
         InstrumentedMethod instrumentedMethod = entry.getKey();
-        Optional<String> message =
-            instrumentedMethod.validateMeasurements(measurements(entry.getValue()));
-        if (message.isPresent()) {
-          stdout.printf(
-              "For %s (%s)%n  %s%n",
-              instrumentedMethod.benchmarkMethod().name(),
-              instrumentedMethod.instrument().name(),
-              message.get());
+        for (Map.Entry<Target, Collection<TrialResult>> targetEntry :
+            Multimaps.index(entry.getValue(), TRIAL_RESULT_TARGET).asMap().entrySet()) {
+          Target target = targetEntry.getKey();
+          Iterable<Trial> trials = trials(targetEntry.getValue());
+          if (instrumentedMethod.measuresAcrossTrials()) {
+            ImmutableList<Trial> measuredTrials =
+                instrumentedMethod.addMeasurementsAcrossTrials(ImmutableList.copyOf(trials));
+            for (Trial trial : measuredTrials) {
+              for (QueuedResultProcessor resultProcessor : queuedResultProcessors) {
+                resultProcessor.processTrial(trial);
+              }
+            }
+            trials = measuredTrials;
+          }
+          Optional<String> message =
+              instrumentedMethod.validateTrials(
+                  trials,
+                  targetInfo.nanoTime(target),
+                  targetInfo.threadCpuTime(target));
+          if (message.isPresent()) {
+            stdout.printf(
+                "For %s (%s)%s%n  %s%n",
+                instrumentedMethod.benchmarkMethod().name(),
+                instrumentedMethod.instrument().name(),
+                multipleTargets ? " on " + target.name() : "",
+                message.get());
+          }
         }
       }
+      completed = true;
     } finally {
       shutdownAndAwaitTermination(trialExecutor, 5, SECONDS);
+      for (ListeningExecutorService executor : instrumentTrialExecutors.values()) {
+        shutdownAndAwaitTermination(executor, 5, SECONDS);
+      }
+      if (!completed) {
+        for (QueuedResultProcessor resultProcessor : queuedResultProcessors) {
+          resultProcessor.abandon();
+        }
+      }
       output.close();
     }
 
-    for (ResultProcessor resultProcessor : resultProcessors) {
+    // closing waits for each processor to finish with the trials still queued for it
+    for (QueuedResultProcessor resultProcessor : queuedResultProcessors) {
       try {
         resultProcessor.close();
       } catch (IOException e) {
-        logger.log(WARNING, "Could not close a result processor: " + resultProcessor, e);
+        logger.log(
+            WARNING, "Could not close a result processor: " + resultProcessor.processor(), e);
       }
     }
+    if (!queuedResultProcessors.isEmpty()) {
+      stdout.println("Result processors:");
+      for (QueuedResultProcessor resultProcessor : queuedResultProcessors) {
+        stdout.println("  " + resultProcessor.report());
+      }
+      stdout.flush();
+    }
   }
 
-  private static Iterable<ImmutableList<Measurement>> measurements(Iterable<TrialResult> results) {
+  /**
+   * Puts each result processor behind a queue of its own, so that trial results are handled as they
+   * complete however long the processors take with them.
+   */
+  private ImmutableList<QueuedResultProcessor> queueResultProcessors() {
+    ImmutableList.Builder<QueuedResultProcessor> queued = ImmutableList.builder();
+    for (ResultProcessor resultProcessor : resultProcessors) {
+      queued.add(new QueuedResultProcessor(resultProcessor, resultProcessorQueueSize));
+    }
+    return queued.build();
+  }
+
+  private static int resultProcessorQueueSize(CaliperConfig config) {
+    String queueSize = config.properties().get(QueuedResultProcessor.CAPACITY_OPTION);
+    return queueSize == null
+        ? DEFAULT_RESULT_PROCESSOR_QUEUE_SIZE
+        : QueuedResultProcessor.parseCapacity(queueSize);
+  }
+
+  private static double heapSweepTolerance(CaliperConfig config) {
+    String tolerance = config.properties().get(HeapSweepSummary.TOLERANCE_OPTION);
+    return tolerance == null
+        ? DEFAULT_HEAP_SWEEP_TOLERANCE
+        : HeapSweepSummary.parseTolerance(tolerance);
+  }
+
+  private static final Function<TrialResult, Target> TRIAL_RESULT_TARGET =
+      new Function<TrialResult, Target>() {
+        @Override
+        public Target apply(TrialResult result) {
+          return result.getExperiment().target();
+        }
+      };
+
+  private static Iterable<Trial> trials(Iterable<TrialResult> results) {
     return Iterables.transform(
         results,
-        new Function<TrialResult, ImmutableList<Measurement>>() {
+        new Function<TrialResult, Trial>() {
           @Override
-          public ImmutableList<Measurement> apply(TrialResult result) {
-            return result.getTrial().measurements();
+          public Trial apply(TrialResult result) {
+            return result.getTrial();
           }
         });
   }
@@ -257,6 +361,9 @@ public final class ExperimentingCaliperRun implements CaliperRun {
                       }
                     }));
     stdout.println("  User parameters:   " + selector.userParameters());
+    if (!selector.vmArguments().isEmpty()) {
+      stdout.println("  VM arguments:   " + selector.vmArguments());
+    }
     stdout.println(
         "  Target VMs:  "
             + FluentIterable.from(selector.targets())
@@ -274,7 +381,9 @@ public final class ExperimentingCaliperRun implements CaliperRun {
    * Schedule all the trials.
    *
    * <p>This method arranges all the trials to run according to their scheduling criteria. The trial
-   * executor instance is responsible for enforcing max parallelism.
+   * executor instance is responsible for enforcing max parallelism. Parallel trials of instruments
+   * with their own {@code instrument.<name>.maxParallelism} run on a pool of that size instead, so
+   * that, for example, allocation trials can use every core while the shared limit stays low.
    */
   private List<ListenableFuture<TrialResult>> scheduleTrials(
       ImmutableSet<Experiment> experimentsToRun, int totalTrials) {
@@ -282,16 +391,21 @@ public final class ExperimentingCaliperRun implements CaliperRun {
     List<Producer<TrialResult>> serialTrials = Lists.newArrayList();
     /** This is 1-indexed because it's only used for display to users. E.g. "Trial 1 of 27" */
     int trialNumber = 1;
+    Map<Instrument, TrialRunner> instrumentTrialRunners = new HashMap<>();
     for (int i = 0; i < options.trialsPerScenario(); i++) {
       for (Experiment experiment : experimentsToRun) {
-        Producer<TrialResult> trialResultProducer =
-            trialRunner.trialResultProducer(experiment, trialNumber++);
         switch (experiment.getTrialSchedulingPolicy()) {
           case PARALLEL:
-            pendingTrials.add(trialResultProducer.get());
+            Instrument instrument = experiment.instrumentedMethod().instrument();
+            TrialRunner runner = instrumentTrialRunners.get(instrument);
+            if (runner == null) {
+              runner = parallelTrialRunner(instrument);
+              instrumentTrialRunners.put(instrument, runner);
+            }
+            pendingTrials.add(runner.trialResultProducer(experiment, trialNumber++).get());
             break;
           case SERIAL:
-            serialTrials.add(trialResultProducer);
+            serialTrials.add(trialRunner.trialResultProducer(experiment, trialNumber++));
             break;
         }
       }
@@ -319,6 +433,29 @@ public final class ExperimentingCaliperRun implements CaliperRun {
     return pendingTrials;
   }
 
+  /**
+   * Returns the {@link TrialRunner} for the parallel trials of the given instrument: one with its
+   * own pool if the instrument has its own {@code maxParallelism}, or the shared one otherwise.
+   */
+  private TrialRunner parallelTrialRunner(Instrument instrument) {
+    if (!config.getConfiguredInstruments().contains(instrument.name())) {
+      return trialRunner;
+    }
+    Optional<Integer> maxParallelism =
+        config.getInstrumentConfig(instrument.name()).maxParallelism();
+    if (!maxParallelism.isPresent()) {
+      return trialRunner;
+    }
+    logger.fine(
+        String.format(
+            "Running up to %d trials of instrument %s in parallel",
+            maxParallelism.get(), instrument.name()));
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(maxParallelism.get()));
+    instrumentTrialExecutors.put(instrument, executor);
+    return trialComponentBuilders.get().trialRunner(executor);
+  }
+
   /**
    * Attempts to run each given experiment once on the target for that experiment. Returns a set of
    * all of the experiments that didn't throw a {@link SkipThisScenarioException}.
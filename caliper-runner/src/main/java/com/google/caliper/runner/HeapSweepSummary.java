@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner;
+
+import com.google.caliper.model.Measurement;
+import com.google.caliper.runner.config.InvalidConfigurationException;
+import com.google.caliper.runner.experiment.Experiment;
+import com.google.caliper.runner.experiment.VmArgumentDimensions;
+import com.google.caliper.runner.worker.trial.TrialResult;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.math.Quantiles;
+import com.google.common.primitives.Doubles;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summarizes runtime results for runs that sweep over heap sizes ({@code -Jheap=...}): for each
+ * combination of everything else (notably the collector), prints the throughput at each heap size
+ * and marks the smallest heap whose throughput is within a tolerance of the best one.
+ */
+final class HeapSweepSummary {
+  /** The name of the setting for the tolerance, as a percentage. */
+  static final String TOLERANCE_OPTION = "runner.heapSweepTolerance";
+
+  private static final String RUNTIME_DESCRIPTION = "runtime";
+
+  private final double tolerance;
+  // description of all other experiment dimensions -> heap size -> ns per rep
+  private final Map<String, ListMultimap<String, Double>> curves = Maps.newLinkedHashMap();
+
+  /**
+   * Parses the {@code runner.heapSweepTolerance} setting: a percentage that is at least 0 and less
+   * than 100.
+   *
+   * @throws InvalidConfigurationException if the setting isn't such a percentage
+   */
+  static double parseTolerance(String percentage) {
+    try {
+      double tolerance = Double.parseDouble(percentage.trim());
+      if (tolerance >= 0 && tolerance < 100) {
+        return tolerance / 100;
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    throw new InvalidConfigurationException(
+        String.format(
+            "Invalid value for %s: %s. It must be a percentage from 0 up to but not including 100.",
+            TOLERANCE_OPTION, percentage));
+  }
+
+  /**
+   * @param tolerance the fraction (e.g. 0.05) by which the throughput of the chosen heap size may
+   *     fall short of the best throughput
+   */
+  HeapSweepSummary(double tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  void addTrial(TrialResult result) {
+    Experiment experiment = result.getExperiment();
+    String heap = experiment.vmArguments().get(VmArgumentDimensions.HEAP);
+    if (heap == null) {
+      return;
+    }
+    String curveName = curveName(experiment);
+    ListMultimap<String, Double> curve = curves.get(curveName);
+    if (curve == null) {
+      curve = ArrayListMultimap.create();
+      curves.put(curveName, curve);
+    }
+    for (Measurement measurement : result.getAllMeasurements()) {
+      if (measurement.description().equals(RUNTIME_DESCRIPTION)) {
+        curve.put(heap, measurement.value().magnitude() / measurement.weight());
+      }
+    }
+  }
+
+  private static String curveName(Experiment experiment) {
+    Map<String, String> otherVmArguments =
+        Maps.filterKeys(
+            experiment.vmArguments(),
+            new Predicate<String>() {
+              @Override
+              public boolean apply(String name) {
+                return !name.equals(VmArgumentDimensions.HEAP);
+              }
+            });
+    return String.format(
+        "%s %s on %s%s",
+        experiment.instrumentedMethod().benchmarkMethod().name(),
+        experiment.userParameters(),
+        experiment.target().name(),
+        otherVmArguments.isEmpty() ? "" : " " + otherVmArguments);
+  }
+
+  /**
+   * Prints the throughput curve of each combination that was measured with at least two heap
+   * sizes; with a single heap size there's nothing to choose between.
+   */
+  void print(PrintWriter stdout) {
+    Map<String, ListMultimap<String, Double>> sweeps =
+        Maps.filterValues(
+            curves,
+            new Predicate<ListMultimap<String, Double>>() {
+              @Override
+              public boolean apply(ListMultimap<String, Double> curve) {
+                return curve.keySet().size() > 1;
+              }
+            });
+    if (sweeps.isEmpty()) {
+      return;
+    }
+    stdout.printf(
+        "Throughput by heap size (reps/s; * marks the smallest heap within %.1f%% of the best):%n",
+        tolerance * 100);
+    for (Map.Entry<String, ListMultimap<String, Double>> entry : sweeps.entrySet()) {
+      // order by heap size, not by the string used to specify it
+      TreeMap<Long, String> heapsBySize = Maps.newTreeMap();
+      Map<String, Double> throughputs = Maps.newHashMap();
+      for (Map.Entry<String, List<Double>> heap :
+          Multimaps.asMap(entry.getValue()).entrySet()) {
+        heapsBySize.put(VmArgumentDimensions.heapSizeBytes(heap.getKey()), heap.getKey());
+        double nanosPerRep = Quantiles.median().compute(Doubles.toArray(heap.getValue()));
+        throughputs.put(heap.getKey(), 1e9 / nanosPerRep);
+      }
+      double best = Ordering.natural().max(throughputs.values());
+      String chosen = null;
+      for (String heap : heapsBySize.values()) {
+        if (throughputs.get(heap) >= best * (1 - tolerance)) {
+          chosen = heap;
+          break;
+        }
+      }
+      stdout.printf("  %s%n", entry.getKey());
+      for (String heap : heapsBySize.values()) {
+        stdout.printf(
+            "    %-6s %12.4g%s%n", heap, throughputs.get(heap), heap.equals(chosen) ? " *" : "");
+      }
+    }
+    stdout.println();
+  }
+}
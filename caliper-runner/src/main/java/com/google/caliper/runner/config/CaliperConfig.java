@@ -168,6 +168,10 @@ public final class CaliperConfig {
     if (executable != null) {
       builder.executable(executable);
     }
+    String jit = vmMap.containsKey("jit") ? vmMap.get("jit") : vmGroupMap.get("jit");
+    if (jit != null) {
+      builder.jitProfile(JitProfile.of(jit));
+    }
     return builder.addAllArgs(getVmArgs()).addAllArgs(getArgs(vmMap)).build();
   }
 
@@ -212,10 +216,37 @@ public final class CaliperConfig {
     ImmutableMap<String, String> instrumentMap = subgroupMap(instrumentGroupMap, name);
     @Nullable String className = instrumentMap.get("class");
     checkArgument(className != null, "no instrument configured named %s", name);
-    return new InstrumentConfig.Builder()
-        .className(className)
-        .addAllOptions(subgroupMap(instrumentMap, "options"))
-        .build();
+    InstrumentConfig.Builder builder =
+        new InstrumentConfig.Builder()
+            .className(className)
+            .addAllOptions(subgroupMap(instrumentMap, "options"));
+    String maxParallelism = instrumentMap.get("maxParallelism");
+    if (!Strings.isNullOrEmpty(maxParallelism)) {
+      builder.maxParallelism(parseParallelism("instrument." + name, maxParallelism));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Parses a parallelism setting, which is either a positive number or {@code ncpu} for the number
+   * of processors available to the runner.
+   */
+  private static int parseParallelism(String prefix, String value) {
+    if (value.trim().equalsIgnoreCase("ncpu")) {
+      return Runtime.getRuntime().availableProcessors();
+    }
+    try {
+      int parallelism = Integer.parseInt(value.trim());
+      if (parallelism > 0) {
+        return parallelism;
+      }
+    } catch (NumberFormatException e) {
+      // fall through to the error below
+    }
+    throw new InvalidConfigurationException(
+        String.format(
+            "Invalid value for %s.maxParallelism: %s. It must be a positive number or \"ncpu\".",
+            prefix, value));
   }
 
   public ImmutableSet<Class<? extends ResultProcessor>> getConfiguredResultProcessors() {
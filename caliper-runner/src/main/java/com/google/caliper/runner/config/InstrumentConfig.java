@@ -16,12 +16,14 @@
 
 package com.google.caliper.runner.config;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.caliper.model.InstrumentSpec;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import javax.annotation.concurrent.Immutable;
@@ -35,10 +37,12 @@ import javax.annotation.concurrent.Immutable;
 public final class InstrumentConfig {
   private final String className;
   private final ImmutableMap<String, String> options;
+  private final Optional<Integer> maxParallelism;
 
   private InstrumentConfig(Builder builder) {
     this.className = builder.className;
     this.options = builder.optionsBuilder.buildOrThrow();
+    this.maxParallelism = builder.maxParallelism;
   }
 
   public String className() {
@@ -49,13 +53,23 @@ public final class InstrumentConfig {
     return options;
   }
 
+  /**
+   * Returns the maximum number of this instrument's parallelizable trials that may run at once, if
+   * it has its own limit rather than sharing the runner's.
+   */
+  public Optional<Integer> maxParallelism() {
+    return maxParallelism;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (obj == this) {
       return true;
     } else if (obj instanceof InstrumentConfig) {
       InstrumentConfig that = (InstrumentConfig) obj;
-      return this.className.equals(that.className) && this.options.equals(that.options);
+      return this.className.equals(that.className)
+          && this.options.equals(that.options)
+          && this.maxParallelism.equals(that.maxParallelism);
     } else {
       return false;
     }
@@ -63,7 +77,7 @@ public final class InstrumentConfig {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(className, options);
+    return Objects.hashCode(className, options, maxParallelism);
   }
 
   @Override
@@ -71,12 +85,14 @@ public final class InstrumentConfig {
     return MoreObjects.toStringHelper(this)
         .add("className", className)
         .add("options", options)
+        .add("maxParallelism", maxParallelism.orNull())
         .toString();
   }
 
   static final class Builder {
     private String className;
     private final ImmutableMap.Builder<String, String> optionsBuilder = ImmutableMap.builder();
+    private Optional<Integer> maxParallelism = Optional.absent();
 
     public Builder className(String className) {
       this.className = checkNotNull(className);
@@ -97,6 +113,12 @@ public final class InstrumentConfig {
       return this;
     }
 
+    public Builder maxParallelism(int maxParallelism) {
+      checkArgument(maxParallelism > 0, "maxParallelism (%s) must be positive", maxParallelism);
+      this.maxParallelism = Optional.of(maxParallelism);
+      return this;
+    }
+
     public InstrumentConfig build() {
       checkState(className != null);
       return new InstrumentConfig(this);
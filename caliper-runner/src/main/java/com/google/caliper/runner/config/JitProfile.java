@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.config;
+
+/**
+ * Enumeration of the JIT compiler configurations that trials can be run with.
+ *
+ * <p>Set with {@code vm.jit} (for all VMs) or {@code vm.<name>.jit} (for a single VM), e.g. {@code
+ * -Cvm.jit=production} on the command line.
+ */
+public enum JitProfile {
+  /**
+   * Compilation is done serially, in the foreground and with a single compiler so that the
+   * measuring thread never races the compiler. This is the default.
+   */
+  BENCHMARK,
+  /**
+   * The VM's own compilation settings (tiered, background compilation, default collector) are left
+   * intact, so that results reflect what production VMs see. Warmup is only considered complete
+   * once compilation activity has died down.
+   */
+  PRODUCTION;
+
+  /** Gets the {@link JitProfile} for the given {@code jit} field string. */
+  public static JitProfile of(String profile) {
+    switch (profile) {
+      case "benchmark":
+        return BENCHMARK;
+      case "production":
+        return PRODUCTION;
+      default:
+        throw new InvalidConfigurationException("Invalid JIT profile: " + profile);
+    }
+  }
+
+  final String name;
+
+  JitProfile() {
+    this.name = name().toLowerCase();
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -34,7 +34,7 @@ public abstract class VmConfig {
 
   /** Returns a new builder for {@link VmConfig} instances. */
   public static Builder builder() {
-    return new AutoValue_VmConfig.Builder();
+    return new AutoValue_VmConfig.Builder().jitProfile(JitProfile.BENCHMARK);
   }
 
   /** The name of this VM configuration. */
@@ -55,6 +55,9 @@ public abstract class VmConfig {
   /** The arguments specific to this VM configuration. */
   public abstract ImmutableList<String> args();
 
+  /** The JIT compiler configuration that trials on this VM should use. */
+  public abstract JitProfile jitProfile();
+
   /** Builder for creating {@link VmConfig} objects. */
   @AutoValue.Builder
   @VisibleForTesting
@@ -71,6 +74,9 @@ public abstract class VmConfig {
     /** Sets the path for the VM executable. */
     public abstract Builder executable(String executable);
 
+    /** Sets the JIT compiler configuration for trials. */
+    public abstract Builder jitProfile(JitProfile jitProfile);
+
     /** Returns a builder for adding VM args. */
     public abstract ImmutableList.Builder<String> argsBuilder();
 
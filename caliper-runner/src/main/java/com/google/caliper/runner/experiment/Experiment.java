@@ -17,12 +17,14 @@
 package com.google.caliper.runner.experiment;
 
 import com.google.auto.value.AutoValue;
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.bridge.ExperimentSpec;
 import com.google.caliper.model.BenchmarkSpec;
 import com.google.caliper.runner.instrument.Instrument.InstrumentedMethod;
 import com.google.caliper.runner.target.Target;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import java.util.Map;
 
@@ -34,16 +36,33 @@ import java.util.Map;
  */
 @AutoValue
 public abstract class Experiment {
+  private static final String EPSILON_GC_WORKER_OPTION = "epsilonGc";
+
+  /** Creates a new {@link Experiment} with no VM argument choices. */
+  public static Experiment create(
+      int id,
+      InstrumentedMethod instrumentedMethod,
+      Map<String, String> userParameters,
+      Target target) {
+    return create(
+        id, instrumentedMethod, userParameters, ImmutableMap.<String, String>of(), target);
+  }
 
   /** Creates a new {@link Experiment}. */
   public static Experiment create(
       int id,
       InstrumentedMethod instrumentedMethod,
       Map<String, String> userParameters,
+      Map<String, String> vmArguments,
       Target target) {
     BenchmarkSpec benchmarkSpec = createBenchmarkSpec(instrumentedMethod, userParameters);
     return new AutoValue_Experiment(
-        id, instrumentedMethod, ImmutableSortedMap.copyOf(userParameters), target, benchmarkSpec);
+        id,
+        instrumentedMethod,
+        ImmutableSortedMap.copyOf(userParameters),
+        ImmutableSortedMap.copyOf(vmArguments),
+        target,
+        benchmarkSpec);
   }
 
   /**
@@ -60,6 +79,12 @@ public abstract class Experiment {
   /** Returns the selection of user parameter values for this experiment. */
   public abstract ImmutableSortedMap<String, String> userParameters();
 
+  /**
+   * Returns the selection of VM argument choices (e.g. {@code gc=G1}, {@code heap=1g}) for this
+   * experiment.
+   */
+  public abstract ImmutableSortedMap<String, String> vmArguments();
+
   /** Returns the target this experiment is to be run on. */
   public abstract Target target();
 
@@ -73,12 +98,47 @@ public abstract class Experiment {
         : TrialSchedulingPolicy.SERIAL;
   }
 
-  /** Returns an {@link ExperimentSpec} representing this experiment. */
-  public final ExperimentSpec toExperimentSpec() {
+  /** Returns the VM args that implement this experiment's {@linkplain #vmArguments() choices}. */
+  public final ImmutableList<String> vmArgs() {
+    return VmArgumentDimensions.toVmArgs(vmArguments());
+  }
+
+  /**
+   * Returns a copy of this experiment with the given VM argument choices added to its own.
+   *
+   * @throws IllegalArgumentException if this experiment already has a choice for one of the given
+   *     dimensions
+   */
+  public final Experiment withVmArguments(Map<String, String> additionalVmArguments) {
+    return create(
+        id(),
+        instrumentedMethod(),
+        userParameters(),
+        ImmutableMap.<String, String>builder()
+            .putAll(vmArguments())
+            .putAll(additionalVmArguments)
+            .buildOrThrow(),
+        target());
+  }
+
+  /**
+   * Returns an {@link ExperimentSpec} representing this experiment, for a worker on this
+   * experiment's target, whose {@link System#nanoTime()} has the given characteristics.
+   */
+  public final ExperimentSpec toExperimentSpec(ClockCharacteristics nanoTime) {
+    ImmutableMap<String, String> workerOptions = instrumentedMethod().workerOptions(nanoTime);
+    if (VmArgumentDimensions.selectsEpsilon(vmArguments())) {
+      // lets the worker keep its allocation within the heap, since nothing will be reclaimed
+      workerOptions =
+          ImmutableMap.<String, String>builder()
+              .putAll(workerOptions)
+              .put(EPSILON_GC_WORKER_OPTION, "true")
+              .buildKeepingLast();
+    }
     return new ExperimentSpec(
         id(),
         instrumentedMethod().type(),
-        instrumentedMethod().workerOptions(),
+        workerOptions,
         benchmarkSpec(),
         ImmutableList.copyOf(instrumentedMethod().benchmarkMethod().parameterTypes()));
   }
@@ -94,11 +154,15 @@ public abstract class Experiment {
 
   @Override
   public String toString() {
-    return MoreObjects.toStringHelper("")
-        .add("instrument", instrumentedMethod().instrument())
-        .add("benchmarkMethod", instrumentedMethod().benchmarkMethod().name())
-        .add("target", target().name())
-        .add("parameters", userParameters())
-        .toString();
+    MoreObjects.ToStringHelper helper =
+        MoreObjects.toStringHelper("")
+            .add("instrument", instrumentedMethod().instrument())
+            .add("benchmarkMethod", instrumentedMethod().benchmarkMethod().name())
+            .add("target", target().name())
+            .add("parameters", userParameters());
+    if (!vmArguments().isEmpty()) {
+      helper.add("vmArguments", vmArguments());
+    }
+    return helper.toString();
   }
 }
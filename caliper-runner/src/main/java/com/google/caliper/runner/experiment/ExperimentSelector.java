@@ -34,21 +34,24 @@ import javax.inject.Inject;
 
 /**
  * A set of {@link Experiment experiments} constructed by taking all possible combinations of
- * instruments, benchmark methods, user parameters and targets.
+ * instruments, benchmark methods, user parameters, targets and VM argument choices.
  */
 public final class ExperimentSelector {
   private final ImmutableSet<InstrumentedMethod> instrumentedMethods;
   private final ImmutableSet<Target> targets;
   private final ImmutableSetMultimap<String, String> userParameters;
+  private final ImmutableSetMultimap<String, String> vmArguments;
 
   @Inject
   ExperimentSelector(
       ImmutableSet<InstrumentedMethod> instrumentedMethods,
       ImmutableSet<Target> targets,
-      @BenchmarkParameters ImmutableSetMultimap<String, String> userParameters) {
+      @BenchmarkParameters ImmutableSetMultimap<String, String> userParameters,
+      @VmArguments ImmutableSetMultimap<String, String> vmArguments) {
     this.instrumentedMethods = instrumentedMethods;
     this.targets = targets;
     this.userParameters = userParameters;
+    this.vmArguments = vmArguments;
   }
 
   // TODO(gak): put this someplace more sensible
@@ -75,16 +78,26 @@ public final class ExperimentSelector {
     return userParameters;
   }
 
+  /** Returns the VM argument dimensions (e.g. {@code gc} or {@code heap}) being swept over. */
+  public ImmutableSetMultimap<String, String> vmArguments() {
+    return vmArguments;
+  }
+
   /** Returns the full set of experiments to be run. */
   public ImmutableSet<Experiment> selectExperiments() {
     ImmutableSet.Builder<Experiment> experiments = ImmutableSet.builder();
     int id = 1;
     for (InstrumentedMethod instrumentedMethod : instrumentedMethods) {
       for (Target target : targets) {
-        for (List<String> userParamsChoice : cartesian(userParameters)) {
-          ImmutableMap<String, String> theseUserParams =
-              zip(userParameters.keySet(), userParamsChoice);
-          experiments.add(Experiment.create(id++, instrumentedMethod, theseUserParams, target));
+        // each combination of VM argument choices is effectively a distinct target
+        for (List<String> vmArgsChoice : cartesian(vmArguments)) {
+          ImmutableMap<String, String> theseVmArgs = zip(vmArguments.keySet(), vmArgsChoice);
+          for (List<String> userParamsChoice : cartesian(userParameters)) {
+            ImmutableMap<String, String> theseUserParams =
+                zip(userParameters.keySet(), userParamsChoice);
+            experiments.add(
+                Experiment.create(id++, instrumentedMethod, theseUserParams, theseVmArgs, target));
+          }
         }
       }
     }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.experiment;
+
+import com.google.common.base.Ascii;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Translates the choices for named VM argument dimensions into the VM args that implement them.
+ *
+ * <p>Two dimensions are understood specially:
+ *
+ * <ul>
+ *   <li>{@code gc} selects the garbage collector by name, e.g. {@code G1}, {@code Parallel}, {@code
+ *       Serial}, {@code Z} (or {@code ZGC}), {@code Shenandoah} or {@code Epsilon}.
+ *   <li>{@code heap} sets both the initial and maximum heap size, e.g. {@code 512m} or {@code 4g}.
+ * </ul>
+ *
+ * <p>The value of any other dimension is taken to be a space-separated list of VM args, e.g. {@code
+ * -Jmemory='-Xms32m -Xmx32m,-Xms512m -Xmx512m'}.
+ */
+public final class VmArgumentDimensions {
+  private VmArgumentDimensions() {}
+
+  /** The name of the dimension that selects the garbage collector. */
+  public static final String GC = "gc";
+
+  /** The name of the dimension that selects the heap size. */
+  public static final String HEAP = "heap";
+
+  private static final Pattern HEAP_SIZE_PATTERN = Pattern.compile("(\\d+)([kKmMgG]?)");
+
+  /** Returns the VM args for the given choices of VM argument dimensions. */
+  public static ImmutableList<String> toVmArgs(Map<String, String> vmArguments) {
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+    for (Map.Entry<String, String> entry : vmArguments.entrySet()) {
+      switch (entry.getKey()) {
+        case GC:
+          args.addAll(collectorArgs(entry.getValue()));
+          break;
+        case HEAP:
+          args.add("-Xms" + entry.getValue(), "-Xmx" + entry.getValue());
+          break;
+        default:
+          args.addAll(
+              Splitter.on(CharMatcher.whitespace())
+                  .omitEmptyStrings()
+                  .split(entry.getValue()));
+      }
+    }
+    return args.build();
+  }
+
+  /** Returns whether the given choices include an explicit choice of garbage collector. */
+  public static boolean selectsCollector(Map<String, String> vmArguments) {
+    return vmArguments.containsKey(GC);
+  }
+
+  /**
+   * Returns whether the given choices select the Epsilon collector, which never reclaims memory.
+   */
+  public static boolean selectsEpsilon(Map<String, String> vmArguments) {
+    String collector = vmArguments.get(GC);
+    return collector != null && collectorArgs(collector).contains("-XX:+UseEpsilonGC");
+  }
+
+  private static ImmutableList<String> collectorArgs(String collector) {
+    String name =
+        collector.length() > 2 && Ascii.toUpperCase(collector).endsWith("GC")
+            ? collector.substring(0, collector.length() - 2)
+            : collector;
+    switch (Ascii.toLowerCase(name)) {
+      case "g1":
+        return ImmutableList.of("-XX:+UseG1GC");
+      case "parallel":
+        return ImmutableList.of("-XX:+UseParallelGC");
+      case "serial":
+        return ImmutableList.of("-XX:+UseSerialGC");
+      case "z":
+        return ImmutableList.of("-XX:+UseZGC");
+      case "cms":
+      case "concmarksweep":
+        return ImmutableList.of("-XX:+UseConcMarkSweepGC");
+      case "shenandoah":
+        return ImmutableList.of("-XX:+UseShenandoahGC");
+      case "epsilon":
+        return ImmutableList.of("-XX:+UnlockExperimentalVMOptions", "-XX:+UseEpsilonGC");
+      default:
+        return ImmutableList.of("-XX:+Use" + name + "GC");
+    }
+  }
+
+  /**
+   * Returns the number of bytes represented by the given heap size.
+   *
+   * @throws IllegalArgumentException if the heap size is not of a form such as {@code 512m}
+   */
+  public static long heapSizeBytes(String heapSize) {
+    Matcher matcher = HEAP_SIZE_PATTERN.matcher(heapSize);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Invalid heap size: " + heapSize);
+    }
+    long size = Long.parseLong(matcher.group(1));
+    switch (Ascii.toLowerCase(matcher.group(2))) {
+      case "k":
+        return size << 10;
+      case "m":
+        return size << 20;
+      case "g":
+        return size << 30;
+      default:
+        return size;
+    }
+  }
+}
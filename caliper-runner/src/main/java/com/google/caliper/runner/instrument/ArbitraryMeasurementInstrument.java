@@ -127,6 +127,11 @@ public final class ArbitraryMeasurementInstrument extends Instrument {
       return ImmutableList.copyOf(measurement.asSet());
     }
 
+    @Override
+    public ImmutableList<Measurement> getUnreportedMeasurements() {
+      return ImmutableList.of();
+    }
+
     @Override
     public void visit(StopMeasurementLogMessage logMessage) {
       this.measurement = Optional.of(Iterables.getOnlyElement(logMessage.measurements()));
@@ -20,14 +20,18 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.caliper.bridge.AbstractLogMessageVisitor;
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.bridge.StopMeasurementLogMessage;
 import com.google.caliper.core.BenchmarkClassModel.MethodModel;
 import com.google.caliper.core.InvalidBenchmarkException;
 import com.google.caliper.model.InstrumentSpec;
 import com.google.caliper.model.InstrumentType;
 import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Trial;
 import com.google.caliper.runner.config.VmConfig;
+import com.google.caliper.runner.config.VmType;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
@@ -35,9 +39,11 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.MultimapBuilder;
+import java.util.UUID;
 import javax.inject.Inject;
 
 public abstract class Instrument {
@@ -127,8 +133,53 @@ public abstract class Instrument {
       return options;
     }
 
+    /**
+     * Returns the options to be used in a worker on a target whose {@link System#nanoTime()} has
+     * the given characteristics. Returns {@link #workerOptions()} by default.
+     */
+    public ImmutableMap<String, String> workerOptions(ClockCharacteristics nanoTime) {
+      return workerOptions();
+    }
+
     public abstract MeasurementCollectingVisitor getMeasurementCollectingVisitor();
 
+    /**
+     * Returns the visitor that collects measurements for a trial run on a VM with the given
+     * configuration, on a target whose {@link System#nanoTime()} has the given characteristics.
+     * Subclasses whose collection depends on either (e.g. the VM's {@link VmConfig#jitProfile() JIT
+     * profile}) can override this; by default, both are ignored.
+     */
+    public MeasurementCollectingVisitor getMeasurementCollectingVisitor(
+        VmConfig vmConfig, ClockCharacteristics nanoTime) {
+      return getMeasurementCollectingVisitor();
+    }
+
+    /**
+     * Returns the visitor that collects measurements for the trial with the given ID. Subclasses
+     * whose measurements are read from files the worker writes for the trial (which the worker
+     * names with the same ID) can override this; by default, the ID is ignored.
+     */
+    public MeasurementCollectingVisitor getMeasurementCollectingVisitor(
+        VmConfig vmConfig, ClockCharacteristics nanoTime, UUID trialId) {
+      return getMeasurementCollectingVisitor(vmConfig, nanoTime);
+    }
+
+    /**
+     * Returns choices for named VM argument dimensions (such as {@code gc} or {@code heap}) that
+     * trials of this method should be run with, based on what was measured when it was dry-run.
+     * Returns no choices by default.
+     *
+     * @param vmType the type of VM the trials will be run on
+     * @param javaFeatureVersion the feature version of the Java runtime the dry-run ran on, such as
+     *     8 or 17, or 0 if it isn't known
+     * @param dryRunNanos the time taken by the reps that were dry-run
+     * @param dryRunAllocatedBytes the bytes allocated by the same reps
+     */
+    public ImmutableMap<String, String> trialVmArguments(
+        VmType vmType, int javaFeatureVersion, long dryRunNanos, long dryRunAllocatedBytes) {
+      return ImmutableMap.of();
+    }
+
     /**
      * Subclasses can override this to validate results across all trials for a given instrumented
      * method.
@@ -138,6 +189,69 @@ public abstract class Instrument {
     public Optional<String> validateMeasurements(Iterable<ImmutableList<Measurement>> results) {
       return Optional.absent();
     }
+
+    /**
+     * Validates results across all trials for a given instrumented method on a single target whose
+     * {@link System#nanoTime()} has the given characteristics. Delegates to {@link
+     * #validateMeasurements(Iterable)} by default.
+     */
+    public Optional<String> validateMeasurements(
+        Iterable<ImmutableList<Measurement>> results, ClockCharacteristics nanoTime) {
+      return validateMeasurements(results);
+    }
+
+    /**
+     * Validates the trials for a given instrumented method on a single target whose {@link
+     * System#nanoTime()} has the given characteristics. Unlike {@link
+     * #validateMeasurements(Iterable, ClockCharacteristics)}, this has access to each trial's
+     * scenario, so results can be compared across parameter values. Delegates to {@link
+     * #validateMeasurements(Iterable, ClockCharacteristics)} with the trials' measurements by
+     * default.
+     */
+    public Optional<String> validateTrials(Iterable<Trial> trials, ClockCharacteristics nanoTime) {
+      return validateMeasurements(
+          Iterables.transform(
+              trials,
+              new Function<Trial, ImmutableList<Measurement>>() {
+                @Override
+                public ImmutableList<Measurement> apply(Trial trial) {
+                  return trial.measurements();
+                }
+              }),
+          nanoTime);
+    }
+
+    /**
+     * Validates the trials for a given instrumented method on a single target whose {@link
+     * System#nanoTime()} and thread CPU time clock have the given characteristics. The thread CPU
+     * time clock is absent if the target can't measure thread CPU time. Delegates to {@link
+     * #validateTrials(Iterable, ClockCharacteristics)} by default.
+     */
+    public Optional<String> validateTrials(
+        Iterable<Trial> trials,
+        ClockCharacteristics nanoTime,
+        Optional<ClockCharacteristics> threadCpuTime) {
+      return validateTrials(trials, nanoTime);
+    }
+
+    /**
+     * Returns whether {@link #addMeasurementsAcrossTrials} adds measurements to the trials of this
+     * method, in which case the trials are only given to result processors once all of them have
+     * completed. Returns {@code false} by default.
+     */
+    public boolean measuresAcrossTrials() {
+      return false;
+    }
+
+    /**
+     * Returns the trials for a given instrumented method on a single target, with any measurements
+     * that can only be computed from all of them (such as how a measurement grows with a parameter)
+     * added. Only called if {@link #measuresAcrossTrials()}. Returns the trials unchanged by
+     * default.
+     */
+    public ImmutableList<Trial> addMeasurementsAcrossTrials(ImmutableList<Trial> trials) {
+      return trials;
+    }
   }
 
   public final ImmutableMap<String, String> options() {
@@ -223,6 +337,11 @@ public abstract class Instrument {
       return ImmutableList.copyOf(measurementsByDescription.values());
     }
 
+    @Override
+    public ImmutableList<Measurement> getUnreportedMeasurements() {
+      return ImmutableList.of();
+    }
+
     @Override
     public ImmutableList<String> getMessages() {
       return ImmutableList.of();
@@ -30,6 +30,13 @@ public interface MeasurementCollectingVisitor extends LogMessageVisitor {
   /** Returns the collected measurements. */
   ImmutableList<Measurement> getMeasurements();
 
+  /**
+   * Returns measurements that were collected to run the trial but are left out of its results,
+   * such as the runtime when only CPU time is reported. They're still available to summaries of
+   * the run.
+   */
+  ImmutableList<Measurement> getUnreportedMeasurements();
+
   /**
    * Returns all the messages created while collecting measurments.
    *
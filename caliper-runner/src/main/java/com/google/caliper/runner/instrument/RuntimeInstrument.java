@@ -27,6 +27,7 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import com.google.caliper.Benchmark;
 import com.google.caliper.api.Macrobenchmark;
 import com.google.caliper.bridge.AbstractLogMessageVisitor;
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.bridge.GcLogMessage;
 import com.google.caliper.bridge.HotspotLogMessage;
 import com.google.caliper.bridge.StartMeasurementLogMessage;
@@ -35,16 +36,28 @@ import com.google.caliper.core.BenchmarkClassModel.MethodModel;
 import com.google.caliper.core.InvalidBenchmarkException;
 import com.google.caliper.model.InstrumentType;
 import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.Value;
+import com.google.caliper.runner.config.InvalidConfigurationException;
+import com.google.caliper.runner.config.JitProfile;
 import com.google.caliper.runner.config.SupportsVmType;
+import com.google.caliper.runner.config.VmConfig;
 import com.google.caliper.runner.config.VmType;
+import com.google.caliper.runner.experiment.VmArgumentDimensions;
 import com.google.caliper.util.ShortDuration;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ascii;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.math.Quantiles;
+import com.google.common.math.Stats;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.util.List;
@@ -57,18 +70,87 @@ import javax.inject.Inject;
 public class RuntimeInstrument extends Instrument {
   private static final String SUGGEST_GRANULARITY_OPTION = "suggestGranularity";
   private static final String TIMING_INTERVAL_OPTION = "timingInterval";
+  private static final String COMPILATION_QUIET_PERIOD_OPTION = "compilationQuietPeriod";
+  private static final String EPSILON_GC_OPTION = "epsilonGc";
+  private static final String BASELINE_CORRECTION_OPTION = "baselineCorrection";
+  private static final String CPU_TIME_OPTION = "cpuTime";
+  private static final String ALLOCATED_BYTES_OPTION = "allocatedBytes";
+  private static final String GC_STATS_OPTION = "gcStats";
+
+  private static final String RUNTIME = "runtime";
+  private static final String RUNTIME_BASELINE = "runtime-baseline";
+  private static final String RUNTIME_CORRECTED = "runtime-corrected";
+  private static final String CPU = "cpu";
+
+  /** Whether the CPU time of the benchmark thread is reported along with or instead of runtime. */
+  private enum CpuTimeMode {
+    OFF,
+    ALSO,
+    INSTEAD;
+
+    static CpuTimeMode of(@Nullable String value) {
+      if (value == null) {
+        return OFF;
+      }
+      try {
+        return valueOf(Ascii.toUpperCase(value));
+      } catch (IllegalArgumentException e) {
+        throw new InvalidConfigurationException(
+            String.format(
+                "Invalid value for the %s option: %s (must be off, also or instead)",
+                CPU_TIME_OPTION, value));
+      }
+    }
+
+    @Override
+    public String toString() {
+      return Ascii.toLowerCase(name());
+    }
+  }
+
+  /**
+   * How many times the allocation projected from the dry-run the heap is sized for when running
+   * with the Epsilon collector, since the reps of each measurement vary around the timing interval.
+   */
+  private static final int EPSILON_HEAP_SAFETY_FACTOR = 2;
+
+  /**
+   * How long the dry-run measures a benchmark's steady-state allocation rate for when running with
+   * the Epsilon collector.
+   */
+  private static final ShortDuration EPSILON_DRY_RUN_DURATION = ShortDuration.of(200, MILLISECONDS);
+
+  /** The first Java release that has the Epsilon collector. */
+  private static final int EPSILON_JAVA_VERSION = 11;
+
+  /** Heap reserved for the worker itself when running with the Epsilon collector. */
+  private static final long EPSILON_HEAP_RESERVE_BYTES = 256L << 20;
 
   private static final Logger logger = Logger.getLogger(RuntimeInstrument.class.getName());
 
-  private final ShortDuration nanoTimeGranularity;
+  /**
+   * The minimum timing interval, as a multiple of the resolution of the target's timer, that keeps
+   * the error from reading the timer below 0.1% of each measurement.
+   */
+  private static final int TIMER_RESOLUTIONS_PER_INTERVAL = 1000;
+
+  // the timer of the runner, for when the characteristics of the target's timer aren't known
+  private final ClockCharacteristics runnerNanoTime;
 
   @VisibleForTesting
   @Inject
   public RuntimeInstrument(@NanoTimeGranularity ShortDuration nanoTimeGranularity) {
-    this.nanoTimeGranularity = nanoTimeGranularity;
+    // the runner's measurement of the granularity includes the latency of reading the timer
+    double granularityNanos = nanoTimeGranularity.to(NANOSECONDS);
+    this.runnerNanoTime = ClockCharacteristics.create(granularityNanos, granularityNanos, true);
     setInstrumentName("runtime"); // default
   }
 
+  /** Returns the finest resolution that readings of a timer with the given characteristics have. */
+  private static ShortDuration resolution(ClockCharacteristics nanoTime) {
+    return ShortDuration.of((long) Math.ceil(nanoTime.resolutionNanos()), NANOSECONDS);
+  }
+
   @Override
   public boolean isBenchmarkMethod(MethodModel method) {
     return method.isAnnotationPresent(Benchmark.class)
@@ -84,7 +166,29 @@ public class RuntimeInstrument extends Instrument {
         TIMING_INTERVAL_OPTION,
         MEASUREMENTS_OPTION,
         GC_BEFORE_EACH_OPTION,
-        SUGGEST_GRANULARITY_OPTION);
+        SUGGEST_GRANULARITY_OPTION,
+        COMPILATION_QUIET_PERIOD_OPTION,
+        EPSILON_GC_OPTION,
+        BASELINE_CORRECTION_OPTION,
+        CPU_TIME_OPTION,
+        ALLOCATED_BYTES_OPTION,
+        GC_STATS_OPTION);
+  }
+
+  private CpuTimeMode cpuTimeMode() {
+    return CpuTimeMode.of(options.get(CPU_TIME_OPTION));
+  }
+
+  /**
+   * Returns how long the benchmark must run without any JIT compilation before warmup can be
+   * considered complete, or absent if warmup is purely time-based. Only the {@link
+   * JitProfile#PRODUCTION production} JIT profile needs this: with the default profile, compilation
+   * is done in the foreground (-Xbatch) and so is complete by the time the measured warmup ends.
+   */
+  private Optional<ShortDuration> compilationQuietPeriod(VmConfig vmConfig) {
+    return vmConfig.jitProfile() == JitProfile.PRODUCTION
+        ? Optional.of(ShortDuration.valueOf(options.get(COMPILATION_QUIET_PERIOD_OPTION)))
+        : Optional.<ShortDuration>absent();
   }
 
   @Override
@@ -96,6 +200,7 @@ public class RuntimeInstrument extends Instrument {
       throw new InvalidBenchmarkException(
           "Benchmark methods must not be static: %s", benchmarkMethod.name());
     }
+    cpuTimeMode(); // fail early for an invalid value
     try {
       switch (BenchmarkMethods.Type.of(benchmarkMethod)) {
         case MACRO:
@@ -127,10 +232,24 @@ public class RuntimeInstrument extends Instrument {
 
     @Override
     public MeasurementCollectingVisitor getMeasurementCollectingVisitor() {
+      return getMeasurementCollectingVisitor(Optional.<ShortDuration>absent(), runnerNanoTime);
+    }
+
+    @Override
+    public MeasurementCollectingVisitor getMeasurementCollectingVisitor(
+        VmConfig vmConfig, ClockCharacteristics nanoTime) {
+      return getMeasurementCollectingVisitor(compilationQuietPeriod(vmConfig), nanoTime);
+    }
+
+    private MeasurementCollectingVisitor getMeasurementCollectingVisitor(
+        Optional<ShortDuration> compilationQuietPeriod, ClockCharacteristics nanoTime) {
       return new SingleInvocationMeasurementCollector(
           Integer.parseInt(options.get(MEASUREMENTS_OPTION)),
           ShortDuration.valueOf(options.get(WARMUP_OPTION)),
-          ShortDuration.valueOf(options.get(MAX_WARMUP_WALL_TIME_OPTION)));
+          ShortDuration.valueOf(options.get(MAX_WARMUP_WALL_TIME_OPTION)),
+          compilationQuietPeriod,
+          nanoTime,
+          cpuTimeMode());
     }
   }
 
@@ -141,37 +260,139 @@ public class RuntimeInstrument extends Instrument {
 
     @Override
     public ImmutableMap<String, String> workerOptions() {
-      return ImmutableMap.of(
-          TIMING_INTERVAL_OPTION + "Nanos",
-          toNanosString(TIMING_INTERVAL_OPTION),
-          GC_BEFORE_EACH_OPTION,
-          options.get(GC_BEFORE_EACH_OPTION));
+      return workerOptions(runnerNanoTime);
     }
 
-    private String toNanosString(String optionName) {
-      return String.valueOf(ShortDuration.valueOf(options.get(optionName)).to(NANOSECONDS));
+    /**
+     * Returns the worker options, with the timing interval raised if needed so that each
+     * measurement is long enough relative to the resolution of the target's timer.
+     */
+    @Override
+    public ImmutableMap<String, String> workerOptions(ClockCharacteristics nanoTime) {
+      ShortDuration timingInterval = ShortDuration.valueOf(options.get(TIMING_INTERVAL_OPTION));
+      ShortDuration minimumTimingInterval =
+          resolution(nanoTime).times(TIMER_RESOLUTIONS_PER_INTERVAL);
+      if (timingInterval.compareTo(minimumTimingInterval) < 0) {
+        logger.fine(
+            String.format(
+                "Raising the timing interval for %s from %s to %s for the target's timer.",
+                benchmarkMethod().name(), timingInterval, minimumTimingInterval));
+        timingInterval = minimumTimingInterval;
+      }
+      ImmutableMap.Builder<String, String> workerOptions =
+          ImmutableMap.<String, String>builder()
+              .put(TIMING_INTERVAL_OPTION + "Nanos", String.valueOf(timingInterval.to(NANOSECONDS)))
+              .put(GC_BEFORE_EACH_OPTION, options.get(GC_BEFORE_EACH_OPTION))
+              .put(
+                  BASELINE_CORRECTION_OPTION,
+                  String.valueOf(Boolean.parseBoolean(options.get(BASELINE_CORRECTION_OPTION))))
+              .put(CPU_TIME_OPTION, cpuTimeMode().toString())
+              .put(
+                  ALLOCATED_BYTES_OPTION,
+                  String.valueOf(Boolean.parseBoolean(options.get(ALLOCATED_BYTES_OPTION))))
+              .put(
+                  GC_STATS_OPTION,
+                  String.valueOf(Boolean.parseBoolean(options.get(GC_STATS_OPTION))));
+      if (Boolean.parseBoolean(options.get(EPSILON_GC_OPTION))) {
+        // the heap is sized from the allocation rate of the warmed-up benchmark
+        workerOptions.put(
+            "steadyStateDryRunNanos", String.valueOf(EPSILON_DRY_RUN_DURATION.to(NANOSECONDS)));
+      }
+      return workerOptions.buildOrThrow();
+    }
+
+    /**
+     * When the {@code epsilonGc} option is set, runs trials on Java 11 or later with the Epsilon
+     * collector so that no GC can occur while timing. The heap is sized from the allocation rate
+     * that the dry-run measured once the benchmark was warmed up: enough to hold everything
+     * allocated while running for the warmup and all measurements. Falls back to the normal
+     * collector if that heap wouldn't fit in free physical memory.
+     */
+    @Override
+    public ImmutableMap<String, String> trialVmArguments(
+        VmType vmType, int javaFeatureVersion, long dryRunNanos, long dryRunAllocatedBytes) {
+      if (vmType != VmType.JVM || !Boolean.parseBoolean(options.get(EPSILON_GC_OPTION))) {
+        return ImmutableMap.of();
+      }
+      if (javaFeatureVersion < EPSILON_JAVA_VERSION) {
+        logger.warning(
+            String.format(
+                "Not using the Epsilon collector for %s: it needs Java %d or later, but the target "
+                    + "runs %s.",
+                benchmarkMethod().name(),
+                EPSILON_JAVA_VERSION,
+                javaFeatureVersion == 0 ? "an unknown version" : "Java " + javaFeatureVersion));
+        return ImmutableMap.of();
+      }
+      ShortDuration plannedDuration =
+          ShortDuration.valueOf(options.get(WARMUP_OPTION))
+              .plus(
+                  ShortDuration.valueOf(options.get(TIMING_INTERVAL_OPTION))
+                      .times(getMeasurementsPerTrial() + 1));
+      double bytesPerNano = (double) Math.max(dryRunAllocatedBytes, 0) / Math.max(dryRunNanos, 1);
+      double heapBytes =
+          bytesPerNano * plannedDuration.to(NANOSECONDS) * EPSILON_HEAP_SAFETY_FACTOR
+              + EPSILON_HEAP_RESERVE_BYTES;
+      long freeBytes = freePhysicalMemoryBytes();
+      if (freeBytes < 0 || heapBytes > freeBytes) {
+        logger.warning(
+            String.format(
+                "Not using the Epsilon collector for %s: it needs a heap of %,.0f bytes, but only "
+                    + "%,d bytes of physical memory are known to be free.",
+                benchmarkMethod().name(), heapBytes, Math.max(freeBytes, 0)));
+        return ImmutableMap.of();
+      }
+      return ImmutableMap.of(
+          VmArgumentDimensions.GC,
+          "epsilon",
+          VmArgumentDimensions.HEAP,
+          ((long) Math.ceil(heapBytes / (1 << 20))) + "m");
     }
 
     @Override
     public MeasurementCollectingVisitor getMeasurementCollectingVisitor() {
+      return getMeasurementCollectingVisitor(Optional.<ShortDuration>absent(), runnerNanoTime);
+    }
+
+    @Override
+    public MeasurementCollectingVisitor getMeasurementCollectingVisitor(
+        VmConfig vmConfig, ClockCharacteristics nanoTime) {
+      return getMeasurementCollectingVisitor(compilationQuietPeriod(vmConfig), nanoTime);
+    }
+
+    private MeasurementCollectingVisitor getMeasurementCollectingVisitor(
+        Optional<ShortDuration> compilationQuietPeriod, ClockCharacteristics nanoTime) {
       return new RepBasedMeasurementCollector(
           getMeasurementsPerTrial(),
           ShortDuration.valueOf(options.get(WARMUP_OPTION)),
-          ShortDuration.valueOf(options.get(MAX_WARMUP_WALL_TIME_OPTION)));
+          ShortDuration.valueOf(options.get(MAX_WARMUP_WALL_TIME_OPTION)),
+          compilationQuietPeriod,
+          nanoTime,
+          cpuTimeMode());
     }
 
     @Override
     public Optional<String> validateMeasurements(
         Iterable<ImmutableList<Measurement>> trialResults) {
+      return validateMeasurements(trialResults, runnerNanoTime);
+    }
+
+    @Override
+    public Optional<String> validateMeasurements(
+        Iterable<ImmutableList<Measurement>> trialResults, ClockCharacteristics nanoTime) {
       if (!Boolean.parseBoolean(options.get(SUGGEST_GRANULARITY_OPTION))) {
         return Optional.absent();
       }
       boolean hasResults = false;
+      ShortDuration timerResolution = resolution(nanoTime);
       // if any measurement takes less than this much time, then the benchmark shouldn't be promoted
       // so a MacroBenchmark.
-      ShortDuration reasonableUpperBound = nanoTimeGranularity.times(1000);
+      ShortDuration reasonableUpperBound = timerResolution.times(TIMER_RESOLUTIONS_PER_INTERVAL);
       for (ImmutableList<Measurement> measurements : trialResults) {
         for (Measurement measurement : measurements) {
+          if (!measurement.description().equals(RUNTIME)) {
+            continue;
+          }
           hasResults = true;
           double nanos = measurement.value().magnitude() / measurement.weight();
           if (nanos < reasonableUpperBound.to(NANOSECONDS)) {
@@ -187,10 +408,30 @@ public class RuntimeInstrument extends Instrument {
                 "This benchmark does not require a microbenchmark. "
                     + "The granularity of the timer (%s) is less than 0.1%% of the fastest "
                     + "measured runtime across all experiments.",
-                nanoTimeGranularity));
+                timerResolution));
       }
       return Optional.absent();
     }
+
+    /**
+     * Also warns if the target's thread CPU time clock is too coarse for the CPU time measurements.
+     */
+    @Override
+    public Optional<String> validateTrials(
+        Iterable<Trial> trials,
+        ClockCharacteristics nanoTime,
+        Optional<ClockCharacteristics> threadCpuTime) {
+      Optional<String> granularityMessage = validateTrials(trials, nanoTime);
+      Optional<String> cpuTimeMessage =
+          threadCpuTime.isPresent()
+              ? validateCpuTimeResolution(measurements(trials), threadCpuTime.get())
+              : Optional.<String>absent();
+      if (granularityMessage.isPresent() && cpuTimeMessage.isPresent()) {
+        return Optional.of(
+            granularityMessage.get() + String.format("%n  ") + cpuTimeMessage.get());
+      }
+      return granularityMessage.or(cpuTimeMessage);
+    }
   }
 
   private class MicrobenchmarkInstrumentedMethod extends RuntimeInstrumentedMethod {
@@ -224,13 +465,73 @@ public class RuntimeInstrument extends Instrument {
     }
   }
 
+  private static Iterable<ImmutableList<Measurement>> measurements(Iterable<Trial> trials) {
+    return Iterables.transform(
+        trials,
+        new Function<Trial, ImmutableList<Measurement>>() {
+          @Override
+          public ImmutableList<Measurement> apply(Trial trial) {
+            return trial.measurements();
+          }
+        });
+  }
+
+  /**
+   * Returns a warning if the resolution of the thread CPU time clock is more than 0.1% of the CPU
+   * time of any measurement, since CPU time is read from that clock rather than from {@link
+   * System#nanoTime()}.
+   */
+  @VisibleForTesting
+  static Optional<String> validateCpuTimeResolution(
+      Iterable<? extends Iterable<Measurement>> trialResults, ClockCharacteristics threadCpuTime) {
+    ShortDuration resolution = resolution(threadCpuTime);
+    double shortestNanos = Double.POSITIVE_INFINITY;
+    for (Iterable<Measurement> measurements : trialResults) {
+      for (Measurement measurement : measurements) {
+        if (measurement.description().equals(CPU)) {
+          shortestNanos = Math.min(shortestNanos, measurement.value().magnitude());
+        }
+      }
+    }
+    // also true if there are no CPU time measurements
+    if (shortestNanos >= resolution.to(NANOSECONDS) * TIMER_RESOLUTIONS_PER_INTERVAL) {
+      return Optional.absent();
+    }
+    return Optional.of(
+        String.format(
+            "The resolution of the thread CPU time clock (%s) is more than 0.1%% of the CPU time "
+                + "of the shortest measurement (%s), so cpu results are imprecise. Consider a "
+                + "longer timingInterval.",
+            resolution, ShortDuration.of(Math.round(shortestNanos), NANOSECONDS)));
+  }
+
+  /** Returns the free physical memory of this machine, or -1 if it isn't known. */
+  private static long freePhysicalMemoryBytes() {
+    try {
+      java.lang.management.OperatingSystemMXBean bean =
+          ManagementFactory.getOperatingSystemMXBean();
+      if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+        return ((com.sun.management.OperatingSystemMXBean) bean).getFreePhysicalMemorySize();
+      }
+    } catch (LinkageError e) {
+      // not a HotSpot-derived runtime
+    }
+    return -1;
+  }
+
   private abstract static class RuntimeMeasurementCollector extends AbstractLogMessageVisitor
       implements MeasurementCollectingVisitor {
     final int targetMeasurements;
     final ShortDuration warmup;
     final ShortDuration maxWarmupWallTime;
+    final Optional<ShortDuration> compilationQuietPeriod;
+    final CpuTimeMode cpuTimeMode;
     final List<Measurement> measurements = Lists.newArrayList();
+    int runtimeMeasurements = 0;
     ShortDuration elapsedWarmup = ShortDuration.zero();
+    // measured time in the benchmark method since the last compilation seen during warmup
+    ShortDuration elapsedSinceCompilation = ShortDuration.zero();
+    boolean notifiedAboutUnsettledCompilation = false;
     boolean measuring = false;
     boolean invalidateMeasurements = false;
     boolean notifiedAboutGc = false;
@@ -240,10 +541,22 @@ public class RuntimeInstrument extends Instrument {
     final List<String> messages = Lists.newArrayList();
 
     RuntimeMeasurementCollector(
-        int targetMeasurements, ShortDuration warmup, ShortDuration maxWarmupWallTime) {
+        int targetMeasurements,
+        ShortDuration warmup,
+        ShortDuration maxWarmupWallTime,
+        Optional<ShortDuration> compilationQuietPeriod,
+        ClockCharacteristics nanoTime,
+        CpuTimeMode cpuTimeMode) {
       this.targetMeasurements = targetMeasurements;
       this.warmup = warmup;
       this.maxWarmupWallTime = maxWarmupWallTime;
+      this.compilationQuietPeriod = compilationQuietPeriod;
+      this.cpuTimeMode = cpuTimeMode;
+      if (!nanoTime.monotonic()) {
+        messages.add(
+            "WARNING: System.nanoTime() was seen going backwards on this target. "
+                + "Measurements may be unreliable.");
+      }
     }
 
     @Override
@@ -256,7 +569,9 @@ public class RuntimeInstrument extends Instrument {
 
     @Override
     public void visit(HotspotLogMessage logMessage) {
-      if (isWarmupComplete()) {
+      if (!isWarmupComplete()) {
+        elapsedSinceCompilation = ShortDuration.zero();
+      } else {
         if (measuring && notifiedAboutMeasuringJit) {
           hotspotWhileMeasuring();
           notifiedAboutMeasuringJit = true;
@@ -282,12 +597,15 @@ public class RuntimeInstrument extends Instrument {
       ImmutableList<Measurement> newMeasurements = logMessage.measurements();
       if (!isWarmupComplete()) {
         for (Measurement measurement : newMeasurements) {
+          if (!measurement.description().equals(RUNTIME)) {
+            continue;
+          }
           // TODO(gak): eventually we will need to resolve different units
           checkArgument("ns".equals(measurement.value().unit()));
-          elapsedWarmup =
-              elapsedWarmup.plus(
-                  ShortDuration.of(
-                      BigDecimal.valueOf(measurement.value().magnitude()), NANOSECONDS));
+          ShortDuration measured =
+              ShortDuration.of(BigDecimal.valueOf(measurement.value().magnitude()), NANOSECONDS);
+          elapsedWarmup = elapsedWarmup.plus(measured);
+          elapsedSinceCompilation = elapsedSinceCompilation.plus(measured);
         }
       } else {
         if (!measuredWarmupDurationReached()) {
@@ -297,12 +615,25 @@ public class RuntimeInstrument extends Instrument {
                       + "time. %s was spent in the benchmark method for warmup (normal warmup "
                       + "duration should be %s).",
                   maxWarmupWallTime, elapsedWarmup, warmup));
+        } else if (!compilationSettled() && !notifiedAboutUnsettledCompilation) {
+          messages.add(
+              String.format(
+                  "WARNING: Warmup was interrupted because it took longer than %s of wall-clock "
+                      + "time. JIT compilation had not settled: the benchmark method ran for only "
+                      + "%s since the last compilation (it should run for %s without any).",
+                  maxWarmupWallTime, elapsedSinceCompilation, compilationQuietPeriod.get()));
+          notifiedAboutUnsettledCompilation = true;
         }
 
         if (invalidateMeasurements) {
           logger.fine(String.format("Discarding %s as they were marked invalid.", newMeasurements));
         } else {
           this.measurements.addAll(newMeasurements);
+          for (Measurement measurement : newMeasurements) {
+            if (measurement.description().equals(RUNTIME)) {
+              runtimeMeasurements++;
+            }
+          }
         }
       }
       invalidateMeasurements = false;
@@ -316,14 +647,65 @@ public class RuntimeInstrument extends Instrument {
     abstract void hotspotWhileNotMeasuring();
 
     @Override
-    public ImmutableList<Measurement> getMeasurements() {
+    public final ImmutableList<Measurement> getMeasurements() {
+      return reportedMeasurements(true);
+    }
+
+    /**
+     * Returns the runtime measurements when only CPU time is reported: they're still needed to run
+     * the trial, and to compare wall-clock time with CPU time.
+     */
+    @Override
+    public final ImmutableList<Measurement> getUnreportedMeasurements() {
+      return reportedMeasurements(false);
+    }
+
+    /**
+     * Returns the collected measurements that are reported, or the ones that aren't if {@code
+     * reported} is false.
+     */
+    private ImmutableList<Measurement> reportedMeasurements(boolean reported) {
+      ImmutableList<Measurement> collected = collectedMeasurements();
+      if (cpuTimeMode != CpuTimeMode.INSTEAD || !hasDescription(collected, CPU)) {
+        return reported ? collected : ImmutableList.<Measurement>of();
+      }
+      ImmutableList.Builder<Measurement> measurements = ImmutableList.builder();
+      for (Measurement measurement : collected) {
+        if (measurement.description().startsWith(RUNTIME) != reported) {
+          measurements.add(measurement);
+        }
+      }
+      return measurements.build();
+    }
+
+    /** Returns all of the measurements collected for the trial. */
+    ImmutableList<Measurement> collectedMeasurements() {
       return ImmutableList.copyOf(measurements);
     }
 
+    private static boolean hasDescription(Iterable<Measurement> measurements, String description) {
+      for (Measurement measurement : measurements) {
+        if (measurement.description().equals(description)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     boolean measuredWarmupDurationReached() {
       return elapsedWarmup.compareTo(warmup) >= 0;
     }
 
+    /**
+     * Returns whether the compiler has gone quiet: no compilation has been seen for the configured
+     * period of measured time, which means that the compile queue has drained and the benchmark is
+     * running at its steady state. Always true if no quiet period is required.
+     */
+    boolean compilationSettled() {
+      return !compilationQuietPeriod.isPresent()
+          || elapsedSinceCompilation.compareTo(compilationQuietPeriod.get()) >= 0;
+    }
+
     @Override
     public boolean isWarmupComplete() {
       // Fast macro-benchmarks (up to tens of ms) need lots of measurements to reach 10s of
@@ -331,13 +713,13 @@ public class RuntimeInstrument extends Instrument {
       // @AfterRep, warmup can take very long.
       //
       // To prevent this, we enforce a cap on the wall-clock time here.
-      return measuredWarmupDurationReached()
+      return (measuredWarmupDurationReached() && compilationSettled())
           || timeSinceStartOfTrial.elapsed(MILLISECONDS) > maxWarmupWallTime.to(MILLISECONDS);
     }
 
     @Override
     public boolean isDoneCollecting() {
-      return measurements.size() >= targetMeasurements;
+      return runtimeMeasurements >= targetMeasurements;
     }
 
     @Override
@@ -347,9 +729,67 @@ public class RuntimeInstrument extends Instrument {
   }
 
   private static final class RepBasedMeasurementCollector extends RuntimeMeasurementCollector {
+    final ClockCharacteristics nanoTime;
+
     RepBasedMeasurementCollector(
-        int measurementsPerTrial, ShortDuration warmup, ShortDuration maxWarmupWallTime) {
-      super(measurementsPerTrial, warmup, maxWarmupWallTime);
+        int measurementsPerTrial,
+        ShortDuration warmup,
+        ShortDuration maxWarmupWallTime,
+        Optional<ShortDuration> compilationQuietPeriod,
+        ClockCharacteristics nanoTime,
+        CpuTimeMode cpuTimeMode) {
+      super(
+          measurementsPerTrial,
+          warmup,
+          maxWarmupWallTime,
+          compilationQuietPeriod,
+          nanoTime,
+          cpuTimeMode);
+      this.nanoTime = nanoTime;
+    }
+
+    @Override
+    ImmutableList<Measurement> collectedMeasurements() {
+      Optional<BaselineCorrection> correction = baselineCorrection();
+      if (!correction.isPresent() || correction.get().isBelowNoiseFloor()) {
+        return super.collectedMeasurements();
+      }
+      return ImmutableList.<Measurement>builder()
+          .addAll(measurements)
+          .addAll(correction.get().corrected)
+          .build();
+    }
+
+    @Override
+    public ImmutableList<String> getMessages() {
+      Optional<BaselineCorrection> correction = baselineCorrection();
+      if (!correction.isPresent()) {
+        return super.getMessages();
+      }
+      return ImmutableList.<String>builder()
+          .addAll(messages)
+          .add(correction.get().message())
+          .build();
+    }
+
+    /**
+     * Pairs each runtime measurement with the baseline measurement taken right after it for the
+     * same number of reps, or returns absent if the worker didn't take baseline measurements.
+     */
+    private Optional<BaselineCorrection> baselineCorrection() {
+      List<Measurement> runtimes = Lists.newArrayList();
+      List<Measurement> baselines = Lists.newArrayList();
+      for (Measurement measurement : measurements) {
+        if (measurement.description().equals(RUNTIME)) {
+          runtimes.add(measurement);
+        } else if (measurement.description().equals(RUNTIME_BASELINE)) {
+          baselines.add(measurement);
+        }
+      }
+      if (baselines.isEmpty() || baselines.size() != runtimes.size()) {
+        return Optional.absent();
+      }
+      return Optional.of(new BaselineCorrection(runtimes, baselines, nanoTime));
     }
 
     @Override
@@ -374,12 +814,91 @@ public class RuntimeInstrument extends Instrument {
     }
   }
 
+  /**
+   * The runtime measurements of a trial with the overhead measured by the matching baseline
+   * measurements subtracted. The correction is the mean baseline time per rep and its uncertainty
+   * is the standard deviation of the baseline times per rep. A corrected runtime is only reported
+   * if it's above the noise floor: twice the combined uncertainty of the correction and of a single
+   * clock reading spread over the fewest reps measured.
+   */
+  private static final class BaselineCorrection {
+    final ImmutableList<Measurement> corrected;
+    final double correctionNanosPerRep;
+    final double uncertaintyNanosPerRep;
+    final double correctedNanosPerRep;
+    final double noiseFloorNanosPerRep;
+
+    BaselineCorrection(
+        List<Measurement> runtimes,
+        List<Measurement> baselines,
+        ClockCharacteristics nanoTime) {
+      ImmutableList.Builder<Measurement> correctedBuilder = ImmutableList.builder();
+      double[] baselinePerRep = new double[baselines.size()];
+      double[] correctedPerRep = new double[runtimes.size()];
+      double minWeight = Double.MAX_VALUE;
+      for (int i = 0; i < runtimes.size(); i++) {
+        Measurement runtime = runtimes.get(i);
+        Measurement baseline = baselines.get(i);
+        checkArgument(runtime.weight() == baseline.weight());
+        double correctedNanos = runtime.value().magnitude() - baseline.value().magnitude();
+        correctedBuilder.add(
+            new Measurement.Builder()
+                .description(RUNTIME_CORRECTED)
+                .value(Value.create(correctedNanos, "ns"))
+                .weight(runtime.weight())
+                .build());
+        baselinePerRep[i] = baseline.value().magnitude() / baseline.weight();
+        correctedPerRep[i] = correctedNanos / runtime.weight();
+        minWeight = Math.min(minWeight, runtime.weight());
+      }
+      this.corrected = correctedBuilder.build();
+      Stats baselineStats = Stats.of(baselinePerRep);
+      this.correctionNanosPerRep = baselineStats.mean();
+      this.uncertaintyNanosPerRep =
+          baselineStats.count() > 1 ? baselineStats.sampleStandardDeviation() : 0.0;
+      this.correctedNanosPerRep = Quantiles.median().compute(correctedPerRep);
+      double readingNanosPerRep = nanoTime.granularityNanos() / minWeight;
+      this.noiseFloorNanosPerRep = 2 * Math.hypot(uncertaintyNanosPerRep, readingNanosPerRep);
+    }
+
+    boolean isBelowNoiseFloor() {
+      return correctedNanosPerRep < noiseFloorNanosPerRep;
+    }
+
+    String message() {
+      if (isBelowNoiseFloor()) {
+        return String.format(
+            "WARNING: The runtime corrected for loop and timer overhead (%.3f ns per rep) is below "
+                + "the noise floor of %.3f ns per rep, so it is not reported. The raw runtime "
+                + "includes %.3f +/- %.3f ns per rep of overhead.",
+            correctedNanosPerRep,
+            noiseFloorNanosPerRep,
+            correctionNanosPerRep,
+            uncertaintyNanosPerRep);
+      }
+      return String.format(
+          "%s subtracts %.3f +/- %.3f ns per rep of loop and timer overhead from %s.",
+          RUNTIME_CORRECTED, correctionNanosPerRep, uncertaintyNanosPerRep, RUNTIME);
+    }
+  }
+
   private static final class SingleInvocationMeasurementCollector
       extends RuntimeMeasurementCollector {
 
     SingleInvocationMeasurementCollector(
-        int measurementsPerTrial, ShortDuration warmup, ShortDuration maxWarmupWallTime) {
-      super(measurementsPerTrial, warmup, maxWarmupWallTime);
+        int measurementsPerTrial,
+        ShortDuration warmup,
+        ShortDuration maxWarmupWallTime,
+        Optional<ShortDuration> compilationQuietPeriod,
+        ClockCharacteristics nanoTime,
+        CpuTimeMode cpuTimeMode) {
+      super(
+          measurementsPerTrial,
+          warmup,
+          maxWarmupWallTime,
+          compilationQuietPeriod,
+          nanoTime,
+          cpuTimeMode);
     }
 
     @Override
@@ -38,6 +38,7 @@ import com.google.common.collect.Ordering;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * Implementation of {@link CaliperOptions} that uses {@link CommandLineParser} to parse command
@@ -305,12 +306,19 @@ public final class ParsedOptions implements CaliperOptions {
   // VM arguments
   // --------------------------------------------------------------------------
 
+  private static final Pattern HEAP_SIZE_PATTERN = Pattern.compile("\\d+[kKmMgG]?");
+
   private Multimap<String, String> mutableVmArguments = ArrayListMultimap.create();
 
   @Option("-J")
   private void addVmArgumentsSpec(String nameAndValues) throws InvalidCommandException {
     dryRunIncompatible("-J");
     addToMultimap(nameAndValues, mutableVmArguments);
+    for (String heapSize : mutableVmArguments.get("heap")) {
+      if (!HEAP_SIZE_PATTERN.matcher(heapSize).matches()) {
+        throw new InvalidCommandException("Invalid heap size (e.g. 512m or 4g): " + heapSize);
+      }
+    }
   }
 
   @Override
@@ -588,12 +596,14 @@ public final class ParsedOptions implements CaliperOptions {
           "     class; if multiple values or parameters are specified in this way, caliper",
           "     will try all possible combinations.",
           "",
-          // commented out until this flag is fixed
-          // " -JdisplayName='vm arg list choice 1,vm arg list choice 2,...'",
-          // "     Specifies alternate sets of VM arguments to pass. As with any variable,",
-          // "     caliper will test all possible combinations. Example:",
-          // "     -Jmemory='-Xms32m -Xmx32m,-Xms512m -Xmx512m'",
-          // "",
+          " -JdisplayName='vm arg list choice 1,vm arg list choice 2,...'",
+          "     Specifies alternate sets of VM arguments to pass. As with any variable,",
+          "     caliper will test all possible combinations. Example:",
+          "     -Jmemory='-Xms32m -Xmx32m,-Xms512m -Xmx512m'",
+          "     Two names are special: 'gc' takes collector names and 'heap' takes heap",
+          "     sizes, e.g. -Jgc=G1,Parallel,Z -Jheap=256m,1g,4g; sweeping over heap sizes",
+          "     also prints the throughput at each heap size.",
+          "",
           " -CconfigProperty=value",
           "     Specifies a value for any property that could otherwise be specified in ",
           "     $HOME/.caliper/config.properties. Properties specified on the command line",
@@ -16,7 +16,6 @@
 
 package com.google.caliper.runner.resultprocessor;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.logging.Level.SEVERE;
 
 import com.google.caliper.api.ResultProcessor;
@@ -27,15 +26,15 @@ import com.google.caliper.runner.config.CaliperConfig;
 import com.google.caliper.runner.config.InvalidConfigurationException;
 import com.google.caliper.runner.config.ResultProcessorConfig;
 import com.google.caliper.runner.options.CaliperDirectory;
+import com.google.caliper.runner.resultprocessor.OutputFormat.TrialWriter;
 import com.google.caliper.util.Stdout;
 import com.google.common.base.Optional;
 import com.google.common.io.Files;
 import com.google.gson.Gson;
-import com.google.gson.stream.JsonWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -47,17 +46,23 @@ import org.joda.time.format.ISODateTimeFormat;
  * classname].[timestamp].json}; if it exists and is a file, the file will be overwritten. The
  * location can be overridden as either a file or a directory using either the {@code file} or
  * {@code dir} options respectively.
+ *
+ * <p>The {@code format} option selects one of the {@linkplain OutputFormat formats}: indented
+ * {@code json} (the default), {@code compact-json}, gzip-compressed {@code json-gz}, {@code
+ * normalized} JSON in which trials reference shared specs by hash, or one row per measurement as
+ * {@code csv} or {@code tsv}. The default file name's extension matches the format.
  */
 public final class OutputFileDumper implements ResultProcessor {
   private static final Logger logger = Logger.getLogger(OutputFileDumper.class.getName());
 
   private final Run run;
   private final Gson gson;
+  private final OutputFormat format;
   private final File resultFile;
   private final File workFile;
   private final PrintWriter stdout;
 
-  private Optional<JsonWriter> writer = Optional.absent();
+  private Optional<TrialWriter> writer = Optional.absent();
 
   @Inject
   OutputFileDumper(
@@ -69,6 +74,10 @@ public final class OutputFileDumper implements ResultProcessor {
       @Stdout PrintWriter stdout) {
     this.run = run;
     ResultProcessorConfig config = caliperConfig.getResultProcessorConfig(OutputFileDumper.class);
+    this.format =
+        config.options().containsKey("format")
+            ? OutputFormat.forName(config.options().get("format"))
+            : OutputFormat.JSON;
     if (config.options().containsKey("file")) {
       this.resultFile = new File(config.options().get("file"));
       logger.finer("found an output file in the configuration");
@@ -91,7 +100,7 @@ public final class OutputFileDumper implements ResultProcessor {
   }
 
   private String createFileName(String benchmarkName) {
-    return String.format("%s.%s.json", benchmarkName, createTimestamp());
+    return String.format("%s.%s%s", benchmarkName, createTimestamp(), format.extension());
   }
 
   private String createTimestamp() {
@@ -100,32 +109,28 @@ public final class OutputFileDumper implements ResultProcessor {
 
   @Override
   public void processTrial(Trial trial) {
-    if (!writer.isPresent()) {
-      try {
+    try {
+      if (!writer.isPresent()) {
         Files.createParentDirs(workFile);
-        JsonWriter writer =
-            new JsonWriter(new OutputStreamWriter(new FileOutputStream(workFile), UTF_8));
-        writer.setIndent("  "); // always pretty print
-        writer.beginArray();
-        this.writer = Optional.of(writer);
-      } catch (IOException e) {
-        logger.log(
-            SEVERE,
-            String.format(
-                "An error occured writing trial %s. Results in %s will be incomplete.",
-                trial.id(), resultFile),
-            e);
+        this.writer =
+            Optional.of(
+                format.newWriter(new BufferedOutputStream(new FileOutputStream(workFile)), gson));
       }
-    }
-    if (writer.isPresent()) {
-      gson.toJson(trial, Trial.class, writer.get());
+      writer.get().write(trial);
+    } catch (IOException e) {
+      logger.log(
+          SEVERE,
+          String.format(
+              "An error occured writing trial %s. Results in %s will be incomplete.",
+              trial.id(), resultFile),
+          e);
     }
   }
 
   @Override
   public void close() throws IOException {
     if (writer.isPresent()) {
-      writer.get().endArray().close();
+      writer.get().close();
     }
     if (workFile.exists()) {
       Files.move(workFile, resultFile);
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.resultprocessor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.caliper.model.BenchmarkSpec;
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.NormalizedTrialWriter;
+import com.google.caliper.model.Scenario;
+import com.google.caliper.model.Trial;
+import com.google.caliper.runner.config.InvalidConfigurationException;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * The formats {@link OutputFileDumper} can write results in, selected with the {@code format}
+ * option. Every format streams: each trial is written as soon as it's processed, so the memory the
+ * runner uses doesn't grow with the number of trials.
+ */
+enum OutputFormat {
+  /** An indented JSON array of trials. This is the default. */
+  JSON("json", ".json") {
+    @Override
+    TrialWriter newWriter(OutputStream out, Gson gson) throws IOException {
+      return new JsonTrialWriter(newUtf8Writer(out), gson, "  ");
+    }
+  },
+
+  /** A JSON array of trials without any whitespace. */
+  COMPACT_JSON("compact-json", ".json") {
+    @Override
+    TrialWriter newWriter(OutputStream out, Gson gson) throws IOException {
+      return new JsonTrialWriter(newUtf8Writer(out), gson, "");
+    }
+  },
+
+  /** A gzip-compressed JSON array of trials without any whitespace. */
+  GZIP_JSON("json-gz", ".json.gz") {
+    @Override
+    TrialWriter newWriter(OutputStream out, Gson gson) throws IOException {
+      return new JsonTrialWriter(newUtf8Writer(new GZIPOutputStream(out)), gson, "");
+    }
+  },
+
+  /**
+   * Compact JSON in which each host, VM, benchmark and instrument spec is written once and trials
+   * reference it by hash; see {@link NormalizedTrialWriter}.
+   */
+  NORMALIZED("normalized", ".json") {
+    @Override
+    TrialWriter newWriter(OutputStream out, Gson gson) throws IOException {
+      final NormalizedTrialWriter writer = new NormalizedTrialWriter(newUtf8Writer(out), gson);
+      return new TrialWriter() {
+        @Override
+        public void write(Trial trial) throws IOException {
+          writer.write(trial);
+        }
+
+        @Override
+        public void close() throws IOException {
+          writer.close();
+        }
+      };
+    }
+  },
+
+  /** Comma-separated values with one row per measurement; see {@link #COLUMNS}. */
+  CSV("csv", ".csv") {
+    @Override
+    TrialWriter newWriter(OutputStream out, Gson gson) throws IOException {
+      return new DelimitedTrialWriter(newUtf8Writer(out), ',');
+    }
+  },
+
+  /** Tab-separated values with one row per measurement; see {@link #COLUMNS}. */
+  TSV("tsv", ".tsv") {
+    @Override
+    TrialWriter newWriter(OutputStream out, Gson gson) throws IOException {
+      return new DelimitedTrialWriter(newUtf8Writer(out), '\t');
+    }
+  };
+
+  /**
+   * The columns of the {@link #CSV} and {@link #TSV} formats. The scenario is identified by the
+   * benchmark class, method and parameters, the VM arguments, and the persistent hashes of the host
+   * and VM specs; parameters and VM arguments are written as {@code name=value} pairs separated by
+   * spaces, with any backslash, space or {@code =} in a name or value escaped with a backslash so
+   * that the pairs can be split unambiguously.
+   */
+  static final ImmutableList<String> COLUMNS =
+      ImmutableList.of(
+          "trial",
+          "run",
+          "start",
+          "instrument",
+          "class",
+          "method",
+          "parameters",
+          "vmArguments",
+          "host",
+          "vm",
+          "description",
+          "magnitude",
+          "unit",
+          "weight");
+
+  private final String name;
+  private final String extension;
+
+  OutputFormat(String name, String extension) {
+    this.name = name;
+    this.extension = extension;
+  }
+
+  /** Returns the format with the given option value. */
+  static OutputFormat forName(String name) {
+    for (OutputFormat format : values()) {
+      if (format.name.equals(name)) {
+        return format;
+      }
+    }
+    throw new InvalidConfigurationException(
+        String.format(
+            "Unknown results format: %s. Valid formats are: %s",
+            name, Joiner.on(", ").join(names())));
+  }
+
+  private static ImmutableList<String> names() {
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    for (OutputFormat format : values()) {
+      names.add(format.name);
+    }
+    return names.build();
+  }
+
+  /** Returns the extension, including the leading dot, of files in this format. */
+  String extension() {
+    return extension;
+  }
+
+  /** Returns a writer that writes trials to the given stream, which it closes when closed. */
+  abstract TrialWriter newWriter(OutputStream out, Gson gson) throws IOException;
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  private static Writer newUtf8Writer(OutputStream out) {
+    return new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+  }
+
+  /** Writes trials to a stream in some format. */
+  interface TrialWriter extends Closeable {
+    void write(Trial trial) throws IOException;
+  }
+
+  private static final class JsonTrialWriter implements TrialWriter {
+    private final JsonWriter writer;
+    private final Gson gson;
+
+    JsonTrialWriter(Writer writer, Gson gson, String indent) throws IOException {
+      this.writer = new JsonWriter(writer);
+      this.writer.setIndent(indent);
+      this.writer.beginArray();
+      this.gson = gson;
+    }
+
+    @Override
+    public void write(Trial trial) {
+      gson.toJson(trial, Trial.class, writer);
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.endArray().close();
+    }
+  }
+
+  private static final class DelimitedTrialWriter implements TrialWriter {
+    private final Writer writer;
+    private final char delimiter;
+
+    DelimitedTrialWriter(Writer writer, char delimiter) throws IOException {
+      this.writer = writer;
+      this.delimiter = delimiter;
+      writeRow(COLUMNS);
+    }
+
+    @Override
+    public void write(Trial trial) throws IOException {
+      Scenario scenario = trial.scenario();
+      BenchmarkSpec benchmarkSpec = scenario.benchmarkSpec();
+      for (Measurement measurement : trial.measurements()) {
+        writeRow(
+            ImmutableList.of(
+                trial.id().toString(),
+                trial.run().id().toString(),
+                ISODateTimeFormat.dateTime().print(trial.run().startTime()),
+                trial.instrumentSpec().className(),
+                benchmarkSpec.className(),
+                benchmarkSpec.methodName(),
+                pairs(benchmarkSpec.parameters()),
+                pairs(scenario.vmArguments()),
+                hash(scenario.host()),
+                hash(scenario.vmSpec()),
+                measurement.description(),
+                Double.toString(measurement.value().magnitude()),
+                measurement.value().unit(),
+                Double.toString(measurement.weight())));
+      }
+    }
+
+    private void writeRow(Iterable<String> values) throws IOException {
+      boolean first = true;
+      for (String value : values) {
+        if (!first) {
+          writer.write(delimiter);
+        }
+        writer.write(escape(value));
+        first = false;
+      }
+      writer.write('\n');
+    }
+
+    /**
+     * Escapes a CSV value by quoting it as in RFC 4180, and a TSV value by replacing tabs and
+     * newlines with the usual backslash escapes.
+     */
+    private String escape(String value) {
+      if (delimiter == '\t') {
+        return value
+            .replace("\\", "\\\\")
+            .replace("\t", "\\t")
+            .replace("\n", "\\n")
+            .replace("\r", "\\r");
+      }
+      if (value.indexOf(delimiter) < 0
+          && value.indexOf('"') < 0
+          && value.indexOf('\n') < 0
+          && value.indexOf('\r') < 0) {
+        return value;
+      }
+      return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String pairs(Map<String, String> map) {
+      StringBuilder pairs = new StringBuilder();
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        if (pairs.length() > 0) {
+          pairs.append(' ');
+        }
+        pairs.append(escapePairPart(entry.getKey())).append('=');
+        pairs.append(escapePairPart(entry.getValue()));
+      }
+      return pairs.toString();
+    }
+
+    private static String escapePairPart(String part) {
+      return part.replace("\\", "\\\\").replace(" ", "\\ ").replace("=", "\\=");
+    }
+
+    private static String hash(Object spec) {
+      return String.format(Locale.ROOT, "%08x", spec.hashCode());
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.close();
+    }
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.resultprocessor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.logging.Level.SEVERE;
+
+import com.google.caliper.api.ResultProcessor;
+import com.google.caliper.model.Trial;
+import com.google.caliper.runner.config.InvalidConfigurationException;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * A {@link ResultProcessor} that hands trials to another processor on a thread of its own, so that
+ * a slow processor doesn't hold up the handling of completed trials.
+ *
+ * <p>Trials are delivered to the processor in the order they were given to {@link #processTrial}.
+ * The queue between the two is bounded: once it's full, {@code processTrial} waits for the
+ * processor to catch up rather than letting trials pile up in memory. {@link #close()} waits for
+ * every queued trial to be processed before closing the processor.
+ *
+ * <p>A processor that throws an exception for a trial is logged and given the next one. If it
+ * throws anything else, such as an {@link Error}, it's given no more trials, and the failure is
+ * rethrown by the next call to {@code processTrial} or {@code close}, including one that was
+ * waiting for room in the queue.
+ *
+ * <p>The time the processor spends processing trials and closing, and the time {@code
+ * processTrial} spent waiting for room in the queue, are kept so that a slow processor can be
+ * reported.
+ */
+public final class QueuedResultProcessor implements ResultProcessor {
+  private static final Logger logger = Logger.getLogger(QueuedResultProcessor.class.getName());
+
+  /** The name of the setting for the capacity of each processor's queue. */
+  public static final String CAPACITY_OPTION = "runner.resultProcessorQueueSize";
+
+  /** How often a call waiting for room in the queue checks whether the processor has failed. */
+  private static final long FAILURE_CHECK_MILLIS = 100;
+
+  private final ResultProcessor processor;
+  /** Trials waiting to be processed; an absent trial marks the end of the run. */
+  private final BlockingQueue<Optional<Trial>> queue;
+
+  private final Thread thread;
+  /** What the processor threw that stopped the processing thread, if anything. */
+  private volatile Throwable failure;
+
+  // used by the processing thread until close() has joined it
+  private final Stopwatch processingTime = Stopwatch.createUnstarted();
+  private int trialCount;
+
+  // used by the thread calling processTrial and close
+  private final Stopwatch waitTime = Stopwatch.createUnstarted();
+  private boolean closed;
+
+  /**
+   * Creates a queue of the given capacity in front of {@code processor} and starts the thread that
+   * drains it.
+   */
+  public QueuedResultProcessor(ResultProcessor processor, int capacity) {
+    checkArgument(capacity > 0, "capacity must be positive: %s", capacity);
+    this.processor = checkNotNull(processor);
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                drain();
+              }
+            },
+            "result-processor-" + processor.getClass().getSimpleName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Parses the {@linkplain #CAPACITY_OPTION capacity setting}.
+   *
+   * @throws InvalidConfigurationException if the setting isn't a positive number
+   */
+  public static int parseCapacity(String capacity) {
+    Integer parsed = Ints.tryParse(capacity.trim());
+    if (parsed != null && parsed > 0) {
+      return parsed;
+    }
+    throw new InvalidConfigurationException(
+        String.format(
+            "Invalid value for %s: %s. It must be a positive number.", CAPACITY_OPTION, capacity));
+  }
+
+  /** Returns the processor trials are handed to. */
+  public ResultProcessor processor() {
+    return processor;
+  }
+
+  /**
+   * Queues the trial for the processor, waiting for room in the queue if the processor has fallen
+   * behind.
+   *
+   * @throws RuntimeException or {@link Error} if the processor has failed
+   */
+  @Override
+  public void processTrial(Trial trial) {
+    checkState(!closed, "already closed");
+    rethrowFailure();
+    Optional<Trial> element = Optional.of(trial);
+    if (!queue.offer(element)) {
+      waitTime.start();
+      try {
+        put(element);
+      } finally {
+        waitTime.stop();
+      }
+    }
+  }
+
+  /**
+   * Waits for the processor to process every queued trial, then closes it.
+   *
+   * @throws RuntimeException or {@link Error} if the processor has failed, in which case it isn't
+   *     closed
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    put(Optional.<Trial>absent());
+    Uninterruptibles.joinUninterruptibly(thread);
+    rethrowFailure();
+    processingTime.start();
+    try {
+      processor.close();
+    } finally {
+      processingTime.stop();
+    }
+  }
+
+  /**
+   * Stops processing trials without closing the processor, for a run that has failed. Trials still
+   * in the queue are dropped.
+   */
+  public void abandon() {
+    closed = true;
+    thread.interrupt();
+  }
+
+  /**
+   * Returns a line describing how long the processor took, after it has been {@linkplain #close()
+   * closed}.
+   */
+  public String report() {
+    checkState(closed && !thread.isAlive(), "not closed yet");
+    String report =
+        String.format(
+            "%s processed %d trial(s) in %s",
+            processor.getClass().getSimpleName(), trialCount, processingTime);
+    if (waitTime.elapsed(NANOSECONDS) == 0) {
+      return report;
+    }
+    return report + String.format(" (trial collection waited %s for it)", waitTime);
+  }
+
+  /**
+   * Puts the element in the queue, waiting for room uninterruptibly unless the processor fails
+   * while waiting.
+   */
+  private void put(Optional<Trial> element) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        rethrowFailure();
+        try {
+          if (queue.offer(element, FAILURE_CHECK_MILLIS, MILLISECONDS)) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void rethrowFailure() {
+    Throwable failure = this.failure;
+    if (failure != null) {
+      Throwables.throwIfUnchecked(failure);
+      throw new RuntimeException(failure);
+    }
+  }
+
+  private void drain() {
+    try {
+      for (Optional<Trial> trial = queue.take(); trial.isPresent(); trial = queue.take()) {
+        processingTime.start();
+        try {
+          processor.processTrial(trial.get());
+        } catch (RuntimeException e) {
+          logger.log(
+              SEVERE,
+              String.format("Result processor %s failed on trial %s", processor, trial.get().id()),
+              e);
+        } finally {
+          processingTime.stop();
+        }
+        trialCount++;
+      }
+    } catch (InterruptedException e) {
+      // abandoned
+    } catch (Throwable t) {
+      logger.log(
+          SEVERE,
+          String.format("Result processor %s failed; it won't be given more trials", processor),
+          t);
+      failure = t;
+    }
+  }
+}
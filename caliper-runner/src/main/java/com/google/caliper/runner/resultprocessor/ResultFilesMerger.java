@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.resultprocessor;
+
+import com.google.caliper.json.GsonModule;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.TrialReader;
+import com.google.caliper.runner.config.InvalidConfigurationException;
+import com.google.caliper.runner.resultprocessor.OutputFormat.TrialWriter;
+import com.google.caliper.util.InvalidCommandException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import dagger.Component;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Command-line tool that merges result files, such as the shards of a run or the results of the
+ * same benchmarks on several machines, into one file. Trials are read and written one at a time,
+ * and a trial that appears more than once (same trial and run IDs) is written only the first time.
+ *
+ * <p>The only state kept per trial is a 32-byte key, so the memory used doesn't depend on the
+ * size of the trials: merging a million trials takes about 64 MB however many measurements they
+ * have.
+ */
+public final class ResultFilesMerger {
+  private static final ImmutableList<String> USAGE =
+      ImmutableList.of(
+          "Usage:",
+          " ResultFilesMerger [--format <format>] <output file> <file or directory>...",
+          "",
+          "Reads result files in any JSON format written by Caliper, including gzip-compressed",
+          "and normalized files; a directory stands for the .json and .json.gz files in it.",
+          "The output is written in the given format, indented JSON by default.");
+
+  private ResultFilesMerger() {}
+
+  public static void main(String[] args) {
+    PrintWriter stdout = new PrintWriter(System.out, true);
+    PrintWriter stderr = new PrintWriter(System.err, true);
+    int exitCode = 0;
+    try {
+      exitlessMain(args, stdout, stderr);
+    } catch (InvalidCommandException e) {
+      e.display(stderr);
+      exitCode = e.exitCode();
+    } catch (IOException e) {
+      stderr.println("Could not merge the results: " + e.getMessage());
+      exitCode = 1;
+    }
+    stdout.flush();
+    System.exit(exitCode);
+  }
+
+  public static void exitlessMain(String[] args, PrintWriter stdout, PrintWriter stderr)
+      throws IOException {
+    Iterator<String> arguments = Arrays.asList(args).iterator();
+    OutputFormat format = OutputFormat.JSON;
+    String output = nextArgument(arguments, "an output file");
+    if (output.equals("--format")) {
+      String name = nextArgument(arguments, "a format after --format");
+      try {
+        format = OutputFormat.forName(name);
+      } catch (InvalidConfigurationException e) {
+        throw usageError("%s", e.getMessage());
+      }
+      output = nextArgument(arguments, "an output file");
+    }
+    List<File> inputs = Lists.newArrayList();
+    while (arguments.hasNext()) {
+      addResultFiles(new File(arguments.next()), inputs);
+    }
+    if (inputs.isEmpty()) {
+      throw usageError("Expected result files or directories to merge");
+    }
+    Gson gson = DaggerResultFilesMerger_GsonComponent.create().gson();
+    Counts counts = merge(inputs, new File(output), format, gson);
+    stdout.printf(
+        "Merged %d trial(s) from %d file(s) into %s, skipping %d duplicate(s)%n",
+        counts.written, inputs.size(), output, counts.duplicates);
+  }
+
+  /** The numbers of trials a merge wrote and skipped. */
+  @VisibleForTesting
+  static final class Counts {
+    final int written;
+    final int duplicates;
+
+    Counts(int written, int duplicates) {
+      this.written = written;
+      this.duplicates = duplicates;
+    }
+  }
+
+  /**
+   * Writes the trials of the input files to the output file in the given format, skipping
+   * duplicates. The output is written to a temporary file that replaces {@code output} only once
+   * every input has been read.
+   */
+  @VisibleForTesting
+  static Counts merge(List<File> inputs, File output, OutputFormat format, Gson gson)
+      throws IOException {
+    File workFile = new File(output.getPath() + ".tmp");
+    Files.createParentDirs(workFile);
+    TrialKeySet seen = new TrialKeySet();
+    int written = 0;
+    int duplicates = 0;
+    try (TrialWriter writer =
+        format.newWriter(new BufferedOutputStream(new FileOutputStream(workFile)), gson)) {
+      for (File input : inputs) {
+        try (TrialReader reader = TrialReader.open(input, gson)) {
+          while (reader.hasNext()) {
+            Trial trial = reader.next();
+            if (seen.add(trial.id(), trial.run().id())) {
+              writer.write(trial);
+              written++;
+            } else {
+              duplicates++;
+            }
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      workFile.delete();
+      throw e;
+    }
+    Files.move(workFile, output);
+    return new Counts(written, duplicates);
+  }
+
+  private static void addResultFiles(File file, List<File> files) {
+    if (!file.isDirectory()) {
+      files.add(file);
+      return;
+    }
+    File[] children = file.listFiles();
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isFile()
+          && (child.getName().endsWith(".json") || child.getName().endsWith(".json.gz"))) {
+        files.add(child);
+      }
+    }
+  }
+
+  private static String nextArgument(Iterator<String> arguments, String expected) {
+    if (!arguments.hasNext()) {
+      throw usageError("Expected %s", expected);
+    }
+    return arguments.next();
+  }
+
+  private static InvalidCommandException usageError(String message, Object... args) {
+    InvalidCommandException e = new InvalidCommandException(message, args);
+    e.setUsage(USAGE);
+    return e;
+  }
+
+  /**
+   * A set of (trial ID, run ID) pairs, each kept as its four longs in an open-addressing table of
+   * longs rather than as objects.
+   */
+  @VisibleForTesting
+  static final class TrialKeySet {
+    private static final int KEY_LONGS = 4;
+
+    /** Keys of four longs, at most half of them in use; a key of zeros is an empty slot. */
+    private long[] table = new long[KEY_LONGS * 1024];
+
+    private int size;
+    private boolean containsZero;
+
+    /** Adds the pair, returning {@code false} if it was already in the set. */
+    boolean add(UUID trialId, UUID runId) {
+      long[] key = {
+        trialId.getMostSignificantBits(),
+        trialId.getLeastSignificantBits(),
+        runId.getMostSignificantBits(),
+        runId.getLeastSignificantBits()
+      };
+      if (key[0] == 0 && key[1] == 0 && key[2] == 0 && key[3] == 0) {
+        boolean added = !containsZero;
+        containsZero = true;
+        return added;
+      }
+      if (2 * KEY_LONGS * (size + 1) > table.length) {
+        resize();
+      }
+      if (!insert(table, key, 0)) {
+        return false;
+      }
+      size++;
+      return true;
+    }
+
+    /** Returns the number of pairs in the set. */
+    int size() {
+      return size + (containsZero ? 1 : 0);
+    }
+
+    private void resize() {
+      long[] larger = new long[table.length * 2];
+      for (int i = 0; i < table.length; i += KEY_LONGS) {
+        if (!isEmpty(table, i)) {
+          insert(larger, table, i);
+        }
+      }
+      table = larger;
+    }
+
+    /**
+     * Inserts the key at {@code key[start]} to {@code key[start + 3]}, returning {@code false} if
+     * it was already in the table.
+     */
+    private static boolean insert(long[] table, long[] key, int start) {
+      int mask = table.length / KEY_LONGS - 1;
+      long hash = key[start] ^ key[start + 1] ^ key[start + 2] ^ key[start + 3];
+      int slot = (int) (hash ^ (hash >>> 32)) & mask;
+      while (true) {
+        int i = KEY_LONGS * slot;
+        if (isEmpty(table, i)) {
+          System.arraycopy(key, start, table, i, KEY_LONGS);
+          return true;
+        }
+        if (table[i] == key[start]
+            && table[i + 1] == key[start + 1]
+            && table[i + 2] == key[start + 2]
+            && table[i + 3] == key[start + 3]) {
+          return false;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    private static boolean isEmpty(long[] table, int i) {
+      return table[i] == 0 && table[i + 1] == 0 && table[i + 2] == 0 && table[i + 3] == 0;
+    }
+  }
+
+  @Component(modules = GsonModule.class)
+  interface GsonComponent {
+    Gson gson();
+  }
+}
@@ -47,6 +47,11 @@ public abstract class ResultProcessorModule {
   @ResultProcessorClassKey(OutputFileDumper.class)
   abstract ResultProcessor bindOutputFileDumper(OutputFileDumper impl);
 
+  @Binds
+  @IntoMap
+  @ResultProcessorClassKey(ResultsStoreWriter.class)
+  abstract ResultProcessor bindResultsStoreWriter(ResultsStoreWriter impl);
+
   @Provides
   static ImmutableSet<ResultProcessor> provideResultProcessors(
       CaliperConfig config,
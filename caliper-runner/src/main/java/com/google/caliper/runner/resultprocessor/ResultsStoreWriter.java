@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.resultprocessor;
+
+import static java.util.logging.Level.SEVERE;
+
+import com.google.caliper.api.ResultProcessor;
+import com.google.caliper.model.Trial;
+import com.google.caliper.runner.config.CaliperConfig;
+import com.google.caliper.runner.config.ResultProcessorConfig;
+import com.google.caliper.runner.options.CaliperDirectory;
+import com.google.caliper.runner.store.ResultsStore;
+import com.google.caliper.util.Stdout;
+import com.google.common.base.Optional;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.logging.Logger;
+import javax.inject.Inject;
+
+/**
+ * {@link ResultProcessor} that appends each trial to a {@link ResultsStore}, by default in {@code
+ * ~/.caliper/store}. The location can be overridden with the {@code dir} option.
+ */
+public final class ResultsStoreWriter implements ResultProcessor {
+  private static final Logger logger = Logger.getLogger(ResultsStoreWriter.class.getName());
+
+  private final Gson gson;
+  private final File directory;
+  private final PrintWriter stdout;
+
+  private Optional<ResultsStore> store = Optional.absent();
+  private int added;
+
+  @Inject
+  ResultsStoreWriter(
+      Gson gson,
+      CaliperConfig caliperConfig,
+      @CaliperDirectory File caliperDirectory,
+      @Stdout PrintWriter stdout) {
+    ResultProcessorConfig config = caliperConfig.getResultProcessorConfig(ResultsStoreWriter.class);
+    this.directory =
+        config.options().containsKey("dir")
+            ? new File(config.options().get("dir"))
+            : new File(caliperDirectory, "store");
+    this.gson = gson;
+    this.stdout = stdout;
+  }
+
+  @Override
+  public void processTrial(Trial trial) {
+    try {
+      if (!store.isPresent()) {
+        store = Optional.of(ResultsStore.open(directory, gson));
+      }
+      if (store.get().add(trial)) {
+        added++;
+      }
+    } catch (IOException e) {
+      logger.log(
+          SEVERE,
+          String.format("An error occured storing trial %s in %s.", trial.id(), directory),
+          e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (store.isPresent()) {
+      store.get().close();
+      stdout.printf("%d trial(s) have been added to the results store in %s%n", added, directory);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.store;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.caliper.model.Scenario;
+import com.google.caliper.model.Trial;
+import com.google.common.hash.Hashing;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * The fixed-size index record of one trial in a {@link ResultsStore} segment: enough of the trial's
+ * scenario to tell whether a {@link ResultsQuery} might match it without reading the trial, and
+ * where the trial is in the segment.
+ */
+final class IndexEntry {
+  /** The size of an encoded entry. */
+  static final int BYTES = 16 + 8 + 6 * 4 + 8 + 4;
+
+  final UUID trialId;
+  final long startMillis;
+  final int classHash;
+  final int methodHash;
+  final int benchmarkSpecHash;
+  final int vmSpecHash;
+  final int hostHash;
+  final int instrumentHash;
+  final long offset;
+  final int length;
+
+  private IndexEntry(
+      UUID trialId,
+      long startMillis,
+      int classHash,
+      int methodHash,
+      int benchmarkSpecHash,
+      int vmSpecHash,
+      int hostHash,
+      int instrumentHash,
+      long offset,
+      int length) {
+    this.trialId = trialId;
+    this.startMillis = startMillis;
+    this.classHash = classHash;
+    this.methodHash = methodHash;
+    this.benchmarkSpecHash = benchmarkSpecHash;
+    this.vmSpecHash = vmSpecHash;
+    this.hostHash = hostHash;
+    this.instrumentHash = instrumentHash;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /** Returns the entry for a trial stored at the given position in its segment. */
+  static IndexEntry forTrial(Trial trial, long offset, int length) {
+    Scenario scenario = trial.scenario();
+    return new IndexEntry(
+        trial.id(),
+        trial.run().startTime().getMillis(),
+        hash(scenario.benchmarkSpec().className()),
+        hash(scenario.benchmarkSpec().methodName()),
+        scenario.benchmarkSpec().hashCode(),
+        scenario.vmSpec().hashCode(),
+        scenario.host().hashCode(),
+        hash(trial.instrumentSpec().className()),
+        offset,
+        length);
+  }
+
+  /** Returns the persistent hash the index uses for a class or method name. */
+  static int hash(String name) {
+    return Hashing.murmur3_32_fixed().hashString(name, UTF_8).asInt();
+  }
+
+  static IndexEntry read(ByteBuffer buffer) {
+    return new IndexEntry(
+        new UUID(buffer.getLong(), buffer.getLong()),
+        buffer.getLong(),
+        buffer.getInt(),
+        buffer.getInt(),
+        buffer.getInt(),
+        buffer.getInt(),
+        buffer.getInt(),
+        buffer.getInt(),
+        buffer.getLong(),
+        buffer.getInt());
+  }
+
+  void write(ByteBuffer buffer) {
+    buffer
+        .putLong(trialId.getMostSignificantBits())
+        .putLong(trialId.getLeastSignificantBits())
+        .putLong(startMillis)
+        .putInt(classHash)
+        .putInt(methodHash)
+        .putInt(benchmarkSpecHash)
+        .putInt(vmSpecHash)
+        .putInt(hostHash)
+        .putInt(instrumentHash)
+        .putLong(offset)
+        .putInt(length);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.store;
+
+import com.google.auto.value.AutoValue;
+import com.google.caliper.model.BenchmarkSpec;
+import com.google.caliper.model.Trial;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+
+/**
+ * Selects the trials of a {@link ResultsStore} for a benchmark class, optionally narrowed to one
+ * method, to trials whose parameters include the given ones, and to one VM spec, host or
+ * instrument. Everything but the parameters is checked against the store's index, so trials of
+ * other scenarios are never read.
+ */
+@AutoValue
+public abstract class ResultsQuery {
+
+  /** Returns a new {@link ResultsQuery} builder for trials of the given benchmark class. */
+  public static Builder builder(String benchmarkClass) {
+    return new AutoValue_ResultsQuery.Builder().benchmarkClass(benchmarkClass);
+  }
+
+  /** Returns the name of the benchmark class. */
+  public abstract String benchmarkClass();
+
+  /** Returns the name of the benchmark method, if the query is for one. */
+  public abstract Optional<String> methodName();
+
+  /** Returns the parameter values matching trials must have. */
+  public abstract ImmutableMap<String, String> parameters();
+
+  /** Returns the persistent hash of the VM spec, if the query is for one. */
+  public abstract Optional<Integer> vmSpecHash();
+
+  /** Returns the persistent hash of the host, if the query is for one. */
+  public abstract Optional<Integer> hostHash();
+
+  /** Returns the class name of the instrument, if the query is for one. */
+  public abstract Optional<String> instrument();
+
+  /** Returns whether a trial with the given index entry could match this query. */
+  final boolean mightMatch(IndexEntry entry) {
+    return entry.classHash == IndexEntry.hash(benchmarkClass())
+        && (!methodName().isPresent() || entry.methodHash == IndexEntry.hash(methodName().get()))
+        && (!vmSpecHash().isPresent() || entry.vmSpecHash == vmSpecHash().get())
+        && (!hostHash().isPresent() || entry.hostHash == hostHash().get())
+        && (!instrument().isPresent()
+            || entry.instrumentHash == IndexEntry.hash(instrument().get()));
+  }
+
+  /** Returns whether the trial matches this query. */
+  final boolean matches(Trial trial) {
+    BenchmarkSpec benchmarkSpec = trial.scenario().benchmarkSpec();
+    return benchmarkSpec.className().equals(benchmarkClass())
+        && (!methodName().isPresent() || benchmarkSpec.methodName().equals(methodName().get()))
+        && benchmarkSpec.parameters().entrySet().containsAll(parameters().entrySet())
+        && (!vmSpecHash().isPresent() || trial.scenario().vmSpec().hashCode() == vmSpecHash().get())
+        && (!hostHash().isPresent() || trial.scenario().host().hashCode() == hostHash().get())
+        && (!instrument().isPresent()
+            || trial.instrumentSpec().className().equals(instrument().get()));
+  }
+
+  /** Builder for {@link ResultsQuery}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    abstract Builder benchmarkClass(String benchmarkClass);
+
+    /** Restricts the query to the given benchmark method. */
+    public abstract Builder methodName(String methodName);
+
+    /** Restricts the query to trials with all of the given parameter values. */
+    public abstract Builder parameters(Map<String, String> parameters);
+
+    /** Returns a builder for the parameter values matching trials must have. */
+    public abstract ImmutableMap.Builder<String, String> parametersBuilder();
+
+    /** Restricts the query to the VM spec with the given persistent hash. */
+    public abstract Builder vmSpecHash(Integer vmSpecHash);
+
+    /** Restricts the query to the host with the given persistent hash. */
+    public abstract Builder hostHash(Integer hostHash);
+
+    /** Restricts the query to the instrument with the given class name. */
+    public abstract Builder instrument(String instrument);
+
+    /** Builds a new {@link ResultsQuery}. */
+    public abstract ResultsQuery build();
+  }
+}
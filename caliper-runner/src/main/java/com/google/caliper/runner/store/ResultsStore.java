@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.caliper.model.Trial;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An append-only store of trials in a local directory, for looking at how the results of a
+ * scenario change over many runs without reading every result file.
+ *
+ * <p>Trials are appended as lines of compact JSON to numbered segment files ({@code
+ * segment-000001.jsonl}, ...), each of which has a sidecar index ({@code segment-000001.idx}) of
+ * fixed-size {@linkplain IndexEntry entries} holding the hashes of each trial's benchmark class,
+ * method, benchmark spec, VM spec, host and instrument. A {@link ResultsQuery} scans only the
+ * indexes and reads just the trials whose entries match. A trial is written to its segment before
+ * its index entry, so a trial that was only partly written is never found.
+ *
+ * <p>Several processes can use a store at once: appends hold a lock on the store's {@code lock}
+ * file, and each process picks up the trials others appended before it appends its own.
+ */
+public final class ResultsStore implements Closeable {
+  private static final long DEFAULT_MAX_SEGMENT_BYTES = 64L << 20;
+  private static final String SEGMENT_EXTENSION = ".jsonl";
+  private static final String INDEX_EXTENSION = ".idx";
+
+  private final File directory;
+  private final Gson gson;
+  private final long maxSegmentBytes;
+  private final RandomAccessFile lockFile;
+
+  /** The IDs of the trials in the store, to avoid storing a trial twice. */
+  private final Set<UUID> trialIds = Sets.newHashSet();
+
+  /** The number of bytes of each segment's index that have been read into {@link #trialIds}. */
+  private final List<Long> indexBytesRead = Lists.newArrayList();
+
+  private ResultsStore(File directory, Gson gson, long maxSegmentBytes) throws IOException {
+    this.directory = directory;
+    this.gson = gson;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.lockFile = new RandomAccessFile(new File(directory, "lock"), "rw");
+  }
+
+  /** Opens the store in the given directory, creating it if it doesn't exist. */
+  public static ResultsStore open(File directory, Gson gson) throws IOException {
+    return open(directory, gson, DEFAULT_MAX_SEGMENT_BYTES);
+  }
+
+  @VisibleForTesting
+  static ResultsStore open(File directory, Gson gson, long maxSegmentBytes) throws IOException {
+    checkArgument(maxSegmentBytes > 0);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create the results store directory " + directory);
+    }
+    ResultsStore store = new ResultsStore(directory, checkNotNull(gson), maxSegmentBytes);
+    store.readNewIndexEntries();
+    return store;
+  }
+
+  /** Returns the number of trials in the store. */
+  public int size() throws IOException {
+    readNewIndexEntries();
+    return trialIds.size();
+  }
+
+  /**
+   * Appends the trial to the store.
+   *
+   * @return {@code false} if the store already had a trial with the same ID, which is left as is
+   */
+  public boolean add(Trial trial) throws IOException {
+    return addAll(ImmutableList.of(trial)) == 1;
+  }
+
+  /**
+   * Appends the trials to the store, syncing each segment they're written to once rather than once
+   * per trial. Trials whose IDs the store already has are skipped.
+   *
+   * @return the number of trials added
+   */
+  public int addAll(Iterable<Trial> trials) throws IOException {
+    try (FileLock lock = lockFile.getChannel().lock()) {
+      readNewIndexEntries();
+      Set<UUID> added = Sets.newHashSet();
+      SegmentAppender appender = new SegmentAppender(Math.max(indexBytesRead.size(), 1));
+      try {
+        for (Trial trial : trials) {
+          if (trialIds.contains(trial.id()) || !added.add(trial.id())) {
+            continue;
+          }
+          byte[] json = (gson.toJson(trial, Trial.class) + "\n").getBytes(UTF_8);
+          if (appender.size() > 0 && appender.size() + json.length > maxSegmentBytes) {
+            appender.close();
+            appender = new SegmentAppender(appender.segment + 1);
+          }
+          appender.append(trial, json);
+        }
+      } finally {
+        appender.close();
+      }
+      readNewIndexEntries();
+      return added.size();
+    }
+  }
+
+  /** Returns the trials matching the query, ordered by the start time of their runs. */
+  public ImmutableList<Trial> query(ResultsQuery query) throws IOException {
+    List<Location> matches = Lists.newArrayList();
+    for (int segment = 1; indexFile(segment).exists(); segment++) {
+      ByteBuffer index = readIndex(segment, 0);
+      while (index.remaining() >= IndexEntry.BYTES) {
+        IndexEntry entry = IndexEntry.read(index);
+        if (query.mightMatch(entry)) {
+          matches.add(new Location(segment, entry));
+        }
+      }
+    }
+    Collections.sort(
+        matches,
+        new Comparator<Location>() {
+          @Override
+          public int compare(Location a, Location b) {
+            return Longs.compare(a.entry.startMillis, b.entry.startMillis);
+          }
+        });
+
+    ImmutableList.Builder<Trial> trials = ImmutableList.builder();
+    FileChannel data = null;
+    int dataSegment = 0;
+    try {
+      for (Location location : matches) {
+        if (location.segment != dataSegment) {
+          if (data != null) {
+            data.close();
+          }
+          data = new RandomAccessFile(segmentFile(location.segment), "r").getChannel();
+          dataSegment = location.segment;
+        }
+        ByteBuffer json = ByteBuffer.allocate(location.entry.length);
+        readFully(data, json, location.entry.offset);
+        Trial trial = gson.fromJson(new String(json.array(), UTF_8), Trial.class);
+        if (query.matches(trial)) {
+          trials.add(trial);
+        }
+      }
+    } finally {
+      if (data != null) {
+        data.close();
+      }
+    }
+    return trials.build();
+  }
+
+  @Override
+  public void close() throws IOException {
+    lockFile.close();
+  }
+
+  /** Reads the index entries appended since the last call, by this process or another. */
+  private void readNewIndexEntries() throws IOException {
+    for (int segment = 1; indexFile(segment).exists(); segment++) {
+      if (indexBytesRead.size() < segment) {
+        indexBytesRead.add(0L);
+      }
+      long read = indexBytesRead.get(segment - 1);
+      ByteBuffer index = readIndex(segment, read);
+      while (index.remaining() >= IndexEntry.BYTES) {
+        trialIds.add(IndexEntry.read(index).trialId);
+        read += IndexEntry.BYTES;
+      }
+      indexBytesRead.set(segment - 1, read);
+    }
+  }
+
+  /**
+   * Returns the whole entries of a segment's index from the given position. A partial entry left
+   * by a process that died while appending it is ignored; it's overwritten by the next append.
+   */
+  private ByteBuffer readIndex(int segment, long position) throws IOException {
+    try (FileChannel index = new RandomAccessFile(indexFile(segment), "r").getChannel()) {
+      long size = index.size() - position;
+      ByteBuffer buffer = ByteBuffer.allocate((int) (size - size % IndexEntry.BYTES));
+      readFully(index, buffer, position);
+      buffer.flip();
+      return buffer;
+    }
+  }
+
+  private File segmentFile(int segment) {
+    return new File(directory, String.format("segment-%06d%s", segment, SEGMENT_EXTENSION));
+  }
+
+  private File indexFile(int segment) {
+    return new File(directory, String.format("segment-%06d%s", segment, INDEX_EXTENSION));
+  }
+
+  private static FileChannel open(File file) throws IOException {
+    return new RandomAccessFile(file, "rw").getChannel();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of results store file");
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Appends trials to one segment. The trials are synced to disk before any of their index entries
+   * are written, so that an index entry never refers to a trial that isn't there.
+   */
+  private final class SegmentAppender {
+    final int segment;
+    final FileChannel data;
+    final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    long size;
+
+    SegmentAppender(int segment) throws IOException {
+      this.segment = segment;
+      this.data = open(segmentFile(segment));
+      this.size = data.size();
+    }
+
+    long size() {
+      return size;
+    }
+
+    void append(Trial trial, byte[] json) throws IOException {
+      writeFully(data, ByteBuffer.wrap(json), size);
+      ByteBuffer entry = ByteBuffer.allocate(IndexEntry.BYTES);
+      IndexEntry.forTrial(trial, size, json.length - 1).write(entry);
+      entries.write(entry.array());
+      size += json.length;
+    }
+
+    void close() throws IOException {
+      try {
+        if (entries.size() == 0) {
+          return;
+        }
+        data.force(false);
+        try (FileChannel index = open(indexFile(segment))) {
+          long position = index.size() - index.size() % IndexEntry.BYTES;
+          writeFully(index, ByteBuffer.wrap(entries.toByteArray()), position);
+          index.truncate(position + entries.size());
+          index.force(false);
+        }
+        entries.reset();
+      } finally {
+        data.close();
+      }
+    }
+  }
+
+  /** Where a trial matching a query is stored. */
+  private static final class Location {
+    final int segment;
+    final IndexEntry entry;
+
+    Location(int segment, IndexEntry entry) {
+      this.segment = segment;
+      this.entry = entry;
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.store;
+
+import com.google.caliper.json.GsonModule;
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.TrialReader;
+import com.google.caliper.util.InvalidCommandException;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.math.Quantiles;
+import com.google.gson.Gson;
+import dagger.Component;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Command-line tool for a {@link ResultsStore}: {@code query} prints the history of a scenario, one
+ * trial per line, and {@code import} adds the trials of existing result files to the store.
+ */
+public final class ResultsStoreMain {
+  private static final ImmutableList<String> USAGE =
+      ImmutableList.of(
+          "Usage:",
+          " ResultsStoreMain [--dir <store>] query <class> [<method>] [-p <name>=<value>]...",
+          "     [--vm <hash>] [--host <hash>] [--instrument <class>]",
+          " ResultsStoreMain [--dir <store>] import <file or directory>...",
+          "",
+          "The store is in ~/.caliper/store unless --dir is given. Hashes are the hexadecimal",
+          "persistent hashes of VM specs and hosts, as printed by query.");
+
+  private static final int IMPORT_BATCH_SIZE = 1000;
+
+  private ResultsStoreMain() {}
+
+  public static void main(String[] args) {
+    PrintWriter stdout = new PrintWriter(System.out, true);
+    PrintWriter stderr = new PrintWriter(System.err, true);
+    int exitCode = 0;
+    try {
+      exitlessMain(args, stdout, stderr);
+    } catch (InvalidCommandException e) {
+      e.display(stderr);
+      exitCode = e.exitCode();
+    } catch (IOException e) {
+      stderr.println("Could not use the results store: " + e.getMessage());
+      exitCode = 1;
+    }
+    stdout.flush();
+    System.exit(exitCode);
+  }
+
+  public static void exitlessMain(String[] args, PrintWriter stdout, PrintWriter stderr)
+      throws IOException {
+    Iterator<String> arguments = Arrays.asList(args).iterator();
+    File directory = new File(new File(System.getProperty("user.home"), ".caliper"), "store");
+    String command = nextArgument(arguments, "a command");
+    if (command.equals("--dir")) {
+      directory = new File(nextArgument(arguments, "a directory after --dir"));
+      command = nextArgument(arguments, "a command");
+    }
+    Gson gson = DaggerResultsStoreMain_GsonComponent.create().gson();
+    if (command.equals("query")) {
+      ResultsQuery query = parseQuery(arguments);
+      try (ResultsStore store = ResultsStore.open(directory, gson)) {
+        printTrials(store.query(query), stdout);
+      }
+    } else if (command.equals("import")) {
+      if (!arguments.hasNext()) {
+        throw usageError("Expected files or directories to import");
+      }
+      try (ResultsStore store = ResultsStore.open(directory, gson)) {
+        while (arguments.hasNext()) {
+          importResults(new File(arguments.next()), store, gson, stdout);
+        }
+      }
+    } else {
+      throw usageError("Unknown command: %s", command);
+    }
+  }
+
+  private static ResultsQuery parseQuery(Iterator<String> arguments) {
+    ResultsQuery.Builder query =
+        ResultsQuery.builder(nextArgument(arguments, "a benchmark class"));
+    while (arguments.hasNext()) {
+      String argument = arguments.next();
+      if (argument.equals("-p")) {
+        List<String> parameter =
+            Splitter.on('=').limit(2).splitToList(nextArgument(arguments, "a parameter after -p"));
+        if (parameter.size() != 2) {
+          throw usageError("Expected <name>=<value> after -p");
+        }
+        query.parametersBuilder().put(parameter.get(0), parameter.get(1));
+      } else if (argument.equals("--vm")) {
+        query.vmSpecHash(parseHash(nextArgument(arguments, "a hash after --vm")));
+      } else if (argument.equals("--host")) {
+        query.hostHash(parseHash(nextArgument(arguments, "a hash after --host")));
+      } else if (argument.equals("--instrument")) {
+        query.instrument(nextArgument(arguments, "a class after --instrument"));
+      } else if (argument.startsWith("-")) {
+        throw usageError("Unknown option: %s", argument);
+      } else {
+        query.methodName(argument);
+      }
+    }
+    return query.build();
+  }
+
+  private static int parseHash(String hash) {
+    try {
+      return (int) Long.parseLong(hash, 16);
+    } catch (NumberFormatException e) {
+      throw usageError("Invalid hash: %s", hash);
+    }
+  }
+
+  private static String nextArgument(Iterator<String> arguments, String expected) {
+    if (!arguments.hasNext()) {
+      throw usageError("Expected %s", expected);
+    }
+    return arguments.next();
+  }
+
+  private static InvalidCommandException usageError(String message, Object... args) {
+    InvalidCommandException e = new InvalidCommandException(message, args);
+    e.setUsage(USAGE);
+    return e;
+  }
+
+  /**
+   * Prints each trial's run start time, method, parameters, instrument, VM and host hashes, and
+   * the median per-rep value of each kind of measurement.
+   */
+  private static void printTrials(List<Trial> trials, PrintWriter stdout) {
+    stdout.println("start\tmethod\tparameters\tinstrument\tvm\thost\tmeasurements");
+    for (Trial trial : trials) {
+      List<String> medians = Lists.newArrayList();
+      ImmutableListMultimap<String, Measurement> byDescription =
+          Measurement.indexByDescription(trial.measurements());
+      for (String description : byDescription.keySet()) {
+        List<Measurement> measurements = byDescription.get(description);
+        double[] values = new double[measurements.size()];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = measurements.get(i).value().magnitude() / measurements.get(i).weight();
+        }
+        medians.add(
+            String.format(
+                "%s=%s%s",
+                description,
+                Quantiles.median().computeInPlace(values),
+                measurements.get(0).value().unit()));
+      }
+      String instrument = trial.instrumentSpec().className();
+      stdout.printf(
+          "%s\t%s\t%s\t%s\t%08x\t%08x\t%s%n",
+          ISODateTimeFormat.dateTimeNoMillis().print(trial.run().startTime()),
+          trial.scenario().benchmarkSpec().methodName(),
+          pairs(trial.scenario().benchmarkSpec().parameters()),
+          instrument.substring(instrument.lastIndexOf('.') + 1),
+          trial.scenario().vmSpec().hashCode(),
+          trial.scenario().host().hashCode(),
+          Joiner.on(' ').join(medians));
+    }
+  }
+
+  private static String pairs(Map<String, String> map) {
+    return Joiner.on(' ').withKeyValueSeparator("=").join(map);
+  }
+
+  /**
+   * Imports a result file written by {@code OutputFileDumper} in any JSON format, or every such
+   * file in a directory.
+   */
+  private static void importResults(File file, ResultsStore store, Gson gson, PrintWriter stdout)
+      throws IOException {
+    if (file.isDirectory()) {
+      File[] files = file.listFiles();
+      Arrays.sort(files);
+      for (File child : files) {
+        if (child.isFile()
+            && (child.getName().endsWith(".json") || child.getName().endsWith(".json.gz"))) {
+          importResults(child, store, gson, stdout);
+        }
+      }
+      return;
+    }
+    // trials are added in batches, so that a large file is neither held in memory nor synced to
+    // the store once per trial
+    List<Trial> batch = Lists.newArrayListWithCapacity(IMPORT_BATCH_SIZE);
+    int read = 0;
+    int added = 0;
+    try (TrialReader reader = TrialReader.open(file, gson)) {
+      while (reader.hasNext()) {
+        batch.add(reader.next());
+        read++;
+        if (batch.size() == IMPORT_BATCH_SIZE || !reader.hasNext()) {
+          added += store.addAll(batch);
+          batch.clear();
+        }
+      }
+    }
+    stdout.printf("%s: added %d of %d trial(s)%n", file, added, read);
+  }
+
+  @Component(modules = GsonModule.class)
+  interface GsonComponent {
+    Gson gson();
+  }
+}
@@ -17,6 +17,7 @@
 package com.google.caliper.runner.target;
 
 import com.google.auto.value.AutoValue;
+import com.google.caliper.runner.config.JitProfile;
 import com.google.caliper.runner.config.VmConfig;
 import com.google.caliper.runner.config.VmType;
 import com.google.common.annotations.VisibleForTesting;
@@ -46,6 +47,18 @@ public abstract class Jvm extends Vm {
           "-XX:+PrintCompilation",
           "-XX:+PrintGC");
 
+  /**
+   * The VM args used for trials with the {@link JitProfile#PRODUCTION production} JIT profile. This
+   * leaves compilation and GC settings at the VM's defaults.
+   */
+  @VisibleForTesting
+  public static final ImmutableSet<String> PRODUCTION_TRIAL_VM_ARGS =
+      ImmutableSet.of(
+          "-Dsun.reflect.inflationThreshold=0",
+          "-XX:+PrintFlagsFinal",
+          "-XX:+PrintCompilation",
+          "-XX:+PrintGC");
+
   private static final Predicate<String> PROPERTIES_TO_RETAIN =
       new Predicate<String>() {
         @Override
@@ -73,7 +86,9 @@ public abstract class Jvm extends Vm {
 
   @Override
   public ImmutableSet<String> trialArgs() {
-    return TRIAL_VM_ARGS;
+    return config().jitProfile() == JitProfile.PRODUCTION
+        ? PRODUCTION_TRIAL_VM_ARGS
+        : TRIAL_VM_ARGS;
   }
 
   @Override
@@ -63,7 +63,7 @@ public abstract class WorkerSpec implements VmProcess.Spec {
   }
 
   @Override
-  public final ImmutableList<String> vmOptions() {
+  public ImmutableList<String> vmOptions() {
     return target.vm().args(additionalVmOptions());
   }
 
@@ -28,6 +28,7 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import java.util.Collections;
 import java.util.Set;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -80,9 +81,38 @@ final class DryRunProcessor extends WorkerProcessor<ImmutableSet<Experiment>> {
 
     @Override
     public void visit(DryRunSuccessLogMessage logMessage) {
-      this.result =
-          ImmutableSet.copyOf(
-              Maps.filterKeys(experiments, Predicates.in(logMessage.ids())).values());
+      ImmutableSet.Builder<Experiment> builder = ImmutableSet.builder();
+      for (Experiment experiment :
+          Maps.filterKeys(experiments, Predicates.in(logMessage.ids())).values()) {
+        builder.add(withTrialVmArguments(experiment, logMessage));
+      }
+      this.result = builder.build();
+    }
+
+    /**
+     * Applies any VM argument choices that the experiment's instrument makes based on the dry-run,
+     * unless the user already made a choice for one of the same dimensions.
+     */
+    private static Experiment withTrialVmArguments(
+        Experiment experiment, DryRunSuccessLogMessage logMessage) {
+      Long nanos = logMessage.nanos().get(experiment.id());
+      Long allocatedBytes = logMessage.allocatedBytes().get(experiment.id());
+      if (nanos == null || allocatedBytes == null) {
+        return experiment;
+      }
+      ImmutableMap<String, String> vmArguments =
+          experiment
+              .instrumentedMethod()
+              .trialVmArguments(
+                  experiment.target().vm().type(),
+                  logMessage.javaFeatureVersion(),
+                  nanos,
+                  allocatedBytes);
+      if (vmArguments.isEmpty()
+          || !Collections.disjoint(vmArguments.keySet(), experiment.vmArguments().keySet())) {
+        return experiment;
+      }
+      return experiment.withVmArguments(vmArguments);
     }
   }
 }
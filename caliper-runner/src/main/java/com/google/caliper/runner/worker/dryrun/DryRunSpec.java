@@ -25,6 +25,7 @@ import com.google.caliper.runner.server.LocalPort;
 import com.google.caliper.runner.target.Target;
 import com.google.caliper.runner.worker.WorkerScoped;
 import com.google.caliper.runner.worker.WorkerSpec;
+import com.google.caliper.runner.worker.targetinfo.TargetInfo;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.io.PrintWriter;
@@ -40,6 +41,7 @@ final class DryRunSpec extends WorkerSpec {
   private final BenchmarkClassModel benchmarkClass;
   private final ImmutableSet<Experiment> experiments;
   private final Target target;
+  private final TargetInfo targetInfo;
 
   @Inject
   DryRunSpec(
@@ -47,11 +49,13 @@ final class DryRunSpec extends WorkerSpec {
       @LocalPort int port,
       BenchmarkClassModel benchmarkClass,
       Set<Experiment> experiments,
-      Target target) {
+      Target target,
+      TargetInfo targetInfo) {
     super(target, id, id, port, benchmarkClass.name());
     this.benchmarkClass = benchmarkClass;
     this.experiments = ImmutableSet.copyOf(experiments);
     this.target = target;
+    this.targetInfo = targetInfo;
   }
 
   @Override
@@ -63,7 +67,7 @@ final class DryRunSpec extends WorkerSpec {
   public WorkerRequest request() {
     Set<ExperimentSpec> experimentSpecs = new HashSet<>();
     for (Experiment experiment : experiments) {
-      experimentSpecs.add(experiment.toExperimentSpec());
+      experimentSpecs.add(experiment.toExperimentSpec(targetInfo.nanoTime(target)));
     }
     return new DryRunRequest(experimentSpecs);
   }
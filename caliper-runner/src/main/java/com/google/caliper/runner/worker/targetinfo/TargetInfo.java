@@ -16,23 +16,35 @@
 
 package com.google.caliper.runner.worker.targetinfo;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.auto.value.AutoValue;
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.core.BenchmarkClassModel;
 import com.google.caliper.model.Host;
 import com.google.caliper.runner.target.Target;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 
 /**
  * Information about the targets for the run. Specifically, the single, identical model of the
- * benchmark class that each of them should have produced, as well as a mapping from each target to
- * the {@link Host} properties for that target's device.
+ * benchmark class that each of them should have produced, as well as mappings from each target to
+ * the {@link Host} properties for that target's device and to the characteristics of its clocks.
  */
 @AutoValue
 public abstract class TargetInfo {
 
-  static TargetInfo create(BenchmarkClassModel model, Map<Target, Host> hosts) {
-    return new AutoValue_TargetInfo(model, ImmutableMap.copyOf(hosts));
+  static TargetInfo create(
+      BenchmarkClassModel model,
+      Map<Target, Host> hosts,
+      Map<Target, ClockCharacteristics> nanoTimes,
+      Map<Target, ClockCharacteristics> threadCpuTimes) {
+    return new AutoValue_TargetInfo(
+        model,
+        ImmutableMap.copyOf(hosts),
+        ImmutableMap.copyOf(nanoTimes),
+        ImmutableMap.copyOf(threadCpuTimes));
   }
 
   /**
@@ -44,4 +56,29 @@ public abstract class TargetInfo {
 
   /** Returns the mapping of target to host device properties. */
   public abstract ImmutableMap<Target, Host> hosts();
+
+  /** Returns the mapping of target to the characteristics of {@link System#nanoTime()} on it. */
+  public abstract ImmutableMap<Target, ClockCharacteristics> nanoTimes();
+
+  /**
+   * Returns the mapping of target to the characteristics of its thread CPU time clock. Targets that
+   * can't measure thread CPU time are not included.
+   */
+  public abstract ImmutableMap<Target, ClockCharacteristics> threadCpuTimes();
+
+  /** Returns the characteristics of {@link System#nanoTime()} on the given target. */
+  public final ClockCharacteristics nanoTime(Target target) {
+    ClockCharacteristics nanoTime = nanoTimes().get(target);
+    checkArgument(nanoTime != null, "no info for target %s", target);
+    return nanoTime;
+  }
+
+  /**
+   * Returns the characteristics of the thread CPU time clock on the given target, or absent if it
+   * can't measure thread CPU time.
+   */
+  public final Optional<ClockCharacteristics> threadCpuTime(Target target) {
+    checkArgument(nanoTimes().containsKey(target), "no info for target %s", target);
+    return Optional.fromNullable(threadCpuTimes().get(target));
+  }
 }
@@ -16,6 +16,7 @@
 
 package com.google.caliper.runner.worker.targetinfo;
 
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.bridge.TargetInfoLogMessage;
 import com.google.caliper.core.BenchmarkClassModel;
 import com.google.caliper.core.InvalidBenchmarkException;
@@ -63,6 +64,8 @@ public final class TargetInfoFromWorkerFactory implements TargetInfoFactory {
   public TargetInfo getTargetInfo() {
     SetMultimap<BenchmarkClassModel, Target> models = HashMultimap.create();
     Map<Target, Host> hosts = new HashMap<>();
+    Map<Target, ClockCharacteristics> nanoTimes = new HashMap<>();
+    Map<Target, ClockCharacteristics> threadCpuTimes = new HashMap<>();
     try {
       for (Target target : targets) {
         TargetInfoLogMessage logMessage =
@@ -70,6 +73,10 @@ public final class TargetInfoFromWorkerFactory implements TargetInfoFactory {
         models.put(logMessage.model(), target);
         hosts.put(
             target, new Host.Builder().addAllProperties(logMessage.deviceProperties()).build());
+        nanoTimes.put(target, logMessage.nanoTime());
+        if (logMessage.threadCpuTime().isPresent()) {
+          threadCpuTimes.put(target, logMessage.threadCpuTime().get());
+        }
       }
     } catch (ProxyWorkerException e) {
       if (e.exceptionType().equals(UserCodeException.class.getName())) {
@@ -87,6 +94,7 @@ public final class TargetInfoFromWorkerFactory implements TargetInfoFactory {
               + "the benchmark class.");
     }
 
-    return TargetInfo.create(Iterables.getOnlyElement(models.keySet()), hosts);
+    return TargetInfo.create(
+        Iterables.getOnlyElement(models.keySet()), hosts, nanoTimes, threadCpuTimes);
   }
 }
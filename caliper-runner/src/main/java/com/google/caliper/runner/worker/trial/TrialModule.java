@@ -18,6 +18,7 @@ package com.google.caliper.runner.worker.trial;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.model.Host;
 import com.google.caliper.model.Run;
 import com.google.caliper.model.Scenario;
@@ -30,6 +31,7 @@ import com.google.caliper.runner.worker.WorkerProcessor;
 import com.google.caliper.runner.worker.WorkerRunner;
 import com.google.caliper.runner.worker.WorkerScoped;
 import com.google.caliper.runner.worker.WorkerSpec;
+import com.google.caliper.runner.worker.targetinfo.TargetInfo;
 import com.google.common.collect.ImmutableMap;
 import dagger.Binds;
 import dagger.Provides;
@@ -65,9 +67,18 @@ abstract class TrialModule {
   @Binds
   abstract WorkerSpec bindWorkerSpec(TrialSpec spec);
 
+  /** Provides the characteristics of {@link System#nanoTime()} on the trial's target. */
   @Provides
-  static MeasurementCollectingVisitor provideMeasurementCollectingVisitor(Experiment experiment) {
-    return experiment.instrumentedMethod().getMeasurementCollectingVisitor();
+  static ClockCharacteristics provideNanoTime(Target target, TargetInfo targetInfo) {
+    return targetInfo.nanoTime(target);
+  }
+
+  @Provides
+  static MeasurementCollectingVisitor provideMeasurementCollectingVisitor(
+      Experiment experiment, ClockCharacteristics nanoTime, @TrialId UUID trialId) {
+    return experiment
+        .instrumentedMethod()
+        .getMeasurementCollectingVisitor(experiment.target().vm().config(), nanoTime, trialId);
   }
 
   @Provides
@@ -94,11 +105,13 @@ abstract class TrialModule {
                     new Scenario.Builder()
                         .host(host)
                         .vmSpec(dataCollectingVisitor.vmSpec())
-                        .benchmarkSpec(experiment.benchmarkSpec()))
+                        .benchmarkSpec(experiment.benchmarkSpec())
+                        .addAllVmArguments(experiment.vmArguments()))
                 .addAllMeasurements(measurementCollectingVisitor.getMeasurements())
                 .build(),
             experiment,
-            measurementCollectingVisitor.getMessages());
+            measurementCollectingVisitor.getMessages(),
+            measurementCollectingVisitor.getUnreportedMeasurements());
       }
     };
   }
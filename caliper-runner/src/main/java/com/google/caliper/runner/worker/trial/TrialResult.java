@@ -14,20 +14,32 @@
 
 package com.google.caliper.runner.worker.trial;
 
+import com.google.caliper.model.Measurement;
 import com.google.caliper.model.Trial;
 import com.google.caliper.runner.experiment.Experiment;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
 /** A simple tuple of the data */
 public final class TrialResult {
   private final Trial trial;
   private final Experiment experiment;
   private final ImmutableList<String> trialMessages;
+  private final ImmutableList<Measurement> unreportedMeasurements;
 
   public TrialResult(Trial trial, Experiment experiment, ImmutableList<String> trialMessages) {
+    this(trial, experiment, trialMessages, ImmutableList.<Measurement>of());
+  }
+
+  public TrialResult(
+      Trial trial,
+      Experiment experiment,
+      ImmutableList<String> trialMessages,
+      ImmutableList<Measurement> unreportedMeasurements) {
     this.trial = trial;
     this.experiment = experiment;
     this.trialMessages = trialMessages;
+    this.unreportedMeasurements = unreportedMeasurements;
   }
 
   public Experiment getExperiment() {
@@ -41,4 +53,20 @@ public final class TrialResult {
   public ImmutableList<String> getTrialMessages() {
     return trialMessages;
   }
+
+  /**
+   * Returns the measurements the instrument collected for the trial but left out of its results,
+   * such as the runtime when only CPU time is reported.
+   */
+  public ImmutableList<Measurement> getUnreportedMeasurements() {
+    return unreportedMeasurements;
+  }
+
+  /**
+   * Returns the trial's measurements along with the {@linkplain #getUnreportedMeasurements()
+   * unreported} ones.
+   */
+  public Iterable<Measurement> getAllMeasurements() {
+    return Iterables.concat(trial.measurements(), unreportedMeasurements);
+  }
 }
@@ -16,25 +16,32 @@
 
 package com.google.caliper.runner.worker.trial;
 
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.bridge.TrialRequest;
 import com.google.caliper.bridge.WorkerRequest;
 import com.google.caliper.core.BenchmarkClassModel;
 import com.google.caliper.runner.experiment.Experiment;
+import com.google.caliper.runner.experiment.VmArgumentDimensions;
 import com.google.caliper.runner.instrument.Instrument;
 import com.google.caliper.runner.server.LocalPort;
 import com.google.caliper.runner.worker.WorkerSpec;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import java.io.PrintWriter;
 import java.util.UUID;
+import java.util.regex.Pattern;
 import javax.inject.Inject;
 
 /** A {@link WorkerSpec} for running a trial of an experiment. */
 public final class TrialSpec extends WorkerSpec {
+  private static final Pattern SELECT_GC = Pattern.compile("-XX:\\+Use\\w+GC");
 
   private final Experiment experiment;
   private final BenchmarkClassModel benchmarkClass;
   private final int trialNumber;
+  private final ClockCharacteristics nanoTime;
 
   @VisibleForTesting
   @Inject
@@ -43,11 +50,13 @@ public final class TrialSpec extends WorkerSpec {
       @LocalPort int port,
       Experiment experiment,
       BenchmarkClassModel benchmarkClass,
-      @TrialNumber int trialNumber) {
+      @TrialNumber int trialNumber,
+      ClockCharacteristics nanoTime) {
     super(experiment.target(), id, id, port, experiment.benchmarkSpec().className());
     this.experiment = experiment;
     this.benchmarkClass = benchmarkClass;
     this.trialNumber = trialNumber;
+    this.nanoTime = nanoTime;
   }
 
   @Override
@@ -57,7 +66,30 @@ public final class TrialSpec extends WorkerSpec {
 
   @Override
   public WorkerRequest request() {
-    return new TrialRequest(experiment.toExperimentSpec());
+    return new TrialRequest(experiment.toExperimentSpec(nanoTime));
+  }
+
+  /**
+   * Returns the VM options for the trial. If the experiment selects a collector, any other
+   * collector selected by the VM configuration, the benchmark class, the trial args or the
+   * instrument is dropped, since the VM refuses to start if more than one is selected.
+   */
+  @Override
+  public ImmutableList<String> vmOptions() {
+    ImmutableList<String> vmOptions = super.vmOptions();
+    if (!VmArgumentDimensions.selectsCollector(experiment.vmArguments())) {
+      return vmOptions;
+    }
+    final ImmutableList<String> experimentVmArgs = experiment.vmArgs();
+    return FluentIterable.from(vmOptions)
+        .filter(
+            new Predicate<String>() {
+              @Override
+              public boolean apply(String option) {
+                return !SELECT_GC.matcher(option).matches() || experimentVmArgs.contains(option);
+              }
+            })
+        .toList();
   }
 
   @Override
@@ -66,6 +98,7 @@ public final class TrialSpec extends WorkerSpec {
     return new ImmutableList.Builder<String>()
         .addAll(benchmarkClass.vmOptions())
         .addAll(target().vm().trialArgs())
+        .addAll(experiment.vmArgs())
         .addAll(instrument.getExtraCommandLineArgs(target().vm().config()))
         .build();
   }
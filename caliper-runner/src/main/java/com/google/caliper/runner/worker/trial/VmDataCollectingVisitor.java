@@ -24,12 +24,20 @@ import com.google.caliper.runner.target.Target;
 import com.google.caliper.runner.worker.WorkerScoped;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import javax.inject.Inject;
 
 /** An {@link AbstractLogMessageVisitor} that collects data about JVM properties and options. */
 @WorkerScoped
 final class VmDataCollectingVisitor extends AbstractLogMessageVisitor {
+  /**
+   * Options whose values differ between processes of the same VM, such as addresses randomized at
+   * startup. They don't describe the VM, and would give every trial a different {@link VmSpec}.
+   */
+  private static final ImmutableSet<String> PER_PROCESS_OPTIONS =
+      ImmutableSet.of("SharedBaseAddress");
+
   private final ImmutableMap.Builder<String, String> vmOptionsBuilder = ImmutableMap.builder();
   private final Target target;
   private Optional<ImmutableMap<String, String>> vmProperties = Optional.absent();
@@ -51,7 +59,9 @@ final class VmDataCollectingVisitor extends AbstractLogMessageVisitor {
 
   @Override
   public void visit(VmOptionLogMessage logMessage) {
-    vmOptionsBuilder.put(logMessage.name(), logMessage.value());
+    if (!PER_PROCESS_OPTIONS.contains(logMessage.name())) {
+      vmOptionsBuilder.put(logMessage.name(), logMessage.value());
+    }
   }
 
   @Override
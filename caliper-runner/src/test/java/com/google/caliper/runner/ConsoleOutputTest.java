@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.caliper.Benchmark;
+import com.google.caliper.core.BenchmarkClassModel.MethodModel;
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.testing.TrialFixtures;
+import com.google.caliper.runner.experiment.Experiment;
+import com.google.caliper.runner.instrument.RuntimeInstrument;
+import com.google.caliper.runner.target.LocalDevice;
+import com.google.caliper.runner.worker.trial.TrialResult;
+import com.google.caliper.util.ShortDuration;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link ConsoleOutput}. */
+@RunWith(JUnit4.class)
+public class ConsoleOutputTest {
+
+  @Test
+  public void wallToCpuRatio() throws Exception {
+    String output =
+        print(
+            result(
+                ImmutableList.of(measurement("runtime", 1000), measurement("cpu", 1000)),
+                ImmutableList.<Measurement>of()));
+    assertThat(output).contains("    wall/cpu: 1.00\n");
+    assertThat(output).doesNotContain("WARNING");
+  }
+
+  @Test
+  public void wallToCpuRatio_onlyCpuTimeReported() throws Exception {
+    String output =
+        print(
+            result(
+                ImmutableList.of(measurement("cpu", 1000)),
+                ImmutableList.of(measurement("runtime", 2000))));
+    assertThat(output).contains("    cpu(ns): ");
+    assertThat(output).doesNotContain("    runtime(ns): ");
+    assertThat(output).contains("    wall/cpu: 2.00\n");
+    assertThat(output)
+        .contains("WARNING: The benchmark thread was off the CPU for 50% of the measured time.");
+  }
+
+  @Test
+  public void wallToCpuRatio_notPrintedWithoutCpuTime() throws Exception {
+    String output =
+        print(
+            result(
+                ImmutableList.of(measurement("runtime", 1000)), ImmutableList.<Measurement>of()));
+    assertThat(output).contains("    runtime(ns): ");
+    assertThat(output).doesNotContain("wall/cpu");
+  }
+
+  private static String print(TrialResult result) {
+    StringWriter out = new StringWriter();
+    ConsoleOutput output =
+        new ConsoleOutput(new PrintWriter(out, true), 1, Stopwatch.createStarted(), 0.05);
+    output.processTrial(result);
+    output.close();
+    return out.toString().replace(System.lineSeparator(), "\n");
+  }
+
+  private static TrialResult result(
+      ImmutableList<Measurement> reported, ImmutableList<Measurement> unreported)
+      throws Exception {
+    RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(100, NANOSECONDS));
+    Experiment experiment =
+        Experiment.create(
+            1,
+            instrument.createInstrumentedMethod(
+                MethodModel.of(FooBenchmark.class.getDeclaredMethod("foo", long.class))),
+            ImmutableMap.<String, String>of(),
+            ImmutableMap.<String, String>of(),
+            LocalDevice.builder().build().createDefaultTarget());
+    Trial trial = TrialFixtures.trial(UUID.randomUUID()).addAllMeasurements(reported).build();
+    return new TrialResult(trial, experiment, ImmutableList.<String>of(), unreported);
+  }
+
+  private static Measurement measurement(String description, double nanos) {
+    return TrialFixtures.measurement(description, nanos, "ns", 1000);
+  }
+
+  static class FooBenchmark {
+    @Benchmark
+    public long foo(long reps) {
+      return reps;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.caliper.runner;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.Assert.fail;
+
+import com.google.caliper.Benchmark;
+import com.google.caliper.core.BenchmarkClassModel.MethodModel;
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.testing.TrialFixtures;
+import com.google.caliper.runner.config.InvalidConfigurationException;
+import com.google.caliper.runner.experiment.Experiment;
+import com.google.caliper.runner.instrument.RuntimeInstrument;
+import com.google.caliper.runner.target.LocalDevice;
+import com.google.caliper.runner.worker.trial.TrialResult;
+import com.google.caliper.util.ShortDuration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link HeapSweepSummary}. */
+@RunWith(JUnit4.class)
+public class HeapSweepSummaryTest {
+
+  private static TrialResult result(String gc, String heap, double nanosPerRep) throws Exception {
+    return result(gc, heap, nanosPerRep, false);
+  }
+
+  /**
+   * Returns a result with the given runtime per rep, left out of the trial's results as when only
+   * CPU time is reported if {@code cpuTimeInstead} is true.
+   */
+  private static TrialResult result(
+      String gc, String heap, double nanosPerRep, boolean cpuTimeInstead) throws Exception {
+    RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(100, NANOSECONDS));
+    MethodModel method =
+        MethodModel.of(FooBenchmark.class.getDeclaredMethod("foo", long.class));
+    Experiment experiment =
+        Experiment.create(
+            1,
+            instrument.createInstrumentedMethod(method),
+            ImmutableMap.<String, String>of(),
+            ImmutableMap.of("gc", gc, "heap", heap),
+            LocalDevice.builder().build().createDefaultTarget());
+    Measurement runtime = measurement("runtime", nanosPerRep);
+    Trial trial =
+        TrialFixtures.trial(UUID.randomUUID())
+            .addMeasurement(cpuTimeInstead ? measurement("cpu", nanosPerRep) : runtime)
+            .build();
+    return new TrialResult(
+        trial,
+        experiment,
+        ImmutableList.<String>of(),
+        cpuTimeInstead ? ImmutableList.of(runtime) : ImmutableList.<Measurement>of());
+  }
+
+  private static Measurement measurement(String description, double nanosPerRep) {
+    return TrialFixtures.measurement(description, nanosPerRep * 1000, "ns", 1000);
+  }
+
+  private static String print(HeapSweepSummary summary) {
+    StringWriter out = new StringWriter();
+    summary.print(new PrintWriter(out, true));
+    return out.toString();
+  }
+
+  @Test
+  public void marksSmallestHeapWithinTolerance() throws Exception {
+    HeapSweepSummary summary = new HeapSweepSummary(0.05);
+    // 1 ns/rep is the best; 1.04 ns/rep is within 5% of it, 2 ns/rep isn't
+    summary.addTrial(result("G1", "1g", 1.04));
+    summary.addTrial(result("G1", "256m", 2));
+    summary.addTrial(result("G1", "4g", 1));
+    String output = print(summary);
+    assertThat(output).contains("within 5.0% of the best");
+    assertThat(output).contains("foo {} on default@local {gc=G1}");
+    assertThat(output).containsMatch("256m +5\\.000e\\+08\n");
+    assertThat(output).containsMatch("1g +9\\.615e\\+08 \\*\n");
+    assertThat(output).containsMatch("4g +1\\.000e\\+09\n");
+    // ordered by size rather than by name
+    assertThat(output.indexOf("256m")).isLessThan(output.indexOf("1g "));
+    assertThat(output.indexOf("1g ")).isLessThan(output.indexOf("4g "));
+  }
+
+  @Test
+  public void skipsCurvesWithASingleHeapSize() throws Exception {
+    HeapSweepSummary summary = new HeapSweepSummary(0.05);
+    summary.addTrial(result("Epsilon", "2g", 1));
+    summary.addTrial(result("Epsilon", "2g", 1.5));
+    assertThat(print(summary)).isEmpty();
+
+    summary.addTrial(result("G1", "1g", 1));
+    summary.addTrial(result("G1", "2g", 1));
+    String output = print(summary);
+    assertThat(output).contains("{gc=G1}");
+    assertThat(output).doesNotContain("Epsilon");
+  }
+
+  @Test
+  public void usesRuntimeWhenOnlyCpuTimeIsReported() throws Exception {
+    HeapSweepSummary summary = new HeapSweepSummary(0.05);
+    summary.addTrial(result("G1", "256m", 2, true));
+    summary.addTrial(result("G1", "1g", 1, true));
+    String output = print(summary);
+    assertThat(output).containsMatch("256m +5\\.000e\\+08\n");
+    assertThat(output).containsMatch("1g +1\\.000e\\+09 \\*\n");
+  }
+
+  @Test
+  public void parseTolerance() {
+    assertThat(HeapSweepSummary.parseTolerance("5")).isWithin(1e-9).of(0.05);
+    assertThat(HeapSweepSummary.parseTolerance(" 0 ")).isEqualTo(0.0);
+    assertThat(HeapSweepSummary.parseTolerance("99.5")).isWithin(1e-9).of(0.995);
+    for (String invalid : new String[] {"-1", "100", "250", "five", ""}) {
+      try {
+        HeapSweepSummary.parseTolerance(invalid);
+        fail(invalid);
+      } catch (InvalidConfigurationException expected) {
+        assertThat(expected).hasMessageThat().contains("runner.heapSweepTolerance");
+      }
+    }
+  }
+
+  static class FooBenchmark {
+    @Benchmark
+    public long foo(long reps) {
+      return reps;
+    }
+  }
+}
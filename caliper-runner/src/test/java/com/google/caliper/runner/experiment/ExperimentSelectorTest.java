@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.caliper.runner.experiment;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.caliper.Benchmark;
+import com.google.caliper.core.BenchmarkClassModel.MethodModel;
+import com.google.caliper.runner.instrument.Instrument.InstrumentedMethod;
+import com.google.caliper.runner.instrument.RuntimeInstrument;
+import com.google.caliper.runner.target.LocalDevice;
+import com.google.caliper.util.ShortDuration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link ExperimentSelector}. */
+@RunWith(JUnit4.class)
+public class ExperimentSelectorTest {
+
+  @Test
+  public void expandsVmArgumentDimensions() throws Exception {
+    RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(100, NANOSECONDS));
+    InstrumentedMethod method =
+        instrument.createInstrumentedMethod(
+            MethodModel.of(FooBenchmark.class.getDeclaredMethod("foo", long.class)));
+    ExperimentSelector selector =
+        new ExperimentSelector(
+            ImmutableSet.of(method),
+            ImmutableSet.of(LocalDevice.builder().build().createDefaultTarget()),
+            ImmutableSetMultimap.of("size", "10", "size", "100"),
+            ImmutableSetMultimap.of("gc", "G1", "gc", "Parallel", "heap", "1g", "heap", "2g"));
+
+    List<Experiment> experiments = selector.selectExperiments().asList();
+
+    assertThat(experiments).hasSize(8);
+    ImmutableList.Builder<ImmutableMap<String, String>> vmArguments = ImmutableList.builder();
+    for (Experiment experiment : experiments) {
+      vmArguments.add(experiment.vmArguments());
+    }
+    assertThat(vmArguments.build())
+        .containsExactly(
+            ImmutableMap.of("gc", "G1", "heap", "1g"),
+            ImmutableMap.of("gc", "G1", "heap", "1g"),
+            ImmutableMap.of("gc", "G1", "heap", "2g"),
+            ImmutableMap.of("gc", "G1", "heap", "2g"),
+            ImmutableMap.of("gc", "Parallel", "heap", "1g"),
+            ImmutableMap.of("gc", "Parallel", "heap", "1g"),
+            ImmutableMap.of("gc", "Parallel", "heap", "2g"),
+            ImmutableMap.of("gc", "Parallel", "heap", "2g"))
+        .inOrder();
+    assertThat(experiments.get(0).userParameters()).containsExactly("size", "10");
+    assertThat(experiments.get(1).userParameters()).containsExactly("size", "100");
+    assertThat(experiments.get(7).vmArgs())
+        .containsExactly("-XX:+UseParallelGC", "-Xms2g", "-Xmx2g")
+        .inOrder();
+  }
+
+  @Test
+  public void noVmArgumentDimensions() throws Exception {
+    RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(100, NANOSECONDS));
+    InstrumentedMethod method =
+        instrument.createInstrumentedMethod(
+            MethodModel.of(FooBenchmark.class.getDeclaredMethod("foo", long.class)));
+    ExperimentSelector selector =
+        new ExperimentSelector(
+            ImmutableSet.of(method),
+            ImmutableSet.of(LocalDevice.builder().build().createDefaultTarget()),
+            ImmutableSetMultimap.of("size", "10", "size", "100"),
+            ImmutableSetMultimap.<String, String>of());
+
+    ImmutableSet<Experiment> experiments = selector.selectExperiments();
+
+    assertThat(experiments).hasSize(2);
+    for (Experiment experiment : experiments) {
+      assertThat(experiment.vmArguments()).isEmpty();
+      assertThat(experiment.vmArgs()).isEmpty();
+    }
+  }
+
+  static class FooBenchmark {
+    @Benchmark
+    public long foo(long reps) {
+      return reps;
+    }
+  }
+}
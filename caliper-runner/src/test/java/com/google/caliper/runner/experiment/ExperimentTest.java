@@ -46,6 +46,36 @@ public class ExperimentTest {
                 + "target=default@local, parameters={baz=qux}}");
   }
 
+  @Test
+  public void testVmArgs() throws Exception {
+    RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(100, NANOSECONDS));
+    MethodModel method =
+        MethodModel.of(FooBenchmark.class.getDeclaredMethod("myBenchmark", long.class));
+    Experiment experiment =
+        Experiment.create(
+            1,
+            instrument.createInstrumentedMethod(method),
+            ImmutableMap.<String, String>of(),
+            ImmutableMap.of("heap", "1g", "gc", "ZGC", "other", "-Da=b  -Dc=d"),
+            LocalDevice.builder().build().createDefaultTarget());
+    assertThat(experiment.vmArgs())
+        .containsExactly("-XX:+UseZGC", "-Xms1g", "-Xmx1g", "-Da=b", "-Dc=d")
+        .inOrder();
+    assertThat(experiment.toString()).contains("vmArguments={gc=ZGC, heap=1g, other=-Da=b  -Dc=d}");
+  }
+
+  @Test
+  public void testWithVmArguments() throws Exception {
+    Experiment experiment =
+        createFakeExperiment().withVmArguments(ImmutableMap.of("gc", "epsilon", "heap", "2g"));
+    assertThat(experiment.vmArgs())
+        .containsExactly(
+            "-XX:+UnlockExperimentalVMOptions", "-XX:+UseEpsilonGC", "-Xms2g", "-Xmx2g")
+        .inOrder();
+    assertThat(VmArgumentDimensions.selectsEpsilon(experiment.vmArguments())).isTrue();
+    assertThat(experiment.userParameters()).containsExactly("baz", "qux");
+  }
+
   private static Experiment createFakeExperiment() throws Exception {
     RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(100, NANOSECONDS));
     MethodModel method =
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.resultprocessor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+import com.google.caliper.model.NormalizedTrialReader;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.testing.TrialFixtures;
+import com.google.caliper.runner.config.InvalidConfigurationException;
+import com.google.caliper.runner.resultprocessor.OutputFormat.TrialWriter;
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OutputFormat}. */
+@RunWith(JUnit4.class)
+public class OutputFormatTest {
+  private static final Gson GSON = TrialFixtures.gson();
+
+  private static final Trial TRIAL =
+      TrialFixtures.trial(new UUID(0, 1))
+          .run(TrialFixtures.run(new UUID(0, 2), 0))
+          .scenario(
+              TrialFixtures.scenario(
+                  TrialFixtures.benchmarkSpec("bar")
+                      .addParameter("size", "10")
+                      .addParameter("text", "a,\"b\" c=d")))
+          .addMeasurement(TrialFixtures.measurement("runtime", 12.5, "ns", 2))
+          .build();
+
+  @Test
+  public void json() throws IOException {
+    String pretty = write(OutputFormat.JSON);
+    String compact = write(OutputFormat.COMPACT_JSON);
+    assertThat(pretty).contains("\n  ");
+    assertThat(compact).doesNotContain("\n");
+    assertThat(GSON.fromJson(compact, Trial[].class)).asList().containsExactly(TRIAL);
+    assertThat(GSON.fromJson(pretty, Trial[].class)).asList().containsExactly(TRIAL);
+  }
+
+  @Test
+  public void gzipJson() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TrialWriter writer = OutputFormat.GZIP_JSON.newWriter(out, GSON)) {
+      writer.write(TRIAL);
+      writer.write(TRIAL);
+    }
+    String json =
+        new String(
+            ByteStreams.toByteArray(
+                new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))),
+            UTF_8);
+    assertThat(GSON.fromJson(json, Trial[].class)).asList().containsExactly(TRIAL, TRIAL);
+  }
+
+  @Test
+  public void normalized() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TrialWriter writer = OutputFormat.NORMALIZED.newWriter(out, GSON)) {
+      writer.write(TRIAL);
+      writer.write(TRIAL);
+    }
+    String json = new String(out.toByteArray(), UTF_8);
+    assertThat(json.split("os\\.name", -1)).hasLength(2);
+    try (NormalizedTrialReader reader = new NormalizedTrialReader(new StringReader(json), GSON)) {
+      assertThat(reader.next()).isEqualTo(TRIAL);
+      assertThat(reader.next()).isEqualTo(TRIAL);
+      assertThat(reader.hasNext()).isFalse();
+    }
+  }
+
+  @Test
+  public void csv() throws IOException {
+    List<String> lines = lines(write(OutputFormat.CSV));
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0))
+        .isEqualTo(
+            "trial,run,start,instrument,class,method,parameters,vmArguments,host,vm,"
+                + "description,magnitude,unit,weight");
+    assertThat(lines.get(1))
+        .isEqualTo(
+            String.format(
+                "%s,%s,1970-01-01T00:00:00.000Z,RuntimeInstrument,FooBenchmark,bar,"
+                    + "\"size=10 text=a,\"\"b\"\"\\ c\\=d\",,%08x,%08x,runtime,12.5,ns,2.0",
+                new UUID(0, 1),
+                new UUID(0, 2),
+                TRIAL.scenario().host().hashCode(),
+                TRIAL.scenario().vmSpec().hashCode()));
+  }
+
+  @Test
+  public void tsv() throws IOException {
+    List<String> lines = lines(write(OutputFormat.TSV));
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0)).startsWith("trial\trun\tstart\t");
+    assertThat(Splitter.on('\t').splitToList(lines.get(1)))
+        .containsAtLeast("size=10 text=a,\"b\"\\\\ c\\\\=d", "12.5", "ns")
+        .inOrder();
+  }
+
+  @Test
+  public void forName() {
+    assertThat(OutputFormat.forName("json-gz")).isEqualTo(OutputFormat.GZIP_JSON);
+    assertThat(OutputFormat.GZIP_JSON.extension()).isEqualTo(".json.gz");
+    try {
+      OutputFormat.forName("xml");
+      fail();
+    } catch (InvalidConfigurationException expected) {
+      assertThat(expected).hasMessageThat().contains("compact-json");
+    }
+  }
+
+  private static String write(OutputFormat format) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TrialWriter writer = format.newWriter(out, GSON)) {
+      writer.write(TRIAL);
+    }
+    return new String(out.toByteArray(), UTF_8);
+  }
+
+  private static List<String> lines(String text) {
+    return Splitter.on('\n').omitEmptyStrings().splitToList(text);
+  }
+}
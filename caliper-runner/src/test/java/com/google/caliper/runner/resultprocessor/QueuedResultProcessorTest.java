@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.resultprocessor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.fail;
+
+import com.google.caliper.api.ResultProcessor;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.testing.TrialFixtures;
+import com.google.caliper.runner.config.InvalidConfigurationException;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link QueuedResultProcessor}. */
+@RunWith(JUnit4.class)
+public class QueuedResultProcessorTest {
+
+  /** Records the trials it's given, each of which takes until {@link #release} counts down. */
+  private static final class SlowProcessor implements ResultProcessor {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger started = new AtomicInteger();
+    final List<Trial> trials = Lists.newArrayList();
+    boolean closed;
+
+    @Override
+    public void processTrial(Trial trial) {
+      started.incrementAndGet();
+      Uninterruptibles.awaitUninterruptibly(release);
+      trials.add(trial);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  /** What a broken processor throws, distinct from the errors that failed assertions throw. */
+  private static final class ProcessorError extends Error {
+    ProcessorError() {
+      super("broken processor");
+    }
+  }
+
+  private static Trial trial(int id) {
+    return TrialFixtures.trial(new UUID(0, id)).build();
+  }
+
+  @Test
+  public void deliversInOrderWithBackpressure() throws Exception {
+    final SlowProcessor processor = new SlowProcessor();
+    final QueuedResultProcessor queued = new QueuedResultProcessor(processor, 2);
+    final List<Trial> trials = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      trials.add(trial(i));
+    }
+    final CountDownLatch allQueued = new CountDownLatch(1);
+    Thread producer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                for (Trial trial : trials) {
+                  queued.processTrial(trial);
+                }
+                allQueued.countDown();
+              }
+            });
+    producer.start();
+
+    // one trial is being processed and two are queued, so the fourth can't be queued yet
+    while (processor.started.get() == 0) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(50);
+    assertThat(allQueued.getCount()).isEqualTo(1);
+
+    processor.release.countDown();
+    allQueued.await();
+    queued.close();
+    assertThat(processor.trials).containsExactlyElementsIn(trials).inOrder();
+    assertThat(processor.closed).isTrue();
+    assertThat(queued.report()).startsWith("SlowProcessor processed 5 trial(s) in ");
+    assertThat(queued.report()).contains("trial collection waited");
+  }
+
+  @Test
+  public void failingTrialDoesNotStopProcessing() throws Exception {
+    final List<Trial> processed = Lists.newArrayList();
+    QueuedResultProcessor queued =
+        new QueuedResultProcessor(
+            new ResultProcessor() {
+              @Override
+              public void processTrial(Trial trial) {
+                if (trial.id().getLeastSignificantBits() == 1) {
+                  throw new IllegalStateException("bad trial");
+                }
+                processed.add(trial);
+              }
+
+              @Override
+              public void close() {}
+            },
+            8);
+    queued.processTrial(trial(0));
+    queued.processTrial(trial(1));
+    queued.processTrial(trial(2));
+    queued.close();
+    assertThat(processed).containsExactly(trial(0), trial(2)).inOrder();
+  }
+
+  @Test
+  public void errorStopsProcessingAndIsRethrown() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger processed = new AtomicInteger();
+    QueuedResultProcessor queued =
+        new QueuedResultProcessor(
+            new ResultProcessor() {
+              @Override
+              public void processTrial(Trial trial) {
+                processed.incrementAndGet();
+                Uninterruptibles.awaitUninterruptibly(release);
+                throw new ProcessorError();
+              }
+
+              @Override
+              public void close() {}
+            },
+            1);
+    Thread releaser =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                Uninterruptibles.sleepUninterruptibly(50, MILLISECONDS);
+                release.countDown();
+              }
+            });
+    releaser.start();
+
+    // one trial is held by the processor and one is queued, so the third waits for room until the
+    // processor fails
+    ProcessorError thrown = null;
+    try {
+      for (int i = 0; i < 3; i++) {
+        queued.processTrial(trial(i));
+      }
+    } catch (ProcessorError expected) {
+      thrown = expected;
+    }
+    assertThat(thrown).isNotNull();
+    try {
+      queued.close();
+      thrown = null;
+    } catch (ProcessorError expected) {
+      thrown = expected;
+    }
+    assertThat(thrown).isNotNull();
+    assertThat(processed.get()).isEqualTo(1);
+    releaser.join();
+  }
+
+  @Test
+  public void parseCapacity() {
+    assertThat(QueuedResultProcessor.parseCapacity("64")).isEqualTo(64);
+    assertThat(QueuedResultProcessor.parseCapacity(" 1 ")).isEqualTo(1);
+    for (String invalid : new String[] {"0", "-1", "many", "", "1.5"}) {
+      try {
+        QueuedResultProcessor.parseCapacity(invalid);
+        fail(invalid);
+      } catch (InvalidConfigurationException expected) {
+        assertThat(expected).hasMessageThat().contains("runner.resultProcessorQueueSize");
+        assertThat(expected).hasMessageThat().contains("It must be a positive number");
+      }
+    }
+  }
+}
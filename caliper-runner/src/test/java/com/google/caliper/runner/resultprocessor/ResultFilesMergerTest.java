@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.resultprocessor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.TrialReader;
+import com.google.caliper.model.testing.TrialFixtures;
+import com.google.caliper.runner.resultprocessor.OutputFormat.TrialWriter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link ResultFilesMerger}. */
+@RunWith(JUnit4.class)
+public class ResultFilesMergerTest {
+  private static final Gson GSON = TrialFixtures.gson();
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static Trial trial(UUID id, UUID runId) {
+    return TrialFixtures.trial(id).run(TrialFixtures.run(runId, 0)).build();
+  }
+
+  private File write(String name, OutputFormat format, Trial... trials) throws IOException {
+    File file = folder.newFile(name);
+    try (TrialWriter writer = format.newWriter(new FileOutputStream(file), GSON)) {
+      for (Trial trial : trials) {
+        writer.write(trial);
+      }
+    }
+    return file;
+  }
+
+  @Test
+  public void mergeDeduplicatesByTrialAndRun() throws IOException {
+    UUID runId = UUID.randomUUID();
+    Trial first = trial(UUID.randomUUID(), runId);
+    Trial second = trial(UUID.randomUUID(), runId);
+    Trial third = trial(UUID.randomUUID(), UUID.randomUUID());
+    Trial sameIdOtherRun = trial(first.id(), UUID.randomUUID());
+    File shard1 = write("shard1.json", OutputFormat.JSON, first, second);
+    File shard2 = write("shard2.json.gz", OutputFormat.GZIP_JSON, second, third, first);
+    File shard3 = write("shard3.json", OutputFormat.NORMALIZED, sameIdOtherRun, third);
+    File output = new File(folder.getRoot(), "merged.json");
+
+    ResultFilesMerger.Counts counts =
+        ResultFilesMerger.merge(
+            ImmutableList.of(shard1, shard2, shard3), output, OutputFormat.NORMALIZED, GSON);
+
+    assertThat(counts.written).isEqualTo(4);
+    assertThat(counts.duplicates).isEqualTo(3);
+    List<Trial> merged = Lists.newArrayList();
+    try (TrialReader reader = TrialReader.open(output, GSON)) {
+      while (reader.hasNext()) {
+        merged.add(reader.next());
+      }
+    }
+    assertThat(merged).containsExactly(first, second, third, sameIdOtherRun).inOrder();
+    assertThat(new File(output.getPath() + ".tmp").exists()).isFalse();
+  }
+
+  @Test
+  public void trialKeySetGrows() {
+    ResultFilesMerger.TrialKeySet set = new ResultFilesMerger.TrialKeySet();
+    List<UUID> ids = Lists.newArrayList();
+    for (int i = 0; i < 10000; i++) {
+      ids.add(UUID.randomUUID());
+    }
+    UUID runId = UUID.randomUUID();
+    for (UUID id : ids) {
+      assertThat(set.add(id, runId)).isTrue();
+    }
+    for (UUID id : ids) {
+      assertThat(set.add(id, runId)).isFalse();
+    }
+    assertThat(set.add(new UUID(0, 0), new UUID(0, 0))).isTrue();
+    assertThat(set.add(new UUID(0, 0), new UUID(0, 0))).isFalse();
+    assertThat(set.size()).isEqualTo(10001);
+  }
+
+  @Test
+  public void trialKeySetIsExact() {
+    ResultFilesMerger.TrialKeySet set = new ResultFilesMerger.TrialKeySet();
+    // pairs whose IDs XOR to the same bits are still distinct
+    assertThat(set.add(new UUID(1, 0), new UUID(0, 0))).isTrue();
+    assertThat(set.add(new UUID(0, 0), new UUID(1, 0))).isTrue();
+    assertThat(set.add(new UUID(0, 0), new UUID(0, Long.MIN_VALUE))).isTrue();
+    assertThat(set.add(new UUID(0, 1), new UUID(0, 0))).isTrue();
+    assertThat(set.add(new UUID(1, 0), new UUID(0, 0))).isFalse();
+    assertThat(set.size()).isEqualTo(4);
+  }
+}
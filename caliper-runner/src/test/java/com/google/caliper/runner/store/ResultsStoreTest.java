@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.store;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.VmSpec;
+import com.google.caliper.model.testing.TrialFixtures;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ResultsStore}. */
+@RunWith(JUnit4.class)
+public class ResultsStoreTest {
+  private static final Gson GSON = TrialFixtures.gson();
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static Trial trial(long time, String method, String size, String javaVersion) {
+    return TrialFixtures.trial(UUID.randomUUID())
+        .run(TrialFixtures.run(UUID.randomUUID(), time))
+        .scenario(
+            TrialFixtures.scenario(
+                    TrialFixtures.benchmarkSpec(method)
+                        .addParameter("size", size)
+                        .addParameter("type", "list"))
+                .vmSpec(new VmSpec.Builder().addProperty("java.version", javaVersion)))
+        .addMeasurement(TrialFixtures.measurement("runtime", time, "ns", 1))
+        .build();
+  }
+
+  @Test
+  public void queries() throws IOException {
+    Trial later = trial(2000, "get", "10", "17");
+    Trial earlier = trial(1000, "get", "10", "17");
+    Trial otherSize = trial(1500, "get", "100", "17");
+    Trial otherMethod = trial(1500, "put", "10", "17");
+    Trial otherVm = trial(1500, "get", "10", "21");
+    try (ResultsStore store = ResultsStore.open(folder.getRoot(), GSON, 1000)) {
+      for (Trial trial : new Trial[] {later, earlier, otherSize, otherMethod, otherVm}) {
+        assertThat(store.add(trial)).isTrue();
+      }
+      assertThat(store.add(later)).isFalse();
+      assertThat(store.size()).isEqualTo(5);
+
+      assertThat(store.query(ResultsQuery.builder("FooBenchmark").build()))
+          .containsExactly(earlier, otherSize, otherMethod, otherVm, later);
+      assertThat(store.query(ResultsQuery.builder("BarBenchmark").build())).isEmpty();
+      assertThat(
+              store.query(
+                  ResultsQuery.builder("FooBenchmark")
+                      .methodName("get")
+                      .vmSpecHash(earlier.scenario().vmSpec().hashCode())
+                      .hostHash(TrialFixtures.HOST.hashCode())
+                      .instrument("RuntimeInstrument")
+                      .build()))
+          .containsExactly(earlier, otherSize, later)
+          .inOrder();
+      ResultsQuery.Builder sizeQuery = ResultsQuery.builder("FooBenchmark").methodName("get");
+      sizeQuery.parametersBuilder().put("size", "10");
+      assertThat(store.query(sizeQuery.build())).containsExactly(earlier, otherVm, later).inOrder();
+    }
+    // each segment holds a trial or two, so the store has rolled over to several of them
+    assertThat(new File(folder.getRoot(), "segment-000003.idx").exists()).isTrue();
+  }
+
+  @Test
+  public void reopenAndSharedAppends() throws IOException {
+    Trial first = trial(1000, "get", "10", "17");
+    Trial second = trial(2000, "get", "10", "17");
+    try (ResultsStore store = ResultsStore.open(folder.getRoot(), GSON);
+        ResultsStore other = ResultsStore.open(folder.getRoot(), GSON)) {
+      assertThat(store.add(first)).isTrue();
+      assertThat(other.add(first)).isFalse();
+      assertThat(other.add(second)).isTrue();
+      assertThat(store.size()).isEqualTo(2);
+    }
+    try (ResultsStore store = ResultsStore.open(folder.getRoot(), GSON)) {
+      assertThat(store.query(ResultsQuery.builder("FooBenchmark").build()))
+          .containsExactly(first, second)
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void addAll() throws IOException {
+    Trial first = trial(1000, "get", "10", "17");
+    Trial second = trial(2000, "get", "10", "17");
+    Trial third = trial(3000, "get", "10", "17");
+    try (ResultsStore store = ResultsStore.open(folder.getRoot(), GSON, 1000)) {
+      assertThat(store.add(first)).isTrue();
+      assertThat(store.addAll(ImmutableList.of(first, second, third, second))).isEqualTo(2);
+      assertThat(store.query(ResultsQuery.builder("FooBenchmark").build()))
+          .containsExactly(first, second, third)
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void partialIndexEntryIsIgnored() throws IOException {
+    Trial first = trial(1000, "get", "10", "17");
+    Trial second = trial(2000, "get", "10", "17");
+    try (ResultsStore store = ResultsStore.open(folder.getRoot(), GSON)) {
+      store.add(first);
+    }
+    try (FileOutputStream index =
+        new FileOutputStream(new File(folder.getRoot(), "segment-000001.idx"), true)) {
+      index.write(new byte[IndexEntry.BYTES / 2]);
+    }
+    try (ResultsStore store = ResultsStore.open(folder.getRoot(), GSON)) {
+      assertThat(store.size()).isEqualTo(1);
+      store.add(second);
+      assertThat(store.query(ResultsQuery.builder("FooBenchmark").build()))
+          .containsExactly(first, second)
+          .inOrder();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.caliper.runner.worker.trial;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.caliper.Benchmark;
+import com.google.caliper.api.VmOptions;
+import com.google.caliper.bridge.ClockCharacteristics;
+import com.google.caliper.core.BenchmarkClassModel;
+import com.google.caliper.core.BenchmarkClassModel.MethodModel;
+import com.google.caliper.runner.config.VmConfig;
+import com.google.caliper.runner.experiment.Experiment;
+import com.google.caliper.runner.instrument.RuntimeInstrument;
+import com.google.caliper.runner.target.LocalDevice;
+import com.google.caliper.runner.target.Target;
+import com.google.caliper.util.ShortDuration;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link TrialSpec}. */
+@RunWith(JUnit4.class)
+public class TrialSpecTest {
+  private static final ClockCharacteristics NANO_TIME = ClockCharacteristics.create(1, 20, true);
+
+  private static TrialSpec trialSpec(ImmutableMap<String, String> vmArguments) throws Exception {
+    RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(100, NANOSECONDS));
+    MethodModel method =
+        MethodModel.of(CollectorBenchmark.class.getDeclaredMethod("foo", long.class));
+    Target target =
+        LocalDevice.builder()
+            .build()
+            .createTarget(
+                VmConfig.builder()
+                    .name("jvm")
+                    .home(System.getProperty("java.home"))
+                    .addArg("-XX:+UseSerialGC")
+                    .addArg("-Xss1m")
+                    .build());
+    Experiment experiment =
+        Experiment.create(
+            1,
+            instrument.createInstrumentedMethod(method),
+            ImmutableMap.<String, String>of(),
+            vmArguments,
+            target);
+    return new TrialSpec(
+        UUID.randomUUID(),
+        0,
+        experiment,
+        BenchmarkClassModel.create(CollectorBenchmark.class),
+        1,
+        NANO_TIME);
+  }
+
+  @Test
+  public void experimentCollectorReplacesAllOthers() throws Exception {
+    List<String> vmOptions = trialSpec(ImmutableMap.of("gc", "Parallel")).vmOptions();
+    assertThat(vmOptions).contains("-XX:+UseParallelGC");
+    assertThat(vmOptions).containsNoneOf("-XX:+UseSerialGC", "-XX:+UseG1GC");
+    assertThat(vmOptions).containsAtLeast("-Xss1m", "-Xmx64m");
+  }
+
+  @Test
+  public void collectorsKeptWithoutExperimentCollector() throws Exception {
+    List<String> vmOptions = trialSpec(ImmutableMap.of("heap", "1g")).vmOptions();
+    assertThat(vmOptions).containsAtLeast("-XX:+UseSerialGC", "-XX:+UseG1GC", "-Xms1g");
+  }
+
+  @VmOptions({"-XX:+UseG1GC", "-Xmx64m"})
+  static class CollectorBenchmark {
+    @Benchmark
+    public long foo(long reps) {
+      return reps;
+    }
+  }
+}
@@ -16,9 +16,12 @@
 
 package com.google.caliper.worker;
 
+import com.google.caliper.worker.instrument.GcMeter;
+import com.google.caliper.worker.instrument.ResourceMeter;
 import com.google.caliper.worker.instrument.WorkerInstrumentComponent;
 import dagger.Binds;
 import dagger.Module;
+import dagger.Provides;
 
 /** Module with additional bindings needed by an Android VM worker. */
 @Module(subcomponents = AndroidWorkerInstrumentComponent.class)
@@ -28,4 +31,15 @@ abstract class AndroidWorkerModule {
   @Binds
   abstract WorkerInstrumentComponent.Builder bindInstrumentComponentBuilder(
       AndroidWorkerInstrumentComponent.Builder builder);
+
+  // java.lang.management isn't available on Android
+  @Provides
+  static ResourceMeter provideResourceMeter() {
+    return ResourceMeter.UNSUPPORTED;
+  }
+
+  @Provides
+  static GcMeter provideGcMeter() {
+    return GcMeter.UNSUPPORTED;
+  }
 }
@@ -17,24 +17,39 @@ package com.google.caliper.worker;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.Ints;
 import com.google.monitoring.runtime.instrumentation.Sampler;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import javax.inject.Inject;
 
-/** An {@link AllocationRecorder} that records the number and cumulative size of allocation. */
+/**
+ * An {@link AllocationRecorder} that records the number and cumulative size of allocation.
+ *
+ * <p>The counters are striped {@link LongAdder LongAdders}, so allocating threads of a
+ * multithreaded benchmark don't contend on them; they're only summed when recording stops.
+ * Allocations made by threads other than the one recording are also counted separately.
+ */
 final class AggregateAllocationsRecorder extends AllocationRecorder {
-  private final AtomicInteger allocationCount = new AtomicInteger();
-  private final AtomicLong allocationSize = new AtomicLong();
+  private final LongAdder allocationCount = new LongAdder();
+  private final LongAdder allocationSize = new LongAdder();
+  private final LongAdder otherThreadAllocationCount = new LongAdder();
+  private final LongAdder otherThreadAllocationSize = new LongAdder();
+  private volatile Thread recordingThread;
   private volatile boolean recording = false;
 
-  private final Sampler sampler =
+  @VisibleForTesting
+  final Sampler sampler =
       new Sampler() {
         @Override
         public void sampleAllocation(int arrayCount, String desc, Object newObj, long size) {
           if (recording) {
-            allocationCount.getAndIncrement();
-            allocationSize.getAndAdd(size);
+            allocationCount.increment();
+            allocationSize.add(size);
+            if (Thread.currentThread() != recordingThread) {
+              otherThreadAllocationCount.increment();
+              otherThreadAllocationSize.add(size);
+            }
           }
         }
       };
@@ -47,8 +62,11 @@ final class AggregateAllocationsRecorder extends AllocationRecorder {
   @Override
   protected void doStartRecording() {
     checkState(!recording, "startRecording called, but we were already recording.");
-    allocationCount.set(0);
-    allocationSize.set(0);
+    allocationCount.reset();
+    allocationSize.reset();
+    otherThreadAllocationCount.reset();
+    otherThreadAllocationSize.reset();
+    recordingThread = Thread.currentThread();
     recording = true;
   }
 
@@ -56,6 +74,11 @@ final class AggregateAllocationsRecorder extends AllocationRecorder {
   public AllocationStats stopRecording(int reps) {
     checkState(recording, "stopRecording called, but we were not recording.");
     recording = false;
-    return new AllocationStats(allocationCount.get(), allocationSize.get(), reps);
+    return new AllocationStats(
+        Ints.saturatedCast(allocationCount.sum()),
+        allocationSize.sum(),
+        Ints.saturatedCast(otherThreadAllocationCount.sum()),
+        otherThreadAllocationSize.sum(),
+        reps);
   }
 }
@@ -16,56 +16,94 @@
 package com.google.caliper.worker;
 
 import static com.google.common.base.Preconditions.checkState;
-import static java.util.Arrays.asList;
 
 import com.google.caliper.core.Running;
-import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.primitives.Ints;
 import com.google.monitoring.runtime.instrumentation.Sampler;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 import javax.inject.Inject;
 
 /**
  * An {@link AllocationRecorder} that records every allocation and its location.
  *
+ * <p>Each allocating thread counts its allocations in a {@link CallSiteTable} of its own, so the
+ * threads of a multithreaded benchmark don't contend on a shared table; the tables are merged when
+ * recording stops. At most the {@value #MAX_STACK_DEPTH} innermost frames of an allocation's stack
+ * are {@linkplain StackCapture captured}, hashed and kept for its site, so an allocation deeper
+ * than that below the benchmark method is attributed to its innermost frames.
+ *
  * <p>This recorder is enabled via the {@code trackAllocations} worker option.
  */
 final class AllAllocationsRecorder extends AllocationRecorder {
+  /** The most stack frames kept for an allocation site. */
+  private static final int MAX_STACK_DEPTH = 64;
+
   private final Class<?> benchmarkClass;
   private final String benchmarkMethodName;
   private volatile boolean recording = false;
-  private final ConcurrentHashMultiset<Allocation> allocations = ConcurrentHashMultiset.create();
+  /** The tables of all the threads that have allocated while recording. */
+  private final Queue<CallSiteTable> callSiteTables = new ConcurrentLinkedQueue<>();
+
+  private final ThreadLocal<CallSiteTable> callSites =
+      new ThreadLocal<CallSiteTable>() {
+        @Override
+        protected CallSiteTable initialValue() {
+          CallSiteTable callSites = new CallSiteTable();
+          callSiteTables.add(callSites);
+          return callSites;
+        }
+      };
 
-  private final Sampler sampler =
+  private final LongAdder otherThreadAllocationCount = new LongAdder();
+  private final LongAdder otherThreadAllocationSize = new LongAdder();
+  private volatile Thread recordingThread;
+
+  // where the frames kept for a site end, so that no frames beyond are captured
+  private final Predicate<StackTraceElement> isLastTrackedFrame =
+      new Predicate<StackTraceElement>() {
+        @Override
+        public boolean apply(StackTraceElement element) {
+          return isWorkerFrame(element) || isBenchmarkMethodFrame(element);
+        }
+      };
+
+  @VisibleForTesting
+  final Sampler sampler =
       new Sampler() {
         @Override
         public void sampleAllocation(int arrayCount, String desc, Object newObj, long size) {
           if (recording) {
-            if (arrayCount != -1) {
-              desc = desc + "[" + arrayCount + "]";
+            if (Thread.currentThread() != recordingThread) {
+              otherThreadAllocationCount.increment();
+              otherThreadAllocationSize.add(size);
             }
-            // The first item is this line, the second is in AllocationRecorder and the
-            // one before that is the allocating line, so we start at index 2.
-            // We want to grab all lines until we get into the benchmark method.
-            StackTraceElement[] stackTrace = new Exception().getStackTrace();
-            int startIndex = 2;
-            int endIndex = 2;
+            // Skip this method and the one in AllocationRecorder that called it, starting at the
+            // allocating line. We want to grab all lines until we get into the benchmark method,
+            // so the capture stops there (or at the worker code) rather than at the stack's end.
+            StackTraceElement[] stackTrace =
+                StackCapture.capture(2, MAX_STACK_DEPTH, isLastTrackedFrame);
+            int startIndex = 0;
+            int endIndex = 0;
             for (int i = startIndex; i < stackTrace.length; i++) {
               StackTraceElement element = stackTrace[i];
-              if (element
-                  .getClassName()
-                  .startsWith(AllAllocationsRecorder.class.getPackage().getName())) {
+              if (isWorkerFrame(element)) {
                 // Don't track locations up into the worker code, or originating within the worker
                 // code.
                 break;
               }
               endIndex = i;
-              if (element.getClassName().equals(benchmarkClass.getName())
-                  && element.getMethodName().equals(benchmarkMethodName)) {
+              if (isBenchmarkMethodFrame(element)) {
                 // stop logging at the method under test
                 break;
               }
             }
-            allocations.add(
-                new Allocation(desc, size, asList(stackTrace).subList(startIndex, endIndex + 1)));
+            // only the site is counted here; the Allocations are built when recording stops
+            callSites.get().record(desc, arrayCount, size, stackTrace, startIndex, endIndex + 1);
           }
         }
       };
@@ -79,10 +117,24 @@ final class AllAllocationsRecorder extends AllocationRecorder {
     com.google.monitoring.runtime.instrumentation.AllocationRecorder.addSampler(sampler);
   }
 
+  private static boolean isWorkerFrame(StackTraceElement element) {
+    return element.getClassName().startsWith(AllAllocationsRecorder.class.getPackage().getName());
+  }
+
+  private boolean isBenchmarkMethodFrame(StackTraceElement element) {
+    return element.getClassName().equals(benchmarkClass.getName())
+        && element.getMethodName().equals(benchmarkMethodName);
+  }
+
   @Override
   protected void doStartRecording() {
     checkState(!recording, "startRecording called, but we were already recording.");
-    allocations.clear();
+    for (CallSiteTable callSites : callSiteTables) {
+      callSites.clearCounts();
+    }
+    otherThreadAllocationCount.reset();
+    otherThreadAllocationSize.reset();
+    recordingThread = Thread.currentThread();
     recording = true;
   }
 
@@ -90,6 +142,14 @@ final class AllAllocationsRecorder extends AllocationRecorder {
   public AllocationStats stopRecording(int reps) {
     checkState(recording, "stopRecording called, but we were not recording.");
     recording = false;
-    return new AllocationStats(allocations, reps);
+    ImmutableMultiset.Builder<Allocation> allocations = ImmutableMultiset.builder();
+    for (CallSiteTable callSites : callSiteTables) {
+      allocations.addAll(callSites.toAllocations());
+    }
+    return new AllocationStats(
+        allocations.build(),
+        Ints.saturatedCast(otherThreadAllocationCount.sum()),
+        otherThreadAllocationSize.sum(),
+        reps);
   }
 }
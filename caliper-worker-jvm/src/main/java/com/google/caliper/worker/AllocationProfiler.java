@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.caliper.worker.instrument.WorkerInstrument;
+import com.google.common.base.Joiner;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import javax.inject.Inject;
+
+/**
+ * Accumulates the allocations measured in a trial and writes them to the profile directory given by
+ * the {@code profileDir} worker option, if there is one. Three files, named for the trial, are
+ * written:
+ *
+ * <ul>
+ *   <li>{@code <trial id>.bytes-per-rep.folded} and {@code <trial id>.objects-per-rep.folded}: the
+ *       bytes and objects allocated per rep in the collapsed stack format read by flame graph tools
+ *       (one {@code root;...;leaf value} line per stack, with the allocated type as the leaf)
+ *   <li>{@code <trial id>.types.txt}: a summary of the objects and bytes allocated per rep by type
+ * </ul>
+ *
+ * <p>The files are rewritten after each measurement, so they're complete even if the trial ends
+ * early.
+ */
+final class AllocationProfiler {
+  private static final String PROFILE_DIR_OPTION = "profileDir";
+  private static final Pattern ARRAY_LENGTH = Pattern.compile("\\[\\d+\\]$");
+
+  private final File directory;
+  private final String trialId;
+  private final Multiset<Allocation> allocations = HashMultiset.create();
+  private long reps;
+
+  @Inject
+  AllocationProfiler(@WorkerInstrument.Options Map<String, String> options, UUID trialId) {
+    String directory = options.get(PROFILE_DIR_OPTION);
+    this.directory = directory == null || directory.isEmpty() ? null : new File(directory);
+    this.trialId = trialId.toString();
+  }
+
+  /** Adds the allocations of a measurement to the trial's profile and rewrites the profile. */
+  void record(AllocationStats stats) throws IOException {
+    if (directory == null) {
+      return;
+    }
+    allocations.addAll(stats.getAllocations());
+    reps += stats.getReps();
+    if (reps == 0) {
+      return;
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create the allocation profile directory " + directory);
+    }
+    writeFolded(new File(directory, trialId + ".bytes-per-rep.folded"), true);
+    writeFolded(new File(directory, trialId + ".objects-per-rep.folded"), false);
+    writeTypes(new File(directory, trialId + ".types.txt"));
+  }
+
+  private void writeFolded(File file, boolean bytes) throws IOException {
+    // allocations of different sizes or array lengths from the same stack are one stack to a flame
+    // graph
+    Map<String, Long> totals = new LinkedHashMap<>();
+    for (Multiset.Entry<Allocation> entry : allocations.entrySet()) {
+      Allocation allocation = entry.getElement();
+      List<String> frames = new ArrayList<>();
+      for (String frame : Lists.reverse(allocation.getLocation())) {
+        frames.add(frame.replace(';', ':'));
+      }
+      frames.add(typeName(allocation));
+      String stack = Joiner.on(';').join(frames);
+      long value = bytes ? allocation.getSize() * entry.getCount() : entry.getCount();
+      Long total = totals.get(stack);
+      totals.put(stack, total == null ? value : total + value);
+    }
+    List<String> stacks = new ArrayList<>(totals.keySet());
+    Collections.sort(stacks);
+    try (PrintWriter writer = newWriter(file)) {
+      for (String stack : stacks) {
+        writer.printf("%s %s%n", stack, perRep(totals.get(stack)));
+      }
+    }
+  }
+
+  private void writeTypes(File file) throws IOException {
+    final Map<String, long[]> totals = new LinkedHashMap<>(); // type -> {objects, bytes}
+    long totalBytes = 0;
+    for (Multiset.Entry<Allocation> entry : allocations.entrySet()) {
+      String type = typeName(entry.getElement());
+      long[] typeTotals = totals.get(type);
+      if (typeTotals == null) {
+        typeTotals = new long[2];
+        totals.put(type, typeTotals);
+      }
+      long bytes = entry.getElement().getSize() * entry.getCount();
+      typeTotals[0] += entry.getCount();
+      typeTotals[1] += bytes;
+      totalBytes += bytes;
+    }
+    List<String> types = new ArrayList<>(totals.keySet());
+    Collections.sort(
+        types,
+        new Comparator<String>() {
+          @Override
+          public int compare(String a, String b) {
+            int byBytes = Long.compare(totals.get(b)[1], totals.get(a)[1]);
+            return byBytes != 0 ? byBytes : a.compareTo(b);
+          }
+        });
+    int width = "type".length();
+    for (String type : types) {
+      width = Math.max(width, type.length());
+    }
+    String format = "%-" + width + "s  %14s  %14s  %7s%n";
+    try (PrintWriter writer = newWriter(file)) {
+      writer.printf(format, "type", "objects/rep", "bytes/rep", "bytes %");
+      for (String type : types) {
+        long[] typeTotals = totals.get(type);
+        writer.printf(
+            format,
+            type,
+            perRep(typeTotals[0]),
+            perRep(typeTotals[1]),
+            String.format("%.1f%%", totalBytes == 0 ? 0 : 100.0 * typeTotals[1] / totalBytes));
+      }
+      writer.printf(
+          "%-" + width + "s  %14s  %14s%n", "total", perRep(allocations.size()), perRep(totalBytes));
+    }
+  }
+
+  /** Formats a total per rep with up to three decimal places. */
+  private String perRep(long total) {
+    return BigDecimal.valueOf(total)
+        .divide(BigDecimal.valueOf(reps), 3, RoundingMode.HALF_EVEN)
+        .stripTrailingZeros()
+        .toPlainString();
+  }
+
+  /**
+   * Returns the allocated type in source rather than internal form (e.g. java.lang.Object), without
+   * the length of arrays so that arrays of all lengths are counted together.
+   */
+  private static String typeName(Allocation allocation) {
+    return ARRAY_LENGTH.matcher(allocation.getDescription()).replaceFirst("[]").replace('/', '.');
+  }
+
+  private static PrintWriter newWriter(File file) throws IOException {
+    Writer writer = Files.newWriter(file, UTF_8);
+    return new PrintWriter(writer);
+  }
+}
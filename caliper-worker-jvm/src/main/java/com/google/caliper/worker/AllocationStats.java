@@ -32,6 +32,9 @@ import com.google.common.collect.Ordering;
 final class AllocationStats {
   private final int allocationCount;
   private final long allocationSize;
+  // the part of the allocations made by threads other than the one that was recording
+  private final int otherThreadAllocationCount;
+  private final long otherThreadAllocationSize;
   private final int reps;
   private final ImmutableMultiset<Allocation> allocations;
 
@@ -41,7 +44,28 @@ final class AllocationStats {
    * of {@code reps} passed to the benchmark method.
    */
   AllocationStats(int allocationCount, long allocationSize, int reps) {
-    this(allocationCount, allocationSize, reps, ImmutableMultiset.<Allocation>of());
+    this(allocationCount, allocationSize, 0, 0, reps, ImmutableMultiset.<Allocation>of());
+  }
+
+  /**
+   * Constructs a new {@link AllocationStats} with the given number and cumulative size of
+   * allocations, of which {@code otherThreadAllocationCount} allocations with a cumulative size of
+   * {@code otherThreadAllocationSize} were made by threads other than the recording thread, and the
+   * number of {@code reps} passed to the benchmark method.
+   */
+  AllocationStats(
+      int allocationCount,
+      long allocationSize,
+      int otherThreadAllocationCount,
+      long otherThreadAllocationSize,
+      int reps) {
+    this(
+        allocationCount,
+        allocationSize,
+        otherThreadAllocationCount,
+        otherThreadAllocationSize,
+        reps,
+        ImmutableMultiset.<Allocation>of());
   }
 
   /**
@@ -49,15 +73,52 @@ final class AllocationStats {
    * reps} passed to the benchmark method.
    */
   AllocationStats(Multiset<Allocation> allocations, int reps) {
-    this(allocations.size(), Allocation.getTotalSize(allocations), reps, allocations);
+    this(allocations, 0, 0, reps);
+  }
+
+  /**
+   * Constructs a new {@link AllocationStats} with the given allocations, of which {@code
+   * otherThreadAllocationCount} allocations with a cumulative size of {@code
+   * otherThreadAllocationSize} were made by threads other than the recording thread, and the
+   * number of {@code reps} passed to the benchmark method.
+   */
+  AllocationStats(
+      Multiset<Allocation> allocations,
+      int otherThreadAllocationCount,
+      long otherThreadAllocationSize,
+      int reps) {
+    this(
+        allocations.size(),
+        Allocation.getTotalSize(allocations),
+        otherThreadAllocationCount,
+        otherThreadAllocationSize,
+        reps,
+        allocations);
   }
 
   private AllocationStats(
-      int allocationCount, long allocationSize, int reps, Multiset<Allocation> allocations) {
+      int allocationCount,
+      long allocationSize,
+      int otherThreadAllocationCount,
+      long otherThreadAllocationSize,
+      int reps,
+      Multiset<Allocation> allocations) {
     checkArgument(allocationCount >= 0, "allocationCount (%s) was negative", allocationCount);
     this.allocationCount = allocationCount;
     checkArgument(allocationSize >= 0, "allocationSize (%s) was negative", allocationSize);
     this.allocationSize = allocationSize;
+    checkArgument(
+        otherThreadAllocationCount >= 0 && otherThreadAllocationCount <= allocationCount,
+        "otherThreadAllocationCount (%s) was negative or more than allocationCount (%s)",
+        otherThreadAllocationCount,
+        allocationCount);
+    this.otherThreadAllocationCount = otherThreadAllocationCount;
+    checkArgument(
+        otherThreadAllocationSize >= 0 && otherThreadAllocationSize <= allocationSize,
+        "otherThreadAllocationSize (%s) was negative or more than allocationSize (%s)",
+        otherThreadAllocationSize,
+        allocationSize);
+    this.otherThreadAllocationSize = otherThreadAllocationSize;
     checkArgument(reps >= 0, "reps (%s) was negative", reps);
     this.reps = reps;
     this.allocations = ImmutableMultiset.copyOf(allocations);
@@ -71,10 +132,20 @@ final class AllocationStats {
     return allocationSize;
   }
 
+  int getReps() {
+    return reps;
+  }
+
+  /** Returns the individual allocations, which are only known when tracking all allocations. */
+  ImmutableMultiset<Allocation> getAllocations() {
+    return allocations;
+  }
+
   /**
    * Computes and returns the difference between this measurement and the given {@code baseline}
    * measurement. The {@code baseline} measurement must have a lower weight (fewer reps) than this
-   * measurement.
+   * measurement. The allocations of other threads are clamped between zero and the difference in
+   * all allocations, since they needn't grow with the reps.
    */
   AllocationStats minus(AllocationStats baseline) {
     for (Multiset.Entry<Allocation> entry : baseline.allocations.entrySet()) {
@@ -88,10 +159,16 @@ final class AllocationStats {
                 entry.getCount(), entry.getElement(), superCount));
       }
     }
+    int count = allocationCount - baseline.allocationCount;
+    long size = allocationSize - baseline.allocationSize;
     try {
+      // other threads (e.g. the JIT or a finalizer) allocate independently of the benchmark, so
+      // their part of the difference is clamped rather than taken as non-determinism
       return new AllocationStats(
-          allocationCount - baseline.allocationCount,
-          allocationSize - baseline.allocationSize,
+          count,
+          size,
+          clamp(otherThreadAllocationCount - baseline.otherThreadAllocationCount, count),
+          clamp(otherThreadAllocationSize - baseline.otherThreadAllocationSize, size),
           reps - baseline.reps,
           Multisets.difference(allocations, baseline.allocations));
     } catch (IllegalArgumentException e) {
@@ -106,6 +183,14 @@ final class AllocationStats {
     }
   }
 
+  private static int clamp(int otherThreadDifference, int difference) {
+    return Math.max(0, Math.min(otherThreadDifference, difference));
+  }
+
+  private static long clamp(long otherThreadDifference, long difference) {
+    return Math.max(0, Math.min(otherThreadDifference, difference));
+  }
+
   /**
    * Computes and returns the difference between this measurement and the given {@code baseline}
    * measurement. Unlike {@link #minus(AllocationStats)} this does not have to be a super set of the
@@ -120,8 +205,11 @@ final class AllocationStats {
         Multisets.difference(baseline.allocations, allocations));
   }
 
-  /** Returns a list of {@link Measurement measurements} based on this collection of stats. */
-  ImmutableList<Measurement> toMeasurements() {
+  /**
+   * Returns a list of {@link Measurement measurements} based on this collection of stats, including
+   * the allocations of threads other than the recording one if {@code otherThreads} is set.
+   */
+  ImmutableList<Measurement> toMeasurements(boolean otherThreads) {
     // Sort allocations before printing by count, then size, then break ties deterministically by
     // description and then location.
     allocations.entrySet().stream()
@@ -141,7 +229,8 @@ final class AllocationStats {
               System.out.printf(
                   "Allocated %f allocs per rep of %s%n", allocsPerRep, entry.getElement());
             });
-    return ImmutableList.of(
+    ImmutableList.Builder<Measurement> measurements = ImmutableList.builder();
+    measurements.add(
         new Measurement.Builder()
             .value(Value.create(allocationCount, ""))
             .description("objects")
@@ -152,6 +241,20 @@ final class AllocationStats {
             .weight(reps)
             .description("bytes")
             .build());
+    if (otherThreads) {
+      measurements.add(
+          new Measurement.Builder()
+              .value(Value.create(otherThreadAllocationCount, ""))
+              .description("objects-other-threads")
+              .weight(reps)
+              .build(),
+          new Measurement.Builder()
+              .value(Value.create(otherThreadAllocationSize, "B"))
+              .weight(reps)
+              .description("bytes-other-threads")
+              .build());
+    }
+    return measurements.build();
   }
 
   @Override
@@ -162,6 +265,8 @@ final class AllocationStats {
       AllocationStats that = (AllocationStats) obj;
       return allocationCount == that.allocationCount
           && allocationSize == that.allocationSize
+          && otherThreadAllocationCount == that.otherThreadAllocationCount
+          && otherThreadAllocationSize == that.otherThreadAllocationSize
           && reps == that.reps
           && Objects.equal(allocations, that.allocations);
     } else {
@@ -171,7 +276,13 @@ final class AllocationStats {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(allocationCount, allocationSize, reps, allocations);
+    return Objects.hashCode(
+        allocationCount,
+        allocationSize,
+        otherThreadAllocationCount,
+        otherThreadAllocationSize,
+        reps,
+        allocations);
   }
 
   @Override
@@ -179,6 +290,8 @@ final class AllocationStats {
     return MoreObjects.toStringHelper(this)
         .add("allocationCount", allocationCount)
         .add("allocationSize", allocationSize)
+        .add("otherThreadAllocationCount", otherThreadAllocationCount)
+        .add("otherThreadAllocationSize", otherThreadAllocationSize)
         .add("reps", reps)
         .add("allocations", allocations)
         .toString();
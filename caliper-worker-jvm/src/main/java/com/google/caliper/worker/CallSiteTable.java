@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import com.google.common.collect.ImmutableMultiset;
+import java.util.Arrays;
+
+/**
+ * Counts allocations by the site they were made from: what was allocated, its size and the stack
+ * frames leading to it. Each distinct site is interned once, the first time it's seen, and
+ * identified by an integer id after that, so recording an allocation from a known site only hashes
+ * the stack frames and bumps a counter. {@link Allocation Allocations} are only created when the
+ * counts are {@linkplain #toAllocations() read}.
+ *
+ * <p>Sites are kept across {@linkplain #clearCounts() recordings}, since a benchmark tends to
+ * allocate from the same few sites on every rep.
+ *
+ * <p>A table is meant to be recorded to by a single thread, with each allocating thread having a
+ * table of its own. Its methods are synchronized only so that the tables can be cleared and read
+ * from the thread doing the recording, so the lock is uncontended while allocations are counted.
+ */
+final class CallSiteTable {
+  private static final int INITIAL_CAPACITY = 64;
+
+  // open addressing with linear probing; each slot holds a site id + 1, or 0 if it's empty
+  private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+  // indexed by site id
+  private int[] hashes = new int[INITIAL_CAPACITY];
+  private String[] descriptions = new String[INITIAL_CAPACITY];
+  private int[] arrayCounts = new int[INITIAL_CAPACITY];
+  private long[] sizes = new long[INITIAL_CAPACITY];
+  private StackTraceElement[][] locations = new StackTraceElement[INITIAL_CAPACITY][];
+  private Allocation[] allocations = new Allocation[INITIAL_CAPACITY];
+  private int[] counts = new int[INITIAL_CAPACITY];
+  private int siteCount;
+
+  /**
+   * Counts an allocation of {@code size} bytes of {@code description} (with {@code arrayCount}
+   * elements, or -1 if it isn't an array) made from the frames {@code stackTrace[start, end)}.
+   */
+  synchronized void record(
+      String description,
+      int arrayCount,
+      long size,
+      StackTraceElement[] stackTrace,
+      int start,
+      int end) {
+    int hash = hash(description, arrayCount, size, stackTrace, start, end);
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int id = slots[slot] - 1;
+      if (id < 0) {
+        // add() may grow counts, so it has to be called before counts is read
+        int newId = add(hash, description, arrayCount, size, stackTrace, start, end, slot);
+        counts[newId]++;
+        return;
+      }
+      if (hashes[id] == hash
+          && matches(id, description, arrayCount, size, stackTrace, start, end)) {
+        counts[id]++;
+        return;
+      }
+    }
+  }
+
+  /** Resets the counts of all sites to zero. */
+  synchronized void clearCounts() {
+    Arrays.fill(counts, 0, siteCount, 0);
+  }
+
+  /** Returns the allocations counted since the counts were last cleared. */
+  synchronized ImmutableMultiset<Allocation> toAllocations() {
+    ImmutableMultiset.Builder<Allocation> builder = ImmutableMultiset.builder();
+    for (int id = 0; id < siteCount; id++) {
+      if (counts[id] > 0) {
+        builder.addCopies(allocation(id), counts[id]);
+      }
+    }
+    return builder.build();
+  }
+
+  private Allocation allocation(int id) {
+    if (allocations[id] == null) {
+      String description =
+          arrayCounts[id] == -1
+              ? descriptions[id]
+              : descriptions[id] + "[" + arrayCounts[id] + "]";
+      allocations[id] = new Allocation(description, sizes[id], Arrays.asList(locations[id]));
+    }
+    return allocations[id];
+  }
+
+  private boolean matches(
+      int id,
+      String description,
+      int arrayCount,
+      long size,
+      StackTraceElement[] stackTrace,
+      int start,
+      int end) {
+    StackTraceElement[] location = locations[id];
+    if (arrayCounts[id] != arrayCount
+        || sizes[id] != size
+        || location.length != end - start
+        || !descriptions[id].equals(description)) {
+      return false;
+    }
+    for (int i = 0; i < location.length; i++) {
+      if (!location[i].equals(stackTrace[start + i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int add(
+      int hash,
+      String description,
+      int arrayCount,
+      long size,
+      StackTraceElement[] stackTrace,
+      int start,
+      int end,
+      int slot) {
+    if (siteCount == hashes.length) {
+      growSites();
+    }
+    int id = siteCount++;
+    hashes[id] = hash;
+    descriptions[id] = description;
+    arrayCounts[id] = arrayCount;
+    sizes[id] = size;
+    locations[id] = Arrays.copyOfRange(stackTrace, start, end);
+    slots[slot] = id + 1;
+    // keep the table at most half full
+    if (siteCount * 2 > slots.length) {
+      rehash();
+    }
+    return id;
+  }
+
+  private void growSites() {
+    int capacity = hashes.length * 2;
+    hashes = Arrays.copyOf(hashes, capacity);
+    descriptions = Arrays.copyOf(descriptions, capacity);
+    arrayCounts = Arrays.copyOf(arrayCounts, capacity);
+    sizes = Arrays.copyOf(sizes, capacity);
+    locations = Arrays.copyOf(locations, capacity);
+    allocations = Arrays.copyOf(allocations, capacity);
+    counts = Arrays.copyOf(counts, capacity);
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    int mask = slots.length - 1;
+    for (int id = 0; id < siteCount; id++) {
+      int slot = hashes[id] & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = id + 1;
+    }
+  }
+
+  private static int hash(
+      String description,
+      int arrayCount,
+      long size,
+      StackTraceElement[] stackTrace,
+      int start,
+      int end) {
+    int hash = description.hashCode();
+    hash = 31 * hash + arrayCount;
+    hash = 31 * hash + (int) (size ^ (size >>> 32));
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + stackTrace[i].hashCode();
+    }
+    // spread the bits, since only the low ones pick the slot
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import com.google.caliper.api.Footprint;
+import com.google.caliper.api.IncrementalFootprint;
+import com.google.caliper.core.Running.Benchmark;
+import com.google.caliper.core.Running.BenchmarkMethod;
+import com.google.caliper.memory.FootprintHistogram;
+import com.google.caliper.memory.IdentityHashSet;
+import com.google.caliper.memory.ObjectExplorer;
+import com.google.caliper.memory.ObjectGraphMeasurer;
+import com.google.caliper.memory.ObjectLayout;
+import com.google.caliper.memory.ObjectVisitor.Traversal;
+import com.google.caliper.memory.ValueVisitor;
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Value;
+import com.google.caliper.worker.instrument.WorkerInstrument;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/**
+ * The {@link WorkerInstrument} for the {@code FootprintInstrument}. This class invokes the
+ * {@link Footprint} method and measures the object graph reachable from the object it returns,
+ * estimating the bytes it retains with the {@link ObjectLayout} of this VM. For an {@link
+ * IncrementalFootprint}, objects reachable from the baseline aren't measured. If the {@code
+ * histogram} worker option is set, it also logs a {@link FootprintHistogram} of the graph.
+ *
+ * <p>If the {@code heapDump} worker option is set, the graph isn't explored here at all. Instead,
+ * the heap is dumped to {@code <heapDumpDir>/<trial id>.hprof}, with the root in {@link
+ * HeapDumpRoot}, for the runner to measure.
+ */
+final class FootprintWorkerInstrument extends WorkerInstrument {
+  private static final int HISTOGRAM_ROWS = 20;
+
+  /**
+   * Holds what the runner needs to find in a heap dump: the measured root, the baseline of an
+   * incremental footprint, the excluded types and the layout to compute the size of objects with.
+   */
+  static final class HeapDumpRoot {
+    static Object root;
+    static Object baseline;
+    static Class<?>[] excludedTypes;
+    static int headerSize;
+    static int referenceSize;
+    static int alignment;
+    static boolean fillsSuperclassGaps;
+
+    private HeapDumpRoot() {}
+  }
+
+  private final ObjectLayout layout = ObjectLayout.detect();
+  private final Class<?>[] excludedTypes;
+  private final Predicate<Object> objectAcceptor;
+  private final boolean histogram;
+  private final int histogramDepth;
+  @Nullable private final File heapDumpFile;
+
+  @Inject
+  FootprintWorkerInstrument(
+      @Benchmark Object benchmark,
+      @BenchmarkMethod Method method,
+      @WorkerInstrument.Options Map<String, String> workerInstrumentOptions,
+      UUID trialId) {
+    super(benchmark, method);
+    this.excludedTypes = method.getAnnotation(Footprint.class).exclude();
+    this.objectAcceptor = FootprintHistogram.excluding(ImmutableSet.copyOf(excludedTypes));
+    this.histogram = Boolean.parseBoolean(workerInstrumentOptions.get("histogram"));
+    String histogramDepth = workerInstrumentOptions.get("histogramDepth");
+    this.histogramDepth = histogramDepth == null ? 3 : Integer.parseInt(histogramDepth);
+    this.heapDumpFile =
+        Boolean.parseBoolean(workerInstrumentOptions.get("heapDump"))
+            ? new File(workerInstrumentOptions.get("heapDumpDir"), trialId + ".hprof")
+            : null;
+  }
+
+  @Override
+  public void bootstrap() throws Exception {
+    System.out.println("Measuring footprint with object layout " + layout);
+  }
+
+  @Override
+  public void dryRun() throws Exception {
+    benchmarkMethod.invoke(benchmark);
+  }
+
+  @Override
+  public ImmutableList<Measurement> measure() throws Exception {
+    Object root = benchmarkMethod.invoke(benchmark);
+    if (heapDumpFile != null) {
+      dumpHeap(root);
+      // the runner measures the footprint from the dump
+      return ImmutableList.of();
+    }
+    // the objects not to measure: none, or those reachable from an incremental footprint's baseline
+    final IdentityHashSet seen = new IdentityHashSet();
+    if (root instanceof IncrementalFootprint) {
+      IncrementalFootprint incremental = (IncrementalFootprint) root;
+      ObjectExplorer.exploreValues(
+          incremental.baseline(),
+          new FootprintVisitor(seen),
+          EnumSet.noneOf(ObjectExplorer.Feature.class));
+      root = incremental.full();
+    }
+    if (histogram) {
+      Predicate<Object> notSeen =
+          new Predicate<Object>() {
+            @Override
+            public boolean apply(Object object) {
+              return !seen.contains(object);
+            }
+          };
+      FootprintHistogram footprintHistogram =
+          FootprintHistogram.measure(
+              root, Predicates.and(objectAcceptor, notSeen), layout, histogramDepth);
+      System.out.println("Footprint of " + benchmarkMethod.getName() + ":");
+      System.out.print(footprintHistogram.format(HISTOGRAM_ROWS));
+    }
+    return ObjectExplorer.exploreValues(
+        root, new FootprintVisitor(seen), EnumSet.noneOf(ObjectExplorer.Feature.class));
+  }
+
+  private void dumpHeap(Object root) throws IOException {
+    if (root instanceof IncrementalFootprint) {
+      HeapDumpRoot.baseline = ((IncrementalFootprint) root).baseline();
+      HeapDumpRoot.root = ((IncrementalFootprint) root).full();
+    } else {
+      HeapDumpRoot.root = root;
+    }
+    HeapDumpRoot.excludedTypes = excludedTypes;
+    HeapDumpRoot.headerSize = layout.headerSize();
+    HeapDumpRoot.referenceSize = layout.referenceSize();
+    HeapDumpRoot.alignment = layout.alignment();
+    HeapDumpRoot.fillsSuperclassGaps = layout.fillsSuperclassGaps();
+    File directory = heapDumpFile.getParentFile();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create the heap dump directory " + directory);
+    }
+    // dumpHeap won't overwrite a file, and the runner reads the dump of the last measurement
+    heapDumpFile.delete();
+    try {
+      // only live objects are dumped, so garbage left by the benchmark isn't measured
+      ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+          .dumpHeap(heapDumpFile.getPath(), true);
+    } finally {
+      HeapDumpRoot.root = null;
+      HeapDumpRoot.baseline = null;
+    }
+  }
+
+  /**
+   * Visits every object reachable from the root once, skipping {@linkplain
+   * ObjectGraphMeasurer#isSharedValue shared values} (which shouldn't contribute to the cost of any
+   * single graph), excluded types and objects already seen, and adding the objects it visits to
+   * those seen.
+   */
+  private final class FootprintVisitor implements ValueVisitor<ImmutableList<Measurement>> {
+    private final IdentityHashSet seen;
+    private long bytes;
+    private long objects;
+    // -1 to account for the root, which has no reference leading to it
+    private long references = -1;
+
+    FootprintVisitor(IdentityHashSet seen) {
+      this.seen = seen;
+    }
+
+    @Override
+    public Traversal visit(Object value, Class<?> referenceType) {
+      references++;
+      if (ObjectGraphMeasurer.isSharedValue(value, referenceType)
+          || !objectAcceptor.apply(value)) {
+        return Traversal.SKIP;
+      }
+      if (!seen.add(value)) {
+        return Traversal.SKIP;
+      }
+      objects++;
+      bytes += layout.sizeOf(value);
+      return Traversal.EXPLORE;
+    }
+
+    @Override
+    public void visitNulls(int count) {}
+
+    @Override
+    public void visitPrimitives(Class<?> type, int count) {}
+
+    @Override
+    public ImmutableList<Measurement> result() {
+      return ImmutableList.of(
+          new Measurement.Builder()
+              .value(Value.create(bytes, "B"))
+              .weight(1)
+              .description("bytes")
+              .build(),
+          new Measurement.Builder()
+              .value(Value.create(objects, ""))
+              .weight(1)
+              .description("objects")
+              .build(),
+          new Measurement.Builder()
+              .value(Value.create(Math.max(references, 0), ""))
+              .weight(1)
+              .description("references")
+              .build());
+    }
+  }
+}
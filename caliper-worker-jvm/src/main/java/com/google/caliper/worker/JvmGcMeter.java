@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.caliper.worker.instrument.GcMeter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * A {@link GcMeter} that listens for the garbage collection notifications the JVM's collector beans
+ * send after each collection.
+ */
+@Singleton
+final class JvmGcMeter implements GcMeter {
+  /** How long to wait for notifications of collections that have already happened. */
+  private static final long MAX_NOTIFICATION_LAG_NANOS = MILLISECONDS.toNanos(100);
+
+  /**
+   * What a collection notification reports, going by the action the collector gives for it rather
+   * than by the collector's name.
+   */
+  @VisibleForTesting
+  enum CollectionKind {
+    /** A stop-the-world collection of the young generation. */
+    MINOR,
+    /** A stop-the-world collection of the whole heap or the old generation. */
+    MAJOR,
+    /** A concurrent collection cycle of the young generation; its pauses are reported apart. */
+    MINOR_CYCLE,
+    /** A concurrent collection cycle of the whole heap; its pauses are reported apart. */
+    MAJOR_CYCLE,
+    /**
+     * A pause within a concurrent cycle, such as G1's remark and cleanup pauses or ZGC's and
+     * Shenandoah's pauses. It's time the application was stopped, but not a collection of its own.
+     */
+    CYCLE_PAUSE;
+
+    static CollectionKind of(String collector, String action) {
+      if (action.equals("end of minor GC")) {
+        return MINOR;
+      } else if (action.endsWith("GC cycle")) {
+        // generational ZGC has a cycles bean for each generation
+        return collector.contains("Minor") ? MINOR_CYCLE : MAJOR_CYCLE;
+      } else if (action.endsWith("pause")) {
+        return CYCLE_PAUSE;
+      }
+      // "end of major GC", and anything unknown is assumed to be a full collection
+      return MAJOR;
+    }
+  }
+
+  private final ImmutableList<GarbageCollectorMXBean> collectorBeans;
+  private final ImmutableSet<String> heapPools;
+  private final ImmutableSet<String> oldGenerationPools;
+  private final boolean supported;
+
+  // all guarded by this
+  /** The number of notifications received from each collector, by name. */
+  private final Map<String, Long> notifications = new HashMap<>();
+  /** Collectors whose notifications didn't catch up in time once; they're not waited for again. */
+  private final Set<String> laggingCollectors = new HashSet<>();
+  private long youngCollections;
+  private long oldCollections;
+  private long pauseNanos;
+  private long promotedBytes;
+  private long peakHeapBytes;
+
+  @Inject
+  JvmGcMeter() {
+    this(ManagementFactory.getGarbageCollectorMXBeans(), ManagementFactory.getMemoryPoolMXBeans());
+  }
+
+  @VisibleForTesting
+  JvmGcMeter(List<GarbageCollectorMXBean> collectorBeans, List<MemoryPoolMXBean> memoryPools) {
+    this.collectorBeans = ImmutableList.copyOf(collectorBeans);
+    ImmutableSet.Builder<String> heapPools = ImmutableSet.builder();
+    ImmutableSet.Builder<String> oldGenerationPools = ImmutableSet.builder();
+    for (MemoryPoolMXBean pool : memoryPools) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool.getName());
+        if (isOldGeneration(pool.getName())) {
+          oldGenerationPools.add(pool.getName());
+        }
+      }
+    }
+    this.heapPools = heapPools.build();
+    this.oldGenerationPools = oldGenerationPools.build();
+    this.supported = addListeners();
+  }
+
+  private boolean addListeners() {
+    try {
+      NotificationListener listener =
+          new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+              if (notification
+                  .getType()
+                  .equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from(
+                        (CompositeData) notification.getUserData());
+                GcInfo gcInfo = info.getGcInfo();
+                record(
+                    info.getGcName(),
+                    info.getGcAction(),
+                    gcInfo.getDuration(),
+                    gcInfo.getMemoryUsageBeforeGc(),
+                    gcInfo.getMemoryUsageAfterGc());
+              }
+            }
+          };
+      for (GarbageCollectorMXBean bean : collectorBeans) {
+        if (!(bean instanceof NotificationEmitter)) {
+          return false;
+        }
+      }
+      for (GarbageCollectorMXBean bean : collectorBeans) {
+        ((NotificationEmitter) bean).addNotificationListener(listener, null, null);
+      }
+      return true;
+    } catch (LinkageError e) {
+      // the com.sun.management extension isn't present on this JVM
+      return false;
+    }
+  }
+
+  /** Records a collection the named collector has sent a notification for. */
+  @VisibleForTesting
+  synchronized void record(
+      String collector,
+      String action,
+      long durationMillis,
+      Map<String, MemoryUsage> before,
+      Map<String, MemoryUsage> after) {
+    notifications.put(collector, notificationCount(collector) + 1);
+    notifyAll();
+
+    CollectionKind kind = CollectionKind.of(collector, action);
+    switch (kind) {
+      case MINOR:
+      case MINOR_CYCLE:
+        youngCollections++;
+        break;
+      case MAJOR:
+      case MAJOR_CYCLE:
+        oldCollections++;
+        break;
+      case CYCLE_PAUSE:
+        break;
+    }
+    // a concurrent cycle's duration is mostly time the application ran alongside it
+    if (kind != CollectionKind.MINOR_CYCLE && kind != CollectionKind.MAJOR_CYCLE) {
+      pauseNanos += MILLISECONDS.toNanos(durationMillis);
+    }
+
+    if (kind == CollectionKind.MINOR) {
+      for (String pool : oldGenerationPools) {
+        if (before.containsKey(pool) && after.containsKey(pool)) {
+          promotedBytes += Math.max(0, after.get(pool).getUsed() - before.get(pool).getUsed());
+        }
+      }
+    }
+    // the heap is at its fullest right before a collection
+    long heapBeforeGc = 0;
+    for (String pool : heapPools) {
+      if (before.containsKey(pool)) {
+        heapBeforeGc += before.get(pool).getUsed();
+      }
+    }
+    peakHeapBytes = Math.max(peakHeapBytes, heapBeforeGc);
+  }
+
+  @Override
+  public boolean isSupported() {
+    return supported;
+  }
+
+  @Override
+  public Sample sample() {
+    if (!supported) {
+      throw new UnsupportedOperationException();
+    }
+    awaitNotifications();
+    long heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    synchronized (this) {
+      Sample sample =
+          new Sample(
+              youngCollections,
+              oldCollections,
+              pauseNanos,
+              promotedBytes,
+              Math.max(peakHeapBytes, heapBytes));
+      peakHeapBytes = 0;
+      return sample;
+    }
+  }
+
+  /**
+   * Notifications are sent from a separate thread, so they may lag behind the collections the beans
+   * have already counted. Waits for the notifications of the collectors that are behind, and only
+   * those, so that the collections that happened during a measurement are attributed to it. A
+   * collector that doesn't catch up in time is assumed not to send a notification for everything it
+   * counts, and isn't waited for again.
+   */
+  private synchronized void awaitNotifications() {
+    List<GarbageCollectorMXBean> pending = pendingCollectors(collectorBeans);
+    long deadline = System.nanoTime() + MAX_NOTIFICATION_LAG_NANOS;
+    while (!pending.isEmpty()) {
+      long remainingNanos = deadline - System.nanoTime();
+      if (remainingNanos <= 0) {
+        for (GarbageCollectorMXBean bean : pending) {
+          laggingCollectors.add(bean.getName());
+        }
+        return;
+      }
+      try {
+        // woken by record()
+        NANOSECONDS.timedWait(this, remainingNanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      pending = pendingCollectors(pending);
+    }
+  }
+
+  /** Returns the collectors among {@code beans} that have counted more than they've notified. */
+  private List<GarbageCollectorMXBean> pendingCollectors(List<GarbageCollectorMXBean> beans) {
+    List<GarbageCollectorMXBean> pending = Lists.newArrayList();
+    for (GarbageCollectorMXBean bean : beans) {
+      if (!laggingCollectors.contains(bean.getName())
+          && bean.getCollectionCount() > notificationCount(bean.getName())) {
+        pending.add(bean);
+      }
+    }
+    return pending;
+  }
+
+  private long notificationCount(String collector) {
+    Long count = notifications.get(collector);
+    return count == null ? 0 : count;
+  }
+
+  private static boolean isOldGeneration(String pool) {
+    return pool.contains("Old Gen") || pool.contains("Tenured");
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import com.google.caliper.worker.instrument.ResourceMeter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/** A {@link ResourceMeter} backed by the JVM's management beans. */
+final class JvmResourceMeter implements ResourceMeter {
+  // null if the JVM doesn't provide the com.sun.management extension or can't count allocations
+  @Nullable private final com.sun.management.ThreadMXBean allocationBean;
+  // null if the JVM can't measure the CPU time of the current thread
+  @Nullable private final ThreadMXBean cpuTimeBean;
+
+  @Inject
+  JvmResourceMeter() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    this.allocationBean = allocationBean(threadBean);
+    this.cpuTimeBean = cpuTimeBean(threadBean);
+  }
+
+  @Nullable
+  private static ThreadMXBean cpuTimeBean(ThreadMXBean threadBean) {
+    if (!threadBean.isCurrentThreadCpuTimeSupported()) {
+      return null;
+    }
+    if (!threadBean.isThreadCpuTimeEnabled()) {
+      try {
+        threadBean.setThreadCpuTimeEnabled(true);
+      } catch (SecurityException e) {
+        return null;
+      }
+    }
+    return threadBean;
+  }
+
+  @Nullable
+  private static com.sun.management.ThreadMXBean allocationBean(ThreadMXBean threadBean) {
+    try {
+      if (threadBean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+          return bean;
+        }
+      }
+    } catch (LinkageError e) {
+      // the extension interface isn't present on this JVM
+    }
+    return null;
+  }
+
+  @Override
+  public boolean supportsAllocatedBytes() {
+    return allocationBean != null;
+  }
+
+  @Override
+  public long currentThreadAllocatedBytes() {
+    if (allocationBean == null) {
+      throw new UnsupportedOperationException();
+    }
+    return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  @Override
+  public boolean supportsThreadCpuTime() {
+    return cpuTimeBean != null;
+  }
+
+  @Override
+  public long currentThreadCpuTimeNanos() {
+    if (cpuTimeBean == null) {
+      throw new UnsupportedOperationException();
+    }
+    return cpuTimeBean.getCurrentThreadCpuTime();
+  }
+}
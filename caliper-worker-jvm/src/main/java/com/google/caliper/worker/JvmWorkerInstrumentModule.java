@@ -43,6 +43,11 @@ abstract class JvmWorkerInstrumentModule {
   abstract WorkerInstrument bindsMacrobenchmarkAllocationWorkerInstrument(
       MacrobenchmarkAllocationWorkerInstrument impl);
 
+  @Binds
+  @IntoMap
+  @InstrumentTypeKey(InstrumentType.FOOTPRINT)
+  abstract WorkerInstrument bindsFootprintWorkerInstrument(FootprintWorkerInstrument impl);
+
   @Provides
   static AllocationRecorder provideAllocationRecorder(
       @WorkerInstrument.Options Map<String, String> workerInstrumentOptions,
@@ -16,6 +16,8 @@
 
 package com.google.caliper.worker;
 
+import com.google.caliper.worker.instrument.GcMeter;
+import com.google.caliper.worker.instrument.ResourceMeter;
 import com.google.caliper.worker.instrument.WorkerInstrumentComponent;
 import dagger.Binds;
 import dagger.Module;
@@ -28,4 +30,10 @@ abstract class JvmWorkerModule {
   @Binds
   abstract WorkerInstrumentComponent.Builder bindInstrumentComponentBuilder(
       JvmWorkerInstrumentComponent.Builder builder);
+
+  @Binds
+  abstract ResourceMeter bindResourceMeter(JvmResourceMeter meter);
+
+  @Binds
+  abstract GcMeter bindGcMeter(JvmGcMeter meter);
 }
@@ -27,6 +27,7 @@ import com.google.caliper.worker.instrument.WorkerInstrument;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.lang.reflect.Method;
+import java.util.Map;
 import javax.inject.Inject;
 
 /**
@@ -36,14 +37,22 @@ import javax.inject.Inject;
  */
 final class MacrobenchmarkAllocationWorkerInstrument extends WorkerInstrument {
   private final AllocationRecorder recorder;
+  private final AllocationProfiler profiler;
   private final ImmutableSet<Method> beforeRepMethods;
   private final ImmutableSet<Method> afterRepMethods;
+  private final boolean otherThreads;
 
   @Inject
   MacrobenchmarkAllocationWorkerInstrument(
-      @Benchmark Object benchmark, @BenchmarkMethod Method method, AllocationRecorder recorder) {
+      @Benchmark Object benchmark,
+      @BenchmarkMethod Method method,
+      AllocationRecorder recorder,
+      AllocationProfiler profiler,
+      @WorkerInstrument.Options Map<String, String> options) {
     super(benchmark, method);
     this.recorder = recorder;
+    this.profiler = profiler;
+    this.otherThreads = Boolean.parseBoolean(options.get("otherThreads"));
     this.beforeRepMethods = getAnnotatedMethods(benchmark.getClass(), BeforeRep.class);
     this.afterRepMethods = getAnnotatedMethods(benchmark.getClass(), AfterRep.class);
   }
@@ -72,7 +81,9 @@ final class MacrobenchmarkAllocationWorkerInstrument extends WorkerInstrument {
 
   @Override
   public ImmutableList<Measurement> measure() throws Exception {
-    return measureAllocations(benchmark, benchmarkMethod).toMeasurements();
+    AllocationStats stats = measureAllocations(benchmark, benchmarkMethod);
+    profiler.record(stats);
+    return stats.toMeasurements(otherThreads);
   }
 
   @Override
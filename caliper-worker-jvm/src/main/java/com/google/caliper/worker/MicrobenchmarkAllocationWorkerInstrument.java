@@ -19,10 +19,14 @@ package com.google.caliper.worker;
 import com.google.caliper.core.Running.Benchmark;
 import com.google.caliper.core.Running.BenchmarkMethod;
 import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Value;
 import com.google.caliper.worker.instrument.WorkerInstrument;
+import com.google.common.collect.ImmutableList;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import javax.inject.Inject;
 
@@ -50,18 +54,32 @@ final class MicrobenchmarkAllocationWorkerInstrument extends WorkerInstrument {
 
   private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
+  /**
+   * The number of (reps, allocations) samples fit by each measurement in statistical mode. Their
+   * reps are spread evenly over [0, MAX_REPS].
+   */
+  private static final int STATISTICAL_SAMPLES = 12;
+
   private final Random random;
   private final AllocationRecorder recorder;
+  private final AllocationProfiler profiler;
+  private final boolean statistical;
+  private final boolean otherThreads;
 
   @Inject
   MicrobenchmarkAllocationWorkerInstrument(
       @Benchmark Object benchmark,
       @BenchmarkMethod Method method,
       AllocationRecorder recorder,
-      Random random) {
+      AllocationProfiler profiler,
+      Random random,
+      @WorkerInstrument.Options Map<String, String> options) {
     super(benchmark, method);
     this.random = random;
     this.recorder = recorder;
+    this.profiler = profiler;
+    this.statistical = Boolean.parseBoolean(options.get("statistical"));
+    this.otherThreads = Boolean.parseBoolean(options.get("otherThreads"));
   }
 
   @Override
@@ -72,6 +90,11 @@ final class MicrobenchmarkAllocationWorkerInstrument extends WorkerInstrument {
     // warm up the loop in the benchmark method.
     measureAllocations(benchmark, benchmarkMethod, WARMUP_REPS);
 
+    if (statistical) {
+      // allocations that vary between invocations are expected, and are left to the regression
+      return;
+    }
+
     // verify that the benchmark is deterministic in terms of the measured allocations.
     verifyBenchmarkIsDeterministic();
   }
@@ -136,11 +159,72 @@ final class MicrobenchmarkAllocationWorkerInstrument extends WorkerInstrument {
 
   @Override
   public Iterable<Measurement> measure() throws Exception {
+    if (statistical) {
+      return measureStatistically();
+    }
     AllocationStats baseline = measureAllocations(benchmark, benchmarkMethod, 0);
     // [1, MAX_REPS]
     int measurementReps = random.nextInt(MAX_REPS) + 1;
     AllocationStats measurement = measureAllocations(benchmark, benchmarkMethod, measurementReps);
-    return measurement.minus(baseline).toMeasurements();
+    AllocationStats stats = measurement.minus(baseline);
+    profiler.record(stats);
+    return stats.toMeasurements(otherThreads);
+  }
+
+  /**
+   * Measures the allocations of invocations with a spread of rep counts and fits the allocations
+   * per rep with a robust regression, rather than requiring every invocation to allocate
+   * identically. Allocations that don't scale with reps, such as those of invoking the benchmark
+   * method or of lazy initialization, come out in the intercept. The slope is reported as the
+   * objects and bytes allocated per rep, along with the bounds of its 95% confidence interval.
+   */
+  private ImmutableList<Measurement> measureStatistically() throws Exception {
+    List<Integer> repCounts = new ArrayList<>();
+    for (int i = 0; i < STATISTICAL_SAMPLES; i++) {
+      repCounts.add(i * MAX_REPS / (STATISTICAL_SAMPLES - 1));
+    }
+    // so that allocations that drift over time don't correlate with reps
+    Collections.shuffle(repCounts, random);
+
+    long[] reps = new long[STATISTICAL_SAMPLES];
+    long[] objects = new long[STATISTICAL_SAMPLES];
+    long[] bytes = new long[STATISTICAL_SAMPLES];
+    for (int i = 0; i < STATISTICAL_SAMPLES; i++) {
+      AllocationStats stats = measureAllocations(benchmark, benchmarkMethod, repCounts.get(i));
+      profiler.record(stats);
+      reps[i] = stats.getReps();
+      objects[i] = stats.getAllocationCount();
+      bytes[i] = stats.getAllocationSize();
+    }
+    TheilSenFit objectsFit = TheilSenFit.fit(reps, objects, TheilSenFit.Z_95);
+    TheilSenFit bytesFit = TheilSenFit.fit(reps, bytes, TheilSenFit.Z_95);
+    System.out.printf(
+        "Allocated %f objects (%f bytes) per rep, and %f objects (%f bytes) per invocation%n",
+        objectsFit.slope(), bytesFit.slope(), objectsFit.intercept(), bytesFit.intercept());
+
+    ImmutableList.Builder<Measurement> measurements = ImmutableList.builder();
+    addFit(measurements, "objects", "", objectsFit);
+    addFit(measurements, "bytes", "B", bytesFit);
+    return measurements.build();
+  }
+
+  private static void addFit(
+      ImmutableList.Builder<Measurement> measurements,
+      String description,
+      String unit,
+      TheilSenFit fit) {
+    measurements.add(
+        perRep(description, unit, fit.slope()),
+        perRep(description + "-ci-lower", unit, fit.slopeLower()),
+        perRep(description + "-ci-upper", unit, fit.slopeUpper()));
+  }
+
+  private static Measurement perRep(String description, String unit, double value) {
+    return new Measurement.Builder()
+        .description(description)
+        .value(Value.create(value, unit))
+        .weight(1)
+        .build();
   }
 
   private AllocationStats measureAllocations(Object benchmark, Method method, int reps)
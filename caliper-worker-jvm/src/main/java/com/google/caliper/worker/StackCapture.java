@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import javax.annotation.CheckForNull;
+
+/**
+ * Captures the innermost frames of the current thread's stack, up to a given frame.
+ *
+ * <p>On Java 9 and later, the frames are walked lazily with {@code StackWalker}, so only the frames
+ * up to the last one wanted are materialized however deep the stack is. Materializing a frame
+ * that way costs more than it does in a {@link Throwable}'s stack trace, so the walker only pays
+ * off when the frames wanted are a small part of the stack, as they are for an allocation made a
+ * few calls below the benchmark method. Since the worker is built for Java 8, the walker is looked
+ * up reflectively; where it's missing, the whole stack is captured with a Throwable and the frames
+ * wanted are copied out of it.
+ */
+final class StackCapture {
+  private StackCapture() {}
+
+  private static final StackTraceElement[] NO_FRAMES = new StackTraceElement[0];
+
+  // StackWalker.getInstance().walk(Function), adapted to (Function)Object, or null before Java 9
+  @CheckForNull private static final MethodHandle WALK;
+  // StackWalker.StackFrame.toStackTraceElement(), adapted to (Object)StackTraceElement
+  @CheckForNull private static final MethodHandle TO_STACK_TRACE_ELEMENT;
+
+  static {
+    MethodHandle walk = null;
+    MethodHandle toStackTraceElement = null;
+    try {
+      Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+      Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+      Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+      // not a public lookup, since walk is caller sensitive
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      MethodHandle getInstance =
+          lookup.findStatic(
+              walkerClass, "getInstance", MethodType.methodType(walkerClass, optionClass));
+      // a Throwable's stack trace includes reflection frames, so the sites are the same either way
+      Object walker = getInstance.invoke(enumConstant(optionClass, "SHOW_REFLECT_FRAMES"));
+      walk =
+          lookup
+              .findVirtual(
+                  walkerClass, "walk", MethodType.methodType(Object.class, Function.class))
+              .bindTo(walker);
+      toStackTraceElement =
+          lookup
+              .findVirtual(
+                  frameClass,
+                  "toStackTraceElement",
+                  MethodType.methodType(StackTraceElement.class))
+              .asType(MethodType.methodType(StackTraceElement.class, Object.class));
+    } catch (Throwable e) {
+      // Java 8: capture with a Throwable instead
+      walk = null;
+      toStackTraceElement = null;
+    }
+    WALK = walk;
+    TO_STACK_TRACE_ELEMENT = toStackTraceElement;
+  }
+
+  /**
+   * Returns at most {@code maxFrames} frames of the caller's stack, innermost first, starting
+   * {@code skipFrames} frames out from the caller itself and ending with the first frame that
+   * {@code isLastFrame} accepts.
+   */
+  static StackTraceElement[] capture(
+      int skipFrames, int maxFrames, Predicate<? super StackTraceElement> isLastFrame) {
+    checkArgument(skipFrames >= 0 && maxFrames >= 0);
+    checkNotNull(isLastFrame);
+    return WALK == null
+        ? captureWithThrowable(skipFrames, maxFrames, isLastFrame)
+        : captureWithWalker(skipFrames, maxFrames, isLastFrame);
+  }
+
+  /** Returns whether frames are captured with {@code StackWalker}, rather than a Throwable. */
+  @VisibleForTesting
+  static boolean walksStack() {
+    return WALK != null;
+  }
+
+  @VisibleForTesting
+  static StackTraceElement[] captureWithThrowable(
+      int skipFrames, int maxFrames, Predicate<? super StackTraceElement> isLastFrame) {
+    StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+    int start = callerIndex(stackTrace) + skipFrames;
+    int end = (int) Math.min(stackTrace.length, (long) start + maxFrames);
+    for (int i = start; i < end; i++) {
+      if (isLastFrame.apply(stackTrace[i])) {
+        end = i + 1;
+        break;
+      }
+    }
+    return start < end ? Arrays.copyOfRange(stackTrace, start, end) : NO_FRAMES;
+  }
+
+  private static StackTraceElement[] captureWithWalker(
+      final int skipFrames,
+      final int maxFrames,
+      final Predicate<? super StackTraceElement> isLastFrame) {
+    Function<Stream<?>, StackTraceElement[]> collector =
+        new Function<Stream<?>, StackTraceElement[]>() {
+          @Override
+          public StackTraceElement[] apply(Stream<?> frames) {
+            StackTraceElement[] kept = new StackTraceElement[Math.min(maxFrames, 16)];
+            int count = 0;
+            int skipped = 0;
+            boolean inCaller = false;
+            for (Iterator<?> i = frames.iterator(); i.hasNext() && count < maxFrames; ) {
+              StackTraceElement frame = toStackTraceElement(i.next());
+              if (!inCaller) {
+                if (isOwnFrame(frame)) {
+                  continue;
+                }
+                inCaller = true;
+              }
+              if (skipped < skipFrames) {
+                skipped++;
+              } else {
+                if (count == kept.length) {
+                  kept = Arrays.copyOf(kept, (int) Math.min(maxFrames, 2L * count));
+                }
+                kept[count++] = frame;
+                if (isLastFrame.apply(frame)) {
+                  break;
+                }
+              }
+            }
+            return count == kept.length ? kept : Arrays.copyOf(kept, count);
+          }
+        };
+    try {
+      return (StackTraceElement[]) WALK.invoke(collector);
+    } catch (Throwable t) {
+      throw new AssertionError(t);
+    }
+  }
+
+  private static StackTraceElement toStackTraceElement(Object frame) {
+    try {
+      return (StackTraceElement) TO_STACK_TRACE_ELEMENT.invokeExact(frame);
+    } catch (Throwable t) {
+      throw new AssertionError(t);
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"}) // the enum class is only known at run time
+  private static Object enumConstant(Class<?> enumClass, String name) {
+    return Enum.valueOf((Class) enumClass, name);
+  }
+
+  /** Returns the index of the first frame that isn't in this class. */
+  private static int callerIndex(StackTraceElement[] stackTrace) {
+    int i = 0;
+    while (i < stackTrace.length && isOwnFrame(stackTrace[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isOwnFrame(StackTraceElement frame) {
+    // includes the collector, which the walker may report above walk's caller
+    String className = frame.getClassName();
+    return className.equals(StackCapture.class.getName())
+        || className.startsWith(StackCapture.class.getName() + "$");
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * A robust fit of the line {@code y = intercept + slope * x} to a set of points, using the
+ * Theil-Sen estimator: the slope is the median of the slopes between all pairs of points and the
+ * intercept is the median of the residual intercepts. Up to about 29% of the points can be outliers
+ * without affecting the fit, which makes it suitable for allocation counts where an occasional
+ * sample includes a cache fill or some lazy initialization.
+ *
+ * <p>The confidence interval for the slope is the distribution-free one given by Sen (1968), based
+ * on the variance of Kendall's S statistic with the usual correction for tied x and y values.
+ */
+final class TheilSenFit {
+  /** The standard normal quantile for a two-sided 95% confidence interval. */
+  static final double Z_95 = 1.959964;
+
+  private final double slope;
+  private final double intercept;
+  private final double slopeLower;
+  private final double slopeUpper;
+
+  private TheilSenFit(double slope, double intercept, double slopeLower, double slopeUpper) {
+    this.slope = slope;
+    this.intercept = intercept;
+    this.slopeLower = slopeLower;
+    this.slopeUpper = slopeUpper;
+  }
+
+  /**
+   * Fits a line to the points {@code (x[i], y[i])}, with a confidence interval for the slope at the
+   * level given by the normal quantile {@code z}. There must be at least two distinct values of x.
+   */
+  static TheilSenFit fit(long[] x, long[] y, double z) {
+    checkArgument(x.length == y.length, "%s x values but %s y values", x.length, y.length);
+    int n = x.length;
+    double[] slopes = new double[n * (n - 1) / 2];
+    int slopeCount = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        if (x[i] != x[j]) {
+          slopes[slopeCount++] = ((double) (y[j] - y[i])) / (x[j] - x[i]);
+        }
+      }
+    }
+    checkArgument(slopeCount > 0, "at least two distinct x values are needed to fit a line");
+    slopes = Arrays.copyOf(slopes, slopeCount);
+    Arrays.sort(slopes);
+    double slope = median(slopes);
+
+    double[] intercepts = new double[n];
+    for (int i = 0; i < n; i++) {
+      intercepts[i] = y[i] - slope * x[i];
+    }
+    Arrays.sort(intercepts);
+    double intercept = median(intercepts);
+
+    // the ranks of the slopes bounding the interval, from the variance of Kendall's S statistic,
+    // rounded as in Sen (1968)
+    double c = z * Math.sqrt(kendallVariance(x, y));
+    int lower = (int) Math.max(0, Math.round((slopeCount - c) / 2) - 1);
+    int upper = (int) Math.min(slopeCount - 1, Math.round((slopeCount + c) / 2));
+    return new TheilSenFit(slope, intercept, slopes[lower], slopes[upper]);
+  }
+
+  /**
+   * Returns the variance of Kendall's S statistic for the points under the null hypothesis,
+   * corrected for ties: each group of {@code t} equal x values or equal y values takes away {@code
+   * t(t-1)(2t+5)/18}. Allocation counts tie a lot (most reps allocate the same), and so do the reps
+   * when they're drawn from a few values, so leaving the ties in would widen the interval.
+   */
+  private static double kendallVariance(long[] x, long[] y) {
+    int n = x.length;
+    double variance = n * (n - 1) * (2.0 * n + 5);
+    variance -= tieCorrection(x);
+    variance -= tieCorrection(y);
+    return variance / 18;
+  }
+
+  private static double tieCorrection(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    double correction = 0;
+    int start = 0;
+    for (int i = 1; i <= sorted.length; i++) {
+      if (i == sorted.length || sorted[i] != sorted[start]) {
+        double t = i - start;
+        correction += t * (t - 1) * (2 * t + 5);
+        start = i;
+      }
+    }
+    return correction;
+  }
+
+  private static double median(double[] sorted) {
+    int middle = sorted.length / 2;
+    return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+  }
+
+  double slope() {
+    return slope;
+  }
+
+  double intercept() {
+    return intercept;
+  }
+
+  /** Returns the lower bound of the slope's confidence interval. */
+  double slopeLower() {
+    return slopeLower;
+  }
+
+  /** Returns the upper bound of the slope's confidence interval. */
+  double slopeUpper() {
+    return slopeUpper;
+  }
+}
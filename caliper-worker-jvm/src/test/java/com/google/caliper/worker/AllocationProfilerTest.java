@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.io.Files;
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link AllocationProfiler}. */
+@RunWith(JUnit4.class)
+public class AllocationProfilerTest {
+  private static final UUID TRIAL_ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
+  private static final ImmutableList<StackTraceElement> LOCATION =
+      ImmutableList.of(
+          new StackTraceElement("Foo", "leaf", "Foo.java", 10),
+          new StackTraceElement("Foo", "benchmark", "Foo.java", 20));
+  private static final String STACK = "Foo.benchmark(Foo.java:20);Foo.leaf(Foo.java:10)";
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void foldedStacks() throws Exception {
+    File directory = new File(folder.getRoot(), "profiles");
+    AllocationProfiler profiler = profiler(directory.getPath());
+    profiler.record(
+        new AllocationStats(
+            ImmutableMultiset.<Allocation>builder()
+                .addCopies(new Allocation("java/lang/Object", 16, LOCATION), 3)
+                // arrays of all lengths are one type
+                .add(new Allocation("int[4]", 32, LOCATION))
+                .add(new Allocation("int[8]", 48, LOCATION))
+                .build(),
+            2));
+
+    // root first, with the type as the leaf, per rep
+    assertEquals(
+        ImmutableList.of(STACK + ";int[] 40", STACK + ";java.lang.Object 24"),
+        lines(new File(directory, TRIAL_ID + ".bytes-per-rep.folded")));
+    assertEquals(
+        ImmutableList.of(STACK + ";int[] 1", STACK + ";java.lang.Object 1.5"),
+        lines(new File(directory, TRIAL_ID + ".objects-per-rep.folded")));
+  }
+
+  @Test
+  public void foldedStacks_semicolonsInFramesAreReplaced() throws Exception {
+    AllocationProfiler profiler = profiler(folder.getRoot().getPath());
+    profiler.record(
+        new AllocationStats(
+            ImmutableMultiset.of(
+                new Allocation(
+                    "java/lang/Object",
+                    16,
+                    ImmutableList.of(new StackTraceElement("Foo", "a;b", "Foo.java", 1)))),
+            1));
+    assertEquals(
+        ImmutableList.of("Foo.a:b(Foo.java:1);java.lang.Object 16"),
+        lines(new File(folder.getRoot(), TRIAL_ID + ".bytes-per-rep.folded")));
+  }
+
+  @Test
+  public void types() throws Exception {
+    AllocationProfiler profiler = profiler(folder.getRoot().getPath());
+    profiler.record(
+        new AllocationStats(
+            ImmutableMultiset.<Allocation>builder()
+                .addCopies(new Allocation("java/lang/Object", 16, LOCATION), 3)
+                .add(new Allocation("int[4]", 32, LOCATION))
+                .add(new Allocation("int[8]", 48, LOCATION))
+                .build(),
+            2));
+
+    // by bytes, largest first
+    String format = "%-16s  %14s  %14s  %7s";
+    assertEquals(
+        ImmutableList.of(
+            String.format(format, "type", "objects/rep", "bytes/rep", "bytes %"),
+            String.format(format, "int[]", "1", "40", "62.5%"),
+            String.format(format, "java.lang.Object", "1.5", "24", "37.5%"),
+            String.format("%-16s  %14s  %14s", "total", "2.5", "64")),
+        lines(new File(folder.getRoot(), TRIAL_ID + ".types.txt")));
+  }
+
+  @Test
+  public void accumulatesMeasurements() throws Exception {
+    AllocationProfiler profiler = profiler(folder.getRoot().getPath());
+    Allocation object = new Allocation("java/lang/Object", 16, LOCATION);
+    profiler.record(new AllocationStats(ImmutableMultiset.of(object, object), 1));
+    profiler.record(new AllocationStats(ImmutableMultiset.of(object, object), 2));
+
+    // 4 objects over 3 reps, to three decimal places
+    assertEquals(
+        ImmutableList.of(STACK + ";java.lang.Object 1.333"),
+        lines(new File(folder.getRoot(), TRIAL_ID + ".objects-per-rep.folded")));
+    assertEquals(
+        ImmutableList.of(STACK + ";java.lang.Object 21.333"),
+        lines(new File(folder.getRoot(), TRIAL_ID + ".bytes-per-rep.folded")));
+  }
+
+  @Test
+  public void noRepsWritesNothing() throws Exception {
+    File directory = new File(folder.getRoot(), "profiles");
+    AllocationProfiler profiler = profiler(directory.getPath());
+    profiler.record(new AllocationStats(ImmutableMultiset.<Allocation>of(), 0));
+    assertFalse(directory.exists());
+  }
+
+  @Test
+  public void noProfileDir() throws Exception {
+    AllocationProfiler profiler =
+        new AllocationProfiler(ImmutableMap.<String, String>of(), TRIAL_ID);
+    profiler.record(
+        new AllocationStats(
+            ImmutableMultiset.of(new Allocation("java/lang/Object", 16, LOCATION)), 1));
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  private static AllocationProfiler profiler(String directory) {
+    return new AllocationProfiler(ImmutableMap.of("profileDir", directory), TRIAL_ID);
+  }
+
+  private static List<String> lines(File file) throws Exception {
+    return Files.readLines(file, UTF_8);
+  }
+}
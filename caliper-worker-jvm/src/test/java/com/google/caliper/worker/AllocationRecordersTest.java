@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.caliper.model.Measurement;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests {@link AggregateAllocationsRecorder} and {@link AllAllocationsRecorder} by feeding their
+ * samplers directly, as the allocation instrumenter would.
+ */
+@RunWith(JUnit4.class)
+public class AllocationRecordersTest {
+  private static final int THREADS = 4;
+  private static final int ALLOCATIONS_PER_THREAD = 10_000;
+
+  @Test
+  public void aggregate_countsOtherThreads() throws Exception {
+    AggregateAllocationsRecorder recorder = new AggregateAllocationsRecorder();
+    recorder.doStartRecording();
+    allocate(recorder.sampler);
+    assertStats(recorder.stopRecording(7));
+  }
+
+  @Test
+  public void all_mergesTheTablesOfEveryThread() throws Exception {
+    AllAllocationsRecorder recorder = new AllAllocationsRecorder(Object.class, "benchmark");
+    recorder.doStartRecording();
+    allocate(recorder.sampler);
+    AllocationStats stats = recorder.stopRecording(7);
+    assertStats(stats);
+    assertEquals(stats.getAllocationCount(), stats.getAllocations().size());
+  }
+
+  @Test
+  public void all_startingAgainClearsTheCounts() throws Exception {
+    AllAllocationsRecorder recorder = new AllAllocationsRecorder(Object.class, "benchmark");
+    recorder.doStartRecording();
+    allocate(recorder.sampler);
+    recorder.stopRecording(7);
+
+    recorder.doStartRecording();
+    recorder.sampler.sampleAllocation(-1, "java/lang/Object", null, 16);
+    AllocationStats stats = recorder.stopRecording(1);
+    assertEquals(1, stats.getAllocations().size());
+    assertEquals(16, stats.getAllocationSize());
+  }
+
+  /**
+   * Allocates 24 bytes once from this thread, and 16 bytes {@link #ALLOCATIONS_PER_THREAD} times
+   * from each of {@link #THREADS} other threads at once.
+   */
+  private static void allocate(final Sampler sampler) throws InterruptedException {
+    sampler.sampleAllocation(-1, "java/lang/Integer", null, 24);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      threads.add(
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  for (int j = 0; j < ALLOCATIONS_PER_THREAD; j++) {
+                    sampler.sampleAllocation(-1, "java/lang/Object", null, 16);
+                  }
+                }
+              }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  private static void assertStats(AllocationStats stats) {
+    int otherThreadAllocations = THREADS * ALLOCATIONS_PER_THREAD;
+    assertEquals(1 + otherThreadAllocations, stats.getAllocationCount());
+    assertEquals(24 + 16L * otherThreadAllocations, stats.getAllocationSize());
+    assertEquals(7, stats.getReps());
+    for (Measurement measurement : stats.toMeasurements(true)) {
+      switch (measurement.description()) {
+        case "objects-other-threads":
+          assertEquals(otherThreadAllocations, measurement.value().magnitude(), 0);
+          break;
+        case "bytes-other-threads":
+          assertEquals(16.0 * otherThreadAllocations, measurement.value().magnitude(), 0);
+          break;
+        default:
+          break;
+      }
+    }
+  }
+}
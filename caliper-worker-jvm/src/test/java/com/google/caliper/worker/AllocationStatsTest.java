@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Value;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link AllocationStats}. */
+@RunWith(JUnit4.class)
+public class AllocationStatsTest {
+
+  @Test
+  public void toMeasurements() {
+    AllocationStats stats = new AllocationStats(10, 160, 4, 64, 5);
+    assertEquals(
+        ImmutableList.of(measurement("objects", 10, ""), measurement("bytes", 160, "B")),
+        stats.toMeasurements(false));
+  }
+
+  @Test
+  public void toMeasurements_otherThreads() {
+    AllocationStats stats = new AllocationStats(10, 160, 4, 64, 5);
+    assertEquals(
+        ImmutableList.of(
+            measurement("objects", 10, ""),
+            measurement("bytes", 160, "B"),
+            measurement("objects-other-threads", 4, ""),
+            measurement("bytes-other-threads", 64, "B")),
+        stats.toMeasurements(true));
+  }
+
+  @Test
+  public void minus_subtractsOtherThreads() {
+    AllocationStats measurement = new AllocationStats(10, 160, 4, 64, 5);
+    AllocationStats baseline = new AllocationStats(2, 32, 1, 16, 0);
+    assertEquals(new AllocationStats(8, 128, 3, 48, 5), measurement.minus(baseline));
+  }
+
+  @Test
+  public void minus_moreOtherThreadAllocationsInBaseline() {
+    AllocationStats measurement = new AllocationStats(10, 160, 0, 0, 5);
+    AllocationStats baseline = new AllocationStats(2, 32, 1, 16, 0);
+    assertEquals(new AllocationStats(8, 128, 0, 0, 5), measurement.minus(baseline));
+  }
+
+  @Test
+  public void minus_otherThreadsCappedAtTheDifference() {
+    AllocationStats measurement = new AllocationStats(10, 160, 8, 128, 5);
+    AllocationStats baseline = new AllocationStats(6, 96, 0, 0, 0);
+    assertEquals(new AllocationStats(4, 64, 4, 64, 5), measurement.minus(baseline));
+  }
+
+  @Test
+  public void equals_includesOtherThreads() {
+    assertFalse(new AllocationStats(10, 160, 4, 64, 5).equals(new AllocationStats(10, 160, 5)));
+  }
+
+  @Test
+  public void otherThreadsCantExceedTheTotal() {
+    try {
+      new AllocationStats(1, 16, 2, 16, 1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static Measurement measurement(String description, double value, String unit) {
+    return new Measurement.Builder()
+        .description(description)
+        .value(Value.create(value, unit))
+        .weight(5)
+        .build();
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link CallSiteTable}. */
+@RunWith(JUnit4.class)
+public class CallSiteTableTest {
+  private static final StackTraceElement[] STACK = {
+    new StackTraceElement("Worker", "run", "Worker.java", 1),
+    new StackTraceElement("Foo", "allocate", "Foo.java", 10),
+    new StackTraceElement("Foo", "benchmark", "Foo.java", 20),
+    new StackTraceElement("Runner", "run", "Runner.java", 30),
+  };
+
+  @Test
+  public void countsEachSite() {
+    CallSiteTable table = new CallSiteTable();
+    table.record("java.lang.Object", -1, 16, STACK, 1, 3);
+    table.record("java.lang.Object", -1, 16, STACK, 1, 3);
+    table.record("int", 4, 32, STACK, 1, 3);
+    // the same type from a different location is another site
+    table.record("java.lang.Object", -1, 16, STACK, 2, 3);
+
+    ImmutableMultiset<Allocation> allocations = table.toAllocations();
+    assertEquals(4, allocations.size());
+    assertEquals(
+        2, allocations.count(allocation("java.lang.Object", 16, Arrays.copyOfRange(STACK, 1, 3))));
+    assertEquals(1, allocations.count(allocation("int[4]", 32, Arrays.copyOfRange(STACK, 1, 3))));
+    assertEquals(
+        1, allocations.count(allocation("java.lang.Object", 16, Arrays.copyOfRange(STACK, 2, 3))));
+  }
+
+  @Test
+  public void keepsOnlyTheRecordedFrames() {
+    CallSiteTable table = new CallSiteTable();
+    StackTraceElement[] stack = STACK.clone();
+    table.record("java.lang.Object", -1, 16, stack, 1, 3);
+    // the caller may reuse its array
+    stack[1] = new StackTraceElement("Bar", "allocate", "Bar.java", 1);
+
+    Allocation allocation = table.toAllocations().iterator().next();
+    assertEquals(
+        ImmutableList.of(STACK[1].toString(), STACK[2].toString()), allocation.getLocation());
+  }
+
+  @Test
+  public void clearCounts() {
+    CallSiteTable table = new CallSiteTable();
+    table.record("java.lang.Object", -1, 16, STACK, 1, 3);
+    table.clearCounts();
+    assertTrue(table.toAllocations().isEmpty());
+
+    table.record("java.lang.Object", -1, 16, STACK, 1, 3);
+    assertEquals(1, table.toAllocations().size());
+  }
+
+  @Test
+  public void manySites() {
+    CallSiteTable table = new CallSiteTable();
+    for (int rep = 0; rep < 3; rep++) {
+      for (int size = 1; size <= 1000; size++) {
+        table.record("byte", size, size, STACK, 1, 3);
+      }
+    }
+
+    ImmutableMultiset<Allocation> allocations = table.toAllocations();
+    assertEquals(1000, allocations.elementSet().size());
+    for (int size = 1; size <= 1000; size++) {
+      Allocation allocation =
+          allocation("byte[" + size + "]", size, Arrays.copyOfRange(STACK, 1, 3));
+      assertEquals(3, allocations.count(allocation));
+    }
+  }
+
+  private static Allocation allocation(
+      String description, long size, StackTraceElement[] location) {
+    return new Allocation(description, size, Arrays.asList(location));
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.caliper.worker.JvmGcMeter.CollectionKind;
+import com.google.caliper.worker.instrument.GcMeter;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link JvmGcMeter}. */
+@RunWith(JUnit4.class)
+public class JvmGcMeterTest {
+
+  @Test
+  public void collectionKind() {
+    assertEquals(CollectionKind.MINOR, CollectionKind.of("G1 Young Generation", "end of minor GC"));
+    assertEquals(CollectionKind.MAJOR, CollectionKind.of("G1 Old Generation", "end of major GC"));
+    assertEquals(
+        CollectionKind.CYCLE_PAUSE,
+        CollectionKind.of("G1 Concurrent GC", "end of concurrent GC pause"));
+    assertEquals(CollectionKind.MINOR, CollectionKind.of("PS Scavenge", "end of minor GC"));
+    assertEquals(CollectionKind.MAJOR, CollectionKind.of("PS MarkSweep", "end of major GC"));
+    assertEquals(CollectionKind.MAJOR_CYCLE, CollectionKind.of("ZGC Cycles", "end of GC cycle"));
+    assertEquals(CollectionKind.CYCLE_PAUSE, CollectionKind.of("ZGC Pauses", "end of GC pause"));
+    assertEquals(
+        CollectionKind.MINOR_CYCLE, CollectionKind.of("ZGC Minor Cycles", "end of GC cycle"));
+    assertEquals(
+        CollectionKind.MAJOR_CYCLE, CollectionKind.of("ZGC Major Cycles", "end of GC cycle"));
+    assertEquals(
+        CollectionKind.MAJOR_CYCLE, CollectionKind.of("Shenandoah Cycles", "end of GC cycle"));
+    assertEquals(
+        CollectionKind.CYCLE_PAUSE, CollectionKind.of("Shenandoah Pauses", "end of GC pause"));
+  }
+
+  @Test
+  public void g1() {
+    JvmGcMeter meter = newMeter();
+    meter.record(
+        "G1 Young Generation", "end of minor GC", 3, usage(1000, 100, 0), usage(0, 150, 20));
+    // remark and cleanup pauses of a concurrent cycle: paused, but no collection of their own
+    meter.record(
+        "G1 Concurrent GC",
+        "end of concurrent GC pause",
+        2,
+        usage(500, 150, 20),
+        usage(500, 150, 20));
+    meter.record(
+        "G1 Concurrent GC",
+        "end of concurrent GC pause",
+        1,
+        usage(600, 150, 20),
+        usage(600, 120, 20));
+    meter.record("G1 Old Generation", "end of major GC", 10, usage(800, 150, 20), usage(0, 90, 0));
+
+    GcMeter.Sample sample = meter.sample();
+    assertEquals(1, sample.youngCollections);
+    assertEquals(1, sample.oldCollections);
+    assertEquals(MILLISECONDS.toNanos(16), sample.pauseNanos);
+    // only the young collection promotes
+    assertEquals(50, sample.promotedBytes);
+    assertTrue(sample.peakHeapBytes >= 1100);
+  }
+
+  @Test
+  public void zgc() {
+    JvmGcMeter meter = newMeter();
+    meter.record("ZGC Pauses", "end of GC pause", 1, usage(0, 0, 0), usage(0, 0, 0));
+    meter.record("ZGC Pauses", "end of GC pause", 1, usage(0, 0, 0), usage(0, 0, 0));
+    meter.record("ZGC Cycles", "end of GC cycle", 250, usage(0, 0, 0), usage(0, 0, 0));
+
+    GcMeter.Sample sample = meter.sample();
+    assertEquals(0, sample.youngCollections);
+    assertEquals(1, sample.oldCollections);
+    // the cycle ran alongside the application; only the pauses stopped it
+    assertEquals(MILLISECONDS.toNanos(2), sample.pauseNanos);
+  }
+
+  @Test
+  public void peakHeapStartsOverAfterEachSample() {
+    JvmGcMeter meter = newMeter();
+    meter.record(
+        "G1 Young Generation", "end of minor GC", 1, usage(1L << 40, 0, 0), usage(0, 0, 0));
+    assertEquals(1L << 40, meter.sample().peakHeapBytes);
+    assertTrue(meter.sample().peakHeapBytes < 1L << 40);
+  }
+
+  @Test
+  public void countsCollectionsOfThisVm() {
+    JvmGcMeter meter = new JvmGcMeter();
+    assumeTrue(meter.isSupported());
+    GcMeter.Sample before = meter.sample();
+    System.gc();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    GcMeter.Sample after = meter.sample();
+    // the sample waited for the collection's notification, and no longer than it had to
+    assertTrue(
+        after.youngCollections + after.oldCollections
+            > before.youngCollections + before.oldCollections);
+    assertTrue(stopwatch.elapsed(MILLISECONDS) < 1000);
+
+    // nothing is pending, so there's nothing to wait for
+    stopwatch = Stopwatch.createStarted();
+    for (int i = 0; i < 100; i++) {
+      meter.sample();
+    }
+    assertTrue(stopwatch.elapsed(MILLISECONDS) < 1000);
+  }
+
+  /** A meter of a heap with an eden, an old generation and a survivor space, and no collectors. */
+  private static JvmGcMeter newMeter() {
+    return new JvmGcMeter(
+        ImmutableList.<GarbageCollectorMXBean>of(),
+        ImmutableList.of(pool("G1 Eden Space"), pool("G1 Old Gen"), pool("G1 Survivor Space")));
+  }
+
+  private static MemoryPoolMXBean pool(String name) {
+    MemoryPoolMXBean pool = mock(MemoryPoolMXBean.class);
+    when(pool.getName()).thenReturn(name);
+    when(pool.getType()).thenReturn(MemoryType.HEAP);
+    return pool;
+  }
+
+  private static Map<String, MemoryUsage> usage(long eden, long old, long survivor) {
+    return ImmutableMap.of(
+        "G1 Eden Space", new MemoryUsage(0, eden, eden, -1),
+        "G1 Old Gen", new MemoryUsage(0, old, old, -1),
+        "G1 Survivor Space", new MemoryUsage(0, survivor, survivor, -1));
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link StackCapture}. */
+@RunWith(JUnit4.class)
+public class StackCaptureTest {
+
+  @Test
+  public void startsAtTheCaller() {
+    StackTraceElement[] frames = StackCapture.capture(0, 1, Predicates.alwaysFalse());
+    assertEquals(1, frames.length);
+    assertEquals("startsAtTheCaller", frames[0].getMethodName());
+  }
+
+  @Test
+  public void skipsFrames() {
+    StackTraceElement[] frames = captureFromHelper(1, 2);
+    assertEquals(2, frames.length);
+    assertEquals("skipsFrames", frames[0].getMethodName());
+  }
+
+  @Test
+  public void walkerMatchesThrowable() {
+    assumeTrue(StackCapture.walksStack());
+    // skipping the helpers themselves
+    assertEquals(methods(captureFromHelper(1, 8)), methods(captureWithThrowable(1, 8)));
+  }
+
+  @Test
+  public void endsWithTheLastFrame() {
+    Predicate<StackTraceElement> isTestMethod =
+        new Predicate<StackTraceElement>() {
+          @Override
+          public boolean apply(StackTraceElement frame) {
+            return frame.getMethodName().equals("endsWithTheLastFrame");
+          }
+        };
+    StackTraceElement[] frames = StackCapture.capture(0, 8, isTestMethod);
+    assertEquals(1, frames.length);
+    assertEquals(
+        methods(frames), methods(StackCapture.captureWithThrowable(0, 8, isTestMethod)));
+  }
+
+  @Test
+  public void boundedByTheStack() {
+    int depth = captureWithThrowable(0, Integer.MAX_VALUE).length;
+    assertTrue(depth > 1);
+    assertEquals(depth, captureFromHelper(0, Integer.MAX_VALUE).length);
+    assertEquals(0, captureFromHelper(depth, 1).length);
+  }
+
+  private static StackTraceElement[] captureFromHelper(int skipFrames, int maxFrames) {
+    return StackCapture.capture(skipFrames, maxFrames, Predicates.alwaysFalse());
+  }
+
+  // called from the same depth as captureFromHelper
+  private static StackTraceElement[] captureWithThrowable(int skipFrames, int maxFrames) {
+    return StackCapture.captureWithThrowable(skipFrames, maxFrames, Predicates.alwaysFalse());
+  }
+
+  private static List<String> methods(StackTraceElement[] frames) {
+    List<String> methods = new ArrayList<>();
+    for (StackTraceElement frame : frames) {
+      methods.add(frame.getClassName() + "." + frame.getMethodName());
+    }
+    return methods;
+  }
+}
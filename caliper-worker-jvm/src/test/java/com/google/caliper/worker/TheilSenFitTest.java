@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link TheilSenFit}. */
+@RunWith(JUnit4.class)
+public class TheilSenFitTest {
+
+  @Test
+  public void exactLine() {
+    TheilSenFit fit =
+        TheilSenFit.fit(new long[] {1, 2, 3, 4, 5}, new long[] {7, 9, 11, 13, 15}, 1.96);
+    assertFit(2, 5, 2, 2, fit);
+  }
+
+  @Test
+  public void outlier() {
+    // y = 3x, but for an allocation of 16 extra objects at x = 5. Of the 45 slopes, the interval
+    // runs from the 12th to the 34th: Var(S) = 10 * 9 * 25 / 18 = 125, C = 1.96 * sqrt(125) =
+    // 21.91, (45 - C) / 2 = 11.54 and (45 + C) / 2 = 33.46.
+    TheilSenFit fit =
+        TheilSenFit.fit(
+            new long[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10},
+            new long[] {3, 6, 10, 12, 31, 18, 21, 25, 27, 30},
+            TheilSenFit.Z_95);
+    assertFit(3, 0, 20.0 / 7, 3, fit);
+  }
+
+  @Test
+  public void ties() {
+    // Three reps values, four points each, and tied counts: 48 slopes between points with distinct
+    // x, with the median 8 and the residuals' median (0 + 1) / 2.
+    // The 3 groups of 4 tied x values take 3 * 4 * 3 * 13 = 468 from 12 * 11 * 29 = 3828, and
+    // the y values 8, 16 (twice each) and 24 (three times) take 18 + 18 + 66 = 102, so
+    // Var(S) = 3258 / 18 = 181 and C = 1.959964 * sqrt(181) = 26.37. The interval runs from the
+    // round((48 - C) / 2) = 11th slope (7) to the round((48 + C) / 2) + 1 = 38th (10). Without the
+    // correction it would run to the 39th (11).
+    TheilSenFit fit =
+        TheilSenFit.fit(
+            new long[] {1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3},
+            new long[] {8, 8, 9, 12, 16, 16, 17, 24, 24, 24, 26, 31},
+            TheilSenFit.Z_95);
+    assertFit(8, 0.5, 7, 10, fit);
+  }
+
+  @Test
+  public void allAllocationsEqual() {
+    // every point ties in y; nothing varies, so the interval is the slope itself
+    TheilSenFit fit =
+        TheilSenFit.fit(new long[] {1, 2, 3, 4, 5, 6}, new long[] {0, 0, 0, 0, 0, 0}, 1.96);
+    assertFit(0, 0, 0, 0, fit);
+  }
+
+  @Test
+  public void sameXEverywhere() {
+    try {
+      TheilSenFit.fit(new long[] {4, 4, 4}, new long[] {1, 2, 3}, TheilSenFit.Z_95);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static void assertFit(
+      double slope, double intercept, double slopeLower, double slopeUpper, TheilSenFit fit) {
+    assertEquals(slope, fit.slope(), 1e-9);
+    assertEquals(intercept, fit.intercept(), 1e-9);
+    assertEquals(slopeLower, fit.slopeLower(), 1e-9);
+    assertEquals(slopeUpper, fit.slopeUpper(), 1e-9);
+  }
+}
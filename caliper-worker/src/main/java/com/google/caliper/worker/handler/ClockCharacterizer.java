@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker.handler;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.caliper.bridge.ClockCharacteristics;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.math.Quantiles;
+import java.util.Arrays;
+
+/**
+ * Measures the characteristics of a clock on the device the worker is running on. The clock is
+ * read through a {@link Ticker}, the same way the worker instruments read it, so that the measured
+ * latency includes the indirection they pay for.
+ */
+final class ClockCharacterizer {
+  private ClockCharacterizer() {}
+
+  /** The number of reads that are timed to measure the latency. */
+  private static final int LATENCY_READS = 10000;
+
+  /** The number of changes of the clock's value that are observed to measure the granularity. */
+  private static final int GRANULARITY_SAMPLES = 50;
+
+  /**
+   * The longest time spent waiting for the clock's value to change while measuring the granularity,
+   * so that a clock that changes rarely or not at all can't hold up the worker.
+   */
+  private static final long GRANULARITY_DEADLINE_NANOS = SECONDS.toNanos(1);
+
+  static ClockCharacteristics characterize(Ticker clock) {
+    return characterize(clock, Ticker.systemTicker(), GRANULARITY_DEADLINE_NANOS);
+  }
+
+  /**
+   * Measures the characteristics of {@code clock}, giving up on observing more changes of its value
+   * once {@code deadlineNanos} have passed on {@code wallClock}. The granularity is the median of
+   * the changes observed by then, or the whole wait if the clock didn't change at all.
+   */
+  @VisibleForTesting
+  static ClockCharacteristics characterize(Ticker clock, Ticker wallClock, long deadlineNanos) {
+    boolean monotonic = true;
+
+    long first = clock.read();
+    long previous = first;
+    for (int i = 0; i < LATENCY_READS; i++) {
+      long current = clock.read();
+      monotonic &= current >= previous;
+      previous = current;
+    }
+    double latencyNanos = (double) (previous - first) / LATENCY_READS;
+
+    long deadline = wallClock.read() + deadlineNanos;
+    double[] steps = new double[GRANULARITY_SAMPLES];
+    int samples = 0;
+    sampling:
+    while (samples < GRANULARITY_SAMPLES) {
+      long start = clock.read();
+      long current;
+      do {
+        if (wallClock.read() - deadline >= 0) {
+          break sampling;
+        }
+        current = clock.read();
+      } while (current == start);
+      monotonic &= current > start;
+      steps[samples++] = Math.abs(current - start);
+    }
+    double granularityNanos =
+        samples == 0
+            ? deadlineNanos
+            : Quantiles.median().computeInPlace(Arrays.copyOf(steps, samples));
+
+    return ClockCharacteristics.create(granularityNanos, latencyNanos, monotonic);
+  }
+}
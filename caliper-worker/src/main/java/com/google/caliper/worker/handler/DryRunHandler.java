@@ -23,23 +23,38 @@ import com.google.caliper.bridge.ExperimentSpec;
 import com.google.caliper.bridge.WorkerRequest;
 import com.google.caliper.core.UserCodeException;
 import com.google.caliper.worker.connection.ClientConnectionService;
+import com.google.caliper.worker.instrument.ResourceMeter;
 import com.google.caliper.worker.instrument.WorkerInstrument;
 import com.google.caliper.worker.instrument.WorkerInstrumentFactory;
 import com.google.common.collect.ImmutableSet;
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
 import javax.inject.Inject;
 
 /** Handler for a {@link DryRunRequest}. */
 final class DryRunHandler implements RequestHandler {
+  /**
+   * The worker option with which an instrument asks for the steady-state cost of its benchmark: the
+   * time, in nanoseconds, to spend measuring it after the single dry-run rep.
+   */
+  private static final String STEADY_STATE_DRY_RUN_OPTION = "steadyStateDryRunNanos";
+
+  /** The most reps run in one batch while measuring the steady state; fits in an int. */
+  private static final long MAX_STEADY_STATE_REPS = 1L << 30;
 
   private final ClientConnectionService clientConnection;
   private final WorkerInstrumentFactory instrumentFactory;
+  private final ResourceMeter resourceMeter;
 
   @Inject
   DryRunHandler(
-      ClientConnectionService clientConnection, WorkerInstrumentFactory instrumentFactory) {
+      ClientConnectionService clientConnection,
+      WorkerInstrumentFactory instrumentFactory,
+      ResourceMeter resourceMeter) {
     this.clientConnection = clientConnection;
     this.instrumentFactory = instrumentFactory;
+    this.resourceMeter = resourceMeter;
   }
 
   @Override
@@ -47,13 +62,33 @@ final class DryRunHandler implements RequestHandler {
     DryRunRequest dryRunRequest = (DryRunRequest) request;
 
     ImmutableSet.Builder<Integer> successes = ImmutableSet.builder();
+    Map<Integer, Long> nanos = new HashMap<>();
+    Map<Integer, Long> allocatedBytes = new HashMap<>();
+    boolean countAllocations = resourceMeter.supportsAllocatedBytes();
     for (ExperimentSpec experiment : dryRunRequest.experiments()) {
       try {
         WorkerInstrument workerInstrument = instrumentFactory.createWorkerInstrument(experiment);
 
         workerInstrument.setUpBenchmark();
         try {
+          long bytesBefore = countAllocations ? resourceMeter.currentThreadAllocatedBytes() : 0;
+          long nanosBefore = System.nanoTime();
           workerInstrument.dryRun();
+          nanos.put(experiment.id(), System.nanoTime() - nanosBefore);
+          if (countAllocations) {
+            allocatedBytes.put(
+                experiment.id(), resourceMeter.currentThreadAllocatedBytes() - bytesBefore);
+            String steadyStateNanos =
+                experiment.workerInstrumentOptions().get(STEADY_STATE_DRY_RUN_OPTION);
+            if (steadyStateNanos != null) {
+              measureSteadyState(
+                  workerInstrument,
+                  Long.parseLong(steadyStateNanos),
+                  experiment.id(),
+                  nanos,
+                  allocatedBytes);
+            }
+          }
         } finally {
           workerInstrument.tearDownBenchmark();
         }
@@ -72,6 +107,51 @@ final class DryRunHandler implements RequestHandler {
       }
     }
 
-    clientConnection.send(DryRunSuccessLogMessage.create(successes.build()));
+    clientConnection.send(
+        DryRunSuccessLogMessage.create(
+            successes.build(), javaFeatureVersion(), nanos, allocatedBytes));
+  }
+
+  /**
+   * Runs batches of twice as many reps as the one before until a batch takes at least a quarter of
+   * the given time or that time has passed, and records the time and allocation of the last batch
+   * in place of the dry-run rep's. Later batches run warmer code, so the last one reflects the
+   * benchmark's steady state far better than a single cold rep.
+   */
+  private void measureSteadyState(
+      WorkerInstrument workerInstrument,
+      long budgetNanos,
+      int experimentId,
+      Map<Integer, Long> nanos,
+      Map<Integer, Long> allocatedBytes)
+      throws Exception {
+    long deadline = System.nanoTime() + budgetNanos;
+    for (long reps = 1; ; reps *= 2) {
+      long bytesBefore = resourceMeter.currentThreadAllocatedBytes();
+      long nanosBefore = System.nanoTime();
+      workerInstrument.dryRun(reps);
+      long nanosAfter = System.nanoTime();
+      nanos.put(experimentId, nanosAfter - nanosBefore);
+      allocatedBytes.put(experimentId, resourceMeter.currentThreadAllocatedBytes() - bytesBefore);
+      if (nanosAfter - nanosBefore >= budgetNanos / 4
+          || nanosAfter - deadline >= 0
+          || reps >= MAX_STEADY_STATE_REPS) {
+        return;
+      }
+    }
+  }
+
+  /** Returns the feature version of this Java runtime, such as 8 or 17, or 0 if it isn't known. */
+  private static int javaFeatureVersion() {
+    String version = System.getProperty("java.specification.version", "");
+    if (version.startsWith("1.")) {
+      version = version.substring(2);
+    }
+    int dot = version.indexOf('.');
+    try {
+      return Integer.parseInt(dot < 0 ? version : version.substring(0, dot));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
   }
 }
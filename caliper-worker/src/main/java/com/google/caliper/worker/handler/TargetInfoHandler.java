@@ -16,12 +16,16 @@
 
 package com.google.caliper.worker.handler;
 
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.bridge.TargetInfoLogMessage;
 import com.google.caliper.bridge.TargetInfoRequest;
 import com.google.caliper.bridge.WorkerRequest;
 import com.google.caliper.core.BenchmarkClassModel;
 import com.google.caliper.core.Running.BenchmarkClass;
 import com.google.caliper.worker.connection.ClientConnectionService;
+import com.google.caliper.worker.instrument.ResourceMeter;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import java.io.IOException;
 import javax.inject.Inject;
 
@@ -30,12 +34,16 @@ final class TargetInfoHandler implements RequestHandler {
 
   private final ClientConnectionService clientConnection;
   private final Class<?> benchmarkClass;
+  private final ResourceMeter resourceMeter;
 
   @Inject
   TargetInfoHandler(
-      ClientConnectionService clientConnection, @BenchmarkClass Class<?> benchmarkClass) {
+      ClientConnectionService clientConnection,
+      @BenchmarkClass Class<?> benchmarkClass,
+      ResourceMeter resourceMeter) {
     this.clientConnection = clientConnection;
     this.benchmarkClass = benchmarkClass;
+    this.resourceMeter = resourceMeter;
   }
 
   @Override
@@ -43,6 +51,25 @@ final class TargetInfoHandler implements RequestHandler {
     TargetInfoRequest targetInfoRequest = (TargetInfoRequest) request;
     BenchmarkClassModel model = BenchmarkClassModel.create(benchmarkClass);
     BenchmarkClassModel.validateUserParameters(benchmarkClass, targetInfoRequest.userParameters());
-    clientConnection.send(TargetInfoLogMessage.create(model, HostDevice.getProperties()));
+    clientConnection.send(
+        TargetInfoLogMessage.create(
+            model,
+            HostDevice.getProperties(),
+            ClockCharacterizer.characterize(Ticker.systemTicker()),
+            threadCpuTime()));
+  }
+
+  private Optional<ClockCharacteristics> threadCpuTime() {
+    if (!resourceMeter.supportsThreadCpuTime()) {
+      return Optional.absent();
+    }
+    return Optional.of(
+        ClockCharacterizer.characterize(
+            new Ticker() {
+              @Override
+              public long read() {
+                return resourceMeter.currentThreadCpuTimeNanos();
+              }
+            }));
   }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker.instrument;
+
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Value;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Turns the difference between two {@link GcMeter.Sample samples} taken around a measurement into
+ * the GC pressure measurements reported for it.
+ */
+final class GcMeasurements {
+  private GcMeasurements() {}
+
+  /**
+   * Adds measurements for the garbage collection that happened between the two samples, which were
+   * taken around {@code reps} reps of the benchmark that took {@code nanos} in total.
+   *
+   * <p>The collection counts, pause time and promoted bytes are totals for the measurement and are
+   * weighted by its reps, like the runtime, so that they're reported per rep. The pause fraction and
+   * the peak heap are levels rather than totals, so each measurement counts once.
+   */
+  static void add(
+      ImmutableSet.Builder<Measurement> measurements,
+      GcMeter.Sample before,
+      GcMeter.Sample after,
+      long reps,
+      long nanos) {
+    long pauseNanos = after.pauseNanos - before.pauseNanos;
+    measurements.add(
+        measurement(
+            "gc-young-count", after.youngCollections - before.youngCollections, "", reps),
+        measurement("gc-old-count", after.oldCollections - before.oldCollections, "", reps),
+        measurement("gc-pause", pauseNanos, "ns", reps),
+        measurement("gc-pause-fraction", nanos > 0 ? (double) pauseNanos / nanos : 0, "", 1),
+        measurement("gc-promoted-bytes", after.promotedBytes - before.promotedBytes, "B", reps),
+        measurement("gc-peak-heap", after.peakHeapBytes, "B", 1));
+  }
+
+  private static Measurement measurement(
+      String description, double value, String unit, double weight) {
+    return new Measurement.Builder()
+        .description(description)
+        .value(Value.create(value, unit))
+        .weight(weight)
+        .build();
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker.instrument;
+
+/**
+ * Reads cumulative garbage collection counters for the worker's VM. Which VMs support this is up to
+ * the worker; callers must check for support before taking a sample.
+ */
+public interface GcMeter {
+
+  /** A meter for VMs that don't support it. */
+  GcMeter UNSUPPORTED =
+      new GcMeter() {
+        @Override
+        public boolean isSupported() {
+          return false;
+        }
+
+        @Override
+        public Sample sample() {
+          throw new UnsupportedOperationException();
+        }
+      };
+
+  /** Returns whether {@link #sample()} is supported. */
+  boolean isSupported();
+
+  /**
+   * Returns the garbage collection counters so far. Each sample also starts a new period for the
+   * peak heap usage, so the peak reported by a sample is the peak since the previous one.
+   *
+   * @throws UnsupportedOperationException if not {@linkplain #isSupported() supported}
+   */
+  Sample sample();
+
+  /** Cumulative garbage collection counters, plus the peak heap usage since the last sample. */
+  final class Sample {
+    public final long youngCollections;
+    public final long oldCollections;
+    public final long pauseNanos;
+    public final long promotedBytes;
+    public final long peakHeapBytes;
+
+    public Sample(
+        long youngCollections,
+        long oldCollections,
+        long pauseNanos,
+        long promotedBytes,
+        long peakHeapBytes) {
+      this.youngCollections = youngCollections;
+      this.oldCollections = oldCollections;
+      this.pauseNanos = pauseNanos;
+      this.promotedBytes = promotedBytes;
+      this.peakHeapBytes = peakHeapBytes;
+    }
+  }
+}
@@ -39,18 +39,33 @@ final class MacrobenchmarkWorkerInstrument extends WorkerInstrument {
   private final ImmutableSet<Method> beforeRepMethods;
   private final ImmutableSet<Method> afterRepMethods;
   private final boolean gcBeforeEach;
+  private final ResourceMeter resourceMeter;
+  private final boolean measureCpuTime;
+  private final boolean measureAllocatedBytes;
+  private final GcMeter gcMeter;
+  private final boolean measureGc;
 
   @Inject
   MacrobenchmarkWorkerInstrument(
       @Benchmark Object benchmark,
       @BenchmarkMethod Method method,
       Ticker ticker,
+      ResourceMeter resourceMeter,
+      GcMeter gcMeter,
       @WorkerInstrument.Options Map<String, String> options) {
     super(benchmark, method);
     this.stopwatch = Stopwatch.createUnstarted(ticker);
     this.beforeRepMethods = getAnnotatedMethods(benchmark.getClass(), BeforeRep.class);
     this.afterRepMethods = getAnnotatedMethods(benchmark.getClass(), AfterRep.class);
     this.gcBeforeEach = Boolean.parseBoolean(options.get("gcBeforeEach"));
+    this.resourceMeter = resourceMeter;
+    this.measureCpuTime =
+        RuntimeWorkerInstrument.measuresCpuTime(options) && resourceMeter.supportsThreadCpuTime();
+    this.measureAllocatedBytes =
+        Boolean.parseBoolean(options.get("allocatedBytes"))
+            && resourceMeter.supportsAllocatedBytes();
+    this.gcMeter = gcMeter;
+    this.measureGc = Boolean.parseBoolean(options.get("gcStats")) && gcMeter.isSupported();
   }
 
   @Override
@@ -72,16 +87,45 @@ final class MacrobenchmarkWorkerInstrument extends WorkerInstrument {
 
   @Override
   public Iterable<Measurement> measure() throws Exception {
+    GcMeter.Sample gcBefore = measureGc ? gcMeter.sample() : null;
+    long allocatedBytesBefore =
+        measureAllocatedBytes ? resourceMeter.currentThreadAllocatedBytes() : 0;
+    long cpuNanosBefore = measureCpuTime ? resourceMeter.currentThreadCpuTimeNanos() : 0;
     stopwatch.start();
     benchmarkMethod.invoke(benchmark);
     long nanos = stopwatch.stop().elapsed(NANOSECONDS);
     stopwatch.reset();
-    return ImmutableSet.of(
+    long cpuNanosAfter = measureCpuTime ? resourceMeter.currentThreadCpuTimeNanos() : 0;
+    long allocatedBytesAfter =
+        measureAllocatedBytes ? resourceMeter.currentThreadAllocatedBytes() : 0;
+    GcMeter.Sample gcAfter = measureGc ? gcMeter.sample() : null;
+    ImmutableSet.Builder<Measurement> measurements = ImmutableSet.builder();
+    measurements.add(
         new Measurement.Builder()
             .description("runtime")
             .weight(1)
             .value(Value.create(nanos, "ns"))
             .build());
+    if (measureCpuTime) {
+      measurements.add(
+          new Measurement.Builder()
+              .description("cpu")
+              .weight(1)
+              .value(Value.create(cpuNanosAfter - cpuNanosBefore, "ns"))
+              .build());
+    }
+    if (measureAllocatedBytes) {
+      measurements.add(
+          new Measurement.Builder()
+              .description("allocated-bytes")
+              .weight(1)
+              .value(Value.create(allocatedBytesAfter - allocatedBytesBefore, "B"))
+              .build());
+    }
+    if (measureGc) {
+      GcMeasurements.add(measurements, gcBefore, gcAfter, 1, nanos);
+    }
+    return measurements.build();
   }
 
   @Override
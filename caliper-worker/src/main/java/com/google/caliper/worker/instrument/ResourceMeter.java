@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker.instrument;
+
+/**
+ * Reads resource usage counters for the current thread. Which counters are available depends on
+ * the VM the worker is running on; callers must check for support before reading a counter.
+ */
+public interface ResourceMeter {
+
+  /** A meter for VMs that support none of the counters. */
+  ResourceMeter UNSUPPORTED =
+      new ResourceMeter() {
+        @Override
+        public boolean supportsAllocatedBytes() {
+          return false;
+        }
+
+        @Override
+        public long currentThreadAllocatedBytes() {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean supportsThreadCpuTime() {
+          return false;
+        }
+
+        @Override
+        public long currentThreadCpuTimeNanos() {
+          throw new UnsupportedOperationException();
+        }
+      };
+
+  /** Returns whether {@link #currentThreadAllocatedBytes()} is supported. */
+  boolean supportsAllocatedBytes();
+
+  /**
+   * Returns an approximation of the total number of bytes allocated on the heap by the current
+   * thread so far.
+   *
+   * @throws UnsupportedOperationException if not {@linkplain #supportsAllocatedBytes() supported}
+   */
+  long currentThreadAllocatedBytes();
+
+  /** Returns whether {@link #currentThreadCpuTimeNanos()} is supported. */
+  boolean supportsThreadCpuTime();
+
+  /**
+   * Returns the total CPU time used by the current thread so far, in nanoseconds.
+   *
+   * @throws UnsupportedOperationException if not {@linkplain #supportsThreadCpuTime() supported}
+   */
+  long currentThreadCpuTimeNanos();
+}
@@ -37,31 +37,60 @@ import javax.inject.Inject;
 abstract class RuntimeWorkerInstrument extends WorkerInstrument {
   @VisibleForTesting static final int INITIAL_REPS = 100;
 
+  /** Heap left free for the worker itself when running without a collector. */
+  private static final long EPSILON_HEAP_RESERVE_BYTES = 16L << 20;
+
   protected final Random random;
   protected final Ticker ticker;
+  protected final ResourceMeter resourceMeter;
+  protected final GcMeter gcMeter;
   protected final Options options;
+  private final boolean measureCpuTime;
+  private final boolean trackAllocation;
+  private final boolean measureGc;
 
   private long totalReps;
   private long totalNanos;
   private long nextReps;
+  // the most bytes allocated per rep by any invocation so far; only tracked with epsilonGc
+  private double maxBytesPerRep;
+  // the bytes allocated by the last invocation; only tracked if trackAllocation
+  private long lastAllocatedBytes;
 
   RuntimeWorkerInstrument(
       Object benchmark,
       Method method,
       Random random,
       Ticker ticker,
+      ResourceMeter resourceMeter,
+      GcMeter gcMeter,
       Map<String, String> workerOptions) {
     super(benchmark, method);
     this.random = random;
     // TODO(gak): investigate whether or not we can use Stopwatch
     this.ticker = ticker;
+    this.resourceMeter = resourceMeter;
+    this.gcMeter = gcMeter;
     this.options = new Options(workerOptions);
+    this.measureCpuTime = measuresCpuTime(workerOptions) && resourceMeter.supportsThreadCpuTime();
+    this.trackAllocation =
+        (options.epsilonGc || options.allocatedBytes) && resourceMeter.supportsAllocatedBytes();
+    this.measureGc = options.gcStats && gcMeter.isSupported();
+  }
+
+  /**
+   * Returns whether the given worker options ask for the CPU time of the benchmark thread to be
+   * measured along with the runtime.
+   */
+  static boolean measuresCpuTime(Map<String, String> workerOptions) {
+    String cpuTime = workerOptions.get("cpuTime");
+    return cpuTime != null && !cpuTime.equalsIgnoreCase("off");
   }
 
   @Override
   public void bootstrap() throws Exception {
     totalReps = INITIAL_REPS;
-    totalNanos = invokeTimeMethod(INITIAL_REPS);
+    totalNanos = invoke(INITIAL_REPS);
   }
 
   @Override
@@ -70,34 +99,120 @@ abstract class RuntimeWorkerInstrument extends WorkerInstrument {
         calculateTargetReps(
             totalReps, totalNanos, options.timingIntervalNanos, random.nextGaussian());
 
-    if (options.gcBeforeEach && !inWarmup) {
+    if (options.epsilonGc) {
+      // Nothing allocated is ever reclaimed, so never run more reps than the rest of the heap can
+      // hold. There's no point in forcing a GC, either.
+      nextReps = Math.min(nextReps, maxRepsThatFitInHeap());
+    } else if (options.gcBeforeEach && !inWarmup) {
       Util.forceGc();
     }
   }
 
+  private long maxRepsThatFitInHeap() {
+    if (maxBytesPerRep <= 0) {
+      return Long.MAX_VALUE;
+    }
+    Runtime runtime = Runtime.getRuntime();
+    long usedBytes = runtime.totalMemory() - runtime.freeMemory();
+    long availableBytes = runtime.maxMemory() - usedBytes - EPSILON_HEAP_RESERVE_BYTES;
+    long reps = (long) (availableBytes / maxBytesPerRep);
+    if (reps < 1) {
+      throw new IllegalStateException(
+          String.format(
+              "The heap sized for running %s.%s with the Epsilon collector is exhausted: "
+                  + "%,d bytes are in use of %,d and each rep allocates up to %,.0f bytes. "
+                  + "Run without the epsilonGc option or with a shorter warmup or timing interval.",
+              benchmark.getClass().getName(),
+              benchmarkMethod.getName(),
+              usedBytes,
+              runtime.maxMemory(),
+              maxBytesPerRep));
+    }
+    return reps;
+  }
+
   @Override
   public void dryRun() throws Exception {
     invokeTimeMethod(1);
   }
 
+  @Override
+  public void dryRun(long reps) throws Exception {
+    invokeTimeMethod(reps);
+  }
+
   @Override
   public Iterable<Measurement> measure() throws Exception {
-    long nanos = invokeTimeMethod(nextReps);
+    GcMeter.Sample gcBefore = measureGc ? gcMeter.sample() : null;
+    long cpuNanosBefore = measureCpuTime ? resourceMeter.currentThreadCpuTimeNanos() : 0;
+    long nanos = invoke(nextReps);
+    long cpuNanosAfter = measureCpuTime ? resourceMeter.currentThreadCpuTimeNanos() : 0;
+    GcMeter.Sample gcAfter = measureGc ? gcMeter.sample() : null;
 
-    Measurement measurement =
+    ImmutableSet.Builder<Measurement> measurements = ImmutableSet.builder();
+    measurements.add(
         new Measurement.Builder()
             .description("runtime")
             .value(Value.create(nanos, "ns"))
             .weight(nextReps)
-            .build();
+            .build());
+    if (measureCpuTime) {
+      measurements.add(
+          new Measurement.Builder()
+              .description("cpu")
+              .value(Value.create(cpuNanosAfter - cpuNanosBefore, "ns"))
+              .weight(nextReps)
+              .build());
+    }
+    if (options.allocatedBytes && trackAllocation) {
+      measurements.add(
+          new Measurement.Builder()
+              .description("allocated-bytes")
+              .value(Value.create(lastAllocatedBytes, "B"))
+              .weight(nextReps)
+              .build());
+    }
+    if (measureGc) {
+      GcMeasurements.add(measurements, gcBefore, gcAfter, nextReps, nanos);
+    }
+    if (options.baselineCorrection) {
+      // time the same number of reps of an empty benchmark, so the runner can subtract the
+      // overhead of the loop, the invocation and the clock reads from the runtime
+      measurements.add(
+          new Measurement.Builder()
+              .description("runtime-baseline")
+              .value(Value.create(invokeEmptyBenchmark(nextReps), "ns"))
+              .weight(nextReps)
+              .build());
+    }
 
     totalReps += nextReps;
     totalNanos += nanos;
-    return ImmutableSet.of(measurement);
+    return measurements.build();
+  }
+
+  /**
+   * Invokes the time method, keeping track of its allocation if that's needed. The allocation
+   * counter is read outside of the timed section, so reading it doesn't affect the runtime.
+   */
+  private long invoke(long reps) throws Exception {
+    if (!trackAllocation) {
+      return invokeTimeMethod(reps);
+    }
+    long allocatedBefore = resourceMeter.currentThreadAllocatedBytes();
+    long nanos = invokeTimeMethod(reps);
+    lastAllocatedBytes = resourceMeter.currentThreadAllocatedBytes() - allocatedBefore;
+    if (options.epsilonGc) {
+      maxBytesPerRep = Math.max(maxBytesPerRep, (double) lastAllocatedBytes / reps);
+    }
+    return nanos;
   }
 
   abstract long invokeTimeMethod(long reps) throws Exception;
 
+  /** Times {@code reps} reps of the {@link EmptyBenchmark} with the same shape as the benchmark. */
+  abstract long invokeEmptyBenchmark(long reps) throws Exception;
+
   /**
    * Returns a random number of reps based on a normal distribution around the estimated number of
    * reps for the timing interval. The distribution used has a standard deviation of one fifth of
@@ -117,8 +232,10 @@ abstract class RuntimeWorkerInstrument extends WorkerInstrument {
         @BenchmarkMethod Method method,
         Random random,
         Ticker ticker,
+        ResourceMeter resourceMeter,
+        GcMeter gcMeter,
         @WorkerInstrument.Options Map<String, String> options) {
-      super(benchmark, method, random, ticker, options);
+      super(benchmark, method, random, ticker, resourceMeter, gcMeter, options);
     }
 
     @Override
@@ -138,6 +255,14 @@ abstract class RuntimeWorkerInstrument extends WorkerInstrument {
       benchmarkMethod.invoke(benchmark, intReps);
       return ticker.read() - before;
     }
+
+    @Override
+    long invokeEmptyBenchmark(long reps) throws Exception {
+      // reps has already been checked to fit in an int by invokeTimeMethod
+      long before = ticker.read();
+      EmptyBenchmark.MICRO.invoke(EmptyBenchmark.INSTANCE, (int) reps);
+      return ticker.read() - before;
+    }
   }
 
   /** A {@link Worker} for pico benchmarks. */
@@ -148,8 +273,10 @@ abstract class RuntimeWorkerInstrument extends WorkerInstrument {
         @BenchmarkMethod Method method,
         Random random,
         Ticker ticker,
+        ResourceMeter resourceMeter,
+        GcMeter gcMeter,
         @WorkerInstrument.Options Map<String, String> options) {
-      super(benchmark, method, random, ticker, options);
+      super(benchmark, method, random, ticker, resourceMeter, gcMeter, options);
     }
 
     @Override
@@ -158,15 +285,68 @@ abstract class RuntimeWorkerInstrument extends WorkerInstrument {
       benchmarkMethod.invoke(benchmark, reps);
       return ticker.read() - before;
     }
+
+    @Override
+    long invokeEmptyBenchmark(long reps) throws Exception {
+      long before = ticker.read();
+      EmptyBenchmark.PICO.invoke(EmptyBenchmark.INSTANCE, reps);
+      return ticker.read() - before;
+    }
+  }
+
+  /**
+   * Micro and pico benchmarks that do nothing but loop over their reps. The loop's result is
+   * returned so that it can't be eliminated, the same way real benchmarks are expected to use
+   * their results. They're invoked reflectively, just like real benchmarks.
+   */
+  @VisibleForTesting
+  static final class EmptyBenchmark {
+    static final EmptyBenchmark INSTANCE = new EmptyBenchmark();
+    static final Method MICRO = method("micro", int.class);
+    static final Method PICO = method("pico", long.class);
+
+    private static Method method(String name, Class<?> repsType) {
+      try {
+        Method method = EmptyBenchmark.class.getDeclaredMethod(name, repsType);
+        method.setAccessible(true);
+        return method;
+      } catch (NoSuchMethodException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    int micro(int reps) {
+      int dummy = 0;
+      for (int i = 0; i < reps; i++) {
+        dummy += i;
+      }
+      return dummy;
+    }
+
+    long pico(long reps) {
+      long dummy = 0;
+      for (long i = 0; i < reps; i++) {
+        dummy += i;
+      }
+      return dummy;
+    }
   }
 
   private static final class Options {
     long timingIntervalNanos;
     boolean gcBeforeEach;
+    boolean epsilonGc;
+    boolean baselineCorrection;
+    boolean allocatedBytes;
+    boolean gcStats;
 
     Options(Map<String, String> optionMap) {
       this.timingIntervalNanos = Long.parseLong(optionMap.get("timingIntervalNanos"));
       this.gcBeforeEach = Boolean.parseBoolean(optionMap.get("gcBeforeEach"));
+      this.epsilonGc = Boolean.parseBoolean(optionMap.get("epsilonGc"));
+      this.baselineCorrection = Boolean.parseBoolean(optionMap.get("baselineCorrection"));
+      this.allocatedBytes = Boolean.parseBoolean(optionMap.get("allocatedBytes"));
+      this.gcStats = Boolean.parseBoolean(optionMap.get("gcStats"));
     }
   }
 }
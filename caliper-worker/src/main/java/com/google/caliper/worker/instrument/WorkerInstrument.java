@@ -78,6 +78,15 @@ public abstract class WorkerInstrument {
   /** Does a minimal dry-run of the benchmark to ensure that it runs successfully. */
   public abstract void dryRun() throws Exception;
 
+  /**
+   * Runs the given number of reps of the benchmark after its {@linkplain #dryRun() dry-run}, so
+   * that its warmed-up cost can be measured. Only instruments for benchmarks that take a number of
+   * reps support this.
+   */
+  public void dryRun(long reps) throws Exception {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't run reps");
+  }
+
   /** Template method for workers that produce multiple measurements. */
   public abstract Iterable<Measurement> measure() throws Exception;
 
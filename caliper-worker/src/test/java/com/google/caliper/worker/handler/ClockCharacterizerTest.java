@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.caliper.worker.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.caliper.bridge.ClockCharacteristics;
+import com.google.common.base.Ticker;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link ClockCharacterizer}. */
+@RunWith(JUnit4.class)
+public class ClockCharacterizerTest {
+
+  @Test
+  public void coarseClock() {
+    // advances by 10ns every 4th read
+    ClockCharacteristics clock =
+        ClockCharacterizer.characterize(
+            new Ticker() {
+              long reads = 0;
+
+              @Override
+              public long read() {
+                return (reads++ / 4) * 10;
+              }
+            });
+    assertEquals(10.0, clock.granularityNanos(), 0.0);
+    assertEquals(2.5, clock.latencyNanos(), 0.01);
+    assertTrue(clock.monotonic());
+  }
+
+  @Test
+  public void clockGoingBackwards() {
+    ClockCharacteristics clock =
+        ClockCharacterizer.characterize(
+            new Ticker() {
+              long reads = 0;
+
+              @Override
+              public long read() {
+                reads++;
+                return reads % 1000 == 0 ? 0 : reads;
+              }
+            });
+    assertFalse(clock.monotonic());
+  }
+
+  @Test
+  public void clockThatNeverChanges() {
+    // the wall clock advances by 1ms every read, so the 1s deadline passes after 1000 reads
+    ClockCharacteristics clock =
+        ClockCharacterizer.characterize(
+            new Ticker() {
+              @Override
+              public long read() {
+                return 42;
+              }
+            },
+            new FakeWallClock(1_000_000),
+            1_000_000_000);
+    assertEquals(1e9, clock.granularityNanos(), 0.0);
+    assertEquals(0.0, clock.latencyNanos(), 0.0);
+    assertTrue(clock.monotonic());
+  }
+
+  @Test
+  public void slowClockUsesChangesSeenBeforeDeadline() {
+    // changes by 15ms every 1000 reads, with 2 wall clock reads per read of the clock while
+    // sampling, so only a few changes are seen before the deadline
+    ClockCharacteristics clock =
+        ClockCharacterizer.characterize(
+            new Ticker() {
+              long reads = 0;
+
+              @Override
+              public long read() {
+                return (reads++ / 1000) * 15_000_000;
+              }
+            },
+            new FakeWallClock(1_000),
+            10_000_000);
+    assertEquals(15_000_000.0, clock.granularityNanos(), 0.0);
+  }
+
+  private static final class FakeWallClock extends Ticker {
+    final long nanosPerRead;
+    long time = 0;
+
+    FakeWallClock(long nanosPerRead) {
+      this.nanosPerRead = nanosPerRead;
+    }
+
+    @Override
+    public long read() {
+      time += nanosPerRead;
+      return time;
+    }
+  }
+}
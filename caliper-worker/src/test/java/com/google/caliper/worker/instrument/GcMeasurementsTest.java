@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.worker.instrument;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.caliper.model.Measurement;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests {@link GcMeasurements}. */
+@RunWith(JUnit4.class)
+public class GcMeasurementsTest {
+
+  @Test
+  public void totalsAreWeightedByReps() {
+    Map<String, Measurement> measurements =
+        measurements(
+            new GcMeter.Sample(10, 1, 5000, 100, 0),
+            new GcMeter.Sample(14, 2, 9000, 1100, 2048),
+            1000,
+            40000);
+    assertMeasurement(4, 1000, measurements.get("gc-young-count"));
+    assertMeasurement(1, 1000, measurements.get("gc-old-count"));
+    assertMeasurement(4000, 1000, measurements.get("gc-pause"));
+    assertMeasurement(1000, 1000, measurements.get("gc-promoted-bytes"));
+  }
+
+  @Test
+  public void levelsAreWeightedOnce() {
+    Map<String, Measurement> measurements =
+        measurements(
+            new GcMeter.Sample(10, 1, 5000, 100, 0),
+            new GcMeter.Sample(14, 2, 9000, 1100, 2048),
+            1000,
+            40000);
+    assertMeasurement(0.1, 1, measurements.get("gc-pause-fraction"));
+    assertMeasurement(2048, 1, measurements.get("gc-peak-heap"));
+  }
+
+  @Test
+  public void noTimeMeansNoPauseFraction() {
+    Map<String, Measurement> measurements =
+        measurements(new GcMeter.Sample(0, 0, 0, 0, 0), new GcMeter.Sample(0, 0, 0, 0, 0), 1, 0);
+    assertMeasurement(0, 1, measurements.get("gc-pause-fraction"));
+  }
+
+  private static Map<String, Measurement> measurements(
+      GcMeter.Sample before, GcMeter.Sample after, long reps, long nanos) {
+    ImmutableSet.Builder<Measurement> builder = ImmutableSet.builder();
+    GcMeasurements.add(builder, before, after, reps, nanos);
+    Map<String, Measurement> measurements = new HashMap<>();
+    for (Measurement measurement : builder.build()) {
+      measurements.put(measurement.description(), measurement);
+    }
+    assertEquals(6, measurements.size());
+    return measurements;
+  }
+
+  private static void assertMeasurement(double value, double weight, Measurement measurement) {
+    assertEquals(value, measurement.value().magnitude(), 1e-9);
+    assertEquals(weight, measurement.weight(), 0.0);
+  }
+}
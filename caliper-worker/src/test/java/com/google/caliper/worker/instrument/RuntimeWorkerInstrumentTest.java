@@ -21,9 +21,14 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
+import com.google.caliper.model.Measurement;
 import com.google.caliper.util.ShortDuration;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
 import java.math.BigDecimal;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -61,4 +66,97 @@ public class RuntimeWorkerInstrumentTest {
             INITIAL_REPS, MILLISECONDS.toNanos(100), TIMING_INTERVAL.to(NANOSECONDS), 0.5);
     assertEquals(110, targetReps);
   }
+
+  @Test
+  public void testMeasure_allocatedBytes() throws Exception {
+    AllocatingBenchmark benchmark = new AllocatingBenchmark();
+    RuntimeWorkerInstrument instrument = picoInstrument(benchmark, "true");
+    instrument.bootstrap();
+    instrument.preMeasure(false);
+    Measurement allocatedBytes = null;
+    Measurement runtime = null;
+    for (Measurement measurement : instrument.measure()) {
+      if (measurement.description().equals("allocated-bytes")) {
+        allocatedBytes = measurement;
+      } else if (measurement.description().equals("runtime")) {
+        runtime = measurement;
+      }
+    }
+    // 24 bytes per rep, over the same reps as the runtime
+    assertEquals("B", allocatedBytes.value().unit());
+    assertEquals(24 * runtime.weight(), allocatedBytes.value().magnitude(), 0.0);
+    assertEquals(runtime.weight(), allocatedBytes.weight(), 0.0);
+  }
+
+  @Test
+  public void testMeasure_allocatedBytesOff() throws Exception {
+    RuntimeWorkerInstrument instrument = picoInstrument(new AllocatingBenchmark(), "false");
+    instrument.bootstrap();
+    instrument.preMeasure(false);
+    for (Measurement measurement : instrument.measure()) {
+      assertFalse(measurement.description().equals("allocated-bytes"));
+    }
+  }
+
+  private static RuntimeWorkerInstrument picoInstrument(
+      final AllocatingBenchmark benchmark, String allocatedBytes) throws Exception {
+    ResourceMeter resourceMeter =
+        new ResourceMeter() {
+          @Override
+          public boolean supportsAllocatedBytes() {
+            return true;
+          }
+
+          @Override
+          public long currentThreadAllocatedBytes() {
+            return benchmark.allocatedBytes;
+          }
+
+          @Override
+          public boolean supportsThreadCpuTime() {
+            return false;
+          }
+
+          @Override
+          public long currentThreadCpuTimeNanos() {
+            throw new UnsupportedOperationException();
+          }
+        };
+    return new RuntimeWorkerInstrument.Pico(
+        benchmark,
+        AllocatingBenchmark.class.getDeclaredMethod("allocate", long.class),
+        new Random(0),
+        new Ticker() {
+          long nanos = 0;
+
+          @Override
+          public long read() {
+            nanos += 1000;
+            return nanos;
+          }
+        },
+        resourceMeter,
+        GcMeter.UNSUPPORTED,
+        ImmutableMap.of(
+            "timingIntervalNanos", "1000000",
+            "gcBeforeEach", "false",
+            "allocatedBytes", allocatedBytes));
+  }
+
+  /** Pretends to allocate 24 bytes per rep. */
+  static final class AllocatingBenchmark {
+    long allocatedBytes;
+
+    long allocate(long reps) {
+      allocatedBytes += 24 * reps;
+      return reps;
+    }
+  }
+
+  @Test
+  public void testEmptyBenchmark_usesLoopResult() throws Exception {
+    RuntimeWorkerInstrument.EmptyBenchmark empty = RuntimeWorkerInstrument.EmptyBenchmark.INSTANCE;
+    assertEquals(45, RuntimeWorkerInstrument.EmptyBenchmark.MICRO.invoke(empty, 10));
+    assertEquals(45L, RuntimeWorkerInstrument.EmptyBenchmark.PICO.invoke(empty, 10L));
+  }
 }
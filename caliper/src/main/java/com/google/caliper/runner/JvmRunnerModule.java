@@ -17,11 +17,14 @@
 package com.google.caliper.runner;
 
 import com.google.caliper.runner.instrument.AllocationInstrument;
+import com.google.caliper.runner.instrument.FootprintInstrument;
 import com.google.caliper.runner.instrument.Instrument;
 import com.google.caliper.runner.instrument.InstrumentModule.InstrumentClassKey;
+import com.google.caliper.runner.options.CaliperDirectory;
 import dagger.Module;
 import dagger.Provides;
 import dagger.multibindings.IntoMap;
+import java.io.File;
 
 /**
  * Module providing runner package dependencies that should only be present when running on the JVM.
@@ -33,7 +36,14 @@ abstract class JvmRunnerModule {
   @Provides
   @IntoMap
   @InstrumentClassKey(AllocationInstrument.class)
-  static Instrument provideAllocationInstrument() {
-    return new AllocationInstrument();
+  static Instrument provideAllocationInstrument(@CaliperDirectory File caliperDirectory) {
+    return new AllocationInstrument(caliperDirectory);
+  }
+
+  @Provides
+  @IntoMap
+  @InstrumentClassKey(FootprintInstrument.class)
+  static Instrument provideFootprintInstrument(@CaliperDirectory File caliperDirectory) {
+    return new FootprintInstrument(caliperDirectory);
   }
 }
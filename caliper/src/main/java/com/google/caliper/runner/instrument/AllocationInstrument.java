@@ -56,6 +56,33 @@ public final class AllocationInstrument extends Instrument {
    */
   private static final String TRACK_ALLOCATIONS_OPTION = "trackAllocations";
 
+  /**
+   * If this option is set to {@code true} then every individual allocation will be tracked and a
+   * profile of each trial's allocations will be written to the {@link #PROFILE_DIR_OPTION profile
+   * directory}.
+   */
+  private static final String PROFILE_OPTION = "profile";
+
+  /**
+   * The directory to write allocation profiles to. If empty, profiles are written to the {@code
+   * allocation-profiles} directory next to the results.
+   */
+  private static final String PROFILE_DIR_OPTION = "profileDir";
+
+  /**
+   * If this option is set to {@code true} then microbenchmark allocations are fit by a robust
+   * regression over invocations with varying reps, rather than requiring every invocation to
+   * allocate identically. This allows benchmarks with non-deterministic allocation to be measured.
+   */
+  private static final String STATISTICAL_OPTION = "statistical";
+
+  /**
+   * If this option is set to {@code true} then the allocations made by threads other than the one
+   * running the benchmark method are also reported on their own, as {@code objects-other-threads}
+   * and {@code bytes-other-threads}.
+   */
+  private static final String OTHER_THREADS_OPTION = "otherThreads";
+
   /**
    * Valid names for the Premain-Class for the allocation instrumenter. This changed between 3.0 and
    * 3.1.0.
@@ -67,6 +94,17 @@ public final class AllocationInstrument extends Instrument {
 
   private static final Logger logger = Logger.getLogger(AllocationInstrument.class.getName());
 
+  private final File defaultProfileDirectory;
+
+  /**
+   * Creates the instrument, with profiles written to the {@code results/allocation-profiles}
+   * directory under {@code caliperDirectory} unless another directory is given.
+   */
+  public AllocationInstrument(File caliperDirectory) {
+    this.defaultProfileDirectory =
+        new File(new File(caliperDirectory, "results"), "allocation-profiles");
+  }
+
   @Override
   public boolean isBenchmarkMethod(MethodModel method) {
     return method.isAnnotationPresent(Benchmark.class)
@@ -104,7 +142,7 @@ public final class AllocationInstrument extends Instrument {
 
     @Override
     public ImmutableMap<String, String> workerOptions() {
-      return ImmutableMap.of(TRACK_ALLOCATIONS_OPTION, options.get(TRACK_ALLOCATIONS_OPTION));
+      return allocationWorkerOptions();
     }
 
     @Override
@@ -132,7 +170,7 @@ public final class AllocationInstrument extends Instrument {
 
     @Override
     public ImmutableMap<String, String> workerOptions() {
-      return ImmutableMap.of(TRACK_ALLOCATIONS_OPTION, options.get(TRACK_ALLOCATIONS_OPTION));
+      return allocationWorkerOptions();
     }
 
     @Override
@@ -147,9 +185,38 @@ public final class AllocationInstrument extends Instrument {
     }
   }
 
+  private ImmutableMap<String, String> allocationWorkerOptions() {
+    boolean profile = Boolean.parseBoolean(options.get(PROFILE_OPTION));
+    // the profile needs the location of every allocation
+    boolean trackAllocations =
+        profile || Boolean.parseBoolean(options.get(TRACK_ALLOCATIONS_OPTION));
+    ImmutableMap.Builder<String, String> workerOptions = ImmutableMap.builder();
+    workerOptions.put(TRACK_ALLOCATIONS_OPTION, String.valueOf(trackAllocations));
+    workerOptions.put(
+        STATISTICAL_OPTION, String.valueOf(Boolean.parseBoolean(options.get(STATISTICAL_OPTION))));
+    workerOptions.put(
+        OTHER_THREADS_OPTION,
+        String.valueOf(Boolean.parseBoolean(options.get(OTHER_THREADS_OPTION))));
+    if (profile) {
+      workerOptions.put(PROFILE_DIR_OPTION, profileDirectory().getAbsolutePath());
+    }
+    return workerOptions.build();
+  }
+
+  private File profileDirectory() {
+    String profileDir = options.get(PROFILE_DIR_OPTION);
+    return Strings.isNullOrEmpty(profileDir) ? defaultProfileDirectory : new File(profileDir);
+  }
+
   @Override
   public ImmutableSet<String> instrumentOptions() {
-    return ImmutableSet.of(ALLOCATION_AGENT_JAR_OPTION, TRACK_ALLOCATIONS_OPTION);
+    return ImmutableSet.of(
+        ALLOCATION_AGENT_JAR_OPTION,
+        TRACK_ALLOCATIONS_OPTION,
+        PROFILE_OPTION,
+        PROFILE_DIR_OPTION,
+        STATISTICAL_OPTION,
+        OTHER_THREADS_OPTION);
   }
 
   private static Optional<File> findAllocationInstrumentJarOnClasspath() throws IOException {
@@ -0,0 +1,523 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.instrument;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Predicates.equalTo;
+import static com.google.common.base.Predicates.not;
+
+import com.google.caliper.api.Footprint;
+import com.google.caliper.bridge.AbstractLogMessageVisitor;
+import com.google.caliper.bridge.ClockCharacteristics;
+import com.google.caliper.bridge.StopMeasurementLogMessage;
+import com.google.caliper.core.BenchmarkClassModel.MethodModel;
+import com.google.caliper.core.InvalidBenchmarkException;
+import com.google.caliper.memory.FootprintHistogram;
+import com.google.caliper.memory.HeapDump;
+import com.google.caliper.memory.ObjectLayout;
+import com.google.caliper.model.InstrumentType;
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Trial;
+import com.google.caliper.model.Value;
+import com.google.caliper.runner.config.SupportsVmType;
+import com.google.caliper.runner.config.VmConfig;
+import com.google.caliper.runner.config.VmType;
+import com.google.caliper.runner.worker.trial.TrialFailureException;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multimaps;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Longs;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link Instrument} that measures the memory footprint of the object graph returned by a {@link
+ * Footprint} method: the number of objects and references reachable from it and an estimate of the
+ * bytes they retain, based on the object layout of the worker VM. The method must take no
+ * arguments, return an object and be public and non-static.
+ *
+ * <p>When the benchmark has a numeric {@link #SIZE_PARAMETER_OPTION size parameter} and more than
+ * one of its values is measured, the bytes per element are also estimated by fitting a line to
+ * the footprint at each size, and recorded in each trial as the {@code bytes-per-<size parameter>}
+ * measurement. Such trials are given to result processors once all of them have completed. Setting
+ * the {@link #HISTOGRAM_OPTION histogram} option logs which classes and fields the bytes are
+ * retained by.
+ *
+ * <p>With the {@link #HEAP_DUMP_OPTION heap dump} option, the worker dumps its heap instead of
+ * exploring the graph, and the runner measures the bytes and objects the root retains from the
+ * dump. This is slower for small graphs, but doesn't perturb the worker's heap and scales to
+ * graphs too big to explore by reflection. Since what the root retains can be less than what it
+ * reaches, these are recorded as the {@code retained-bytes} and {@code retained-objects}
+ * measurements (and {@code retained-bytes-per-<size parameter>}), so that they aren't compared
+ * with the reachable {@code bytes} and {@code objects}.
+ */
+@SupportsVmType(VmType.JVM)
+public final class FootprintInstrument extends Instrument {
+  /**
+   * The name of the benchmark parameter that gives the number of elements in the measured object
+   * graph.
+   */
+  private static final String SIZE_PARAMETER_OPTION = "sizeParameter";
+
+  private static final String DEFAULT_SIZE_PARAMETER = "size";
+
+  /**
+   * If this option is set to {@code true} then the worker logs a histogram of each measured object
+   * graph's bytes by class and by the field path through which each object was first reached.
+   */
+  private static final String HISTOGRAM_OPTION = "histogram";
+
+  /**
+   * The number of fields and array indexes after which the paths in the {@link #HISTOGRAM_OPTION
+   * histogram} are truncated.
+   */
+  private static final String HISTOGRAM_DEPTH_OPTION = "histogramDepth";
+
+  private static final String DEFAULT_HISTOGRAM_DEPTH = "3";
+
+  private static final int HISTOGRAM_ROWS = 20;
+
+  /**
+   * If this option is set to {@code true} then each footprint is measured from a dump of the
+   * worker's heap: the bytes and objects that the root retains (those that would become
+   * unreachable without it), rather than all of those reachable from it. These are recorded as the
+   * {@code retained-bytes} and {@code retained-objects} measurements. References aren't counted,
+   * and excluded interfaces are ignored.
+   */
+  private static final String HEAP_DUMP_OPTION = "heapDump";
+
+  /**
+   * The directory to write heap dumps to. If empty, dumps are written to the {@code heap-dumps}
+   * directory in the Caliper directory and deleted once they're measured; otherwise they're kept.
+   */
+  private static final String HEAP_DUMP_DIR_OPTION = "heapDumpDir";
+
+  /** The class whose static fields the worker stores the root and the object layout in. */
+  private static final String HEAP_DUMP_ROOT_CLASS =
+      "com.google.caliper.worker.FootprintWorkerInstrument$HeapDumpRoot";
+
+  private static final String RETAINED_PREFIX = "retained-";
+
+  private static final Logger logger = Logger.getLogger(FootprintInstrument.class.getName());
+
+  private static final ImmutableSet<String> PRIMITIVE_TYPES =
+      ImmutableSet.of(
+          "void", "boolean", "byte", "char", "short", "int", "float", "long", "double");
+
+  private final File defaultHeapDumpDirectory;
+
+  public FootprintInstrument(File caliperDirectory) {
+    this.defaultHeapDumpDirectory = new File(caliperDirectory, "heap-dumps");
+  }
+
+  @Override
+  public boolean isBenchmarkMethod(MethodModel method) {
+    return method.isAnnotationPresent(Footprint.class);
+  }
+
+  @Override
+  public InstrumentedMethod createInstrumentedMethod(MethodModel benchmarkMethod)
+      throws InvalidBenchmarkException {
+    if (!benchmarkMethod.parameterTypes().isEmpty()) {
+      throw new InvalidBenchmarkException(
+          "Footprint methods should take no parameters: " + benchmarkMethod.name());
+    }
+
+    if (!benchmarkMethod.returnType().isPresent()
+        || PRIMITIVE_TYPES.contains(benchmarkMethod.returnType().get())) {
+      throw new InvalidBenchmarkException(
+          "Footprint methods must return an object: " + benchmarkMethod.name());
+    }
+
+    if (Modifier.isStatic(benchmarkMethod.modifiers())) {
+      throw new InvalidBenchmarkException(
+          "Footprint methods must not be static: " + benchmarkMethod.name());
+    }
+
+    if (!Modifier.isPublic(benchmarkMethod.modifiers())) {
+      throw new InvalidBenchmarkException(
+          "Footprint methods must be public: " + benchmarkMethod.name());
+    }
+
+    return new FootprintInstrumentedMethod(benchmarkMethod);
+  }
+
+  @Override
+  public boolean parallelizable() {
+    // the footprint is measured by walking the object graph, which isn't affected by other trials
+    return true;
+  }
+
+  private final class FootprintInstrumentedMethod extends InstrumentedMethod {
+    FootprintInstrumentedMethod(MethodModel benchmarkMethod) {
+      super(benchmarkMethod);
+    }
+
+    @Override
+    public InstrumentType type() {
+      return InstrumentType.FOOTPRINT;
+    }
+
+    @Override
+    public ImmutableMap<String, String> workerOptions() {
+      ImmutableMap.Builder<String, String> workerOptions = ImmutableMap.builder();
+      // the runner logs the histogram of a heap dump itself
+      workerOptions.put(HISTOGRAM_OPTION, String.valueOf(histogram() && !heapDump()));
+      workerOptions.put(HISTOGRAM_DEPTH_OPTION, String.valueOf(histogramDepth()));
+      workerOptions.put(HEAP_DUMP_OPTION, String.valueOf(heapDump()));
+      if (heapDump()) {
+        workerOptions.put(HEAP_DUMP_DIR_OPTION, heapDumpDirectory().getAbsolutePath());
+      }
+      return workerOptions.build();
+    }
+
+    @Override
+    public MeasurementCollectingVisitor getMeasurementCollectingVisitor() {
+      // the footprint of a graph is deterministic, so one measurement is enough
+      return new Instrument.DefaultMeasurementCollectingVisitor(
+          ImmutableSet.of("bytes", "objects"), 1);
+    }
+
+    @Override
+    public MeasurementCollectingVisitor getMeasurementCollectingVisitor(
+        VmConfig vmConfig, ClockCharacteristics nanoTime, UUID trialId) {
+      if (!heapDump()) {
+        return getMeasurementCollectingVisitor();
+      }
+      return new HeapDumpMeasurementCollectingVisitor(
+          new File(heapDumpDirectory(), trialId + ".hprof"),
+          Strings.isNullOrEmpty(options.get(HEAP_DUMP_DIR_OPTION)));
+    }
+
+    @Override
+    public boolean measuresAcrossTrials() {
+      return true;
+    }
+
+    @Override
+    public ImmutableList<Trial> addMeasurementsAcrossTrials(ImmutableList<Trial> trials) {
+      String sizeParameter = sizeParameter();
+      String bytesDescription = bytesDescription();
+      Map<Map<String, String>, Line> lines = fitLines(trials, bytesDescription, sizeParameter);
+      ImmutableList.Builder<Trial> measuredTrials = ImmutableList.builder();
+      for (Trial trial : trials) {
+        Line line = lines.get(otherDimensions(trial, sizeParameter));
+        if (line == null) {
+          measuredTrials.add(trial);
+          continue;
+        }
+        measuredTrials.add(
+            new Trial.Builder(trial.id())
+                .run(trial.run())
+                .instrumentSpec(trial.instrumentSpec())
+                .scenario(trial.scenario())
+                .addAllMeasurements(trial.measurements())
+                .addMeasurement(
+                    new Measurement.Builder()
+                        .value(Value.create(line.slope, "B"))
+                        .weight(1)
+                        .description(bytesDescription + "-per-" + sizeParameter)
+                        .build())
+                .build());
+      }
+      return measuredTrials.build();
+    }
+
+    @Override
+    public Optional<String> validateTrials(
+        Iterable<Trial> trials, ClockCharacteristics nanoTime) {
+      String sizeParameter = sizeParameter();
+      ImmutableList.Builder<String> slopes = ImmutableList.builder();
+      for (Map.Entry<Map<String, String>, Line> entry :
+          fitLines(trials, bytesDescription(), sizeParameter).entrySet()) {
+        String slope =
+            String.format(
+                "Footprint grows by %.1f bytes per %s, from %.0f fixed bytes",
+                entry.getValue().slope, sizeParameter, entry.getValue().intercept);
+        slopes.add(entry.getKey().isEmpty() ? slope : slope + " for " + entry.getKey());
+      }
+      ImmutableList<String> messages = slopes.build();
+      return messages.isEmpty()
+          ? Optional.<String>absent()
+          : Optional.of(Joiner.on("\n  ").join(messages));
+    }
+  }
+
+  /**
+   * Collects the footprint of a trial from the worker's heap dump. The dump is measured as soon as
+   * the worker reports that it's written it, and the measurements are available once it has been.
+   */
+  private final class HeapDumpMeasurementCollectingVisitor extends AbstractLogMessageVisitor
+      implements MeasurementCollectingVisitor {
+    private final File file;
+    private final boolean deleteFile;
+    private ImmutableList<Measurement> measurements;
+    private ImmutableList<String> messages;
+
+    HeapDumpMeasurementCollectingVisitor(File file, boolean deleteFile) {
+      this.file = file;
+      this.deleteFile = deleteFile;
+    }
+
+    @Override
+    public void visit(StopMeasurementLogMessage logMessage) {
+      checkState(measurements == null, "The heap dump was already measured");
+      try {
+        measure();
+      } finally {
+        if (deleteFile && !file.delete() && file.exists()) {
+          logger.log(Level.WARNING, "Unable to delete the heap dump {0}", file);
+        }
+      }
+    }
+
+    @Override
+    public boolean isDoneCollecting() {
+      return measurements != null;
+    }
+
+    @Override
+    public boolean isWarmupComplete() {
+      return true;
+    }
+
+    @Override
+    public ImmutableList<Measurement> getMeasurements() {
+      checkState(measurements != null, "The heap dump hasn't been measured");
+      return measurements;
+    }
+
+    @Override
+    public ImmutableList<Measurement> getUnreportedMeasurements() {
+      return ImmutableList.of();
+    }
+
+    @Override
+    public ImmutableList<String> getMessages() {
+      checkState(messages != null, "The heap dump hasn't been measured");
+      return messages;
+    }
+
+    private void measure() {
+      FootprintHistogram histogram;
+      try {
+        histogram = measureHeapDump(file);
+      } catch (IOException | RuntimeException e) {
+        throw new TrialFailureException("Unable to measure the heap dump " + file, e);
+      }
+      measurements =
+          ImmutableList.of(
+              new Measurement.Builder()
+                  .value(Value.create(histogram.getBytes(), "B"))
+                  .weight(1)
+                  .description(RETAINED_PREFIX + "bytes")
+                  .build(),
+              new Measurement.Builder()
+                  .value(Value.create(histogram.getObjects(), ""))
+                  .weight(1)
+                  .description(RETAINED_PREFIX + "objects")
+                  .build());
+      messages =
+          histogram()
+              ? ImmutableList.copyOf(
+                  Splitter.on(System.lineSeparator())
+                      .omitEmptyStrings()
+                      .split(histogram.format(HISTOGRAM_ROWS)))
+              : ImmutableList.<String>of();
+    }
+  }
+
+  /**
+   * Returns the histogram of the objects retained by the root of the given heap dump, releasing
+   * the dump's mapping before returning.
+   */
+  private FootprintHistogram measureHeapDump(File file) throws IOException {
+    try (HeapDump dump = HeapDump.open(file)) {
+      return measureHeapDump(dump);
+    }
+  }
+
+  private FootprintHistogram measureHeapDump(HeapDump dump) throws IOException {
+    long holder = dump.findClass(HEAP_DUMP_ROOT_CLASS);
+    if (holder == 0) {
+      throw new IOException("The heap dump has no footprint root");
+    }
+    ObjectLayout layout =
+        new ObjectLayout(
+            (int) dump.getStaticField(holder, "headerSize"),
+            (int) dump.getStaticField(holder, "referenceSize"),
+            (int) dump.getStaticField(holder, "alignment"),
+            dump.getStaticField(holder, "fillsSuperclassGaps") != 0);
+    long root = dump.getStaticField(holder, "root");
+    if (root == 0) {
+      // the method returned null
+      return FootprintHistogram.measure(null, Predicates.alwaysTrue(), 0);
+    }
+    ImmutableSet<Long> excludedClassIds =
+        ImmutableSet.copyOf(
+            Longs.asList(dump.getArrayElements(dump.getStaticField(holder, "excludedTypes"))));
+    return dump.retained(root, excludedClassIds, layout, histogramDepth());
+  }
+
+  private boolean histogram() {
+    return Boolean.parseBoolean(options.get(HISTOGRAM_OPTION));
+  }
+
+  private int histogramDepth() {
+    String histogramDepth = options.get(HISTOGRAM_DEPTH_OPTION);
+    return Integer.parseInt(
+        Strings.isNullOrEmpty(histogramDepth) ? DEFAULT_HISTOGRAM_DEPTH : histogramDepth);
+  }
+
+  /** Returns the description of the bytes measurement, which differs for heap dumps. */
+  private String bytesDescription() {
+    return heapDump() ? RETAINED_PREFIX + "bytes" : "bytes";
+  }
+
+  private boolean heapDump() {
+    return Boolean.parseBoolean(options.get(HEAP_DUMP_OPTION));
+  }
+
+  private File heapDumpDirectory() {
+    String heapDumpDir = options.get(HEAP_DUMP_DIR_OPTION);
+    return Strings.isNullOrEmpty(heapDumpDir) ? defaultHeapDumpDirectory : new File(heapDumpDir);
+  }
+
+  private String sizeParameter() {
+    String sizeParameter = options.get(SIZE_PARAMETER_OPTION);
+    return Strings.isNullOrEmpty(sizeParameter) ? DEFAULT_SIZE_PARAMETER : sizeParameter;
+  }
+
+  /**
+   * Fits a line to the bytes measured at each size, for each combination of the other parameters
+   * and VM arguments with more than one size measured.
+   */
+  private static Map<Map<String, String>, Line> fitLines(
+      Iterable<Trial> trials, String bytesDescription, String sizeParameter) {
+    // group the trials by their other dimensions, so that only the size varies within a group
+    ListMultimap<Map<String, String>, double[]> pointsByOtherDimensions =
+        MultimapBuilder.linkedHashKeys().arrayListValues().build();
+    for (Trial trial : trials) {
+      String sizeValue = trial.scenario().benchmarkSpec().parameters().get(sizeParameter);
+      Double size = sizeValue == null ? null : Doubles.tryParse(sizeValue);
+      Optional<Double> bytes = bytes(trial.measurements(), bytesDescription);
+      if (size != null && bytes.isPresent()) {
+        pointsByOtherDimensions.put(
+            otherDimensions(trial, sizeParameter), new double[] {size, bytes.get()});
+      }
+    }
+
+    Map<Map<String, String>, Line> lines = Maps.newLinkedHashMap();
+    for (Map.Entry<Map<String, String>, List<double[]>> entry :
+        Multimaps.asMap(pointsByOtherDimensions).entrySet()) {
+      Optional<Line> line = Line.fit(entry.getValue());
+      if (line.isPresent()) {
+        lines.put(entry.getKey(), line.get());
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Returns the parameters of the trial other than the size, followed by its VM arguments (which
+   * can change the object layout, e.g. by turning compressed references off), keyed as they're
+   * given on the command line with {@code -J} so that they can't collide with parameters.
+   */
+  private static Map<String, String> otherDimensions(Trial trial, String sizeParameter) {
+    ImmutableSortedMap<String, String> parameters = trial.scenario().benchmarkSpec().parameters();
+    ImmutableMap.Builder<String, String> dimensions = ImmutableMap.builder();
+    dimensions.putAll(Maps.filterKeys(parameters, not(equalTo(sizeParameter))));
+    for (Map.Entry<String, String> vmArgument : trial.scenario().vmArguments().entrySet()) {
+      dimensions.put("-J" + vmArgument.getKey(), vmArgument.getValue());
+    }
+    return dimensions.build();
+  }
+
+  private static Optional<Double> bytes(
+      Iterable<Measurement> measurements, String bytesDescription) {
+    for (Measurement measurement : measurements) {
+      if (measurement.description().equals(bytesDescription)) {
+        return Optional.of(measurement.value().magnitude());
+      }
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * A least-squares line through the bytes measured at each size: its slope is the bytes per
+   * element and its intercept the fixed bytes.
+   */
+  private static final class Line {
+    final double slope;
+    final double intercept;
+
+    Line(double slope, double intercept) {
+      this.slope = slope;
+      this.intercept = intercept;
+    }
+
+    /** Fits a line to (size, bytes) points, or returns nothing if fewer than two sizes appear. */
+    static Optional<Line> fit(List<double[]> points) {
+      double meanSize = 0;
+      double meanBytes = 0;
+      for (double[] point : points) {
+        meanSize += point[0];
+        meanBytes += point[1];
+      }
+      meanSize /= points.size();
+      meanBytes /= points.size();
+      double covariance = 0;
+      double variance = 0;
+      for (double[] point : points) {
+        covariance += (point[0] - meanSize) * (point[1] - meanBytes);
+        variance += (point[0] - meanSize) * (point[0] - meanSize);
+      }
+      if (variance == 0) {
+        return Optional.absent();
+      }
+      double slope = covariance / variance;
+      return Optional.of(new Line(slope, meanBytes - slope * meanSize));
+    }
+  }
+
+  @Override
+  public ImmutableSet<String> instrumentOptions() {
+    return ImmutableSet.of(
+        SIZE_PARAMETER_OPTION,
+        HISTOGRAM_OPTION,
+        HISTOGRAM_DEPTH_OPTION,
+        HEAP_DUMP_OPTION,
+        HEAP_DUMP_DIR_OPTION);
+  }
+}
@@ -192,6 +192,17 @@ public class CaliperConfigTest {
         configuration.getVmConfig("test"));
   }
 
+  @Test
+  public void getVmConfig_jitProfile() throws Exception {
+    CaliperConfig configuration =
+        new CaliperConfig(
+            ImmutableMap.of(
+                "vm.jit", "production",
+                "vm.other.jit", "benchmark"));
+    assertEquals(JitProfile.PRODUCTION, configuration.getVmConfig("test").jitProfile());
+    assertEquals(JitProfile.BENCHMARK, configuration.getVmConfig("other").jitProfile());
+  }
+
   @Test
   public void getVmConfig_escapedSpacesInArgs() throws Exception {
     File jdkHome = folder.newFolder();
@@ -230,6 +241,27 @@ public class CaliperConfigTest {
         configuration.getInstrumentConfig("test"));
   }
 
+  @Test
+  public void getInstrumentConfig_maxParallelism() throws Exception {
+    CaliperConfig configuration =
+        new CaliperConfig(
+            ImmutableMap.of(
+                "instrument.test.class", "test.ClassName",
+                "instrument.test.maxParallelism", "3",
+                "instrument.ncpu.class", "test.ClassName",
+                "instrument.ncpu.maxParallelism", "ncpu",
+                "instrument.bad.class", "test.ClassName",
+                "instrument.bad.maxParallelism", "0"));
+    assertThat(configuration.getInstrumentConfig("test").maxParallelism()).hasValue(3);
+    assertThat(configuration.getInstrumentConfig("ncpu").maxParallelism())
+        .hasValue(Runtime.getRuntime().availableProcessors());
+    try {
+      configuration.getInstrumentConfig("bad");
+      fail();
+    } catch (InvalidConfigurationException expected) {
+    }
+  }
+
   @Test
   public void getInstrumentConfig_notConfigured() throws Exception {
     CaliperConfig configuration =
@@ -15,12 +15,14 @@
 package com.google.caliper.runner.instrument;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import com.google.caliper.AfterExperiment;
 import com.google.caliper.BeforeExperiment;
 import com.google.caliper.Benchmark;
 import com.google.caliper.api.AfterRep;
 import com.google.caliper.api.BeforeRep;
+import com.google.caliper.core.BenchmarkClassModel.MethodModel;
 import com.google.caliper.model.Measurement;
 import com.google.caliper.model.Trial;
 import com.google.caliper.runner.config.VmConfig;
@@ -35,6 +37,7 @@ import java.io.File;
 import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -44,10 +47,11 @@ import org.junit.runners.JUnit4;
 public class AllocationInstrumentTest {
 
   @Rule public final CaliperTestWatcher runner = new CaliperTestWatcher();
+  @Rule public final TemporaryFolder caliperDirectory = new TemporaryFolder();
 
   @Test
   public void getExtraCommandLineArgs() throws Exception {
-    AllocationInstrument instrument = new AllocationInstrument();
+    AllocationInstrument instrument = new AllocationInstrument(caliperDirectory.getRoot());
     File fakeJar = File.createTempFile("fake", "jar");
     fakeJar.deleteOnExit();
     instrument.setOptions(ImmutableMap.of("allocationAgentJar", fakeJar.getAbsolutePath()));
@@ -66,6 +70,63 @@ public class AllocationInstrumentTest {
     fakeJar.delete();
   }
 
+  @Test
+  public void workerOptions_noProfile() throws Exception {
+    ImmutableMap<String, String> workerOptions =
+        workerOptions(ImmutableMap.of("trackAllocations", "true"));
+    assertEquals(
+        ImmutableMap.of("trackAllocations", "true", "statistical", "false", "otherThreads", "false"),
+        workerOptions);
+  }
+
+  @Test
+  public void workerOptions_otherThreads() throws Exception {
+    assertEquals(
+        "true", workerOptions(ImmutableMap.of("otherThreads", "true")).get("otherThreads"));
+  }
+
+  @Test
+  public void workerOptions_profileInDefaultDirectory() throws Exception {
+    ImmutableMap<String, String> workerOptions =
+        workerOptions(ImmutableMap.of("profile", "true", "profileDir", ""));
+    File expected =
+        new File(new File(caliperDirectory.getRoot(), "results"), "allocation-profiles");
+    // a profile needs the location of every allocation
+    assertEquals(
+        ImmutableMap.of(
+            "trackAllocations", "true",
+            "statistical", "false",
+            "otherThreads", "false",
+            "profileDir", expected.getAbsolutePath()),
+        workerOptions);
+  }
+
+  @Test
+  public void workerOptions_profileInGivenDirectory() throws Exception {
+    File profileDir = caliperDirectory.newFolder("profiles");
+    ImmutableMap<String, String> workerOptions =
+        workerOptions(ImmutableMap.of("profile", "true", "profileDir", profileDir.getPath()));
+    assertEquals(profileDir.getAbsolutePath(), workerOptions.get("profileDir"));
+  }
+
+  @Test
+  public void workerOptions_profileDirWithoutProfile() throws Exception {
+    ImmutableMap<String, String> workerOptions =
+        workerOptions(ImmutableMap.of("profile", "false", "profileDir", "/tmp/profiles"));
+    assertNull(workerOptions.get("profileDir"));
+    assertEquals("false", workerOptions.get("trackAllocations"));
+  }
+
+  private ImmutableMap<String, String> workerOptions(ImmutableMap<String, String> options)
+      throws Exception {
+    AllocationInstrument instrument = new AllocationInstrument(caliperDirectory.getRoot());
+    instrument.setOptions(options);
+    return instrument
+        .createInstrumentedMethod(
+            MethodModel.of(TestBenchmark.class.getDeclaredMethod("compressionSize", int.class)))
+        .workerOptions();
+  }
+
   @Test
   public void intrinsics() throws Exception {
     runner.forBenchmark(ArrayListGrowthBenchmark.class).instrument("allocation").run();
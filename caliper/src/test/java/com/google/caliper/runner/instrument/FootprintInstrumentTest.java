@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.caliper.runner.instrument;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.caliper.Param;
+import com.google.caliper.api.Footprint;
+import com.google.caliper.memory.ObjectLayout;
+import com.google.caliper.model.Measurement;
+import com.google.caliper.model.Trial;
+import com.google.caliper.runner.testing.CaliperTestWatcher;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Iterables;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Integration tests for the {@link FootprintInstrument} */
+@RunWith(JUnit4.class)
+public class FootprintInstrumentTest {
+  @Rule public final CaliperTestWatcher runner = new CaliperTestWatcher();
+
+  @Before
+  public void assumeDefaultLayout() {
+    // the worker runs on the same VM as the test, and the sizes below are for its default layout
+    ObjectLayout layout = ObjectLayout.detect();
+    assumeTrue(
+        layout.headerSize() == 12 && layout.referenceSize() == 4 && layout.alignment() == 8);
+  }
+
+  @Test
+  public void testExcludedTypes() throws Exception {
+    runner.forBenchmark(TestBenchmark.class).instrument("footprint").run();
+    ImmutableListMultimap<String, Measurement> measurements =
+        Measurement.indexByDescription(Iterables.getOnlyElement(runner.trials()).measurements());
+    // the array and the object, but not the strings
+    assertThat(onlyValue(measurements, "objects")).isEqualTo(2.0);
+    assertThat(onlyValue(measurements, "references")).isEqualTo(3.0);
+    // a 16-byte array header and 3 references, and the object's header
+    assertThat(onlyValue(measurements, "bytes")).isEqualTo(32.0 + 16.0);
+    assertThat(measurements.get("bytes-per-size")).isEmpty();
+  }
+
+  @Test
+  public void testBytesPerSize() throws Exception {
+    runner.forBenchmark(SizedBenchmark.class).instrument("footprint").run();
+    assertThat(runner.trials()).hasSize(3);
+    for (Trial trial : runner.trials()) {
+      ImmutableListMultimap<String, Measurement> measurements =
+          Measurement.indexByDescription(trial.measurements());
+      int size = Integer.parseInt(trial.scenario().benchmarkSpec().parameters().get("size"));
+      assertThat(onlyValue(measurements, "bytes")).isEqualTo(16.0 + 8 * size);
+      assertThat(onlyValue(measurements, "bytes-per-size")).isWithin(1e-9).of(8.0);
+    }
+  }
+
+  @Test
+  public void testBytesPerSizeForEachVmArgument() throws Exception {
+    runner
+        .forBenchmark(ReferenceArrayBenchmark.class)
+        .instrument("footprint")
+        .options("-Jrefs=-XX:+UseCompressedOops,-XX:-UseCompressedOops")
+        .run();
+    assertThat(runner.trials()).hasSize(6);
+    for (Trial trial : runner.trials()) {
+      ImmutableListMultimap<String, Measurement> measurements =
+          Measurement.indexByDescription(trial.measurements());
+      // fitted separately for each layout, rather than to the points of both
+      double referenceSize =
+          trial.scenario().vmArguments().get("refs").equals("-XX:+UseCompressedOops") ? 4.0 : 8.0;
+      assertThat(onlyValue(measurements, "bytes-per-size")).isWithin(1e-9).of(referenceSize);
+    }
+  }
+
+  @Test
+  public void testHeapDump() throws Exception {
+    runner
+        .forBenchmark(TestBenchmark.class)
+        .instrument("footprint")
+        .options("-Cinstrument.footprint.options.heapDump=true")
+        .run();
+    ImmutableListMultimap<String, Measurement> measurements =
+        Measurement.indexByDescription(Iterables.getOnlyElement(runner.trials()).measurements());
+    // nothing else keeps the array or the object alive, and the strings are excluded
+    assertThat(onlyValue(measurements, "retained-objects")).isEqualTo(2.0);
+    assertThat(onlyValue(measurements, "retained-bytes")).isEqualTo(32.0 + 16.0);
+    // retained sizes aren't reported as reachable ones
+    assertThat(measurements.get("bytes")).isEmpty();
+    assertThat(measurements.get("objects")).isEmpty();
+    assertThat(measurements.get("references")).isEmpty();
+  }
+
+  @Test
+  public void testHeapDumpBytesPerSize() throws Exception {
+    runner
+        .forBenchmark(SizedBenchmark.class)
+        .instrument("footprint")
+        .options("-Cinstrument.footprint.options.heapDump=true")
+        .run();
+    assertThat(runner.trials()).hasSize(3);
+    for (Trial trial : runner.trials()) {
+      ImmutableListMultimap<String, Measurement> measurements =
+          Measurement.indexByDescription(trial.measurements());
+      int size = Integer.parseInt(trial.scenario().benchmarkSpec().parameters().get("size"));
+      assertThat(onlyValue(measurements, "retained-bytes")).isEqualTo(16.0 + 8 * size);
+      assertThat(onlyValue(measurements, "retained-bytes-per-size")).isWithin(1e-9).of(8.0);
+      assertThat(measurements.get("bytes-per-size")).isEmpty();
+    }
+  }
+
+  private static double onlyValue(
+      ImmutableListMultimap<String, Measurement> measurements, String description) {
+    return Iterables.getOnlyElement(measurements.get(description)).value().magnitude();
+  }
+
+  public static class TestBenchmark {
+    @Footprint(exclude = String.class)
+    public Object[] array() {
+      return new Object[] {"a", "b", new Object()};
+    }
+  }
+
+  public static class SizedBenchmark {
+    @Param({"1", "2", "4"})
+    int size;
+
+    @Footprint
+    public long[] array() {
+      return new long[size];
+    }
+  }
+
+  public static class ReferenceArrayBenchmark {
+    // sizes at which the compressed references of each array fill whole alignment units
+    @Param({"2", "4", "8"})
+    int size;
+
+    @Footprint
+    public Object[] array() {
+      return new Object[size];
+    }
+  }
+}
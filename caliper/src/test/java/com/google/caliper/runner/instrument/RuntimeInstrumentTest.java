@@ -26,19 +26,27 @@ import static org.junit.Assert.fail;
 import com.google.caliper.Benchmark;
 import com.google.caliper.api.BeforeRep;
 import com.google.caliper.api.Macrobenchmark;
+import com.google.caliper.bridge.ClockCharacteristics;
+import com.google.caliper.bridge.StartMeasurementLogMessage;
+import com.google.caliper.bridge.StopMeasurementLogMessage;
 import com.google.caliper.core.BenchmarkClassModel.MethodModel;
 import com.google.caliper.core.InvalidBenchmarkException;
 import com.google.caliper.model.InstrumentType;
 import com.google.caliper.model.Measurement;
 import com.google.caliper.model.Trial;
+import com.google.caliper.model.Value;
+import com.google.caliper.runner.config.VmType;
 import com.google.caliper.runner.instrument.Instrument.InstrumentedMethod;
 import com.google.caliper.runner.testing.CaliperTestWatcher;
 import com.google.caliper.util.ShortDuration;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
 import com.google.common.math.LinearTransformation;
 import com.google.common.math.PairedStatsAccumulator;
 import com.google.common.util.concurrent.Uninterruptibles;
@@ -160,6 +168,191 @@ public class RuntimeInstrumentTest {
     }
   }
 
+  @Test
+  public void trialVmArguments_epsilonHeapSizedFromAllocationRate() throws Exception {
+    instrument.setOptions(epsilonOptions());
+    InstrumentedMethod instrumentedMethod =
+        instrument.createInstrumentedMethod(runtimeBenchmarkMethod("microbenchmark", int.class));
+    // 0.1 bytes/ns for 100ms of warmup and 10 intervals of 10ms is 20,000,000 bytes; twice that
+    // plus the 256MB reserve rounds up to 295MB
+    assertThat(instrumentedMethod.trialVmArguments(VmType.JVM, 17, 10_000, 1_000))
+        .containsExactly("gc", "epsilon", "heap", "295m");
+  }
+
+  @Test
+  public void trialVmArguments_epsilonNeedsJava11() throws Exception {
+    instrument.setOptions(epsilonOptions());
+    InstrumentedMethod instrumentedMethod =
+        instrument.createInstrumentedMethod(runtimeBenchmarkMethod("microbenchmark", int.class));
+    assertThat(instrumentedMethod.trialVmArguments(VmType.JVM, 8, 10_000, 1_000)).isEmpty();
+    assertThat(instrumentedMethod.trialVmArguments(VmType.JVM, 0, 10_000, 1_000)).isEmpty();
+    assertThat(instrumentedMethod.trialVmArguments(VmType.ANDROID, 17, 10_000, 1_000)).isEmpty();
+  }
+
+  @Test
+  public void workerOptions_steadyStateDryRunOnlyWithEpsilon() throws Exception {
+    instrument.setOptions(epsilonOptions());
+    assertThat(
+            instrument
+                .createInstrumentedMethod(runtimeBenchmarkMethod("picobenchmark", long.class))
+                .workerOptions())
+        .containsKey("steadyStateDryRunNanos");
+
+    instrument.setOptions(
+        ImmutableMap.<String, String>builder()
+            .putAll(epsilonOptions())
+            .put("epsilonGc", "false")
+            .buildKeepingLast());
+    assertThat(
+            instrument
+                .createInstrumentedMethod(runtimeBenchmarkMethod("picobenchmark", long.class))
+                .workerOptions())
+        .doesNotContainKey("steadyStateDryRunNanos");
+  }
+
+  @Test
+  public void baselineCorrection_subtractsOverheadFromRuntime() throws Exception {
+    MeasurementCollectingVisitor collector = baselineCorrectedCollector();
+    // 2 and 1.5 ns per rep of overhead, leaving 8 and 9 ns per rep
+    collectMeasurement(collector, 1000, 10_000, 2_000);
+    collectMeasurement(collector, 2000, 21_000, 3_000);
+
+    assertThat(collector.isDoneCollecting()).isTrue();
+    assertThat(collector.getMeasurements())
+        .containsExactly(
+            measurement("runtime", 10_000, 1000),
+            measurement("runtime-baseline", 2_000, 1000),
+            measurement("runtime", 21_000, 2000),
+            measurement("runtime-baseline", 3_000, 2000),
+            measurement("runtime-corrected", 8_000, 1000),
+            measurement("runtime-corrected", 18_000, 2000))
+        .inOrder();
+    assertThat(collector.getMessages())
+        .containsExactly(
+            "runtime-corrected subtracts 1.750 +/- 0.354 ns per rep of loop and timer overhead "
+                + "from runtime.");
+  }
+
+  @Test
+  public void baselineCorrection_notReportedBelowNoiseFloor() throws Exception {
+    MeasurementCollectingVisitor collector = baselineCorrectedCollector();
+    // the overhead is nearly all of the runtime, and the timer's granularity of 100ns is 0.1ns per
+    // rep, so the 0.05ns per rep that's left can't be told apart from noise
+    collectMeasurement(collector, 1000, 10_050, 10_000);
+    collectMeasurement(collector, 1000, 10_050, 10_000);
+
+    assertThat(collector.getMeasurements())
+        .containsExactly(
+            measurement("runtime", 10_050, 1000),
+            measurement("runtime-baseline", 10_000, 1000),
+            measurement("runtime", 10_050, 1000),
+            measurement("runtime-baseline", 10_000, 1000))
+        .inOrder();
+    assertThat(collector.getMessages())
+        .containsExactly(
+            "WARNING: The runtime corrected for loop and timer overhead (0.050 ns per rep) is below "
+                + "the noise floor of 0.200 ns per rep, so it is not reported. The raw runtime "
+                + "includes 10.000 +/- 0.000 ns per rep of overhead.");
+  }
+
+  @Test
+  public void cpuTimeInstead_keepsRuntimeUnreported() throws Exception {
+    instrument.setOptions(
+        ImmutableMap.<String, String>builder()
+            .put("warmup", "0s")
+            .put("maxWarmupWallTime", "10m")
+            .put("timingInterval", "10ms")
+            .put("measurements", "1")
+            .put("gcBeforeEach", "false")
+            .put("cpuTime", "instead")
+            .buildOrThrow());
+    MeasurementCollectingVisitor collector =
+        instrument
+            .createInstrumentedMethod(runtimeBenchmarkMethod("microbenchmark", int.class))
+            .getMeasurementCollectingVisitor();
+    new StartMeasurementLogMessage().accept(collector);
+    new StopMeasurementLogMessage(
+            ImmutableList.of(measurement("runtime", 2_000, 1000), measurement("cpu", 1_000, 1000)))
+        .accept(collector);
+
+    assertThat(collector.isDoneCollecting()).isTrue();
+    assertThat(collector.getMeasurements()).containsExactly(measurement("cpu", 1_000, 1000));
+    assertThat(collector.getUnreportedMeasurements())
+        .containsExactly(measurement("runtime", 2_000, 1000));
+  }
+
+  @Test
+  public void validateCpuTimeResolution() {
+    // a 10ms CPU time clock needs measurements of at least 10s of CPU time
+    ClockCharacteristics coarseClock = ClockCharacteristics.create(10_000_000, 100, true);
+    ImmutableList<ImmutableList<Measurement>> results =
+        ImmutableList.of(
+            ImmutableList.of(
+                measurement("runtime", 100_000_000, 1000), measurement("cpu", 99_000_000, 1000)),
+            ImmutableList.of(
+                measurement("runtime", 20_000_000_000.0, 1000),
+                measurement("cpu", 20_000_000_000.0, 1000)));
+    assertThat(RuntimeInstrument.validateCpuTimeResolution(results, coarseClock).get())
+        .isEqualTo(
+            "The resolution of the thread CPU time clock (10ms) is more than 0.1% of the CPU time "
+                + "of the shortest measurement (99ms), so cpu results are imprecise. Consider a "
+                + "longer timingInterval.");
+
+    ClockCharacteristics fineClock = ClockCharacteristics.create(1_000, 100, true);
+    assertThat(RuntimeInstrument.validateCpuTimeResolution(results, fineClock).isPresent())
+        .isFalse();
+    // nothing to warn about without CPU time measurements
+    assertThat(
+            RuntimeInstrument.validateCpuTimeResolution(
+                    ImmutableList.of(ImmutableList.of(measurement("runtime", 1_000, 1))),
+                    coarseClock)
+                .isPresent())
+        .isFalse();
+  }
+
+  private MeasurementCollectingVisitor baselineCorrectedCollector() throws Exception {
+    instrument.setOptions(
+        ImmutableMap.<String, String>builder()
+            .put("warmup", "0s")
+            .put("maxWarmupWallTime", "10m")
+            .put("timingInterval", "10ms")
+            .put("measurements", "2")
+            .put("gcBeforeEach", "false")
+            .put("baselineCorrection", "true")
+            .buildOrThrow());
+    return instrument
+        .createInstrumentedMethod(runtimeBenchmarkMethod("microbenchmark", int.class))
+        .getMeasurementCollectingVisitor();
+  }
+
+  private static void collectMeasurement(
+      MeasurementCollectingVisitor collector, long reps, long runtimeNanos, long baselineNanos) {
+    new StartMeasurementLogMessage().accept(collector);
+    new StopMeasurementLogMessage(
+            ImmutableList.of(
+                measurement("runtime", runtimeNanos, reps),
+                measurement("runtime-baseline", baselineNanos, reps)))
+        .accept(collector);
+  }
+
+  private static Measurement measurement(String description, double nanos, double weight) {
+    return new Measurement.Builder()
+        .description(description)
+        .value(Value.create(nanos, "ns"))
+        .weight(weight)
+        .build();
+  }
+
+  private static ImmutableMap<String, String> epsilonOptions() {
+    return ImmutableMap.<String, String>builder()
+        .put("warmup", "100ms")
+        .put("timingInterval", "10ms")
+        .put("measurements", "9")
+        .put("gcBeforeEach", "false")
+        .put("epsilonGc", "true")
+        .buildOrThrow();
+  }
+
   private static MethodModel runtimeBenchmarkMethod(String name, Class<?>... parameterTypes)
       throws NoSuchMethodException {
     return MethodModel.of(RuntimeBenchmark.class.getDeclaredMethod(name, parameterTypes));
@@ -207,9 +400,48 @@ public class RuntimeInstrumentTest {
     assertEquals("Expected 3 trials: " + trials, 3, trials.size());
     for (Trial trial : trials) {
       PairedStatsAccumulator stats = new PairedStatsAccumulator();
+      PairedStatsAccumulator correctedStats = new PairedStatsAccumulator();
+      int baselines = 0;
+      int allocations = 0;
+      ListMultimap<String, Measurement> gcStats = ArrayListMultimap.create();
       for (Measurement measurement : trial.measurements()) {
-        assertEquals("runtime", measurement.description());
-        stats.add(measurement.weight(), measurement.value().magnitude());
+        switch (measurement.description()) {
+          case "runtime":
+            stats.add(measurement.weight(), measurement.value().magnitude());
+            break;
+          case "runtime-baseline":
+            baselines++;
+            break;
+          case "runtime-corrected":
+            correctedStats.add(measurement.weight(), measurement.value().magnitude());
+            break;
+          case "allocated-bytes":
+            // the benchmark methods don't allocate, so all that's counted is the few objects of
+            // the reflective call around the loop, however many reps there were
+            assertThat(measurement.value().unit()).isEqualTo("B");
+            assertThat(measurement.value().magnitude()).isLessThan(1024.0);
+            allocations++;
+            break;
+          case "gc-young-count":
+          case "gc-old-count":
+          case "gc-pause":
+          case "gc-pause-fraction":
+          case "gc-promoted-bytes":
+          case "gc-peak-heap":
+            // reported with every measurement kept, and only those
+            assertThat(measurement.value().magnitude()).isAtLeast(0.0);
+            gcStats.put(measurement.description(), measurement);
+            break;
+          default:
+            fail("unexpected measurement: " + measurement);
+        }
+      }
+      // allocated bytes are measured alongside every runtime where the VM can count them
+      if (allocations > 0) {
+        assertEquals(stats.count(), allocations);
+      }
+      for (String description : gcStats.keySet()) {
+        assertEquals(description, stats.count(), gcStats.get(description).size());
       }
       LinearTransformation line = stats.leastSquaresFit();
       String methodName = trial.scenario().benchmarkSpec().methodName();
@@ -218,8 +450,19 @@ public class RuntimeInstrumentTest {
         // macro benchmark measurements all have a weight of 1 so the linear transformation is a
         // vertical line (no slope).
         macroAverage = stats.yStats().mean();
+        // only rep-based benchmarks can be corrected for the overhead of their loop
+        assertEquals(0, baselines);
       } else {
         assertTrue("The slope should be positive, got " + line.slope(), line.slope() > 0.0);
+        // every runtime measurement has a baseline, and the corrected runtime, if it's reported,
+        // is the runtime less some overhead
+        assertEquals(stats.count(), baselines);
+        if (correctedStats.count() > 0) {
+          assertEquals(stats.count(), correctedStats.count());
+          double correctedSlope = correctedStats.leastSquaresFit().slope();
+          // the loop overhead is a few ns per rep against a 5ms rep, lost in the noise of the fit
+          assertThat(correctedSlope).isWithin(0.01 * line.slope()).of(line.slope());
+        }
         if ("pico".equals(methodName)) {
           picoAverage = line.slope();
         } else if ("micro".equals(methodName)) {
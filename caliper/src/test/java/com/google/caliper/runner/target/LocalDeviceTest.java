@@ -21,6 +21,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.google.caliper.Benchmark;
+import com.google.caliper.bridge.ClockCharacteristics;
 import com.google.caliper.core.BenchmarkClassModel;
 import com.google.caliper.core.BenchmarkClassModel.MethodModel;
 import com.google.caliper.runner.config.VmConfig;
@@ -41,7 +42,9 @@ import java.util.Set;
 import java.util.UUID;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -70,6 +73,8 @@ public class LocalDeviceTest {
     }
   }
 
+  @Rule public final TemporaryFolder caliperDirectory = new TemporaryFolder();
+
   private final MockRegistrar registrar = new MockRegistrar();
   private final LocalDevice device = LocalDevice.builder().shutdownHookRegistrar(registrar).build();
 
@@ -86,7 +91,8 @@ public class LocalDeviceTest {
   @Test
   public void simpleArgsTest() throws Exception {
     MethodModel method = MethodModel.of(TestBenchmark.class.getDeclaredMethods()[0]);
-    AllocationInstrument allocationInstrument = new AllocationInstrument();
+    AllocationInstrument allocationInstrument =
+        new AllocationInstrument(caliperDirectory.getRoot());
     allocationInstrument.setOptions(ImmutableMap.of("trackAllocations", "true"));
     VmConfig vmConfig =
         VmConfig.builder()
@@ -154,7 +160,14 @@ public class LocalDeviceTest {
 
   private ImmutableList<String> createCommand(
       Experiment experiment, BenchmarkClassModel benchmarkClass) {
-    WorkerSpec spec = new TrialSpec(TRIAL_ID, PORT_NUMBER, experiment, benchmarkClass, 1);
+    WorkerSpec spec =
+        new TrialSpec(
+            TRIAL_ID,
+            PORT_NUMBER,
+            experiment,
+            benchmarkClass,
+            1,
+            ClockCharacteristics.create(100, 100, true));
     return device.createCommand(spec);
   }
 